@@ -0,0 +1,84 @@
+package com.googlecode.jau;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Order of the checks in equals() that adapts to the observed mismatches.
+ * Cheap checks come before expensive ones. Checks with the same cost are
+ * sorted so that the check that fails most often comes first. The counters
+ * are not exact if the object is used from many threads.
+ */
+final class AdaptiveOrder {
+    /** the order is recomputed after this number of mismatches */
+    static final int PERIOD = 1024;
+
+    /** cost of each check: 0 = primitive values, 1 = references */
+    private final int[] costs;
+
+    /** number of mismatches for each check */
+    private final int[] mismatches;
+
+    /** number of mismatches since the last update of the order */
+    private int count;
+
+    /** indexes of the checks in the order they should be performed */
+    volatile int[] order;
+
+    /**
+     * -
+     *
+     * @param costs cost of each check: 0 = primitive values,
+     *     1 = references
+     */
+    AdaptiveOrder(int[] costs) {
+        this.costs = costs;
+        this.mismatches = new int[costs.length];
+        int[] order = new int[costs.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        sort(order, new int[costs.length]);
+        this.order = order;
+    }
+
+    /**
+     * Records that a check found different values.
+     *
+     * @param check index of the check
+     */
+    void mismatch(int check) {
+        mismatches[check]++;
+        if (++count >= PERIOD) {
+            count = 0;
+            int[] snapshot = mismatches.clone();
+            int[] order = this.order.clone();
+            sort(order, snapshot);
+            this.order = order;
+
+            // older observations become less important
+            for (int i = 0; i < mismatches.length; i++)
+                mismatches[i] /= 2;
+        }
+    }
+
+    /**
+     * Sorts the checks by cost and number of mismatches.
+     *
+     * @param order indexes of the checks
+     * @param mismatches number of mismatches for each check
+     */
+    private void sort(int[] order, final int[] mismatches) {
+        Integer[] r = new Integer[order.length];
+        for (int i = 0; i < r.length; i++)
+            r[i] = order[i];
+        Arrays.sort(r, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                if (costs[o1] != costs[o2])
+                    return costs[o1] - costs[o2];
+                return mismatches[o2] - mismatches[o1];
+            }
+        });
+        for (int i = 0; i < r.length; i++)
+            order[i] = r[i];
+    }
+}
@@ -0,0 +1,963 @@
+package com.googlecode.jau;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal writer for .class files. Only the features necessary for the
+ * classes generated by {@link JAUCodegen} are supported: a constant pool,
+ * static fields and methods with a Code attribute. Version 49 (Java 5) class
+ * files are generated, so no stack map frames are necessary.
+ *
+ * An existing class file can be loaded and extended by new methods
+ * (see {@link JAUWeaver}). For class files of version 50 or later a full
+ * stack map frame is written for every label. The frame is described by
+ * {@link Code#locals(java.lang.String[])} and the stack passed to
+ * {@link Code#place(com.googlecode.jau.ClassFileWriter.Label,
+ * java.lang.String[])}.
+ */
+final class ClassFileWriter {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+    public static final int ACC_SYNTHETIC = 0x1000;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_ANNOTATION = 0x2000;
+    public static final int ACC_ENUM = 0x4000;
+
+    public static final int ICONST_M1 = 0x02;
+    public static final int ICONST_0 = 0x03;
+    public static final int ICONST_1 = 0x04;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int ACONST_NULL = 0x01;
+    public static final int LDC_W = 0x13;
+    public static final int LDC2_W = 0x14;
+    public static final int ILOAD = 0x15;
+    public static final int ALOAD = 0x19;
+    public static final int ISTORE = 0x36;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int DUP2 = 0x5c;
+    public static final int IADD = 0x60;
+    public static final int IMUL = 0x68;
+    public static final int LUSHR = 0x7d;
+    public static final int LXOR = 0x83;
+    public static final int I2L = 0x85;
+    public static final int L2I = 0x88;
+    public static final int LCMP = 0x94;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9a;
+    public static final int IF_ICMPNE = 0xa0;
+    public static final int IF_ACMPNE = 0xa6;
+    public static final int GOTO = 0xa7;
+    public static final int IRETURN = 0xac;
+    public static final int ARETURN = 0xb0;
+    public static final int RETURN = 0xb1;
+    public static final int GETSTATIC = 0xb2;
+    public static final int PUTSTATIC = 0xb3;
+    public static final int GETFIELD = 0xb4;
+    public static final int INVOKEVIRTUAL = 0xb6;
+    public static final int INVOKESPECIAL = 0xb7;
+    public static final int INVOKESTATIC = 0xb8;
+    public static final int CHECKCAST = 0xc0;
+    public static final int IFNULL = 0xc6;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_OBJECT = 7;
+    private static final int FULL_FRAME = 255;
+
+    /**
+     * Position in the byte code of a method.
+     */
+    static final class Label {
+        /** position of the label or -1 if not yet placed */
+        int position = -1;
+
+        /** [instruction position, offset position] for unresolved jumps */
+        List<int[]> references = new ArrayList<int[]>();
+
+        /** types of the local variables at the label */
+        String[] locals;
+
+        /** types of the stack entries at the label */
+        String[] stack;
+    }
+
+    /**
+     * A field of a loaded class file.
+     */
+    static final class FieldInfo {
+        /** access flags */
+        int access;
+
+        /** field name */
+        String name;
+
+        /** field descriptor */
+        String descriptor;
+
+        /**
+         * annotation descriptor => (element name => boolean value) for the
+         * RuntimeVisibleAnnotations of the field
+         */
+        final Map<String, Map<String, Boolean>> annotations =
+                new HashMap<String, Map<String, Boolean>>();
+    }
+
+    /**
+     * Byte code of one method.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final String signature;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<Label>();
+        private String[] locals = new String[0];
+
+        /**
+         * -
+         *
+         * @param access access flags
+         * @param name method name
+         * @param descriptor method descriptor
+         */
+        Code(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            this.signature = name + descriptor;
+        }
+
+        /**
+         * Emits an instruction without operands.
+         *
+         * @param opcode the instruction
+         */
+        public void op(int opcode) {
+            code.write(opcode);
+        }
+
+        /**
+         * Emits an instruction with a 1 byte operand (e.g. ILOAD).
+         *
+         * @param opcode the instruction
+         * @param operand operand
+         */
+        public void op1(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand);
+        }
+
+        /**
+         * Emits an instruction with a 2 bytes operand (e.g. a constant pool
+         * index).
+         *
+         * @param opcode the instruction
+         * @param operand operand
+         */
+        public void op2(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand >> 8);
+            code.write(operand);
+        }
+
+        /**
+         * Pushes an int constant.
+         *
+         * @param value the constant
+         */
+        public void iconst(int value) {
+            if (value >= -1 && value <= 5)
+                op(ICONST_0 + value);
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+                op1(BIPUSH, value);
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+                op2(SIPUSH, value);
+            else
+                op2(LDC_W, intConst(value));
+        }
+
+        /**
+         * Pushes a long constant.
+         *
+         * @param value the constant
+         */
+        public void lconst(long value) {
+            op2(LDC2_W, longConst(value));
+        }
+
+        /**
+         * Creates a new label. It should be placed via
+         * {@link #place(com.googlecode.jau.ClassFileWriter.Label)} later.
+         *
+         * @return new label
+         */
+        public Label newLabel() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        /**
+         * Sets the types of the local variables for the following labels.
+         * A type is "I" for int or the internal name of a class.
+         *
+         * @param types types of the local variables
+         */
+        public void locals(String... types) {
+            locals = types;
+        }
+
+        /**
+         * Places a label at the current position.
+         *
+         * @param label the label
+         * @param stack types of the stack entries at the label (see
+         *     {@link #locals(java.lang.String[])})
+         */
+        public void place(Label label, String... stack) {
+            label.position = code.size();
+            label.locals = locals;
+            label.stack = stack;
+        }
+
+        /**
+         * Emits a jump instruction.
+         *
+         * @param opcode GOTO or one of the IFxx instructions
+         * @param label target
+         */
+        public void jump(int opcode, Label label) {
+            label.references.add(new int[] {code.size(), code.size() + 1});
+            op2(opcode, 0);
+        }
+
+        /**
+         * Finishes the method.
+         *
+         * @param maxStack maximum stack size
+         * @param maxLocals maximum number of local variables including
+         *     parameters
+         */
+        public void end(int maxStack, int maxLocals) {
+            byte[] bytes = code.toByteArray();
+            for (Label label: labels) {
+                if (label.position < 0 && !label.references.isEmpty())
+                    throw new IllegalStateException("Label was not placed");
+                for (int[] ref: label.references) {
+                    int offset = label.position - ref[0];
+                    bytes[ref[1]] = (byte) (offset >> 8);
+                    bytes[ref[1] + 1] = (byte) offset;
+                }
+            }
+            try {
+                byte[] frames = version >= 50 ? stackMapTable() : null;
+                DataOutputStream out = new DataOutputStream(methods);
+                out.writeShort(access);
+                out.writeShort(name);
+                out.writeShort(descriptor);
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + bytes.length +
+                        (frames == null ? 0 : 6 + frames.length));
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeShort(0); // exception table
+                if (frames == null) {
+                    out.writeShort(0); // attributes
+                } else {
+                    out.writeShort(1);
+                    out.writeShort(utf8("StackMapTable"));
+                    out.writeInt(frames.length);
+                    out.write(frames);
+                }
+                out.flush();
+            } catch (IOException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
+            }
+            methodCount++;
+            methodNames.add(signature);
+        }
+
+        /**
+         * @return content of the StackMapTable attribute with a full frame
+         *     for every placed label or null if there are no labels
+         * @throws IOException never
+         */
+        private byte[] stackMapTable() throws IOException {
+            List<Label> placed = new ArrayList<Label>();
+            for (Label label: labels) {
+                if (label.position >= 0)
+                    placed.add(label);
+            }
+            Collections.sort(placed, new Comparator<Label>() {
+                public int compare(Label a, Label b) {
+                    return a.position - b.position;
+                }
+            });
+
+            ByteArrayOutputStream r = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(r);
+            int count = 0;
+            int last = -1;
+            for (Label label: placed) {
+                if (label.position == last)
+                    continue;
+                out.writeByte(FULL_FRAME);
+                out.writeShort(label.position - last - 1);
+                writeTypes(out, label.locals);
+                writeTypes(out, label.stack);
+                last = label.position;
+                count++;
+            }
+            if (count == 0)
+                return null;
+            out.flush();
+            byte[] frames = r.toByteArray();
+            byte[] result = new byte[frames.length + 2];
+            result[0] = (byte) (count >> 8);
+            result[1] = (byte) count;
+            System.arraycopy(frames, 0, result, 2, frames.length);
+            return result;
+        }
+
+        /**
+         * Writes verification types of a stack map frame.
+         *
+         * @param out output
+         * @param types "I" for int or internal class names
+         * @throws IOException never
+         */
+        private void writeTypes(DataOutputStream out, String[] types)
+                throws IOException {
+            out.writeShort(types.length);
+            for (String type: types) {
+                if (type.equals("I")) {
+                    out.writeByte(ITEM_INTEGER);
+                } else {
+                    out.writeByte(ITEM_OBJECT);
+                    out.writeShort(cls(type));
+                }
+            }
+        }
+    }
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexes =
+            new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private int fieldCount;
+
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount;
+
+    private int version = 49;
+    private int access = ACC_PUBLIC | ACC_FINAL | ACC_SUPER;
+    private final int thisClass;
+    private final int superClass;
+    private int[] interfaces;
+
+    /** raw class attributes */
+    private byte[] attributes = new byte[0];
+    private int attributeCount;
+
+    /** UTF8 constants by index (only for loaded class files) */
+    private final Map<Integer, String> utf8s = new HashMap<Integer, String>();
+
+    /** int constants by index (only for loaded class files) */
+    private final Map<Integer, Integer> ints =
+            new HashMap<Integer, Integer>();
+
+    /** fields of a loaded class file */
+    private final List<FieldInfo> fieldInfos = new ArrayList<FieldInfo>();
+
+    /** name + descriptor of all methods */
+    private final Set<String> methodNames = new HashSet<String>();
+
+    /**
+     * annotation descriptor => (element name => boolean value) for the
+     * RuntimeVisibleAnnotations of the class. Only boolean elements are
+     * recorded.
+     */
+    private final Map<String, Map<String, Boolean>> annotations =
+            new HashMap<String, Map<String, Boolean>>();
+
+    /**
+     * -
+     *
+     * @param name internal name of the class (e.g. "a/b/C")
+     * @param superName internal name of the super class
+     * @param interfaceNames internal names of implemented interfaces
+     */
+    ClassFileWriter(String name, String superName, String[] interfaceNames) {
+        thisClass = cls(name);
+        superClass = cls(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++)
+            interfaces[i] = cls(interfaceNames[i]);
+    }
+
+    /**
+     * Loads an existing class file. Constants, fields, methods and
+     * attributes are preserved.
+     *
+     * @param classFile content of a .class file
+     * @throws IOException if the class file is invalid
+     */
+    ClassFileWriter(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xCAFEBABE)
+            throw new IOException("Not a class file");
+        in.readUnsignedShort();
+        version = in.readUnsignedShort();
+
+        // constants are copied as they are
+        int count = in.readUnsignedShort();
+        while (poolCount < count) {
+            int tag = in.readUnsignedByte();
+            int index = poolCount++;
+            poolOut.writeByte(tag);
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    String s = in.readUTF();
+                    poolOut.writeUTF(s);
+                    utf8s.put(index, s);
+                    poolIndexes.put("U" + s, index);
+                    break;
+                case CONSTANT_INTEGER:
+                    int value = in.readInt();
+                    poolOut.writeInt(value);
+                    ints.put(index, value);
+                    break;
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    poolOut.writeInt(in.readInt());
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    poolOut.writeLong(in.readLong());
+                    poolCount++;
+                    break;
+                case CONSTANT_CLASS:
+                    int nameIndex = in.readUnsignedShort();
+                    poolOut.writeShort(nameIndex);
+                    poolIndexes.put("CI" + nameIndex, index);
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    poolOut.writeShort(in.readUnsignedShort());
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    poolOut.writeByte(in.readUnsignedByte());
+                    poolOut.writeShort(in.readUnsignedShort());
+                    break;
+                default:
+                    throw new IOException("Unknown constant tag: " + tag);
+            }
+        }
+
+        // class entries can only be resolved after all UTF8 constants are
+        // known
+        for (Map.Entry<String, Integer> e:
+                new HashMap<String, Integer>(poolIndexes).entrySet()) {
+            if (e.getKey().startsWith("CI")) {
+                poolIndexes.remove(e.getKey());
+                poolIndexes.put("C" + utf8s.get(Integer.valueOf(
+                        e.getKey().substring(2))), e.getValue());
+            }
+        }
+
+        access = in.readUnsignedShort();
+        thisClass = in.readUnsignedShort();
+        superClass = in.readUnsignedShort();
+        interfaces = new int[in.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = in.readUnsignedShort();
+
+        DataOutputStream out = new DataOutputStream(fields);
+        fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            FieldInfo f = new FieldInfo();
+            copyMember(in, out, f);
+            fieldInfos.add(f);
+        }
+        out.flush();
+
+        out = new DataOutputStream(methods);
+        methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++)
+            methodNames.add(copyMember(in, out, null));
+        out.flush();
+
+        ByteArrayOutputStream attrs = new ByteArrayOutputStream();
+        out = new DataOutputStream(attrs);
+        attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            int name = in.readUnsignedShort();
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            out.writeShort(name);
+            out.writeInt(b.length);
+            out.write(b);
+            if ("RuntimeVisibleAnnotations".equals(utf8s.get(name)))
+                readAnnotations(b, annotations);
+        }
+        out.flush();
+        attributes = attrs.toByteArray();
+    }
+
+    /**
+     * Copies a field or a method.
+     *
+     * @param in input
+     * @param out output
+     * @param field information about the field will be stored here or null
+     * @return name + descriptor of the member
+     * @throws IOException if the class file is invalid
+     */
+    private String copyMember(DataInputStream in, DataOutputStream out,
+            FieldInfo field) throws IOException {
+        int access = in.readUnsignedShort();
+        out.writeShort(access);
+        int name = in.readUnsignedShort();
+        int descriptor = in.readUnsignedShort();
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        int n = in.readUnsignedShort();
+        out.writeShort(n);
+        for (int i = 0; i < n; i++) {
+            int attribute = in.readUnsignedShort();
+            out.writeShort(attribute);
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            out.writeInt(b.length);
+            out.write(b);
+            if (field != null && "RuntimeVisibleAnnotations".equals(
+                    utf8s.get(attribute)))
+                readAnnotations(b, field.annotations);
+        }
+        if (field != null) {
+            field.access = access;
+            field.name = utf8s.get(name);
+            field.descriptor = utf8s.get(descriptor);
+        }
+        return utf8s.get(name) + utf8s.get(descriptor);
+    }
+
+    /**
+     * Parses a RuntimeVisibleAnnotations attribute.
+     *
+     * @param b content of the attribute
+     * @param target annotation descriptor => (element name => boolean value)
+     * @throws IOException if the attribute is invalid
+     */
+    private void readAnnotations(byte[] b,
+            Map<String, Map<String, Boolean>> target) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+        int n = in.readUnsignedShort();
+        for (int i = 0; i < n; i++) {
+            Map<String, Boolean> values = new HashMap<String, Boolean>();
+            target.put(readAnnotation(in, values), values);
+        }
+    }
+
+    /**
+     * Parses an annotation.
+     *
+     * @param in input
+     * @param values boolean element values will be stored here or null
+     * @return type descriptor of the annotation
+     * @throws IOException if the annotation is invalid
+     */
+    private String readAnnotation(DataInputStream in,
+            Map<String, Boolean> values) throws IOException {
+        String type = utf8s.get(in.readUnsignedShort());
+        int n = in.readUnsignedShort();
+        for (int i = 0; i < n; i++) {
+            String name = utf8s.get(in.readUnsignedShort());
+            int tag = in.readUnsignedByte();
+            if (tag == 'Z' && values != null) {
+                Integer v = ints.get(in.readUnsignedShort());
+                values.put(name, Boolean.valueOf(
+                        v != null && v.intValue() != 0));
+            } else {
+                skipElementValue(in, tag);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Skips the value of an annotation element.
+     *
+     * @param in input
+     * @param tag tag of the value
+     * @throws IOException if the value is invalid
+     */
+    private void skipElementValue(DataInputStream in, int tag)
+            throws IOException {
+        switch (tag) {
+            case 'e':
+                in.readInt();
+                break;
+            case '@':
+                readAnnotation(in, null);
+                break;
+            case '[':
+                int n = in.readUnsignedShort();
+                for (int i = 0; i < n; i++)
+                    skipElementValue(in, in.readUnsignedByte());
+                break;
+            default:
+                in.readUnsignedShort();
+        }
+    }
+
+    /**
+     * @return version of the class file (e.g. 49 for Java 5)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return access flags of the class
+     */
+    public int getAccess() {
+        return access;
+    }
+
+    /**
+     * @return internal name of the class (e.g. "a/b/C")
+     */
+    public String getName() {
+        return className(thisClass);
+    }
+
+    /**
+     * @return internal name of the super class
+     */
+    public String getSuperName() {
+        return className(superClass);
+    }
+
+    /**
+     * @return fields of a loaded class file in the declaration order
+     */
+    public List<FieldInfo> getFields() {
+        return fieldInfos;
+    }
+
+    /**
+     * @return internal names of the directly implemented interfaces
+     */
+    public String[] getInterfaces() {
+        String[] r = new String[interfaces.length];
+        for (int i = 0; i < r.length; i++)
+            r[i] = className(interfaces[i]);
+        return r;
+    }
+
+    /**
+     * @param index index of a CONSTANT_Class entry
+     * @return internal class name
+     */
+    private String className(int index) {
+        for (Map.Entry<String, Integer> e: poolIndexes.entrySet()) {
+            if (e.getValue().intValue() == index && e.getKey().startsWith("C"))
+                return e.getKey().substring(1);
+        }
+        throw new IllegalArgumentException("No class constant: " + index);
+    }
+
+    /**
+     * @param descriptor annotation type descriptor (e.g.
+     *     "Lcom/googlecode/jau/JAUEquals;")
+     * @return boolean element values of the annotation or null if the
+     *     class is not annotated. Elements with default values are not
+     *     recorded.
+     */
+    public Map<String, Boolean> getAnnotation(String descriptor) {
+        return annotations.get(descriptor);
+    }
+
+    /**
+     * @param name method name
+     * @param descriptor method descriptor
+     * @return true = the class contains this method
+     */
+    public boolean hasMethod(String name, String descriptor) {
+        return methodNames.contains(name + descriptor);
+    }
+
+    /**
+     * Adds an interface to the list of implemented interfaces.
+     *
+     * @param name internal name of the interface
+     */
+    public void addInterface(String name) {
+        int[] r = new int[interfaces.length + 1];
+        System.arraycopy(interfaces, 0, r, 0, interfaces.length);
+        r[interfaces.length] = cls(name);
+        interfaces = r;
+    }
+
+    /**
+     * Adds an entry to the constant pool if it is not already there.
+     *
+     * @param key unique key for the entry
+     * @param tag constant tag
+     * @param a first 2 bytes value or -1
+     * @param b second 2 bytes value or -1
+     * @return index of the entry
+     */
+    private int constant(String key, int tag, int a, int b) {
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index.intValue();
+        try {
+            poolOut.writeByte(tag);
+            if (a >= 0)
+                poolOut.writeShort(a);
+            if (b >= 0)
+                poolOut.writeShort(b);
+        } catch (IOException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        int r = poolCount++;
+        poolIndexes.put(key, r);
+        return r;
+    }
+
+    /**
+     * @param s a string
+     * @return index of a CONSTANT_Utf8 entry
+     */
+    public int utf8(String s) {
+        String key = "U" + s;
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index.intValue();
+        try {
+            poolOut.writeByte(CONSTANT_UTF8);
+            poolOut.writeUTF(s);
+        } catch (IOException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        int r = poolCount++;
+        poolIndexes.put(key, r);
+        return r;
+    }
+
+    /**
+     * @param value a constant
+     * @return index of a CONSTANT_Integer entry
+     */
+    public int intConst(int value) {
+        String key = "I" + value;
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index.intValue();
+        try {
+            poolOut.writeByte(CONSTANT_INTEGER);
+            poolOut.writeInt(value);
+        } catch (IOException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        int r = poolCount++;
+        poolIndexes.put(key, r);
+        return r;
+    }
+
+    /**
+     * @param value a constant
+     * @return index of a CONSTANT_Long entry
+     */
+    public int longConst(long value) {
+        String key = "J" + value;
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index.intValue();
+        try {
+            poolOut.writeByte(CONSTANT_LONG);
+            poolOut.writeLong(value);
+        } catch (IOException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        int r = poolCount;
+
+        // long constants occupy 2 entries
+        poolCount += 2;
+        poolIndexes.put(key, r);
+        return r;
+    }
+
+    /**
+     * @param name internal class name
+     * @return index of a CONSTANT_Class entry
+     */
+    public int cls(String name) {
+        return constant("C" + name, CONSTANT_CLASS, utf8(name), -1);
+    }
+
+    /**
+     * @param s a string
+     * @return index of a CONSTANT_String entry
+     */
+    public int string(String s) {
+        return constant("S" + s, CONSTANT_STRING, utf8(s), -1);
+    }
+
+    /**
+     * @param owner internal name of the class
+     * @param name field name
+     * @param descriptor field descriptor
+     * @return index of a CONSTANT_Fieldref entry
+     */
+    public int field(String owner, String name, String descriptor) {
+        return constant("F" + owner + "." + name + ":" + descriptor,
+                CONSTANT_FIELDREF, cls(owner), nameAndType(name, descriptor));
+    }
+
+    /**
+     * @param owner internal name of the class
+     * @param name method name
+     * @param descriptor method descriptor
+     * @return index of a CONSTANT_Methodref entry
+     */
+    public int method(String owner, String name, String descriptor) {
+        return constant("M" + owner + "." + name + descriptor,
+                CONSTANT_METHODREF, cls(owner), nameAndType(name, descriptor));
+    }
+
+    /**
+     * @param name name
+     * @param descriptor descriptor
+     * @return index of a CONSTANT_NameAndType entry
+     */
+    private int nameAndType(String name, String descriptor) {
+        return constant("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE,
+                utf8(name), utf8(descriptor));
+    }
+
+    /**
+     * Adds a field without attributes.
+     *
+     * @param access access flags
+     * @param name field name
+     * @param descriptor field descriptor
+     */
+    public void addField(int access, String name, String descriptor) {
+        try {
+            DataOutputStream out = new DataOutputStream(fields);
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+            out.flush();
+        } catch (IOException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        fieldCount++;
+    }
+
+    /**
+     * Starts a new method. {@link Code#end(int, int)} should be called after
+     * all instructions are emitted.
+     *
+     * @param access access flags
+     * @param name method name
+     * @param descriptor method descriptor
+     * @return method code
+     */
+    public Code addMethod(int access, String name, String descriptor) {
+        return new Code(access, name, descriptor);
+    }
+
+    /**
+     * @return content of the .class file
+     */
+    public byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream r = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(r);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(version);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            out.write(pool.toByteArray());
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int i: interfaces)
+                out.writeShort(i);
+            out.writeShort(fieldCount);
+            out.write(fields.toByteArray());
+            out.writeShort(methodCount);
+            out.write(methods.toByteArray());
+            out.writeShort(attributeCount);
+            out.write(attributes);
+            out.flush();
+            return r.toByteArray();
+        } catch (IOException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+}
@@ -15,6 +15,19 @@ final class ClassInfo {
     public static final int DOUBLE_TYPE = 5;
     public static final int CHARACTER_TYPE = 6;
     public static final int OTHER_TYPE = 7;
+    public static final int BOOLEAN_TYPE = 8;
+
+    /** reflection is used */
+    public static final int COLD = 0;
+
+    /** JAUInterface.update() is running */
+    public static final int COMPILING = 1;
+
+    /** JAUInterface is used */
+    public static final int HOT = 2;
+
+    /** JAUInterface.update() failed, reflection is used */
+    public static final int FAILED = 3;
 
     /** is the class annotated (possibly through the package)? */
     public boolean annotated;
@@ -22,7 +35,13 @@ final class ClassInfo {
     /** annotation for the class */
     public Annotation annotation;
 
-    /** fields used for .equals() */
+    /** annotation type this information was computed for (e.g. JAUEquals) */
+    public Class annotationClass;
+
+    /**
+     * used fields of the class and the annotated superclasses (see
+     * inherited() in the annotations)
+     */
     public Field[] fields;
 
     /** offsets for Unsafe */
@@ -31,6 +50,48 @@ final class ClassInfo {
     /** types of fields */
     public int[] types;
 
-    /** should superclass be considered? */
-    boolean useParent;
+    /** names of the fields in JAU.toMap() or null */
+    public String[] names;
+
+    /**
+     * implementation generated for this class (see JAUCodegen and
+     * JAUVarHandle) or null
+     */
+    public Object compiled;
+
+    /** VarHandle[] for the fields (see JAUVarHandle) or null */
+    public Object handles;
+
+    /** adjacent primitive fields merged into regions (see JAUUnsafe) or null */
+    public Object layout;
+
+    /**
+     * the computed value is stored for each object (see cache() in
+     * JAUHashCode and JAUToString)
+     */
+    public boolean cached;
+
+    /** transient field where the computed value is stored or null */
+    public Field cacheField;
+
+    /** computed values if there is no cacheField or null */
+    public WeakIdentityTable<Object> cache;
+
+    /** indexes of the fields sorted by name (see Hash64) or null */
+    public int[] sorted;
+
+    /** order of the fields in equals() (adaptive mode, see JAU) or null */
+    public AdaptiveOrder order;
+
+    /**
+     * true = a field may reference another object with fields. Objects
+     * of this class may be part of a cycle.
+     */
+    public boolean references;
+
+    /** number of invocations (not exact if used from many threads) */
+    int invocations;
+
+    /** COLD, COMPILING, HOT or FAILED */
+    volatile int state;
 }
@@ -0,0 +1,57 @@
+package com.googlecode.jau;
+
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Everything JAU knows about one class: information for each operation and
+ * user defined helpers. Instances are attached to the class using
+ * java.lang.ClassValue and do not prevent class unloading.
+ */
+final class ClassPlan {
+    /** index of the information for JAU.equals() */
+    public static final int EQUALS = 0;
+
+    /** index of the information for JAU.hashCode() */
+    public static final int HASHCODE = 1;
+
+    /** index of the information for JAU.toString() */
+    public static final int TOSTRING = 2;
+
+    /** index of the information for JAU.copy() */
+    public static final int COPY = 3;
+
+    /** index of the information for JAU.compare() */
+    public static final int COMPARETO = 4;
+
+    /** index of the information for JAU.toMap() */
+    public static final int TOMAP = 5;
+
+    /**
+     * information for each operation. An entry is computed once by the
+     * first thread that needs it (the other threads wait).
+     */
+    final AtomicReferenceArray<ClassInfo> infos =
+            new AtomicReferenceArray<ClassInfo>(6);
+
+    /** registered copier or null */
+    volatile Copier copier;
+
+    /** registered comparator for JAU.compare() or null */
+    volatile Comparator comparator;
+
+    /** registered comparator for JAU.equals() or null */
+    volatile Comparator equalsComparator;
+
+    /** registered hash coder or null */
+    volatile HashCoder hashCoder;
+
+    /** registered stringifier or null */
+    volatile Stringifier stringifier;
+
+    /**
+     * helper generated by JAUProcessor, JAU.NO_HELPER or null if not yet
+     * searched for
+     */
+    volatile JAUHelper helper;
+}
@@ -0,0 +1,27 @@
+package com.googlecode.jau;
+
+/**
+ * Equality and hash code for objects of one class.
+ *
+ * @param <T> type of the objects
+ * @see JAU#equivalence(java.lang.Class)
+ */
+public interface Equivalence<T> {
+    /**
+     * Compares 2 objects like
+     * {@link JAU#equals(java.lang.Object, java.lang.Object)}.
+     *
+     * @param a first object or null
+     * @param b second object or null
+     * @return true = objects are equal
+     */
+    public boolean equals(T a, T b);
+
+    /**
+     * Computes hash code like {@link JAU#hashCode(java.lang.Object)}.
+     *
+     * @param a an object or null
+     * @return hash code
+     */
+    public int hash(T a);
+}
@@ -0,0 +1,74 @@
+package com.googlecode.jau;
+
+/**
+ * 128 bit fingerprint of an object (see
+ * {@link JAU#fingerprint(java.lang.Object)}). Instances are immutable.
+ */
+public final class Fingerprint implements Comparable<Fingerprint> {
+    private final long high;
+    private final long low;
+
+    /**
+     * -
+     *
+     * @param high upper 64 bits
+     * @param low lower 64 bits
+     */
+    public Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @return upper 64 bits
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return lower 64 bits
+     */
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Fingerprint))
+            return false;
+        Fingerprint other = (Fingerprint) obj;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    @Override
+    public int compareTo(Fingerprint o) {
+        if (high != o.high)
+            return high < o.high ? -1 : 1;
+        if (low != o.low)
+            return low < o.low ? -1 : 1;
+        return 0;
+    }
+
+    /**
+     * @return 32 hexadecimal digits
+     */
+    @Override
+    public String toString() {
+        String h = Long.toHexString(high);
+        String l = Long.toHexString(low);
+        StringBuilder sb = new StringBuilder(32);
+        for (int i = h.length(); i < 16; i++)
+            sb.append('0');
+        sb.append(h);
+        for (int i = l.length(); i < 16; i++)
+            sb.append('0');
+        sb.append(l);
+        return sb.toString();
+    }
+}
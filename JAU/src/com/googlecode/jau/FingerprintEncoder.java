@@ -0,0 +1,504 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the canonical binary encoding of an object as a sequence of 64 bit
+ * words (see {@link JAU#fingerprint(java.lang.Object)}). Objects that are
+ * equal according to
+ * {@link JAU#equals(java.lang.Object, java.lang.Object)} have the same
+ * encoding. The encoding does not depend on identity hash codes or the
+ * order of the fields returned by reflection.
+ */
+abstract class FingerprintEncoder {
+    /** tags that make the encoding unambiguous */
+    private static final long NULL = 1, STRING = 2, ARRAY = 3, NUMBER = 4,
+            OBJECT = 5, LIST = 6, MAP = 7, SET = 8, ENUM = 9, BIG = 10,
+            CYCLE = 11;
+
+    /** objects encoded in the current thread (cycle detection) */
+    private static final ThreadLocal<Visits> VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(JAU.TRACK_DEPTH);
+        }
+    };
+
+    /**
+     * Processes 8 bytes.
+     *
+     * @param v the bytes
+     */
+    abstract void write(long v);
+
+    /**
+     * Remembers the current position, so that the following words can be
+     * replaced.
+     */
+    abstract void mark();
+
+    /**
+     * Removes the words written after {@link #mark()}.
+     */
+    abstract void reset();
+
+    /**
+     * Forgets the position stored by {@link #mark()}.
+     */
+    abstract void unmark();
+
+    /**
+     * Encodes an object.
+     *
+     * @param a an object or null
+     * @throws IllegalArgumentException if the object (or an object
+     *     referenced by it) has no canonical encoding
+     */
+    final void encode(Object a) {
+        if (a == null) {
+            write(NULL);
+            return;
+        }
+
+        Class c = a.getClass();
+        if (a instanceof CharSequence) {
+            write(STRING);
+            writeString(a.toString());
+        } else if (c.isArray()) {
+            writeArray(a, c);
+        } else if (a instanceof Enum) {
+            write(ENUM);
+            writeString(((Enum) a).getDeclaringClass().getName());
+            writeString(((Enum) a).name());
+        } else if (a instanceof Long || a instanceof Integer ||
+                a instanceof Short || a instanceof Byte) {
+            write(NUMBER);
+            write(((Number) a).longValue());
+        } else if (a instanceof Double) {
+            write(NUMBER + 0x100);
+            write(Double.doubleToLongBits((Double) a));
+        } else if (a instanceof Float) {
+            write(NUMBER + 0x200);
+            write(Float.floatToIntBits((Float) a));
+        } else if (a instanceof Character) {
+            write(NUMBER + 0x300);
+            write((Character) a);
+        } else if (a instanceof Boolean) {
+            write(NUMBER + 0x400);
+            write((Boolean) a ? 1 : 0);
+        } else if (a instanceof BigInteger) {
+            write(BIG);
+            writeArray(((BigInteger) a).toByteArray(), byte[].class);
+        } else if (a instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) a;
+            write(BIG + 0x100);
+            write(d.scale());
+            writeArray(d.unscaledValue().toByteArray(), byte[].class);
+        } else {
+            ClassInfo ci = JAU.getClassInfo(c, ClassPlan.EQUALS);
+            if (ci.annotated) {
+                if (ci.references)
+                    writeTracked(a, c, ci);
+                else
+                    writeAnnotated(a, c, ci);
+            } else if (a instanceof List) {
+                List list = (List) a;
+                write(LIST);
+                write(list.size());
+                for (Object el: list)
+                    encode(el);
+            } else if (a instanceof Set) {
+                // the order of the elements is not defined
+                long high = 0, low = 0;
+                for (Object el: (Set) a) {
+                    Fingerprint f = JAU.fingerprint(el);
+                    high += f.getHigh();
+                    low += f.getLow();
+                }
+                write(SET);
+                write(((Set) a).size());
+                write(high);
+                write(low);
+            } else if (a instanceof Map) {
+                long high = 0, low = 0;
+                for (Object o: ((Map) a).entrySet()) {
+                    Map.Entry e = (Map.Entry) o;
+                    Murmur3 m = new Murmur3();
+                    m.encode(e.getKey());
+                    m.encode(e.getValue());
+                    Fingerprint f = m.finish();
+                    high += f.getHigh();
+                    low += f.getLow();
+                }
+                write(MAP);
+                write(((Map) a).size());
+                write(high);
+                write(low);
+            } else {
+                throw new IllegalArgumentException(
+                        "No canonical encoding for instances of " + c);
+            }
+        }
+    }
+
+    /**
+     * Encodes an annotated object that may be part of a cycle like
+     * JAU.hashCodeTracked(): if a back reference is found, the encoding of
+     * the outermost object is replaced by one with a limited nesting.
+     *
+     * @param a the object
+     * @param c class of the object
+     * @param ci class information for equals()
+     */
+    private void writeTracked(Object a, Class c, ClassInfo ci) {
+        Visits v = VISITS.get();
+        if (v.bound != 0) {
+            if (v.depth >= v.bound) {
+                write(CYCLE);
+                return;
+            }
+            v.depth++;
+            try {
+                writeAnnotated(a, c, ci);
+            } finally {
+                v.depth--;
+            }
+            return;
+        }
+
+        boolean outermost = v.depth == 0;
+        if (outermost) {
+            v.cyclic = false;
+            mark();
+        } else if (v.cyclic) {
+            return; // the encoding is replaced
+        }
+        if (!v.enter(a, null)) {
+            v.cyclic = true;
+            return;
+        }
+        try {
+            writeAnnotated(a, c, ci);
+        } finally {
+            v.exit(a, null);
+        }
+        if (outermost) {
+            if (v.cyclic) {
+                reset();
+                v.bound = JAU.CYCLE_HASH_DEPTH;
+                try {
+                    writeAnnotated(a, c, ci);
+                } finally {
+                    v.bound = 0;
+                    v.cyclic = false;
+                }
+            }
+            unmark();
+        }
+    }
+
+    /**
+     * Encodes an object of a class annotated with {@link JAUEquals}.
+     *
+     * @param a the object
+     * @param c class of the object
+     * @param ci class information for equals()
+     */
+    private void writeAnnotated(Object a, Class c, ClassInfo ci) {
+        write(OBJECT);
+        writeString(c.getName());
+        int[] sorted = Hash64.sortedFields(ci);
+        write(sorted.length);
+        try {
+            for (int i: sorted) {
+                Field f = ci.fields[i];
+                switch (ci.types[i]) {
+                    case ClassInfo.INTEGER_TYPE:
+                        write(f.getInt(a));
+                        break;
+                    case ClassInfo.BYTE_TYPE:
+                        write(f.getByte(a));
+                        break;
+                    case ClassInfo.SHORT_TYPE:
+                        write(f.getShort(a));
+                        break;
+                    case ClassInfo.LONG_TYPE:
+                        write(f.getLong(a));
+                        break;
+                    case ClassInfo.FLOAT_TYPE:
+                        write(Float.floatToIntBits(f.getFloat(a)));
+                        break;
+                    case ClassInfo.DOUBLE_TYPE:
+                        write(Double.doubleToLongBits(f.getDouble(a)));
+                        break;
+                    case ClassInfo.CHARACTER_TYPE:
+                        write(f.getChar(a));
+                        break;
+                    case ClassInfo.BOOLEAN_TYPE:
+                        write(f.getBoolean(a) ? 1 : 0);
+                        break;
+                    default:
+                        encode(f.get(a));
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    /**
+     * Encodes a string: the length and 4 characters per word.
+     *
+     * @param s a string
+     */
+    private void writeString(String s) {
+        int len = s.length();
+        write(len);
+        for (int i = 0; i < len; i += 4) {
+            long v = 0;
+            for (int j = i; j < len && j < i + 4; j++)
+                v |= (long) s.charAt(j) << ((j - i) * 16);
+            write(v);
+        }
+    }
+
+    /**
+     * Encodes an array. Elements of primitive arrays are packed into 64 bit
+     * words.
+     *
+     * @param a an array
+     * @param c class of the array
+     */
+    private void writeArray(Object a, Class c) {
+        if (c == byte[].class) {
+            byte[] arr = (byte[]) a;
+            write(ARRAY + 0x100);
+            write(arr.length);
+            for (int i = 0; i < arr.length; i += 8) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 8; j++)
+                    v |= (arr[j] & 0xFFL) << ((j - i) * 8);
+                write(v);
+            }
+        } else if (c == short[].class) {
+            short[] arr = (short[]) a;
+            write(ARRAY + 0x200);
+            write(arr.length);
+            for (int i = 0; i < arr.length; i += 4) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 4; j++)
+                    v |= (arr[j] & 0xFFFFL) << ((j - i) * 16);
+                write(v);
+            }
+        } else if (c == char[].class) {
+            char[] arr = (char[]) a;
+            write(ARRAY + 0x300);
+            write(arr.length);
+            for (int i = 0; i < arr.length; i += 4) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 4; j++)
+                    v |= (long) arr[j] << ((j - i) * 16);
+                write(v);
+            }
+        } else if (c == int[].class) {
+            int[] arr = (int[]) a;
+            write(ARRAY + 0x400);
+            write(arr.length);
+            for (int i = 0; i < arr.length; i += 2) {
+                long v = arr[i] & 0xFFFFFFFFL;
+                if (i + 1 < arr.length)
+                    v |= (long) arr[i + 1] << 32;
+                write(v);
+            }
+        } else if (c == long[].class) {
+            long[] arr = (long[]) a;
+            write(ARRAY + 0x500);
+            write(arr.length);
+            for (long v: arr)
+                write(v);
+        } else if (c == float[].class) {
+            float[] arr = (float[]) a;
+            write(ARRAY + 0x600);
+            write(arr.length);
+            for (float v: arr)
+                write(Float.floatToIntBits(v));
+        } else if (c == double[].class) {
+            double[] arr = (double[]) a;
+            write(ARRAY + 0x700);
+            write(arr.length);
+            for (double v: arr)
+                write(Double.doubleToLongBits(v));
+        } else if (c == boolean[].class) {
+            boolean[] arr = (boolean[]) a;
+            write(ARRAY + 0x800);
+            write(arr.length);
+            for (int i = 0; i < arr.length; i += 64) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 64; j++) {
+                    if (arr[j])
+                        v |= 1L << (j - i);
+                }
+                write(v);
+            }
+        } else {
+            Object[] arr = (Object[]) a;
+            write(ARRAY);
+            write(arr.length);
+            for (Object el: arr)
+                encode(el);
+        }
+    }
+
+    /**
+     * MurmurHash3_x64_128 over the encoded words.
+     */
+    static final class Murmur3 extends FingerprintEncoder {
+        private static final long C1 = 0x87C37B91114253D5L;
+        private static final long C2 = 0x4CF5AD432745937FL;
+
+        private long h1, h2;
+
+        /** first half of a block */
+        private long k1;
+
+        /** number of written words */
+        private long n;
+
+        /** state stored by mark() */
+        private long markH1, markH2, markK1, markN;
+
+        @Override
+        void write(long v) {
+            if ((n++ & 1) == 0) {
+                k1 = v;
+                return;
+            }
+
+            long k = k1 * C1;
+            k = Long.rotateLeft(k, 31);
+            k *= C2;
+            h1 ^= k;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52DCE729;
+
+            k = v * C2;
+            k = Long.rotateLeft(k, 33);
+            k *= C1;
+            h2 ^= k;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+
+        @Override
+        void mark() {
+            markH1 = h1;
+            markH2 = h2;
+            markK1 = k1;
+            markN = n;
+        }
+
+        @Override
+        void reset() {
+            h1 = markH1;
+            h2 = markH2;
+            k1 = markK1;
+            n = markN;
+        }
+
+        @Override
+        void unmark() {
+        }
+
+        /**
+         * @return the fingerprint of the written words
+         */
+        Fingerprint finish() {
+            if ((n & 1) != 0) {
+                long k = k1 * C1;
+                k = Long.rotateLeft(k, 31);
+                k *= C2;
+                h1 ^= k;
+            }
+            long len = n * 8;
+            h1 ^= len;
+            h2 ^= len;
+            h1 += h2;
+            h2 += h1;
+            h1 = Hash64.mix(h1);
+            h2 = Hash64.mix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Fingerprint(h2, h1);
+        }
+    }
+
+    /**
+     * Writes the encoded words to a MessageDigest (big endian).
+     */
+    static final class Digest extends FingerprintEncoder {
+        private final MessageDigest md;
+        private byte[] buffer = new byte[64];
+        private int pos;
+
+        /** position stored by mark() or -1 */
+        private int mark = -1;
+
+        /**
+         * -
+         *
+         * @param md the digest
+         */
+        Digest(MessageDigest md) {
+            this.md = md;
+        }
+
+        @Override
+        void write(long v) {
+            if (pos == buffer.length) {
+                if (mark >= 0) {
+                    // the marked words are kept until unmark()
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                } else {
+                    md.update(buffer, 0, pos);
+                    pos = 0;
+                }
+            }
+            for (int i = 56; i >= 0; i -= 8)
+                buffer[pos++] = (byte) (v >>> i);
+        }
+
+        @Override
+        void mark() {
+            mark = pos;
+        }
+
+        @Override
+        void reset() {
+            pos = mark;
+        }
+
+        @Override
+        void unmark() {
+            mark = -1;
+        }
+
+        /**
+         * Writes the buffered bytes to the digest.
+         */
+        void flush() {
+            md.update(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+/**
+ * Implementation of {@link JAU#cloneGraph(java.lang.Object)}. Every object
+ * is copied only once: the copies are remembered in an {@link IdentityMap}
+ * before the fields are copied, so that shared objects stay shared and
+ * cycles are reproduced in the copy.
+ */
+final class GraphCloner {
+    /** original object -> copy */
+    private final IdentityMap copies = new IdentityMap(16);
+
+    /**
+     * Creates a deep copy of an object.
+     *
+     * @param a an object or null
+     * @return copy
+     */
+    Object clone(Object a) {
+        if (a == null)
+            return null;
+
+        Class ca = a.getClass();
+        if (JAU.isImmutableClass(ca))
+            return a;
+
+        Object b = copies.get(a);
+        if (b != null)
+            return b;
+
+        if (ca.isArray()) {
+            if (ca.getComponentType().isPrimitive()) {
+                b = JAU.clone(a);
+                copies.put(a, b);
+            } else {
+                Object[] src = (Object[]) a;
+                Object[] dst = (Object[]) Array.newInstance(
+                        ca.getComponentType(), src.length);
+                copies.put(a, dst);
+                for (int i = 0; i < src.length; i++)
+                    dst[i] = clone(src[i]);
+                b = dst;
+            }
+            return b;
+        }
+
+        ClassInfo ci = JAU.getClassInfo(ca, ClassPlan.COPY);
+        if (ci.annotated)
+            b = JAU.newInstance(a, ca);
+        if (b == null) {
+            // registered copiers and copy constructors copy trees
+            b = JAU.clone(a);
+            copies.put(a, b);
+            return b;
+        }
+
+        copies.put(a, b);
+        try {
+            for (int i = 0; i < ci.fields.length; i++) {
+                if (!JAU.copyPrimitive(ci, i, a, b)) {
+                    Field f = ci.fields[i];
+                    f.set(b, clone(f.get(a)));
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,519 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 64 bit structural hash codes (see {@link JAU#hashCode64(Object)}).
+ * Values are combined in order with the round and merge steps of xxHash64
+ * and every hash code is finished with the MurmurHash3 avalanche function,
+ * so that swapped field values or map keys and values lead to different
+ * hash codes.
+ *
+ * In the stable mode (see {@link JAU#stableHashCode64(Object)}) the hash
+ * code does not depend on class names, identity hash codes or the order
+ * of the fields returned by reflection.
+ */
+final class Hash64 {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    /** kinds of values in the stable mode */
+    private static final int STRING = 1, ARRAY = 2, NUMBER = 3, OBJECT = 4,
+            LIST = 5, MAP = 6, SET = 7, ENUM = 8;
+
+    /** objects processed in the current thread (cycle detection) */
+    private static final ThreadLocal<Visits> VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(JAU.TRACK_DEPTH);
+        }
+    };
+
+    /**
+     * -
+     */
+    private Hash64() {
+    }
+
+    /**
+     * Adds a value to a hash code. The result depends on the order of the
+     * values.
+     *
+     * @param h hash code
+     * @param v a value
+     * @return new hash code
+     */
+    static long combine(long h, long v) {
+        v = Long.rotateLeft(v * P2, 31) * P1;
+        return Long.rotateLeft(h ^ v, 27) * P1 + P4;
+    }
+
+    /**
+     * MurmurHash3 finalizer: every bit of the input affects every bit of
+     * the result.
+     *
+     * @param h hash code
+     * @return mixed hash code
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Computes the hash code of an object.
+     *
+     * @param a an object or null
+     * @param seed seed
+     * @param stable true = the result only depends on the values
+     * @return hash code
+     * @throws IllegalArgumentException if stable is true and the
+     *     object (or an object referenced by it) has no canonical encoding
+     */
+    static long hash(Object a, long seed, boolean stable) {
+        if (a == null)
+            return mix(seed ^ P5);
+        if (stable)
+            return stableHash(a, seed);
+
+        Class c = a.getClass();
+        long h = seed + P5 + c.getName().hashCode();
+        if (c == String.class)
+            return hash((String) a, h);
+        if (c.isArray())
+            return hashArray(a, c, h, seed, false);
+        if (a instanceof Number || a instanceof Character ||
+                a instanceof Boolean) {
+            Long v = boxed(a);
+            if (v != null)
+                return mix(combine(h, v));
+        }
+
+        ClassInfo ci = JAU.getClassInfo(c, ClassPlan.HASHCODE);
+        if (ci.annotated)
+            return hashTracked(a, ci, h, seed, false);
+
+        HashCoder hc = JAU.getHashCoder(c);
+        if (hc == ListHelper.INSTANCE) {
+            return hashList((List) a, h, seed, false);
+        } else if (hc == MapHashCoder.INSTANCE) {
+            return hashMap((Map) a, h, seed, false);
+        } else if (hc != null) {
+            return mix(combine(h, hc.hashCode(a)));
+        } else {
+            return mix(combine(h, a.hashCode()));
+        }
+    }
+
+    /**
+     * Computes the hash code of an object in the stable mode.
+     *
+     * @param a an object
+     * @param seed seed
+     * @return hash code
+     */
+    private static long stableHash(Object a, long seed) {
+        Class c = a.getClass();
+        if (a instanceof CharSequence)
+            return hash(a.toString(), seed + P5 + STRING);
+        if (c.isArray())
+            return hashArray(a, c, seed + P5 + ARRAY, seed, true);
+        if (a instanceof Enum)
+            return hash(((Enum) a).name(), seed + P5 + ENUM);
+
+        long h = seed + P5 + NUMBER;
+        if (a instanceof Number || a instanceof Character ||
+                a instanceof Boolean) {
+            Long v = boxed(a);
+            if (v != null)
+                return mix(combine(h, v));
+        }
+        if (a instanceof BigInteger) {
+            return hashArray(((BigInteger) a).toByteArray(), byte[].class,
+                    h, seed, true);
+        }
+        if (a instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) a;
+            return mix(combine(hashArray(d.unscaledValue().toByteArray(),
+                    byte[].class, h, seed, true), d.scale()));
+        }
+
+        ClassInfo ci = JAU.getClassInfo(c, ClassPlan.HASHCODE);
+        if (ci.annotated)
+            return hashTracked(a, ci, seed + P5 + OBJECT, seed, true);
+
+        if (a instanceof List)
+            return hashList((List) a, seed + P5 + LIST, seed, true);
+        if (a instanceof Map)
+            return hashMap((Map) a, seed + P5 + MAP, seed, true);
+        if (a instanceof Set) {
+            // the order of the elements is not defined
+            long sum = 0;
+            for (Object el: (Set) a)
+                sum += hash(el, seed, true);
+            return mix(combine(combine(seed + P5 + SET, sum),
+                    ((Set) a).size()));
+        }
+        throw new IllegalArgumentException(
+                "No stable hash code for instances of " + c);
+    }
+
+    /**
+     * Computes the hash code of an annotated object that may be part of a
+     * cycle like JAU.hashCodeTracked(): if a back reference is found, the
+     * hash code of the outermost object is computed again with a limited
+     * nesting.
+     *
+     * @param a the object
+     * @param ci class information
+     * @param h initial hash code
+     * @param seed seed
+     * @param stable stable mode
+     * @return hash code
+     */
+    private static long hashTracked(Object a, ClassInfo ci, long h,
+            long seed, boolean stable) {
+        if (!ci.references)
+            return hashAnnotated(a, ci, h, seed, stable);
+
+        Visits v = VISITS.get();
+        if (v.bound != 0) {
+            if (v.depth >= v.bound)
+                return mix(h);
+            v.depth++;
+            try {
+                return hashAnnotated(a, ci, h, seed, stable);
+            } finally {
+                v.depth--;
+            }
+        }
+
+        if (v.depth == 0)
+            v.cyclic = false;
+        else if (v.cyclic)
+            return h; // the result is not used
+        if (!v.enter(a, null)) {
+            v.cyclic = true;
+            return h;
+        }
+        long r;
+        try {
+            r = hashAnnotated(a, ci, h, seed, stable);
+        } finally {
+            v.exit(a, null);
+        }
+        if (v.depth == 0 && v.cyclic) {
+            v.bound = JAU.CYCLE_HASH_DEPTH;
+            try {
+                r = hashAnnotated(a, ci, h, seed, stable);
+            } finally {
+                v.bound = 0;
+                v.cyclic = false;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Computes the hash code of an annotated object. In the stable mode
+     * the fields are combined in the order of their names.
+     *
+     * @param a the object
+     * @param ci class information
+     * @param h initial hash code
+     * @param seed seed
+     * @param stable stable mode
+     * @return hash code
+     */
+    private static long hashAnnotated(Object a, ClassInfo ci, long h,
+            long seed, boolean stable) {
+        if (stable) {
+            int[] sorted = sortedFields(ci);
+            for (int i: sorted)
+                h = combine(h, field(ci, i, a, seed, true));
+            return mix(combine(h, sorted.length));
+        }
+        Field[] fields = ci.fields;
+        for (int i = 0; i < fields.length; i++)
+            h = combine(h, field(ci, i, a, seed, false));
+        return mix(combine(h, fields.length));
+    }
+
+    /**
+     * Returns the indexes of the fields sorted by name. The order of
+     * Class.getDeclaredFields() is not specified.
+     *
+     * @param ci class information
+     * @return indexes in ci.fields
+     */
+    static int[] sortedFields(final ClassInfo ci) {
+        int[] r = ci.sorted;
+        if (r == null) {
+            Integer[] indexes = new Integer[ci.fields.length];
+            for (int i = 0; i < indexes.length; i++)
+                indexes[i] = i;
+            Arrays.sort(indexes, new Comparator<Integer>() {
+                public int compare(Integer o1, Integer o2) {
+                    Field a = ci.fields[o1], b = ci.fields[o2];
+                    int c = a.getName().compareTo(b.getName());
+                    if (c == 0)
+                        c = a.getDeclaringClass().getName().compareTo(
+                                b.getDeclaringClass().getName());
+                    return c;
+                }
+            });
+            r = new int[indexes.length];
+            for (int i = 0; i < r.length; i++)
+                r[i] = indexes[i];
+            ci.sorted = r;
+        }
+        return r;
+    }
+
+    /**
+     * Computes the hash code of a list. The elements are combined in
+     * order.
+     *
+     * @param list a list
+     * @param h initial hash code
+     * @param seed seed
+     * @param stable stable mode
+     * @return hash code
+     */
+    private static long hashList(List list, long h, long seed,
+            boolean stable) {
+        int n = 0;
+        for (Object el: list) {
+            h = combine(h, hash(el, seed, stable));
+            n++;
+        }
+        return mix(combine(h, n));
+    }
+
+    /**
+     * Computes the hash code of a map. The order of the entries is not
+     * defined, but each entry is mixed well before the entries are added.
+     *
+     * @param map a map
+     * @param h initial hash code
+     * @param seed seed
+     * @param stable stable mode
+     * @return hash code
+     */
+    private static long hashMap(Map map, long h, long seed, boolean stable) {
+        long sum = 0;
+        for (Object o: map.entrySet()) {
+            Map.Entry e = (Map.Entry) o;
+            sum += mix(combine(combine(seed + P1,
+                    hash(e.getKey(), seed, stable)),
+                    hash(e.getValue(), seed, stable)));
+        }
+        return mix(combine(combine(h, sum), map.size()));
+    }
+
+    /**
+     * Jump consistent hash (J. Lamping, E. Veach). When the number of
+     * buckets grows from n to n + 1, only 1 / (n + 1) of the keys move.
+     *
+     * @param key a key
+     * @param buckets number of buckets (&gt; 0)
+     * @return bucket for the key between 0 and buckets - 1
+     */
+    static int jump(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) /
+                    (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * @param a Byte, Short, Integer, Long, Float, Double, Character or
+     *     Boolean
+     * @return the value as long or null for other Number classes
+     */
+    private static Long boxed(Object a) {
+        if (a instanceof Integer || a instanceof Long || a instanceof Short ||
+                a instanceof Byte)
+            return ((Number) a).longValue();
+        if (a instanceof Double)
+            return Double.doubleToLongBits((Double) a);
+        if (a instanceof Float)
+            return (long) Float.floatToIntBits((Float) a);
+        if (a instanceof Character)
+            return (long) ((Character) a).charValue();
+        if (a instanceof Boolean)
+            return ((Boolean) a) ? 1L : 0L;
+        return null;
+    }
+
+    /**
+     * Returns the value of a field as long or the hash code for objects.
+     *
+     * @param ci class information
+     * @param i index of the field
+     * @param a the object
+     * @param seed seed
+     * @param stable stable mode
+     * @return value or hash code
+     */
+    private static long field(ClassInfo ci, int i, Object a, long seed,
+            boolean stable) {
+        Field f = ci.fields[i];
+        try {
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    return f.getInt(a);
+                case ClassInfo.BYTE_TYPE:
+                    return f.getByte(a);
+                case ClassInfo.SHORT_TYPE:
+                    return f.getShort(a);
+                case ClassInfo.LONG_TYPE:
+                    return f.getLong(a);
+                case ClassInfo.FLOAT_TYPE:
+                    return Float.floatToIntBits(f.getFloat(a));
+                case ClassInfo.DOUBLE_TYPE:
+                    return Double.doubleToLongBits(f.getDouble(a));
+                case ClassInfo.CHARACTER_TYPE:
+                    return f.getChar(a);
+                case ClassInfo.BOOLEAN_TYPE:
+                    return f.getBoolean(a) ? 1 : 0;
+                default:
+                    return hash(f.get(a), seed, stable);
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    /**
+     * Computes the hash code of a string. 4 characters are processed at a
+     * time.
+     *
+     * @param s a string
+     * @param h initial hash code
+     * @return hash code
+     */
+    private static long hash(String s, long h) {
+        int len = s.length();
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            h = combine(h, s.charAt(i) | ((long) s.charAt(i + 1) << 16) |
+                    ((long) s.charAt(i + 2) << 32) |
+                    ((long) s.charAt(i + 3) << 48));
+        }
+        long v = 0;
+        for (int shift = 0; i < len; i++, shift += 16)
+            v |= (long) s.charAt(i) << shift;
+        return mix(combine(combine(h, v), len));
+    }
+
+    /**
+     * Computes the hash code of an array. Elements of primitive arrays are
+     * packed into 64 bit values.
+     *
+     * @param a an array
+     * @param c class of the array
+     * @param h initial hash code
+     * @param seed seed
+     * @param stable stable mode
+     * @return hash code
+     */
+    private static long hashArray(Object a, Class c, long h, long seed,
+            boolean stable) {
+        int len;
+        if (c == byte[].class) {
+            byte[] arr = (byte[]) a;
+            len = arr.length;
+            int i = 0;
+            for (; i + 8 <= len; i += 8) {
+                long v = 0;
+                for (int j = 0; j < 8; j++)
+                    v |= (arr[i + j] & 0xFFL) << (j * 8);
+                h = combine(h, v);
+            }
+            long v = 0;
+            for (int shift = 0; i < len; i++, shift += 8)
+                v |= (arr[i] & 0xFFL) << shift;
+            h = combine(h, v);
+        } else if (c == short[].class) {
+            short[] arr = (short[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i += 4) {
+                long v = 0;
+                for (int j = i; j < len && j < i + 4; j++)
+                    v |= (arr[j] & 0xFFFFL) << ((j - i) * 16);
+                h = combine(h, v);
+            }
+        } else if (c == char[].class) {
+            char[] arr = (char[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i += 4) {
+                long v = 0;
+                for (int j = i; j < len && j < i + 4; j++)
+                    v |= (long) arr[j] << ((j - i) * 16);
+                h = combine(h, v);
+            }
+        } else if (c == int[].class) {
+            int[] arr = (int[]) a;
+            len = arr.length;
+            int i = 0;
+            for (; i + 2 <= len; i += 2)
+                h = combine(h, (arr[i] & 0xFFFFFFFFL) |
+                        ((long) arr[i + 1] << 32));
+            if (i < len)
+                h = combine(h, arr[i] & 0xFFFFFFFFL);
+        } else if (c == float[].class) {
+            float[] arr = (float[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i++)
+                h = combine(h, Float.floatToIntBits(arr[i]));
+        } else if (c == long[].class) {
+            long[] arr = (long[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i++)
+                h = combine(h, arr[i]);
+        } else if (c == double[].class) {
+            double[] arr = (double[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i++)
+                h = combine(h, Double.doubleToLongBits(arr[i]));
+        } else if (c == boolean[].class) {
+            boolean[] arr = (boolean[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i += 64) {
+                long v = 0;
+                for (int j = i; j < len && j < i + 64; j++) {
+                    if (arr[j])
+                        v |= 1L << (j - i);
+                }
+                h = combine(h, v);
+            }
+        } else {
+            Object[] arr = (Object[]) a;
+            len = arr.length;
+            for (int i = 0; i < len; i++)
+                h = combine(h, hash(arr[i], seed, stable));
+        }
+        return mix(combine(h, len));
+    }
+}
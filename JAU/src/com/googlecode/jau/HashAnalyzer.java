@@ -0,0 +1,568 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures how well hash codes spread a sample of objects of one class
+ * annotated with {@link JAUHashCode}. This helps to decide whether a class
+ * needs a custom {@link HashCoder}.
+ *
+ * Example:
+ * <pre>
+ * HashAnalyzer a = new HashAnalyzer(keys);
+ * System.out.println(a.report(1 &lt;&lt; 10, 1 &lt;&lt; 16));
+ * </pre>
+ *
+ * The avalanche statistics are computed by changing single bits of the
+ * primitive fields of copies of the sample objects (see
+ * {@link JAU#clone(java.lang.Object)}). The sample objects are not
+ * changed.
+ */
+public final class HashAnalyzer {
+    /** maximum number of objects used for the avalanche statistics */
+    private static final int AVALANCHE_SAMPLE = 1000;
+
+    /**
+     * Hash functions that can be analyzed.
+     */
+    public enum Mode {
+        /** {@link JAU#hashCode(java.lang.Object)} (17 + 37 * h ...) */
+        ADDITIVE(32) {
+            long hash(Object a, ClassInfo ci) {
+                // the stored value of JAUHashCode(cache = true) is ignored
+                return JAU.hashCodeAnnotated(a, ci, JAU.DEFAULT_INITIAL,
+                        JAU.DEFAULT_MULTIPLIER);
+            }
+        },
+
+        /** {@link JAU#hashCode64(java.lang.Object)} */
+        HASH64(64) {
+            long hash(Object a, ClassInfo ci) {
+                return JAU.hashCode64(a);
+            }
+        },
+
+        /** {@link JAU#stableHashCode64(java.lang.Object)} */
+        STABLE64(64) {
+            long hash(Object a, ClassInfo ci) {
+                return JAU.stableHashCode64(a);
+            }
+        },
+
+        /** {@link KeyedHashCoder#DEFAULT} */
+        KEYED(64) {
+            long hash(Object a, ClassInfo ci) {
+                return KeyedHashCoder.DEFAULT.hashCode64(a);
+            }
+        };
+
+        private final int bits;
+
+        Mode(int bits) {
+            this.bits = bits;
+        }
+
+        /**
+         * @return number of bits in a hash code
+         */
+        public int getBits() {
+            return bits;
+        }
+
+        /**
+         * Computes the hash code.
+         *
+         * @param a an object
+         * @param ci class information for hashCode()
+         * @return hash code
+         */
+        abstract long hash(Object a, ClassInfo ci);
+    }
+
+    /**
+     * Statistics for one hash function.
+     */
+    public static final class Report {
+        private Mode mode;
+        private int distinct;
+        private int collisions;
+        private int[] tableSizes;
+        private int[] maxLoad;
+        private double[] empty;
+        private double[] chiSquare;
+        private double[] bitBias;
+        private double[] avalanche;
+        private List<String> deadFields;
+
+        Report() {
+        }
+
+        /**
+         * @return analyzed hash function
+         */
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * @return number of different objects (according to
+         *     {@link JAU#equals(java.lang.Object, java.lang.Object)}) in
+         *     the sample
+         */
+        public int getDistinct() {
+            return distinct;
+        }
+
+        /**
+         * @return number of different objects that have the same hash code
+         *     as another object from the sample
+         */
+        public int getCollisions() {
+            return collisions;
+        }
+
+        /**
+         * @return collisions / distinct objects
+         */
+        public double getCollisionRate() {
+            return distinct == 0 ? 0 : (double) collisions / distinct;
+        }
+
+        /**
+         * @return analyzed table sizes
+         */
+        public int[] getTableSizes() {
+            return tableSizes.clone();
+        }
+
+        /**
+         * @return maximum number of objects in one bucket for every table
+         *     size
+         */
+        public int[] getMaxLoad() {
+            return maxLoad.clone();
+        }
+
+        /**
+         * @return fraction of empty buckets for every table size
+         */
+        public double[] getEmpty() {
+            return empty.clone();
+        }
+
+        /**
+         * @return chi-square statistic of the bucket counts divided by
+         *     the degrees of freedom for every table size. Values near 1
+         *     mean uniform distribution, higher values mean clustering.
+         */
+        public double[] getChiSquare() {
+            return chiSquare.clone();
+        }
+
+        /**
+         * @return probability of 1 minus 0.5 for every bit of the hash code
+         *     (bit 0 is the lowest)
+         */
+        public double[] getBitBias() {
+            return bitBias.clone();
+        }
+
+        /**
+         * @return maximum absolute value from {@link #getBitBias()}
+         */
+        public double getMaxBias() {
+            double r = 0;
+            for (double b: bitBias)
+                r = Math.max(r, Math.abs(b));
+            return r;
+        }
+
+        /**
+         * @return average fraction of hash code bits that change if one bit
+         *     of a field changes (ideal: 0.5) for every field from
+         *     {@link HashAnalyzer#getFieldNames()}. NaN for fields that
+         *     are not primitive.
+         */
+        public double[] getAvalanche() {
+            return avalanche.clone();
+        }
+
+        /**
+         * @return names of the fields that do not change the hash code in
+         *     the sample: fields with a constant value and primitive fields
+         *     where no changed bit changes the hash code
+         */
+        public List<String> getDeadFields() {
+            return deadFields;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(mode).append(": collisions ").append(collisions).
+                    append('/').append(distinct).
+                    append(String.format(" (%.4f%%)",
+                    getCollisionRate() * 100)).
+                    append(String.format(", max bit bias %.4f",
+                    getMaxBias())).append('\n');
+            for (int i = 0; i < tableSizes.length; i++) {
+                sb.append(String.format(
+                        "  table %d: max load %d, empty %.2f%%, " +
+                        "chi-square/df %.3f\n", tableSizes[i], maxLoad[i],
+                        empty[i] * 100, chiSquare[i]));
+            }
+            sb.append("  avalanche:");
+            for (double a: avalanche)
+                sb.append(String.format(" %.3f", a));
+            sb.append('\n');
+            if (!deadFields.isEmpty())
+                sb.append("  dead fields: ").append(deadFields).append('\n');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Wraps an object for HashMap keys using JAU.equals/JAU.hashCode64.
+     */
+    private static final class Key {
+        private final Object value;
+        private final int hash;
+
+        Key(Object value) {
+            this.value = value;
+            long h = JAU.hashCode64(value);
+            this.hash = (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return JAU.equals(value, ((Key) obj).value);
+        }
+    }
+
+    private final ClassInfo ci;
+    private final List<Object> sample;
+
+    /** distinct objects from the sample */
+    private final List<Object> distinct;
+
+    private final double[] entropy;
+
+    /**
+     * Prepares the analysis.
+     *
+     * @param sample objects of one class annotated with
+     *     {@link JAUHashCode}. The sample should contain the same
+     *     objects as the real hash tables (not only different ones).
+     * @throws IllegalArgumentException if the sample is empty, contains
+     *     null or objects of different or not annotated classes
+     */
+    public HashAnalyzer(Collection<?> sample) {
+        if (sample.isEmpty())
+            throw new IllegalArgumentException("Empty sample");
+        Class c = null;
+        for (Object o: sample) {
+            if (o == null)
+                throw new IllegalArgumentException("null in the sample");
+            if (c == null)
+                c = o.getClass();
+            else if (o.getClass() != c)
+                throw new IllegalArgumentException(
+                        "Objects of different classes: " + c + ", " +
+                        o.getClass());
+        }
+        this.ci = JAU.getClassInfo(c, ClassPlan.HASHCODE);
+        if (!ci.annotated)
+            throw new IllegalArgumentException(
+                    c + " is not annotated with JAUHashCode");
+        this.sample = new ArrayList<Object>(sample);
+
+        Set<Key> keys = new HashSet<Key>();
+        distinct = new ArrayList<Object>();
+        for (Object o: this.sample) {
+            if (keys.add(new Key(o)))
+                distinct.add(o);
+        }
+
+        entropy = new double[ci.fields.length];
+        try {
+            for (int i = 0; i < ci.fields.length; i++) {
+                Map<Key, int[]> counts = new HashMap<Key, int[]>();
+                for (Object o: this.sample) {
+                    Key k = new Key(ci.fields[i].get(o));
+                    int[] n = counts.get(k);
+                    if (n == null)
+                        counts.put(k, new int[] {1});
+                    else
+                        n[0]++;
+                }
+                double e = 0;
+                for (int[] n: counts.values()) {
+                    double p = (double) n[0] / this.sample.size();
+                    e -= p * Math.log(p) / Math.log(2);
+                }
+                entropy[i] = e;
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    /**
+     * @return names of the fields used in hashCode()
+     */
+    public String[] getFieldNames() {
+        String[] r = new String[ci.fields.length];
+        for (int i = 0; i < r.length; i++)
+            r[i] = ci.fields[i].getName();
+        return r;
+    }
+
+    /**
+     * @return Shannon entropy in bits of the values of every field from
+     *     {@link #getFieldNames()} in the sample
+     */
+    public double[] getFieldEntropy() {
+        return entropy.clone();
+    }
+
+    /**
+     * Analyzes one hash function.
+     *
+     * @param mode the hash function
+     * @param tableSizes sizes of the hash tables for the bucket statistics.
+     *     Hash codes are mapped to buckets like in java.util.HashMap.
+     * @return statistics
+     * @throws IllegalArgumentException if the hash function does not
+     *     support the objects (see
+     *     {@link JAU#stableHashCode64(java.lang.Object)})
+     */
+    public Report analyze(Mode mode, int... tableSizes) {
+        Report r = new Report();
+        r.mode = mode;
+        r.distinct = distinct.size();
+
+        long[] hashes = new long[distinct.size()];
+        for (int i = 0; i < hashes.length; i++)
+            hashes[i] = mode.hash(distinct.get(i), ci);
+
+        Map<Long, int[]> groups = new HashMap<Long, int[]>();
+        for (long h: hashes) {
+            int[] n = groups.get(h);
+            if (n == null)
+                groups.put(h, new int[] {1});
+            else
+                n[0]++;
+        }
+        for (int[] n: groups.values()) {
+            if (n[0] > 1)
+                r.collisions += n[0];
+        }
+
+        r.tableSizes = tableSizes.clone();
+        r.maxLoad = new int[tableSizes.length];
+        r.empty = new double[tableSizes.length];
+        r.chiSquare = new double[tableSizes.length];
+        for (int t = 0; t < tableSizes.length; t++) {
+            int size = tableSizes[t];
+            if (size <= 0)
+                throw new IllegalArgumentException(
+                        "Wrong table size: " + size);
+            int[] buckets = new int[size];
+            for (long h: hashes)
+                buckets[bucket(h, size)]++;
+            double e = (double) hashes.length / size;
+            double chi = 0;
+            int empty = 0;
+            for (int n: buckets) {
+                r.maxLoad[t] = Math.max(r.maxLoad[t], n);
+                if (n == 0)
+                    empty++;
+                chi += (n - e) * (n - e) / e;
+            }
+            r.empty[t] = (double) empty / size;
+            r.chiSquare[t] = size == 1 ? 0 : chi / (size - 1);
+        }
+
+        r.bitBias = new double[mode.getBits()];
+        for (int b = 0; b < r.bitBias.length; b++) {
+            int ones = 0;
+            for (long h: hashes) {
+                if ((h & (1L << b)) != 0)
+                    ones++;
+            }
+            r.bitBias[b] = (double) ones / hashes.length - 0.5;
+        }
+
+        r.avalanche = avalanche(mode);
+        r.deadFields = new ArrayList<String>();
+        for (int i = 0; i < ci.fields.length; i++) {
+            if (entropy[i] == 0 || r.avalanche[i] == 0)
+                r.deadFields.add(ci.fields[i].getName());
+        }
+        return r;
+    }
+
+    /**
+     * Analyzes all hash functions supported for the sample.
+     *
+     * @param tableSizes sizes of the hash tables for the bucket statistics
+     * @return text report
+     */
+    public String report(int... tableSizes) {
+        StringBuilder sb = new StringBuilder();
+        String[] names = getFieldNames();
+        sb.append(ci.fields.length == 0 ? "no fields" : "fields:");
+        for (int i = 0; i < names.length; i++)
+            sb.append(String.format(" %s (%.2f bits)", names[i], entropy[i]));
+        sb.append('\n');
+        for (Mode m: Mode.values()) {
+            try {
+                sb.append(analyze(m, tableSizes));
+            } catch (IllegalArgumentException ex) {
+                sb.append(m).append(": ").append(ex.getMessage()).
+                        append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Maps a hash code to a bucket like java.util.HashMap.
+     *
+     * @param h hash code
+     * @param size table size
+     * @return bucket index
+     */
+    private static int bucket(long h, int size) {
+        int v = (int) (h ^ (h >>> 32));
+        v ^= v >>> 16;
+        if ((size & (size - 1)) == 0)
+            return v & (size - 1);
+        return (v & 0x7FFFFFFF) % size;
+    }
+
+    /**
+     * Computes the avalanche statistics for every field.
+     *
+     * @param mode hash function
+     * @return average fraction of changed bits
+     */
+    private double[] avalanche(Mode mode) {
+        double[] r = new double[ci.fields.length];
+        int n = Math.min(sample.size(), AVALANCHE_SAMPLE);
+        List<Object> copies = new ArrayList<Object>(n);
+        for (int j = 0; j < n; j++)
+            copies.add(JAU.clone(sample.get(j)));
+        try {
+            for (int i = 0; i < ci.fields.length; i++) {
+                Field f = ci.fields[i];
+                int type = ci.types[i];
+                int width = width(type);
+                if (width == 0) {
+                    r[i] = Double.NaN;
+                    continue;
+                }
+                long changed = 0;
+                for (int j = 0; j < n; j++) {
+                    Object o = copies.get(j);
+                    Object old = f.get(o);
+                    long h = mode.hash(o, ci);
+                    try {
+                        for (int b = 0; b < width; b++) {
+                            flip(f, type, o, b);
+                            changed += Long.bitCount(
+                                    h ^ mode.hash(o, ci));
+                            flip(f, type, o, b);
+                        }
+                    } finally {
+                        f.set(o, old);
+                    }
+                }
+                r[i] = (double) changed / ((long) n * width * mode.getBits());
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        return r;
+    }
+
+    /**
+     * @param type field type
+     * @return number of bits in a field or 0 if it is not primitive
+     */
+    private static int width(int type) {
+        switch (type) {
+            case ClassInfo.INTEGER_TYPE:
+            case ClassInfo.FLOAT_TYPE:
+                return 32;
+            case ClassInfo.LONG_TYPE:
+            case ClassInfo.DOUBLE_TYPE:
+                return 64;
+            case ClassInfo.BYTE_TYPE:
+                return 8;
+            case ClassInfo.SHORT_TYPE:
+            case ClassInfo.CHARACTER_TYPE:
+                return 16;
+            case ClassInfo.BOOLEAN_TYPE:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Inverts one bit of a primitive field.
+     *
+     * @param f the field
+     * @param type field type
+     * @param o the object
+     * @param b bit index
+     */
+    private static void flip(Field f, int type, Object o, int b)
+            throws IllegalAccessException {
+        switch (type) {
+            case ClassInfo.INTEGER_TYPE:
+                f.setInt(o, f.getInt(o) ^ (1 << b));
+                break;
+            case ClassInfo.LONG_TYPE:
+                f.setLong(o, f.getLong(o) ^ (1L << b));
+                break;
+            case ClassInfo.BYTE_TYPE:
+                f.setByte(o, (byte) (f.getByte(o) ^ (1 << b)));
+                break;
+            case ClassInfo.SHORT_TYPE:
+                f.setShort(o, (short) (f.getShort(o) ^ (1 << b)));
+                break;
+            case ClassInfo.CHARACTER_TYPE:
+                f.setChar(o, (char) (f.getChar(o) ^ (1 << b)));
+                break;
+            case ClassInfo.FLOAT_TYPE:
+                f.setFloat(o, Float.intBitsToFloat(
+                        Float.floatToRawIntBits(f.getFloat(o)) ^ (1 << b)));
+                break;
+            case ClassInfo.DOUBLE_TYPE:
+                f.setDouble(o, Double.longBitsToDouble(
+                        Double.doubleToRawLongBits(f.getDouble(o)) ^
+                        (1L << b)));
+                break;
+            case ClassInfo.BOOLEAN_TYPE:
+                f.setBoolean(o, !f.getBoolean(o));
+                break;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.googlecode.jau;
+
+/**
+ * Map with keys compared by identity for the traversal of one object graph.
+ * Keys and values are stored next to each other in one array (open
+ * addressing with linear probing), so a lookup reads one cache line in the
+ * common case and no entry objects are created. Entries cannot be removed.
+ * Not thread safe.
+ */
+final class IdentityMap {
+    /** key, value, key, value, ... The number of slots is a power of 2. */
+    private Object[] table;
+
+    /** number of entries */
+    private int size;
+
+    /** the table grows if size reaches this value */
+    private int threshold;
+
+    /**
+     * -
+     *
+     * @param capacity expected number of entries
+     */
+    IdentityMap(int capacity) {
+        int n = 8;
+        while (n < capacity * 2)
+            n <<= 1;
+        table = new Object[n * 2];
+        threshold = n / 2;
+    }
+
+    /**
+     * @param key a key
+     * @param mask number of slots - 1
+     * @return index of the slot for the key in the table
+     */
+    private static int index(Object key, int mask) {
+        // identity hash codes may be sequential, spread them
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & mask) * 2;
+    }
+
+    /**
+     * Returns the value for a key.
+     *
+     * @param key a key (not null)
+     * @return the value or null
+     */
+    Object get(Object key) {
+        Object[] t = table;
+        int mask = t.length / 2 - 1;
+        int i = index(key, mask);
+        while (true) {
+            Object k = t[i];
+            if (k == key)
+                return t[i + 1];
+            if (k == null)
+                return null;
+            i = (i + 2) & (t.length - 1);
+        }
+    }
+
+    /**
+     * Adds or replaces an entry.
+     *
+     * @param key a key (not null)
+     * @param value the value
+     */
+    void put(Object key, Object value) {
+        Object[] t = table;
+        int mask = t.length / 2 - 1;
+        int i = index(key, mask);
+        while (true) {
+            Object k = t[i];
+            if (k == key) {
+                t[i + 1] = value;
+                return;
+            }
+            if (k == null)
+                break;
+            i = (i + 2) & (t.length - 1);
+        }
+        t[i] = key;
+        t[i + 1] = value;
+        if (++size >= threshold)
+            resize();
+    }
+
+    /**
+     * @return number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the number of slots.
+     */
+    private void resize() {
+        Object[] old = table;
+        Object[] t = new Object[old.length * 2];
+        int mask = t.length / 2 - 1;
+        for (int j = 0; j < old.length; j += 2) {
+            Object k = old[j];
+            if (k != null) {
+                int i = index(k, mask);
+                while (t[i] != null)
+                    i = (i + 2) & (t.length - 1);
+                t[i] = k;
+                t[i + 1] = old[j + 1];
+            }
+        }
+        table = t;
+        threshold = t.length / 4;
+    }
+}
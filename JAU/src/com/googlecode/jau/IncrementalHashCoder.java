@@ -0,0 +1,290 @@
+package com.googlecode.jau;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the same hash codes as {@link JAU#hashCode(java.lang.Object)},
+ * but remembers the hash code of every object in the graph (Merkle tree).
+ * After a change only the changed object and its containers are
+ * processed again: the application calls {@link #invalidate(Object)} for
+ * each changed object and then {@link #hashCode(Object)} for the root.
+ *
+ * The hash codes are remembered for objects of classes annotated with
+ * {@link JAUHashCode}, object arrays and the lists and maps supported by
+ * JAU. Other values (strings, primitive arrays etc.) are hashed every time.
+ * The objects are referenced weakly.
+ *
+ * Cyclic graphs are supported, but the hash codes of the objects that
+ * reference an object that contains them are not remembered: if a back
+ * reference is found, the hash code of the root is computed by
+ * {@link JAU#hashCode(java.lang.Object)}.
+ *
+ * Usage:
+ * <pre>
+ * IncrementalHashCoder hc = new IncrementalHashCoder();
+ * int h = hc.hashCode(catalogue);
+ * item.setPrice(price);
+ * hc.invalidate(item);
+ * h = hc.hashCode(catalogue); // only the path to item is processed
+ * </pre>
+ */
+public final class IncrementalHashCoder implements HashCoder<Object> {
+    /** hash code is not remembered */
+    private static final int LEAF = 0;
+
+    /** object of a class annotated with JAUHashCode */
+    private static final int ANNOTATED = 1;
+
+    /** array of objects */
+    private static final int ARRAY = 2;
+
+    /** list hashed by ListHelper */
+    private static final int LIST = 3;
+
+    /** map hashed by MapHashCoder */
+    private static final int MAP = 4;
+
+    /**
+     * Remembered hash code of an object.
+     */
+    private static final class Node {
+        /** hash code */
+        int hash;
+
+        /** true = hash is up to date */
+        boolean valid;
+
+        /** objects that contained this object */
+        final List<WeakReference<Object>> parents =
+                new ArrayList<WeakReference<Object>>(1);
+
+        /**
+         * Remembers a container of the object.
+         *
+         * @param parent a container
+         */
+        void addParent(Object parent) {
+            for (int i = 0; i < parents.size(); i++) {
+                Object p = parents.get(i).get();
+                if (p == parent)
+                    return;
+                if (p == null)
+                    parents.remove(i--);
+            }
+            parents.add(new WeakReference<Object>(parent));
+        }
+    }
+
+    /** remembered hash codes */
+    private final WeakIdentityTable<Node> nodes =
+            new WeakIdentityTable<Node>();
+
+    /**
+     * objects that are currently being computed. cyclic = a back
+     * reference was found below the object being computed
+     */
+    private final Visits visits = new Visits(JAU.TRACK_DEPTH);
+
+    /**
+     * Computes hash code for an object like
+     * {@link JAU#hashCode(java.lang.Object)}. Remembered hash codes are
+     * used for all objects that were not invalidated.
+     *
+     * @param obj an object or null
+     * @return hash code
+     */
+    @Override
+    public synchronized int hashCode(Object obj) {
+        visits.cyclic = false;
+        int h = hash(obj, null);
+        if (visits.cyclic) {
+            visits.cyclic = false;
+            h = JAU.hashCode(obj);
+        }
+        return h;
+    }
+
+    /**
+     * Forgets the hash code of an object and all objects that contain it.
+     * This method should be called after the fields of an object were
+     * changed.
+     *
+     * @param obj a changed object
+     */
+    public synchronized void invalidate(Object obj) {
+        List<Object> stack = new ArrayList<Object>();
+        stack.add(obj);
+        while (!stack.isEmpty()) {
+            Node n = nodes.get(stack.remove(stack.size() - 1));
+
+            // the containers of an invalid object are invalid too
+            if (n == null || !n.valid)
+                continue;
+            n.valid = false;
+            for (WeakReference<Object> r: n.parents) {
+                Object p = r.get();
+                if (p != null)
+                    stack.add(p);
+            }
+        }
+    }
+
+    /**
+     * Forgets all hash codes.
+     */
+    public synchronized void clear() {
+        nodes.clear();
+    }
+
+    /**
+     * Returns the hash code of an object.
+     *
+     * @param a an object or null
+     * @param parent container of the object or null
+     * @return hash code
+     */
+    private int hash(Object a, Object parent) {
+        int kind = kind(a);
+        if (kind == LEAF)
+            return JAU.hashCode(a);
+
+        Node n = nodes.get(a);
+        if (n == null) {
+            n = new Node();
+            nodes.put(a, n);
+        }
+        if (parent != null)
+            n.addParent(parent);
+        if (!n.valid) {
+            // a back reference. The result is not used.
+            if (!visits.enter(a, null)) {
+                visits.cyclic = true;
+                return 0;
+            }
+            boolean cyclic = visits.cyclic;
+            visits.cyclic = false;
+            try {
+                n.hash = compute(a, kind);
+            } finally {
+                visits.exit(a, null);
+            }
+
+            // the hash code of an object in a cycle depends on the root
+            n.valid = !visits.cyclic;
+            visits.cyclic |= cyclic;
+        }
+        return n.hash;
+    }
+
+    /**
+     * @param a an object or null
+     * @return LEAF, ANNOTATED, ARRAY, LIST or MAP
+     */
+    private static int kind(Object a) {
+        if (a == null)
+            return LEAF;
+        Class c = a.getClass();
+        if (c.isArray())
+            return c.getComponentType().isPrimitive() ? LEAF : ARRAY;
+        ClassInfo ci = JAU.getClassInfo(c, ClassPlan.HASHCODE);
+        if (ci.annotated)
+            return ci.cached ? LEAF : ANNOTATED;
+        HashCoder hc = JAU.getHashCoder(c);
+        if (hc == ListHelper.INSTANCE)
+            return LIST;
+        if (hc == MapHashCoder.INSTANCE)
+            return MAP;
+        return LEAF;
+    }
+
+    /**
+     * Computes the hash code of an object using the remembered hash codes
+     * of the contained objects.
+     *
+     * @param a an object
+     * @param kind ANNOTATED, ARRAY, LIST or MAP
+     * @return hash code
+     */
+    private int compute(Object a, int kind) {
+        int m = JAU.DEFAULT_MULTIPLIER;
+        switch (kind) {
+            case ANNOTATED: {
+                ClassInfo ci = JAU.getClassInfo(a.getClass(),
+                        ClassPlan.HASHCODE);
+                int result = JAU.DEFAULT_INITIAL;
+                for (int i = 0; i < ci.fields.length; i++)
+                    result += m * hash(ci, i, a);
+                return result;
+            }
+            case ARRAY: {
+                Object[] arr = (Object[]) a;
+                int result = JAU.DEFAULT_INITIAL * m + a.getClass().hashCode();
+                for (Object el: arr)
+                    result += hash(el, a) * m;
+                return result;
+            }
+            case LIST: {
+                int result = 1;
+                for (Object el: (List) a)
+                    result = 31 * result + (el == null ? 0 : hash(el, a));
+                return result;
+            }
+            default: {
+                int result = 0;
+                Iterator<Map.Entry> it = ((Map) a).entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry e = it.next();
+                    Object key = e.getKey();
+                    Object value = e.getValue();
+                    result += (key == null ? 0 : hash(key, a)) ^
+                            (value == null ? 0 : hash(value, a));
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Computes the hash code of a field value.
+     *
+     * @param ci class information
+     * @param i index of the field
+     * @param a the object
+     * @return hash code of the value
+     */
+    private int hash(ClassInfo ci, int i, Object a) {
+        Field f = ci.fields[i];
+        try {
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    return f.getInt(a);
+                case ClassInfo.BYTE_TYPE:
+                    return f.getByte(a);
+                case ClassInfo.SHORT_TYPE:
+                    return f.getShort(a);
+                case ClassInfo.LONG_TYPE:
+                    long value = f.getLong(a);
+                    return (int) (value ^ (value >>> 32));
+                case ClassInfo.FLOAT_TYPE:
+                    return Float.floatToIntBits(f.getFloat(a));
+                case ClassInfo.DOUBLE_TYPE:
+                    long bits = Double.doubleToLongBits(f.getDouble(a));
+                    return (int) (bits ^ (bits >>> 32));
+                case ClassInfo.CHARACTER_TYPE:
+                    return f.getChar(a);
+                case ClassInfo.BOOLEAN_TYPE:
+                    return f.getBoolean(a) ? 1231 : 1237;
+                default:
+                    return hash(f.get(a), a);
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+}
@@ -0,0 +1,665 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Implementation of equals(), hashCode(), compare(), toString() and copy()
+ * for deeply nested object graphs (e.g. long linked lists). JAU processes
+ * nested objects recursively and switches to this class if the nesting is
+ * deeper than {@link JAU#ITERATIVE_DEPTH}. Objects of annotated classes
+ * and arrays of objects are then processed using a stack of frames on the
+ * heap, so the Java stack does not grow with the depth of the graph. Other
+ * objects (lists, maps, registered comparators etc.) are passed back to
+ * JAU. The fields are accessed using reflection and the results are the
+ * same as from the recursive methods.
+ *
+ * The cycle detection of equals(), hashCode() and toString() uses the
+ * same {@link Visits} as JAU.
+ */
+final class Iterative {
+    /**
+     * An object or an array of objects that is being processed.
+     */
+    private static final class Frame {
+        /** the object or the array */
+        Object a;
+
+        /** second object or array (equals(), compare()), copy or null */
+        Object b;
+
+        /** information about the class or null for arrays */
+        ClassInfo ci;
+
+        /** order of the fields (adaptive equals()) or null */
+        int[] order;
+
+        /** next field or element */
+        int next;
+
+        /** number of fields or elements */
+        int end;
+
+        /** index of the field that is being processed (equals()) */
+        int field;
+
+        /** hash code computed so far */
+        int value;
+
+        /** multiplier for the hash code */
+        int mult;
+
+        /** toString(): each field on its own line */
+        boolean manyLines;
+
+        /** Visits.exit() must be called for this frame */
+        boolean tracked;
+    }
+
+    private Frame[] frames = new Frame[16];
+
+    /** index of the current frame */
+    private int top = -1;
+
+    private Iterative() {
+    }
+
+    /**
+     * Starts processing an object or an array.
+     *
+     * @param a the object or array
+     * @param b second object or array, copy or null
+     * @param ci information about the class or null for arrays
+     * @param end number of fields or elements
+     * @return new frame
+     */
+    private Frame push(Object a, Object b, ClassInfo ci, int end) {
+        if (++top == frames.length)
+            frames = Arrays.copyOf(frames, top * 2);
+        Frame f = frames[top];
+        if (f == null)
+            f = frames[top] = new Frame();
+        f.a = a;
+        f.b = b;
+        f.ci = ci;
+        f.order = ci == null || ci.order == null ? null : ci.order.order;
+        f.next = 0;
+        f.end = end;
+        f.tracked = false;
+        return f;
+    }
+
+    /**
+     * Removes the current frame.
+     *
+     * @param v the visited objects or null
+     */
+    private void pop(Visits v) {
+        Frame f = frames[top--];
+        if (f.tracked)
+            v.exit(f.a, f.b);
+        f.a = null;
+        f.b = null;
+    }
+
+    /**
+     * Compares 2 objects annotated with {@link JAUEquals}. The pair is
+     * already registered in <code>v</code> by the caller.
+     *
+     * @param a first object
+     * @param b second object of the same class
+     * @param ci information about the class for equals()
+     * @param v pairs compared by equals() in the current thread
+     * @return true = equal
+     */
+    static boolean equals(Object a, Object b, ClassInfo ci, Visits v) {
+        Iterative it = new Iterative();
+        it.push(a, b, ci, ci.fields.length);
+        try {
+            return it.equals(v);
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        } finally {
+            while (it.top >= 0)
+                it.pop(v);
+        }
+    }
+
+    private boolean equals(Visits v) throws IllegalAccessException {
+        while (top >= 0) {
+            Frame f = frames[top];
+            if (f.next == f.end) {
+                pop(v);
+                continue;
+            }
+            int k = f.next++;
+            Object x, y;
+            ClassInfo ci = f.ci;
+            if (ci == null) {
+                x = ((Object[]) f.a)[k];
+                y = ((Object[]) f.b)[k];
+            } else {
+                int i = f.order == null ? k : f.order[k];
+                f.field = i;
+                Field fd = ci.fields[i];
+                boolean eq;
+                switch (ci.types[i]) {
+                    case ClassInfo.INTEGER_TYPE:
+                        eq = fd.getInt(f.a) == fd.getInt(f.b);
+                        break;
+                    case ClassInfo.BYTE_TYPE:
+                        eq = fd.getByte(f.a) == fd.getByte(f.b);
+                        break;
+                    case ClassInfo.SHORT_TYPE:
+                        eq = fd.getShort(f.a) == fd.getShort(f.b);
+                        break;
+                    case ClassInfo.LONG_TYPE:
+                        eq = fd.getLong(f.a) == fd.getLong(f.b);
+                        break;
+                    case ClassInfo.FLOAT_TYPE:
+                        eq = Float.floatToIntBits(fd.getFloat(f.a)) ==
+                                Float.floatToIntBits(fd.getFloat(f.b));
+                        break;
+                    case ClassInfo.DOUBLE_TYPE:
+                        eq = Double.doubleToLongBits(fd.getDouble(f.a)) ==
+                                Double.doubleToLongBits(fd.getDouble(f.b));
+                        break;
+                    case ClassInfo.CHARACTER_TYPE:
+                        eq = fd.getChar(f.a) == fd.getChar(f.b);
+                        break;
+                    case ClassInfo.BOOLEAN_TYPE:
+                        eq = fd.getBoolean(f.a) == fd.getBoolean(f.b);
+                        break;
+                    default:
+                        x = fd.get(f.a);
+                        y = fd.get(f.b);
+                        if (!equals(x, y, v))
+                            return mismatch();
+                        continue;
+                }
+                if (!eq)
+                    return mismatch();
+                continue;
+            }
+            if (!equals(x, y, v))
+                return mismatch();
+        }
+        return true;
+    }
+
+    /**
+     * Compares 2 values or starts comparing them in a new frame.
+     *
+     * @param x first value
+     * @param y second value
+     * @param v pairs compared by equals() in the current thread
+     * @return false if the values are different
+     */
+    private boolean equals(Object x, Object y, Visits v) {
+        if (x == y)
+            return true;
+        if (x == null || y == null)
+            return false;
+        Class c = x.getClass();
+        if (c != y.getClass())
+            return false;
+        if (x instanceof Object[]) {
+            int n = ((Object[]) x).length;
+            if (n != ((Object[]) y).length)
+                return false;
+            push(x, y, null, n);
+            return true;
+        }
+        if (!c.isArray()) {
+            ClassInfo ci = JAU.getClassInfo(c, ClassPlan.EQUALS);
+            if (ci.annotated && ci.references) {
+                // a pair that is already being compared is assumed to be
+                // equal
+                if (v.enter(x, y))
+                    push(x, y, ci, ci.fields.length).tracked = true;
+                return true;
+            }
+        }
+        return JAU.equals(x, y);
+    }
+
+    /**
+     * Records the mismatch in the adaptive order of all objects being
+     * compared.
+     *
+     * @return false
+     */
+    private boolean mismatch() {
+        for (int j = top; j >= 0; j--) {
+            Frame f = frames[j];
+            if (f.order != null)
+                f.ci.order.mismatch(f.field);
+        }
+        return false;
+    }
+
+    /**
+     * Computes the hash code of an object annotated with
+     * {@link JAUHashCode}. The object is already registered in
+     * <code>v</code> by the caller.
+     *
+     * @param a the object
+     * @param ci information about the class for hashCode()
+     * @param v objects processed by hashCode() in the current thread
+     * @param initialNonZeroOddNumber initial value
+     * @param multiplierNonZeroOddNumber multiplier
+     * @return hash code
+     */
+    static int hashCode(Object a, ClassInfo ci, Visits v,
+            int initialNonZeroOddNumber, int multiplierNonZeroOddNumber) {
+        Iterative it = new Iterative();
+        Frame f = it.push(a, null, ci, ci.fields.length);
+        f.value = initialNonZeroOddNumber;
+        f.mult = multiplierNonZeroOddNumber;
+        try {
+            return it.hashCode(v);
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        } finally {
+            while (it.top >= 0)
+                it.pop(v);
+        }
+    }
+
+    private int hashCode(Visits v) throws IllegalAccessException {
+        while (true) {
+            Frame f = frames[top];
+            if (f.next == f.end) {
+                int r = f.value;
+                pop(v);
+                if (top < 0)
+                    return r;
+                Frame p = frames[top];
+                p.value += p.mult * r;
+                continue;
+            }
+            int k = f.next++;
+            Object x;
+            ClassInfo ci = f.ci;
+            if (ci == null) {
+                x = ((Object[]) f.a)[k];
+            } else {
+                Field fd = ci.fields[k];
+                switch (ci.types[k]) {
+                    case ClassInfo.INTEGER_TYPE:
+                        f.value += f.mult * fd.getInt(f.a);
+                        continue;
+                    case ClassInfo.BYTE_TYPE:
+                        f.value += f.mult * fd.getByte(f.a);
+                        continue;
+                    case ClassInfo.SHORT_TYPE:
+                        f.value += f.mult * fd.getShort(f.a);
+                        continue;
+                    case ClassInfo.LONG_TYPE:
+                        long value = fd.getLong(f.a);
+                        f.value += f.mult * (int) (value ^ (value >>> 32));
+                        continue;
+                    case ClassInfo.FLOAT_TYPE:
+                        f.value += f.mult *
+                                Float.floatToIntBits(fd.getFloat(f.a));
+                        continue;
+                    case ClassInfo.DOUBLE_TYPE:
+                        long bits = Double.doubleToLongBits(fd.getDouble(f.a));
+                        f.value += f.mult * (int) (bits ^ (bits >>> 32));
+                        continue;
+                    case ClassInfo.CHARACTER_TYPE:
+                        f.value += f.mult * (int) fd.getChar(f.a);
+                        continue;
+                    default:
+                        x = fd.get(f.a);
+                }
+            }
+
+            if (x instanceof Object[]) {
+                Frame c = push(x, null, null, ((Object[]) x).length);
+                c.value = JAU.DEFAULT_INITIAL * JAU.DEFAULT_MULTIPLIER +
+                        x.getClass().hashCode();
+                c.mult = JAU.DEFAULT_MULTIPLIER;
+                continue;
+            }
+            if (x != null && !x.getClass().isArray()) {
+                ClassInfo cci = JAU.getClassInfo(x.getClass(),
+                        ClassPlan.HASHCODE);
+                if (cci.annotated && cci.references && !cci.cached) {
+                    if (!v.cyclic && v.enter(x, null)) {
+                        Frame c = push(x, null, cci, cci.fields.length);
+                        c.tracked = true;
+                        c.value = JAU.DEFAULT_INITIAL;
+                        c.mult = JAU.DEFAULT_MULTIPLIER;
+                    } else {
+                        // back reference or the result is not used, see
+                        // JAU.hashCodeTracked()
+                        v.cyclic = true;
+                        f.value += f.mult * JAU.DEFAULT_INITIAL;
+                    }
+                    continue;
+                }
+            }
+            f.value += f.mult * JAU.hashCode(x);
+        }
+    }
+
+    /**
+     * Compares 2 objects annotated with {@link JAUCompareTo}.
+     *
+     * @param a first object
+     * @param b second object of the same class
+     * @param ci information about the class for compare()
+     * @return &lt; 0, 0 or &gt; 0 like
+     *     {@link JAU#compare(java.lang.Object, java.lang.Object)}
+     */
+    static int compare(Object a, Object b, ClassInfo ci) {
+        Iterative it = new Iterative();
+        it.push(a, b, ci, ci.fields.length);
+        try {
+            return it.compare();
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    private int compare() throws IllegalAccessException {
+        while (true) {
+            Frame f = frames[top];
+            if (f.next == f.end) {
+                int r = f.ci != null ? 0 :
+                        ((Object[]) f.a).length - ((Object[]) f.b).length;
+                pop(null);
+                if (r != 0 || top < 0)
+                    return r;
+                continue;
+            }
+            int k = f.next++;
+            Object x, y;
+            ClassInfo ci = f.ci;
+            int r;
+            if (ci == null) {
+                x = ((Object[]) f.a)[k];
+                y = ((Object[]) f.b)[k];
+            } else {
+                Field fd = ci.fields[k];
+                Object a = f.a, b = f.b;
+                switch (ci.types[k]) {
+                    case ClassInfo.BYTE_TYPE:
+                        r = fd.getByte(a) - fd.getByte(b);
+                        break;
+                    case ClassInfo.SHORT_TYPE:
+                        r = fd.getShort(a) - fd.getShort(b);
+                        break;
+                    case ClassInfo.INTEGER_TYPE:
+                        r = compare(fd.getInt(a), fd.getInt(b));
+                        break;
+                    case ClassInfo.LONG_TYPE:
+                        r = compare(fd.getLong(a), fd.getLong(b));
+                        break;
+                    case ClassInfo.FLOAT_TYPE:
+                        r = Float.compare(fd.getFloat(a), fd.getFloat(b));
+                        break;
+                    case ClassInfo.DOUBLE_TYPE:
+                        r = Double.compare(fd.getDouble(a), fd.getDouble(b));
+                        break;
+                    case ClassInfo.CHARACTER_TYPE:
+                        r = fd.getChar(a) - fd.getChar(b);
+                        break;
+                    case ClassInfo.BOOLEAN_TYPE:
+                        boolean ba = fd.getBoolean(a);
+                        r = ba == fd.getBoolean(b) ? 0 : (ba ? 1 : -1);
+                        break;
+                    default:
+                        x = fd.get(a);
+                        y = fd.get(b);
+                        r = compare(x, y);
+                }
+                if (r != 0)
+                    return r;
+                continue;
+            }
+            r = compare(x, y);
+            if (r != 0)
+                return r;
+        }
+    }
+
+    /**
+     * Compares 2 values or starts comparing them in a new frame.
+     *
+     * @param x first value
+     * @param y second value
+     * @return result of the comparison or 0 if a frame was added
+     */
+    private int compare(Object x, Object y) {
+        if (x == y)
+            return 0;
+        if (x == null)
+            return -1;
+        if (y == null)
+            return 1;
+        Class c = x.getClass();
+        if (c != y.getClass())
+            throw new IllegalArgumentException(
+                    "Cannot compare instances of different classes");
+        if (x instanceof Object[]) {
+            push(x, y, null, Math.min(((Object[]) x).length,
+                    ((Object[]) y).length));
+            return 0;
+        }
+        if (!c.isArray()) {
+            ClassInfo ci = JAU.getClassInfo(c, ClassPlan.COMPARETO);
+            if (ci.annotated && ci.references) {
+                push(x, y, ci, ci.fields.length);
+                return 0;
+            }
+        }
+        return JAU.compare(x, y);
+    }
+
+    /**
+     * Compares 2 long values without overflow.
+     *
+     * @param a first value
+     * @param b second value
+     * @return -1, 0 or 1
+     */
+    private static int compare(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Creates the string representation of an object annotated with
+     * {@link JAUToString}. The object is already registered in
+     * <code>v</code> by the caller.
+     *
+     * @param sb output
+     * @param a the object
+     * @param manyLines true = each field on its own line
+     * @param ci information about the class for toString()
+     * @param v objects processed by toString() in the current thread
+     */
+    static void toString(StringBuilder sb, Object a, boolean manyLines,
+            ClassInfo ci, Visits v) {
+        Iterative it = new Iterative();
+        appendHeader(sb, a);
+        it.push(a, null, ci, ci.fields.length).manyLines = manyLines;
+        try {
+            it.toString(sb, v);
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        } finally {
+            while (it.top >= 0)
+                it.pop(v);
+        }
+    }
+
+    private void toString(StringBuilder sb, Visits v)
+            throws IllegalAccessException {
+        while (top >= 0) {
+            Frame f = frames[top];
+            if (f.next == f.end) {
+                sb.append(f.ci == null ? "]" : ")");
+                pop(v);
+                continue;
+            }
+            int k = f.next++;
+            Object x;
+            ClassInfo ci = f.ci;
+            if (ci == null) {
+                if (k != 0)
+                    sb.append(", ");
+                x = ((Object[]) f.a)[k];
+            } else {
+                Field fd = ci.fields[k];
+                if (f.manyLines)
+                    sb.append(k != 0 ? ",\n    " : "\n    ");
+                else if (k != 0)
+                    sb.append(", ");
+                sb.append(fd.getName()).append('=');
+                switch (ci.types[k]) {
+                    case ClassInfo.BYTE_TYPE:
+                        sb.append(fd.getByte(f.a));
+                        continue;
+                    case ClassInfo.SHORT_TYPE:
+                        sb.append(fd.getShort(f.a));
+                        continue;
+                    case ClassInfo.INTEGER_TYPE:
+                        sb.append(fd.getInt(f.a));
+                        continue;
+                    case ClassInfo.LONG_TYPE:
+                        sb.append(fd.getLong(f.a));
+                        continue;
+                    case ClassInfo.FLOAT_TYPE:
+                        sb.append(fd.getFloat(f.a));
+                        continue;
+                    case ClassInfo.DOUBLE_TYPE:
+                        sb.append(fd.getDouble(f.a));
+                        continue;
+                    case ClassInfo.CHARACTER_TYPE:
+                        sb.append(fd.getChar(f.a));
+                        continue;
+                    default:
+                        x = fd.get(f.a);
+                }
+            }
+
+            // the elements of arrays are always on one line
+            boolean manyLines = ci != null && f.manyLines;
+            if (x instanceof Object[]) {
+                sb.append(x.getClass().getComponentType().
+                        getCanonicalName()).append("[");
+                push(x, null, null, ((Object[]) x).length);
+                continue;
+            }
+            if (x != null && !JAU.isImmutableClass(x.getClass()) &&
+                    !x.getClass().isArray()) {
+                ClassInfo cci = JAU.getClassInfo(x.getClass(),
+                        ClassPlan.TOSTRING);
+                if (cci.annotated && cci.references &&
+                        (manyLines || !cci.cached)) {
+                    if (v.enter(x, null)) {
+                        appendHeader(sb, x);
+                        Frame c = push(x, null, cci, cci.fields.length);
+                        c.tracked = true;
+                        c.manyLines = manyLines;
+                    } else {
+                        // back reference to an object that is being printed
+                        sb.append(x.getClass().getCanonicalName()).
+                                append("@").append(Integer.toHexString(
+                                System.identityHashCode(x))).append("(...)");
+                    }
+                    continue;
+                }
+            }
+            JAU.toString(sb, x, manyLines);
+        }
+    }
+
+    /**
+     * Appends the class name and the identity hash code of an object.
+     *
+     * @param sb output
+     * @param a the object
+     */
+    private static void appendHeader(StringBuilder sb, Object a) {
+        sb.append(a.getClass().getCanonicalName()).append("@").
+                append(Integer.toHexString(System.identityHashCode(a))).
+                append("(");
+    }
+
+    /**
+     * Copies the fields of an object annotated with {@link JAUCopy}.
+     *
+     * @param a source
+     * @param b target of the same class
+     * @param ci information about the class for copy()
+     */
+    static void copy(Object a, Object b, ClassInfo ci) {
+        Iterative it = new Iterative();
+        it.push(a, b, ci, ci.fields.length);
+        try {
+            it.copy();
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    private void copy() throws IllegalAccessException {
+        while (top >= 0) {
+            Frame f = frames[top];
+            if (f.next == f.end) {
+                pop(null);
+                continue;
+            }
+            int k = f.next++;
+            if (f.ci == null) {
+                Object[] dst = (Object[]) f.b;
+                dst[k] = cloneOf(((Object[]) f.a)[k]);
+            } else if (!JAU.copyPrimitive(f.ci, k, f.a, f.b)) {
+                Field fd = f.ci.fields[k];
+                fd.set(f.b, cloneOf(fd.get(f.a)));
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of a value. The fields of objects of annotated classes
+     * and the elements of arrays are copied later in a new frame.
+     *
+     * @param x a value or null
+     * @return the copy
+     */
+    private Object cloneOf(Object x) {
+        if (x == null)
+            return null;
+        Class c = x.getClass();
+        if (JAU.isImmutableClass(c))
+            return x;
+        if (x instanceof Object[]) {
+            Object[] src = (Object[]) x;
+            Object[] dst = (Object[]) Array.newInstance(c.getComponentType(),
+                    src.length);
+            push(src, dst, null, src.length);
+            return dst;
+        }
+        if (!c.isArray()) {
+            ClassInfo ci = JAU.getClassInfo(c, ClassPlan.COPY);
+            if (ci.annotated && ci.references) {
+                Object y = JAU.newInstance(x, c);
+                if (y != null) {
+                    push(x, y, ci, ci.fields.length);
+                    return y;
+                }
+            }
+        }
+        return JAU.clone(x);
+    }
+}
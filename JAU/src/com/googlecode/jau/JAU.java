@@ -8,6 +8,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -15,8 +16,10 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Vector;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.logging.Logger;
 
 /**
  * Annotation based implementation of common methods.
@@ -116,6 +119,48 @@ public class JAU {
         }
     };
 
+    private static final BooleanFunc<JAUEquals> JAU_EQUALS_INHERITED =
+            new BooleanFunc<JAUEquals>() {
+        public boolean perform(JAUEquals a) {
+            return a.inherited();
+        }
+    };
+
+    private static final BooleanFunc<JAUToString> JAU_TOSTRING_INHERITED =
+            new BooleanFunc<JAUToString>() {
+        public boolean perform(JAUToString a) {
+            return a.inherited();
+        }
+    };
+
+    private static final BooleanFunc<JAUHashCode> JAU_HASHCODE_INHERITED =
+            new BooleanFunc<JAUHashCode>() {
+        public boolean perform(JAUHashCode a) {
+            return a.inherited();
+        }
+    };
+
+    private static final BooleanFunc<JAUCopy> JAU_COPY_INHERITED =
+            new BooleanFunc<JAUCopy>() {
+        public boolean perform(JAUCopy a) {
+            return a.inherited();
+        }
+    };
+
+    private static final BooleanFunc<JAUCompareTo> JAU_COMPARETO_INHERITED =
+            new BooleanFunc<JAUCompareTo>() {
+        public boolean perform(JAUCompareTo a) {
+            return a.inherited();
+        }
+    };
+
+    private static final BooleanFunc<JAUToMap> JAU_TOMAP_INHERITED =
+            new BooleanFunc<JAUToMap>() {
+        public boolean perform(JAUToMap a) {
+            return a.inherited();
+        }
+    };
+
     /**
      * -
      */
@@ -181,65 +226,230 @@ public class JAU {
         }
     };
 
+    /** default initial value for {@link #hashCode(java.lang.Object)} */
+    static final int DEFAULT_INITIAL = 17;
+
+    /** default multiplier for {@link #hashCode(java.lang.Object)} */
+    static final int DEFAULT_MULTIPLIER = 37;
+
+    /**
+     * objects are remembered in a hash table for the cycle detection in
+     * equals() and hashCode() if they are nested deeper
+     */
+    static final int TRACK_DEPTH = 8;
+
+    /**
+     * nesting used for the hash codes of objects with cycles: only the
+     * outermost object and the objects referenced by it directly are used
+     */
+    static final int CYCLE_HASH_DEPTH = 1;
+
+    /**
+     * nested objects are processed by {@link Iterative} (without recursion)
+     * if the nesting is deeper. The value can be changed with the system
+     * property com.googlecode.jau.iterativeDepth.
+     */
+    static final int ITERATIVE_DEPTH =
+            Integer.getInteger("com.googlecode.jau.iterativeDepth", 256);
+
+    /** pairs of objects compared by equals() in the current thread */
+    private static final ThreadLocal<Visits> EQUALS_VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(TRACK_DEPTH);
+        }
+    };
+
+    /** objects processed by hashCode() in the current thread */
+    private static final ThreadLocal<Visits> HASHCODE_VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(TRACK_DEPTH);
+        }
+    };
+
+    /**
+     * objects processed by toString() in the current thread. All of them
+     * are remembered so that the first back reference is printed.
+     */
+    private static final ThreadLocal<Visits> TOSTRING_VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(0);
+        }
+    };
+
+    /**
+     * nesting of compare() in the current thread. Only the depth is used,
+     * no objects are stored.
+     */
+    private static final ThreadLocal<Visits> COMPARE_VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(0);
+        }
+    };
+
+    /**
+     * nesting of copy() in the current thread. Only the depth is used, no
+     * objects are stored.
+     */
+    private static final ThreadLocal<Visits> COPY_VISITS =
+            new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+            return new Visits(0);
+        }
+    };
+
     private static JAUInterface IMPLEMENTATION;
 
+    /**
+     * number of invocations for a class before IMPLEMENTATION is used.
+     * Classes used only a few times are processed using reflection, which
+     * does not need any preparation. The value can be changed with the
+     * system property com.googlecode.jau.threshold. 0 means that
+     * IMPLEMENTATION is always used.
+     */
+    private static final int THRESHOLD =
+            Integer.getInteger("com.googlecode.jau.threshold", 100);
+
+    /**
+     * adaptive mode for equals(): the fields that differ most often are
+     * compared first (see {@link AdaptiveOrder}). The mode can be enabled
+     * with the system property com.googlecode.jau.adaptive=true. Generated
+     * helpers are not used for equals() in this mode and JAUUnsafe is
+     * preferred over JAUCodegen, because generated code cannot change the
+     * order of the fields.
+     */
+    static final boolean ADAPTIVE =
+            Boolean.getBoolean("com.googlecode.jau.adaptive");
+
+    private static final AtomicIntegerFieldUpdater<ClassInfo> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(ClassInfo.class, "state");
+
     static {
-        try {
-            IMPLEMENTATION = (JAUInterface) Class.forName(
-                    "com.googlecode.jau.JAUUnsafe").
-                    newInstance();
-        } catch (Exception e) {
-            // ignore
-        }
-    }
-
-    private static final Map<Class, Copier> COPIERS =
-            new ConcurrentHashMap<Class, Copier>();
-    private static final Map<Class, Comparator> COMPARATORS_COMPARETO =
-            new ConcurrentHashMap<Class, Comparator>();
-    private static final Map<Class, Comparator> COMPARATORS_EQUALS =
-            new ConcurrentHashMap<Class, Comparator>();
-    private static final Map<Class, HashCoder> HASH_CODERS =
-            new ConcurrentHashMap<Class, HashCoder>();
-    private static final Map<Class, Stringifier> STRINGIFIERS =
-            new ConcurrentHashMap<Class, Stringifier>();
-
-    private static final Map<Class, ClassInfo> CLASSINFO_TOSTRING =
-            new ConcurrentHashMap<Class, ClassInfo>();
-    private static final Map<Class, ClassInfo> CLASSINFO_HASHCODE =
-            new ConcurrentHashMap<Class, ClassInfo>();
-    private static final Map<Class, ClassInfo> CLASSINFO_EQUALS =
-            new ConcurrentHashMap<Class, ClassInfo>();
-    private static final Map<Class, ClassInfo> CLASSINFO_COPY =
-            new ConcurrentHashMap<Class, ClassInfo>();
-    private static final Map<Class, ClassInfo> CLASSINFO_COMPARETO =
-            new ConcurrentHashMap<Class, ClassInfo>();
-    private static final Map<Class, ClassInfo> CLASSINFO_TOMAP =
-            new ConcurrentHashMap<Class, ClassInfo>();
+        // the first implementation that can be loaded is used. The system
+        // property com.googlecode.jau.implementation may be used to choose
+        // one explicitly.
+        String[] implementations = {
+            System.getProperty("com.googlecode.jau.implementation",
+                    ADAPTIVE ? "com.googlecode.jau.JAUUnsafe" :
+                    "com.googlecode.jau.JAUCodegen"),
+            "com.googlecode.jau.JAUCodegen",
+            "com.googlecode.jau.JAUUnsafe",
+            "com.googlecode.jau.JAUVarHandle"
+        };
+        for (String implementation: implementations) {
+            try {
+                IMPLEMENTATION = (JAUInterface) Class.forName(
+                        implementation).getDeclaredConstructor().newInstance();
+                break;
+            } catch (Exception e) {
+                // ignore
+            } catch (LinkageError e) {
+                // ignore
+            }
+        }
+        if (IMPLEMENTATION == null)
+            Logger.getLogger(JAU.class.getName()).warning(
+                    "Neither sun.misc.Unsafe nor VarHandles are available. " +
+                    "Slow reflection will be used.");
+    }
+
+    /** information about classes */
+    private static final ClassValue<ClassPlan> PLANS =
+            new ClassValue<ClassPlan>() {
+        @Override
+        protected ClassPlan computeValue(Class<?> type) {
+            return new ClassPlan();
+        }
+    };
+
+    /** annotation for each operation (index: ClassPlan.EQUALS etc.) */
+    private static final Class[] ANNOTATIONS = {
+        JAUEquals.class, JAUHashCode.class, JAUToString.class, JAUCopy.class,
+        JAUCompareTo.class, JAUToMap.class
+    };
+
+    /** .include() for each operation (index: ClassPlan.EQUALS etc.) */
+    private static final BooleanFunc[] INCLUDE_FUNCS = {
+        JAU_EQUALS_INCLUDE, JAU_HASHCODE_INCLUDE, JAU_TOSTRING_INCLUDE,
+        JAU_COPY_INCLUDE, JAU_COMPARETO_INCLUDE, JAU_TOMAP_INCLUDE
+    };
+
+    /** .allFields() for each operation (index: ClassPlan.EQUALS etc.) */
+    private static final BooleanFunc[] ALLFIELDS_FUNCS = {
+        JAU_EQUALS_ALLFIELDS, JAU_HASHCODE_ALLFIELDS, JAU_TOSTRING_ALLFIELDS,
+        JAU_COPY_ALLFIELDS, JAU_COMPARETO_ALLFIELDS, JAU_TOMAP_ALLFIELDS
+    };
+
+    /** .inherited() for each operation (index: ClassPlan.EQUALS etc.) */
+    private static final BooleanFunc[] INHERITED_FUNCS = {
+        JAU_EQUALS_INHERITED, JAU_HASHCODE_INHERITED, JAU_TOSTRING_INHERITED,
+        JAU_COPY_INHERITED, JAU_COMPARETO_INHERITED, JAU_TOMAP_INHERITED
+    };
+
+    /** stored in ClassPlan.helper for classes without a generated helper */
+    private static final JAUHelper NO_HELPER = new JAUHelper() {
+        public int operations() {
+            return 0;
+        }
+
+        public boolean equals(Object a, Object b) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int hashCode(Object a) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int compare(Object a, Object b) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void copy(Object a, Object b) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void toString(StringBuilder sb, Object a, boolean manyLines) {
+            throw new UnsupportedOperationException();
+        }
+    };
 
     static {
-        COPIERS.put(StringBuffer.class, new StringBufferCopier());
-        COPIERS.put(StringBuilder.class, new StringBuilderCopier());
-        COMPARATORS_COMPARETO.put(StringBuffer.class, new StringBufferComparator());
-        COMPARATORS_COMPARETO.put(StringBuilder.class, new StringBuilderComparator());
-        COMPARATORS_COMPARETO.put(Vector.class, (Comparator) ListHelper.INSTANCE);
-        COMPARATORS_COMPARETO.put(ArrayList.class, (Comparator) ListHelper.INSTANCE);
-        COMPARATORS_EQUALS.put(StringBuffer.class, new StringBufferComparator());
-        COMPARATORS_EQUALS.put(StringBuilder.class, new StringBuilderComparator());
-        COMPARATORS_EQUALS.put(Hashtable.class, MapComparator.INSTANCE);
-        COMPARATORS_EQUALS.put(HashMap.class, MapComparator.INSTANCE);
-        COMPARATORS_EQUALS.put(Vector.class, (Comparator) ListHelper.INSTANCE);
-        COMPARATORS_EQUALS.put(ArrayList.class, (Comparator) ListHelper.INSTANCE);
-        HASH_CODERS.put(StringBuffer.class, new StringBufferHashCoder());
-        HASH_CODERS.put(StringBuilder.class, new StringBuilderHashCoder());
-        HASH_CODERS.put(Hashtable.class, MapHashCoder.INSTANCE);
-        HASH_CODERS.put(HashMap.class, MapHashCoder.INSTANCE);
-        HASH_CODERS.put(Vector.class, ListHelper.INSTANCE);
-        HASH_CODERS.put(ArrayList.class, ListHelper.INSTANCE);
-        STRINGIFIERS.put(Hashtable.class, MapStringifier.INSTANCE);
-        STRINGIFIERS.put(HashMap.class, MapStringifier.INSTANCE);
-        STRINGIFIERS.put(Vector.class, (Stringifier) ListHelper.INSTANCE);
-        STRINGIFIERS.put(ArrayList.class, (Stringifier) ListHelper.INSTANCE);
+        PLANS.get(StringBuffer.class).copier = new StringBufferCopier();
+        PLANS.get(StringBuilder.class).copier = new StringBuilderCopier();
+        PLANS.get(StringBuffer.class).comparator = new StringBufferComparator();
+        PLANS.get(StringBuilder.class).comparator =
+                new StringBuilderComparator();
+        PLANS.get(Vector.class).comparator = (Comparator) ListHelper.INSTANCE;
+        PLANS.get(ArrayList.class).comparator =
+                (Comparator) ListHelper.INSTANCE;
+        PLANS.get(StringBuffer.class).equalsComparator =
+                new StringBufferComparator();
+        PLANS.get(StringBuilder.class).equalsComparator =
+                new StringBuilderComparator();
+        PLANS.get(Hashtable.class).equalsComparator = MapComparator.INSTANCE;
+        PLANS.get(HashMap.class).equalsComparator = MapComparator.INSTANCE;
+        PLANS.get(Vector.class).equalsComparator = ListComparator.INSTANCE;
+        PLANS.get(ArrayList.class).equalsComparator = ListComparator.INSTANCE;
+        PLANS.get(StringBuffer.class).hashCoder = new StringBufferHashCoder();
+        PLANS.get(StringBuilder.class).hashCoder =
+                new StringBuilderHashCoder();
+        PLANS.get(Hashtable.class).hashCoder = MapHashCoder.INSTANCE;
+        PLANS.get(HashMap.class).hashCoder = MapHashCoder.INSTANCE;
+        PLANS.get(Vector.class).hashCoder = ListHelper.INSTANCE;
+        PLANS.get(ArrayList.class).hashCoder = ListHelper.INSTANCE;
+        PLANS.get(Hashtable.class).stringifier = MapStringifier.INSTANCE;
+        PLANS.get(HashMap.class).stringifier = MapStringifier.INSTANCE;
+        PLANS.get(Vector.class).stringifier = (Stringifier) ListHelper.INSTANCE;
+        PLANS.get(ArrayList.class).stringifier =
+                (Stringifier) ListHelper.INSTANCE;
     }
 
     /**
@@ -269,7 +479,7 @@ public class JAU {
         if (c.isInterface())
             throw new IllegalArgumentException(
                     "Cannot register a copier for an interface");
-        COPIERS.put(c, copier);
+        PLANS.get(c).copier = copier;
     }
 
     /**
@@ -302,7 +512,7 @@ public class JAU {
         if (c.isInterface())
             throw new IllegalArgumentException(
                     "Cannot register a Stringifier for an interface");
-        STRINGIFIERS.put(c, stringifier);
+        PLANS.get(c).stringifier = stringifier;
     }
 
     /**
@@ -335,7 +545,7 @@ public class JAU {
             throw new IllegalArgumentException(
                 "Cannot register a comparator for a class that implements " +
                 "java.lang.Comparable");
-        COMPARATORS_COMPARETO.put(c, copier);
+        PLANS.get(c).comparator = copier;
     }
 
     /**
@@ -371,7 +581,7 @@ public class JAU {
             throw new IllegalArgumentException(
                 "Cannot register a comparator for a class that implements " +
                 "java.lang.Comparable");
-        COMPARATORS_EQUALS.put(c, copier);
+        PLANS.get(c).equalsComparator = copier;
     }
 
     /**
@@ -405,7 +615,7 @@ public class JAU {
         if (c.isEnum())
             throw new IllegalArgumentException(
                     "Cannot register a coder for an enum type");
-        HASH_CODERS.put(c, hc);
+        PLANS.get(c).hashCoder = hc;
     }
 
     /**
@@ -426,7 +636,138 @@ public class JAU {
      *     are consistent.
      */
     public static int hashCode(Object a) {
-        return hashCode(a, 17, 37);
+        return hashCode(a, DEFAULT_INITIAL, DEFAULT_MULTIPLIER);
+    }
+
+    /**
+     * Generates the same hash code as {@link #hashCode(java.lang.Object)},
+     * but the elements of large arrays of objects and large ArrayLists or
+     * Vectors are processed by several threads (fork/join). Other objects
+     * are processed by the current thread.
+     *
+     * @param a object or null
+     * @return generated hash code
+     */
+    public static int parallelHashCode(Object a) {
+        if (a instanceof Object[]) {
+            Object[] arr = (Object[]) a;
+            if (arr.length > ParallelTasks.CHUNK)
+                return DEFAULT_INITIAL * DEFAULT_MULTIPLIER +
+                        a.getClass().hashCode() +
+                        ParallelTasks.sum(arr) * DEFAULT_MULTIPLIER;
+        } else if (a instanceof List && a instanceof RandomAccess &&
+                PLANS.get(a.getClass()).hashCoder == ListHelper.INSTANCE) {
+            List list = (List) a;
+            if (list.size() > ParallelTasks.CHUNK)
+                return ParallelTasks.polynomial(list);
+        }
+        return hashCode(a);
+    }
+
+    /**
+     * Generates a 64 bit hash code for an object. The same fields as in
+     * {@link #hashCode(java.lang.Object)} are used, but the values are
+     * combined in order and mixed well, so that this hash code is better
+     * suited for large hash tables and for finding duplicates.
+     * Strings, primitive arrays, lists and maps supported by
+     * {@link #hashCode(java.lang.Object)} are hashed structurally. Other
+     * classes that are not annotated with {@link JAUHashCode} are
+     * represented by their 32 bit hash code.
+     *
+     * @param a object or null
+     * @return 64 bit hash code. If same fields in a class are marked
+     *     with {@link JAUEquals} and {@link JAUHashCode}, the value is
+     *     consistent with {@link #equals(java.lang.Object, java.lang.Object)}.
+     */
+    public static long hashCode64(Object a) {
+        return Hash64.hash(a, 0, false);
+    }
+
+    /**
+     * Version of the algorithm used by
+     * {@link #stableHashCode64(java.lang.Object)}. It will be incremented
+     * if the algorithm changes.
+     */
+    public static final int STABLE_HASH_VERSION = 1;
+
+    /**
+     * Generates a 64 bit hash code that only depends on the values and is
+     * the same in all JVMs (for the same {@link #STABLE_HASH_VERSION}).
+     * Objects of classes annotated with {@link JAUHashCode} are
+     * represented by the values of their fields (sorted by name), but not
+     * by the class name. Strings and other CharSequences, enumeration
+     * values (by name), boxed primitive values, BigInteger, BigDecimal,
+     * arrays, lists, sets and maps have a canonical encoding.
+     *
+     * @param a object or null
+     * @return 64 bit hash code
+     * @throws IllegalArgumentException if <code>a</code> or an object
+     *     referenced by it is an instance of another class
+     */
+    public static long stableHashCode64(Object a) {
+        return Hash64.hash(a, 0, true);
+    }
+
+    /**
+     * Computes a 128 bit fingerprint of an object (MurmurHash3_x64_128 of a
+     * canonical binary encoding). The encoding is produced while the
+     * object graph is traversed, no string representation is created.
+     * Objects that are equal according to
+     * {@link #equals(java.lang.Object, java.lang.Object)} have equal
+     * fingerprints. The fingerprint is the same in all JVMs.
+     *
+     * Objects of classes annotated with {@link JAUEquals} are encoded by
+     * the class name and the fields (sorted by name). Strings and other
+     * CharSequences, enumeration values, boxed primitive values,
+     * BigInteger, BigDecimal, arrays, lists, sets and maps have a
+     * canonical encoding.
+     *
+     * @param a object or null
+     * @return fingerprint
+     * @throws IllegalArgumentException if <code>a</code> or an object
+     *     referenced by it is an instance of another class
+     */
+    public static Fingerprint fingerprint(Object a) {
+        FingerprintEncoder.Murmur3 m = new FingerprintEncoder.Murmur3();
+        m.encode(a);
+        return m.finish();
+    }
+
+    /**
+     * Writes the canonical binary encoding used by
+     * {@link #fingerprint(java.lang.Object)} to a message digest (e.g.
+     * SHA-256 for content-addressed storage). The digest is not reset or
+     * finished by this method.
+     *
+     * @param a object or null
+     * @param md the encoding is written here
+     * @throws IllegalArgumentException if <code>a</code> or an object
+     *     referenced by it has no canonical encoding
+     */
+    public static void fingerprint(Object a, MessageDigest md) {
+        FingerprintEncoder.Digest d = new FingerprintEncoder.Digest(md);
+        d.encode(a);
+        d.flush();
+    }
+
+    /**
+     * Assigns an object to a partition using
+     * {@link #stableHashCode64(java.lang.Object)} and jump consistent hash.
+     * The result is the same in all JVMs. When the number of partitions
+     * grows by one, only a minimal fraction of the objects move to
+     * another partition.
+     *
+     * @param a object or null
+     * @param partitions number of partitions
+     * @return partition between 0 and <code>partitions - 1</code>
+     * @throws IllegalArgumentException if <code>partitions</code> is not
+     *     positive or there is no stable hash code for <code>a</code>
+     */
+    public static int partition(Object a, int partitions) {
+        if (partitions <= 0)
+            throw new IllegalArgumentException(
+                    "The number of partitions must be positive");
+        return Hash64.jump(stableHashCode64(a), partitions);
     }
 
     /**
@@ -480,248 +821,591 @@ public class JAU {
         if (ca.isArray()) {
             int lengtha = Array.getLength(a);
 
-            Class ct = ca.getComponentType();
-            if (ct == byte[].class)
-                return Arrays.hashCode((byte[]) a);
-            else if (ct == short[].class)
-                return Arrays.hashCode((short[]) a);
-            else if (ct == int[].class)
-                return Arrays.hashCode((int[]) a);
-            else if (ct == long[].class)
-                return Arrays.hashCode((long[]) a);
-            else if (ct == char[].class)
-                return Arrays.hashCode((char[]) a);
-            else if (ct == float[].class)
-                return Arrays.hashCode((float[]) a);
-            else if (ct == double[].class)
-                return Arrays.hashCode((double[]) a);
-            else if (ct == boolean[].class)
-                return Arrays.hashCode((boolean[]) a);
-            else {
+            if (ca.getComponentType().isPrimitive()) {
+                return PrimitiveArrays.hashCode(a);
+            } else {
+                Object[] arra = (Object[]) a;
                 int result = initialNonZeroOddNumber * multiplierNonZeroOddNumber +
                         ca.hashCode();
-                for (int i = 0; i < lengtha; i++) {
-                    Object ela = Array.get(a, i);
-                    result += hashCode(ela) * multiplierNonZeroOddNumber;
-                }
+                for (int i = 0; i < lengtha; i++)
+                    result += hashCode(arra[i]) * multiplierNonZeroOddNumber;
                 return result;
             }
         } else {
-            ClassInfo ci = getClassInfo(CLASSINFO_HASHCODE, ca,
-                    JAUHashCode.class, JAU_HASHCODE_INCLUDE,
-                    JAU_HASHCODE_ALLFIELDS);
-            if (ci.annotated) {
-                return hashCodeAnnotated(a, ci, ca,
+            ClassPlan plan = PLANS.get(ca);
+            JAUHelper h = initialNonZeroOddNumber == DEFAULT_INITIAL &&
+                    multiplierNonZeroOddNumber == DEFAULT_MULTIPLIER ?
+                    getHelper(plan, ca, JAUHelper.HASHCODE) : null;
+            int flags = h != null ? h.operations() : 0;
+            if (h != null && (flags & JAUHelper.CACHED) == 0) {
+                if ((flags & JAUHelper.REFERENCES) == 0)
+                    return h.hashCode(a);
+                return hashCodeTracked(a, plan, null,
                         initialNonZeroOddNumber, multiplierNonZeroOddNumber);
-            } else {
-                HashCoder hc = HASH_CODERS.get(ca);
-                if (hc != null)
-                    return hc.hashCode(a);
-                else 
-                    return a.hashCode();
             }
+
+            ClassInfo ci = getClassInfo(plan, ca, ClassPlan.HASHCODE);
+            if (ci.references)
+                return hashCodeTracked(a, plan, ci,
+                        initialNonZeroOddNumber, multiplierNonZeroOddNumber);
+            return hashCode(a, plan, ci,
+                    initialNonZeroOddNumber, multiplierNonZeroOddNumber);
         }
     }
 
     /**
-     * Computes hash code for an object annotated by {@link JAUEquals}
+     * Computes the hash code of an object that may be part of a cycle.
+     * A back reference is found while the outermost object is processed.
+     * The rest of the graph is skipped in this case and the hash code is
+     * computed again with a limited nesting, so that equal graphs with
+     * cycles of different length have the same hash code. Both passes
+     * visit every object at most once per reference.
      *
      * @param a the object
-     * @param ci class information
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
-     * @param initialNonZeroOddNumber
-     *            a non-zero, odd number used as the initial value
-     * @param multiplierNonZeroOddNumber
-     *            a non-zero, odd number used as the multiplier
+     * @param plan information about the class
+     * @param ci information about the class for hashCode() or null if the
+     *     generated helper is used
+     * @param initialNonZeroOddNumber initial value
+     * @param multiplierNonZeroOddNumber multiplier
      * @return hash code
      */
-    private static int hashCodeAnnotated(Object a, ClassInfo ci,
-            Class ca, int initialNonZeroOddNumber,
-            int multiplierNonZeroOddNumber) {
-        JAUHashCode classAnnotation = (JAUHashCode) ci.annotation;
-        Field[] fields = ci.fields;
-        int result = initialNonZeroOddNumber;
-        for (int i = 0; i < fields.length; i++) {
-            Field f = fields[i];
+    private static int hashCodeTracked(Object a, ClassPlan plan, ClassInfo ci,
+            int initialNonZeroOddNumber, int multiplierNonZeroOddNumber) {
+        Visits v = HASHCODE_VISITS.get();
+        if (v.bound != 0) {
+            if (v.depth >= v.bound)
+                return initialNonZeroOddNumber;
+            v.depth++;
             try {
-                switch (ci.types[i]) {
-                    case ClassInfo.INTEGER_TYPE:
-                        result += multiplierNonZeroOddNumber * f.getInt(a);
-                        break;
-                    case ClassInfo.BYTE_TYPE:
-                        result += multiplierNonZeroOddNumber * f.getByte(a);
-                        break;
-                    case ClassInfo.SHORT_TYPE:
-                        result += multiplierNonZeroOddNumber * f.getShort(a);
-                        break;
-                    case ClassInfo.LONG_TYPE:
-                        long value = f.getLong(a);
-                        result += multiplierNonZeroOddNumber * 
-                                (int)(value ^ (value >>> 32));
-                        break;
-                    case ClassInfo.FLOAT_TYPE:
-                        result += multiplierNonZeroOddNumber *
-                                Float.floatToIntBits(f.getFloat(a));
-                        break;
-                    case ClassInfo.DOUBLE_TYPE:
-                        long bits = Double.doubleToLongBits(f.getDouble(a));
-                        result += multiplierNonZeroOddNumber *
-                                (int)(bits ^ (bits >>> 32));
-                        break;
-                    case ClassInfo.CHARACTER_TYPE:
-                        result += multiplierNonZeroOddNumber *
-                                (int) (f.getChar(a));
-                        break;
-                    default:
-                        result += multiplierNonZeroOddNumber * 
-                                hashCode(f.get(a));
-                }
-            } catch (IllegalArgumentException ex) {
-                throw (InternalError) new InternalError(
-                        ex.getMessage()).initCause(ex);
-            } catch (IllegalAccessException ex) {
-                throw (InternalError) new InternalError(
-                        ex.getMessage()).initCause(ex);
+                // a stored hash code was computed with the whole graph
+                if (ci != null && ci.cached)
+                    return hashCodeAnnotated(a, ci, initialNonZeroOddNumber,
+                            multiplierNonZeroOddNumber);
+                return hashCode(a, plan, ci, initialNonZeroOddNumber,
+                        multiplierNonZeroOddNumber);
+            } finally {
+                v.depth--;
             }
         }
-        if (classAnnotation == null || classAnnotation.inherited()) {
-            Class parentClass = ca.getSuperclass();
-            if (parentClass == null || parentClass == Object.class)
-                return result;
 
-            ClassInfo parentci = getClassInfo(CLASSINFO_HASHCODE,
-                    parentClass, JAUHashCode.class, JAU_HASHCODE_INCLUDE,
-                    JAU_HASHCODE_ALLFIELDS);
-            if (parentci.annotated)
-                return result + hashCodeAnnotated(a, parentci, parentClass,
-                        initialNonZeroOddNumber, multiplierNonZeroOddNumber);
+        if (v.depth == 0)
+            v.cyclic = false;
+        else if (v.cyclic)
+            return initialNonZeroOddNumber; // the result is not used
+        if (!v.enter(a, null)) {
+            v.cyclic = true;
+            return initialNonZeroOddNumber;
+        }
+        int r;
+        try {
+            if (v.depth > ITERATIVE_DEPTH && ci == null)
+                ci = getClassInfo(plan, a.getClass(), ClassPlan.HASHCODE);
+            if (v.depth > ITERATIVE_DEPTH && ci.annotated && !ci.cached)
+                r = Iterative.hashCode(a, ci, v, initialNonZeroOddNumber,
+                        multiplierNonZeroOddNumber);
             else
-                return result;
+                r = hashCode(a, plan, ci, initialNonZeroOddNumber,
+                        multiplierNonZeroOddNumber);
+        } finally {
+            v.exit(a, null);
         }
-
-        return result;
+        if (v.depth == 0 && v.cyclic) {
+            v.bound = CYCLE_HASH_DEPTH;
+            try {
+                r = hashCode(a, plan, ci, initialNonZeroOddNumber,
+                        multiplierNonZeroOddNumber);
+            } finally {
+                v.bound = 0;
+                v.cyclic = false;
+            }
+        }
+        return r;
     }
 
     /**
-     * Check whether a class is annotated for automatic equals() (directly
-     * or through a package).
+     * Computes the hash code of an object that is not an array without
+     * cycle detection.
      *
-     * @param c a class
-     * @param annotationClass class of the annotation
-     * @param includeFunc calls .include() on the annotation
-     * @param allFields calls .allFields() on the annotation
-     * @return information about annotation
+     * @param a the object
+     * @param plan information about the class
+     * @param ci information about the class for hashCode() or null if the
+     *     generated helper is used
+     * @param initialNonZeroOddNumber initial value
+     * @param multiplierNonZeroOddNumber multiplier
+     * @return hash code
      */
-    private static ClassInfo getClassInfo(
-            Map<Class, ClassInfo> storedInfos,
-            Class c, Class annotationClass,
-            BooleanFunc includeFunc, BooleanFunc allFieldsFunc) {
-        ClassInfo b = storedInfos.get(c);
-        if (b == null) {
-            // firstly, check package annotation
-            Package p = c.getPackage();
-            boolean include = false;
-            if (p != null) {
-                Annotation annotation = p.getAnnotation(annotationClass);
-                if (annotation != null && includeFunc.perform(annotation))
-                    include = true;
-            }
+    private static int hashCode(Object a, ClassPlan plan, ClassInfo ci,
+            int initialNonZeroOddNumber, int multiplierNonZeroOddNumber) {
+        if (initialNonZeroOddNumber == DEFAULT_INITIAL &&
+                multiplierNonZeroOddNumber == DEFAULT_MULTIPLIER) {
+            if (ci != null && ci.cached)
+                return cachedHashCode(a, plan, ci);
+
+            JAUHelper h = getHelper(plan, a.getClass(), JAUHelper.HASHCODE);
+            if (h != null)
+                return h.hashCode(a);
+        }
 
-            // class annotation is more important if present
-            Annotation annotation = c.getAnnotation(annotationClass);
-            if (annotation != null)
-                include = includeFunc.perform(annotation);
-
-            ClassInfo ci = new ClassInfo();
-            ci.annotated = include;
-            ci.annotation = annotation;
-            ci.fields = getFieldsFor(c, annotationClass, includeFunc,
-                    allFieldsFunc);
-            ci.offsets = new long[ci.fields.length];
-            ci.types = new int[ci.fields.length];
-            for (int i = 0; i < ci.fields.length; i++) {
-                if (IMPLEMENTATION != null)
-                    IMPLEMENTATION.update(ci);
-                Class fc = ci.fields[i].getType();
-                if (fc == Integer.TYPE) {
-                    ci.types[i] = ClassInfo.INTEGER_TYPE;
-                } else if (fc == Byte.TYPE) {
-                    ci.types[i] = ClassInfo.BYTE_TYPE;
-                } else if (fc == Short.TYPE) {
-                    ci.types[i] = ClassInfo.SHORT_TYPE;
-                } else if (fc == Long.TYPE) {
-                    ci.types[i] = ClassInfo.LONG_TYPE;
-                } else if (fc == Float.TYPE) {
-                    ci.types[i] = ClassInfo.FLOAT_TYPE;
-                } else if (fc == Double.TYPE) {
-                    ci.types[i] = ClassInfo.DOUBLE_TYPE;
-                } else if (fc == Character.TYPE) {
-                    ci.types[i] = ClassInfo.CHARACTER_TYPE;
-                } else {
-                    ci.types[i] = ClassInfo.OTHER_TYPE;
-                }
-            }
-            if (ci.annotation instanceof JAUEquals) {
-                if (ci.annotation == null ||
-                        ((JAUEquals) ci.annotation).inherited()) {
-                    Class parentClass = c.getSuperclass();
-                    if (parentClass != null && parentClass != Object.class)
-                        ci.useParent = true;
-                }
-            }
-            storedInfos.put(c, ci);
-            return ci;
+        if (ci.annotated) {
+            return hashCodeAnnotated(a, ci,
+                    initialNonZeroOddNumber, multiplierNonZeroOddNumber);
         } else {
-            return b;
+            HashCoder hc = plan.hashCoder;
+            if (hc != null)
+                return hc.hashCode(a);
+            else 
+                return a.hashCode();
         }
     }
 
     /**
-     * Compares 2 objects like {@link Object#equals(java.lang.Object)}. Classes
-     * should be annotated using {@link JAUEquals} (directly or through the
-     * corresponding package) to be compared using reflection. Another way
-     * is to register a user defined object to copy values via
-     * {@link #registerComparator(java.lang.Class, java.util.Comparator) }
-     * At last .equals(Object) is called.
-     *
-     * Static and synthetic fields will be ignored.
+     * Returns the stored hash code for an object annotated with
+     * JAUHashCode(cache = true). The hash code is computed and stored if
+     * necessary.
      *
-     * @param a first object or null
-     * @param b second object or null
-     * @return
-     * <ul>
-     *     <li>true, if (a == null) && (b == null)</li>
-     *     <li>false, if (a == null) && (b != null)</li>
-     *     <li>false, if (a != null) && (b == null)</li>
-     *     <li>true, if (a == b)</li>
-     *     <li>false, if (a.getClass() != b.getClass())</li>
-     *     <li>arrays are compared deeply using this method for each element
-     *     for classes annotated with {@link JAUEquals}</li>
-     *     <li>If a class is not annotated, but implements java.util.Map,
-     *         it is compared so {@link #equals(java.lang.Object)} is called for
-     *         each value instead of a.equals(b)</li>
-     *     <li>a.equals(b) otherwise</li>
-     * </ul>
+     * @param a the object
+     * @param plan information about the class
+     * @param ci class information
+     * @return hash code
      */
-    public static boolean equals(Object a, Object b) {
-        if (a == b)
-            return true;
-        if (a == null || b == null)
-            return false;
+    private static int cachedHashCode(Object a, ClassPlan plan,
+            ClassInfo ci) {
+        try {
+            // 0 = not computed yet (like in String.hashCode())
+            if (ci.cacheField != null) {
+                int r = ci.cacheField.getInt(a);
+                if (r != 0)
+                    return r;
+            } else {
+                Integer r = (Integer) ci.cache.get(a);
+                if (r != null)
+                    return r;
+            }
 
-        Class ca = a.getClass();
-        Class cb = b.getClass();
-        if (ca != cb)
-            return false;
+            JAUHelper h = getHelper(plan, a.getClass(), JAUHelper.HASHCODE);
+            int r = h != null ? h.hashCode(a) :
+                    hashCodeAnnotated(a, ci, DEFAULT_INITIAL,
+                    DEFAULT_MULTIPLIER);
 
-        ClassInfo ci = getClassInfo(
-                CLASSINFO_EQUALS,
-                ca, JAUEquals.class, JAU_EQUALS_INCLUDE,
-                JAU_EQUALS_ALLFIELDS);
-        if (ci.annotated) {
+            // the first pass for a graph with cycles is not used
+            if (ci.references && HASHCODE_VISITS.get().cyclic)
+                return r;
+            if (ci.cacheField != null)
+                ci.cacheField.setInt(a, r);
+            else
+                ci.cache.put(a, r);
+            return r;
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    /**
+     * Computes hash code for an object annotated by {@link JAUEquals}
+     *
+     * @param a the object
+     * @param ci class information
+     * @param initialNonZeroOddNumber
+     *            a non-zero, odd number used as the initial value
+     * @param multiplierNonZeroOddNumber
+     *            a non-zero, odd number used as the multiplier
+     * @return hash code
+     */
+    static int hashCodeAnnotated(Object a, ClassInfo ci,
+            int initialNonZeroOddNumber, int multiplierNonZeroOddNumber) {
+        Field[] fields = ci.fields;
+        int result = initialNonZeroOddNumber;
+        JAUInterface impl = getImplementation(ci);
+        if (impl != null) {
+            result = impl.hashCode(ci, a, initialNonZeroOddNumber,
+                    multiplierNonZeroOddNumber);
+        } else {
+            for (int i = 0; i < fields.length; i++) {
+                Field f = fields[i];
+                try {
+                    switch (ci.types[i]) {
+                        case ClassInfo.INTEGER_TYPE:
+                            result += multiplierNonZeroOddNumber * f.getInt(a);
+                            break;
+                        case ClassInfo.BYTE_TYPE:
+                            result += multiplierNonZeroOddNumber * f.getByte(a);
+                            break;
+                        case ClassInfo.SHORT_TYPE:
+                            result += multiplierNonZeroOddNumber * f.getShort(a);
+                            break;
+                        case ClassInfo.LONG_TYPE:
+                            long value = f.getLong(a);
+                            result += multiplierNonZeroOddNumber *
+                                    (int)(value ^ (value >>> 32));
+                            break;
+                        case ClassInfo.FLOAT_TYPE:
+                            result += multiplierNonZeroOddNumber *
+                                    Float.floatToIntBits(f.getFloat(a));
+                            break;
+                        case ClassInfo.DOUBLE_TYPE:
+                            long bits = Double.doubleToLongBits(f.getDouble(a));
+                            result += multiplierNonZeroOddNumber *
+                                    (int)(bits ^ (bits >>> 32));
+                            break;
+                        case ClassInfo.CHARACTER_TYPE:
+                            result += multiplierNonZeroOddNumber *
+                                    (int) (f.getChar(a));
+                            break;
+                        default:
+                            result += multiplierNonZeroOddNumber *
+                                    hashCode(f.get(a));
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
+                } catch (IllegalAccessException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts an invocation for a class and prepares IMPLEMENTATION for it
+     * after {@link #THRESHOLD} invocations. Only one thread performs the
+     * preparation, other threads continue to use reflection until it is
+     * finished. If the preparation fails, reflection is used for the class
+     * from then on.
+     *
+     * @param ci class information
+     * @return IMPLEMENTATION or null if reflection should be used
+     */
+    private static JAUInterface getImplementation(ClassInfo ci) {
+        if (ci.state == ClassInfo.HOT)
+            return IMPLEMENTATION;
+        if (IMPLEMENTATION == null || ++ci.invocations <= THRESHOLD ||
+                !STATE.compareAndSet(ci, ClassInfo.COLD, ClassInfo.COMPILING))
+            return null;
+
+        try {
+            IMPLEMENTATION.update(ci);
+            ci.state = ClassInfo.HOT;
+            return IMPLEMENTATION;
+        } catch (RuntimeException ex) {
+            // reflection will be used
+            ci.state = ClassInfo.FAILED;
+            return null;
+        } catch (LinkageError ex) {
+            ci.state = ClassInfo.FAILED;
+            return null;
+        } catch (InternalError ex) {
+            ci.state = ClassInfo.FAILED;
+            return null;
+        } catch (Error ex) {
+            ci.state = ClassInfo.FAILED;
+            throw ex;
+        }
+    }
+
+    /**
+     * Searches for a helper class generated by {@link JAUProcessor}.
+     *
+     * @param plan information about the class
+     * @param c a class
+     * @param operation one of the JAUHelper.EQUALS, JAUHelper.HASHCODE etc.
+     *     constants
+     * @return the helper or null if there is no helper for the specified
+     *     operation
+     */
+    private static JAUHelper getHelper(ClassPlan plan, Class c,
+            int operation) {
+        if (ADAPTIVE && operation == JAUHelper.EQUALS)
+            return null;
+
+        JAUHelper h = plan.helper;
+        if (h == null) {
+            h = NO_HELPER;
+            ClassLoader cl = c.getClassLoader();
+            if (cl != null && !c.isArray()) {
+                try {
+                    Class hc = Class.forName(
+                            c.getName() + JAUProcessor.SUFFIX, true, cl);
+                    if (JAUHelper.class.isAssignableFrom(hc))
+                        h = (JAUHelper) hc.getDeclaredConstructor()
+                                .newInstance();
+                } catch (ClassNotFoundException ex) {
+                    // no helper
+                } catch (ReflectiveOperationException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
+                }
+            }
+            plan.helper = h;
+        }
+        return (h.operations() & operation) != 0 ? h : null;
+    }
+
+    /**
+     * @param c a class
+     * @return registered hash coder for the class or null
+     */
+    static HashCoder getHashCoder(Class c) {
+        return PLANS.get(c).hashCoder;
+    }
+
+    /**
+     * Returns information about a class for an operation.
+     *
+     * @param c a class
+     * @param operation ClassPlan.EQUALS, ClassPlan.HASHCODE etc.
+     * @return information about annotation
+     */
+    static ClassInfo getClassInfo(Class c, int operation) {
+        return getClassInfo(PLANS.get(c), c, operation);
+    }
+
+    /**
+     * Returns information about a class for an operation. The information
+     * is computed only once, concurrent callers wait for the first one.
+     *
+     * @param plan information about the class
+     * @param c a class
+     * @param operation ClassPlan.EQUALS, ClassPlan.HASHCODE etc.
+     * @return information about annotation
+     */
+    private static ClassInfo getClassInfo(ClassPlan plan, Class c,
+            int operation) {
+        ClassInfo ci = plan.infos.get(operation);
+        if (ci == null) {
+            synchronized (plan) {
+                ci = plan.infos.get(operation);
+                if (ci == null) {
+                    ci = createClassInfo(c, operation);
+                    plan.infos.set(operation, ci);
+                }
+            }
+        }
+        return ci;
+    }
+
+    /**
+     * Checks whether a class is annotated for an operation (directly
+     * or through a package) and collects the fields.
+     *
+     * The fields of annotated superclasses are included if the annotation
+     * is inherited, so that each operation is a single loop over
+     * {@link ClassInfo#fields}. Superclass fields come first for
+     * compare() and last otherwise.
+     *
+     * @param c a class
+     * @param operation ClassPlan.EQUALS, ClassPlan.HASHCODE etc.
+     * @return information about annotation
+     */
+    private static ClassInfo createClassInfo(Class c, int operation) {
+        Class annotationClass = ANNOTATIONS[operation];
+        BooleanFunc includeFunc = INCLUDE_FUNCS[operation];
+
+        // firstly, check package annotation
+        Package p = c.getPackage();
+        boolean include = false;
+        if (p != null) {
+            Annotation annotation = p.getAnnotation(annotationClass);
+            if (annotation != null && includeFunc.perform(annotation))
+                include = true;
+        }
+
+        // class annotation is more important if present
+        Annotation annotation = c.getAnnotation(annotationClass);
+        if (annotation != null)
+            include = includeFunc.perform(annotation);
+
+        ClassInfo ci = new ClassInfo();
+        ci.annotated = include;
+        ci.annotation = annotation;
+        ci.annotationClass = annotationClass;
+        // Unsafe cannot get field offsets for records and hidden classes
+        if ((c.isRecord() || c.isHidden()) &&
+                IMPLEMENTATION instanceof JAUUnsafe)
+            ci.state = ClassInfo.FAILED;
+        // fields of classes that are not annotated are never accessed.
+        // Making them accessible would fail for JDK classes on Java 9+.
+        if (include) {
+            Field[] fields = getFieldsFor(c, annotationClass, includeFunc,
+                    ALLFIELDS_FUNCS[operation]);
+            Class parentClass = c.getSuperclass();
+            if ((annotation == null ||
+                    INHERITED_FUNCS[operation].perform(annotation)) &&
+                    parentClass != null && parentClass != Object.class) {
+                ClassInfo parentci = getClassInfo(parentClass, operation);
+                if (parentci.annotated) {
+                    Field[] all = new Field[fields.length +
+                            parentci.fields.length];
+                    if (operation == ClassPlan.COMPARETO) {
+                        System.arraycopy(parentci.fields, 0, all, 0,
+                                parentci.fields.length);
+                        System.arraycopy(fields, 0, all,
+                                parentci.fields.length, fields.length);
+                    } else {
+                        System.arraycopy(fields, 0, all, 0, fields.length);
+                        System.arraycopy(parentci.fields, 0, all,
+                                fields.length, parentci.fields.length);
+                    }
+                    fields = all;
+                }
+            }
+            ci.fields = fields;
+        } else {
+            ci.fields = new Field[0];
+        }
+        ci.offsets = new long[ci.fields.length];
+        ci.types = new int[ci.fields.length];
+        for (int i = 0; i < ci.fields.length; i++) {
+            Class fc = ci.fields[i].getType();
+            if (fc == Integer.TYPE) {
+                ci.types[i] = ClassInfo.INTEGER_TYPE;
+            } else if (fc == Byte.TYPE) {
+                ci.types[i] = ClassInfo.BYTE_TYPE;
+            } else if (fc == Short.TYPE) {
+                ci.types[i] = ClassInfo.SHORT_TYPE;
+            } else if (fc == Long.TYPE) {
+                ci.types[i] = ClassInfo.LONG_TYPE;
+            } else if (fc == Float.TYPE) {
+                ci.types[i] = ClassInfo.FLOAT_TYPE;
+            } else if (fc == Double.TYPE) {
+                ci.types[i] = ClassInfo.DOUBLE_TYPE;
+            } else if (fc == Character.TYPE) {
+                ci.types[i] = ClassInfo.CHARACTER_TYPE;
+            } else if (fc == Boolean.TYPE) {
+                ci.types[i] = ClassInfo.BOOLEAN_TYPE;
+            } else {
+                ci.types[i] = ClassInfo.OTHER_TYPE;
+            }
+        }
+        for (int i = 0; i < ci.fields.length; i++) {
+            if (ci.types[i] == ClassInfo.OTHER_TYPE &&
+                    mayReference(ci.fields[i].getType()))
+                ci.references = true;
+        }
+        if (include && (annotation instanceof JAUHashCode ||
+                annotation instanceof JAUToString) && isCache(annotation)) {
+            ci.cached = true;
+            Class type = annotation instanceof JAUHashCode ? Integer.TYPE :
+                    String.class;
+            for (Class k = c; k != null && ci.cacheField == null;
+                    k = k.getSuperclass()) {
+                for (Field f: k.getDeclaredFields()) {
+                    Annotation an = f.getAnnotation(annotationClass);
+                    if (an != null && isCache(an) && f.getType() == type &&
+                            Modifier.isTransient(f.getModifiers()) &&
+                            !Modifier.isStatic(f.getModifiers()) &&
+                            f.trySetAccessible()) {
+                        ci.cacheField = f;
+                        break;
+                    }
+                }
+            }
+            if (ci.cacheField == null)
+                ci.cache = new WeakIdentityTable<Object>();
+        }
+        if (ADAPTIVE && annotationClass == JAUEquals.class) {
+            int[] costs = new int[ci.fields.length];
+            for (int i = 0; i < costs.length; i++)
+                costs[i] = ci.types[i] == ClassInfo.OTHER_TYPE ? 1 : 0;
+            ci.order = new AdaptiveOrder(costs);
+        }
+        if (annotationClass == JAUToMap.class) {
+            ci.names = new String[ci.fields.length];
+            for (int i = 0; i < ci.fields.length; i++) {
+                JAUToMap an = ci.fields[i].getAnnotation(JAUToMap.class);
+                String name = an == null ? "" : an.name();
+                ci.names[i] = name.length() == 0 ?
+                        ci.fields[i].getName() : name;
+            }
+        }
+        return ci;
+    }
+
+    /**
+     * Compares 2 objects like {@link Object#equals(java.lang.Object)}. Classes
+     * should be annotated using {@link JAUEquals} (directly or through the
+     * corresponding package) to be compared using reflection. Another way
+     * is to register a user defined object to copy values via
+     * {@link #registerComparator(java.lang.Class, java.util.Comparator) }
+     * At last .equals(Object) is called.
+     *
+     * Static and synthetic fields will be ignored.
+     *
+     * @param a first object or null
+     * @param b second object or null
+     * @return
+     * <ul>
+     *     <li>true, if (a == null) && (b == null)</li>
+     *     <li>false, if (a == null) && (b != null)</li>
+     *     <li>false, if (a != null) && (b == null)</li>
+     *     <li>true, if (a == b)</li>
+     *     <li>false, if (a.getClass() != b.getClass())</li>
+     *     <li>arrays are compared deeply using this method for each element
+     *     for classes annotated with {@link JAUEquals}</li>
+     *     <li>If a class is not annotated, but implements java.util.Map,
+     *         it is compared so {@link #equals(java.lang.Object)} is called for
+     *         each value instead of a.equals(b)</li>
+     *     <li>a.equals(b) otherwise</li>
+     * </ul>
+     */
+    public static boolean equals(Object a, Object b) {
+        if (a == b)
+            return true;
+        if (a == null || b == null)
+            return false;
+
+        Class ca = a.getClass();
+        Class cb = b.getClass();
+        if (ca != cb)
+            return false;
+
+        ClassPlan plan = PLANS.get(ca);
+        JAUHelper h = getHelper(plan, ca, JAUHelper.EQUALS);
+        if (h != null && (h.operations() & JAUHelper.REFERENCES) == 0)
+            return h.equals(a, b);
+
+        ClassInfo ci = h == null ? getClassInfo(plan, ca, ClassPlan.EQUALS) :
+                null;
+        if (h != null || ci.references) {
+            Visits v = EQUALS_VISITS.get();
+            // a pair that is already being compared is assumed to be equal
+            if (!v.enter(a, b))
+                return true;
+            try {
+                if (v.depth > ITERATIVE_DEPTH && ci == null)
+                    ci = getClassInfo(plan, ca, ClassPlan.EQUALS);
+                if (v.depth > ITERATIVE_DEPTH && ci.annotated)
+                    return Iterative.equals(a, b, ci, v);
+                return equals(a, b, plan, h, ci);
+            } finally {
+                v.exit(a, b);
+            }
+        }
+        return equals(a, b, plan, h, ci);
+    }
+
+    /**
+     * Compares 2 objects of the same class without cycle detection.
+     *
+     * @param a first object
+     * @param b second object
+     * @param plan information about the class
+     * @param h generated helper or null
+     * @param ci information about the class for equals() or null if the
+     *     helper is used
+     * @return true = equal
+     */
+    private static boolean equals(Object a, Object b, ClassPlan plan,
+            JAUHelper h, ClassInfo ci) {
+        Class ca = a.getClass();
+        if (h != null)
+            return h.equals(a, b);
+
+        if (ci.annotated) {
             try {
-                return equalsAnnotated(a, b, ca, ci);
+                return equalsAnnotated(a, b, ci);
             } catch (IllegalArgumentException ex) {
                 throw (InternalError) new InternalError(
                         ex.getMessage()).initCause(ex);
@@ -752,10 +1436,10 @@ public class JAU {
             else if (ca == boolean[].class)
                 return Arrays.equals((boolean[]) a, (boolean[]) b);
             else {
+                Object[] arra = (Object[]) a;
+                Object[] arrb = (Object[]) b;
                 for (int i = 0; i < lengtha; i++) {
-                    Object ela = Array.get(a, i);
-                    Object elb = Array.get(b, i);
-                    if (!equals(ela, elb))
+                    if (!equals(arra[i], arrb[i]))
                         return false;
                 }
                 return true;
@@ -763,7 +1447,7 @@ public class JAU {
         } else if (ca == String.class) {
             return ((String) a).equals(b);
         } else {
-            Comparator comparator = COMPARATORS_EQUALS.get(ca);
+            Comparator comparator = plan.equalsComparator;
             if (comparator != null)
                 return comparator.compare(a, b) == 0;
             else
@@ -771,69 +1455,104 @@ public class JAU {
         }
     }
 
+    /**
+     * Compares 2 objects like
+     * {@link #equals(java.lang.Object, java.lang.Object)}, but the elements
+     * of large arrays of objects and large ArrayLists or Vectors are
+     * compared by several threads (fork/join). All threads stop as soon as
+     * different elements are found.
+     *
+     * @param a first object or null
+     * @param b second object or null
+     * @return true = equal
+     */
+    public static boolean parallelEquals(Object a, Object b) {
+        if (a == b)
+            return true;
+        if (a == null || b == null || a.getClass() != b.getClass())
+            return false;
+
+        if (a instanceof Object[]) {
+            Object[] arra = (Object[]) a;
+            Object[] arrb = (Object[]) b;
+            if (arra.length != arrb.length)
+                return false;
+            if (arra.length > ParallelTasks.CHUNK)
+                return ParallelTasks.equals(arra, arrb);
+        } else if (a instanceof List && a instanceof RandomAccess &&
+                PLANS.get(a.getClass()).equalsComparator ==
+                ListComparator.INSTANCE) {
+            List la = (List) a;
+            List lb = (List) b;
+            if (la.size() != lb.size())
+                return false;
+            if (la.size() > ParallelTasks.CHUNK)
+                return ParallelTasks.equals(la, lb);
+        }
+        return equals(a, b);
+    }
+
     /**
      * Compares 2 objects annotated by {@link JAUEquals}
      *
      * @param a first object
      * @param b second object
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
      * @param ci information about the class
      * @return true = equals
      */
-    private static boolean equalsAnnotated(Object a, Object b,
-            Class ca, ClassInfo ci) throws IllegalArgumentException,
-            IllegalAccessException {
-        if (IMPLEMENTATION != null) {
-            if (!IMPLEMENTATION.equals(ci, a, b))
+    private static boolean equalsAnnotated(Object a, Object b, ClassInfo ci)
+            throws IllegalArgumentException, IllegalAccessException {
+        JAUInterface impl = getImplementation(ci);
+        if (impl != null) {
+            if (!impl.equals(ci, a, b))
                 return false;
         } else {
-            for (Field f: ci.fields) {
-                Class c = f.getType();
-                if (c == Integer.TYPE) {
-                    if (f.getInt(a) != f.getInt(b))
-                        return false;
-                } else if (c == Byte.TYPE) {
-                    if (f.getByte(a) != f.getByte(b))
-                        return false;
-                } else if (c == Short.TYPE) {
-                    if (f.getShort(a) != f.getShort(b))
-                        return false;
-                } else if (c == Long.TYPE) {
-                    if (f.getLong(a) != f.getLong(b))
-                        return false;
-                } else if (c == Float.TYPE) {
-                    if (Float.floatToIntBits(f.getFloat(a)) !=
-                            Float.floatToIntBits(f.getFloat(b)))
-                        return false;
-                } else if (c == Double.TYPE) {
-                    if (Double.doubleToLongBits(f.getDouble(a)) !=
-                            Double.doubleToLongBits(f.getDouble(b)))
-                        return false;
-                } else if (c == Character.TYPE) {
-                    if (f.getChar(a) != f.getChar(b))
-                        return false;
-                } else {
-                    if (!equals(f.get(a), f.get(b)))
-                        return false;
+            AdaptiveOrder order = ci.order;
+            int[] indexes = order == null ? null : order.order;
+            for (int k = 0; k < ci.fields.length; k++) {
+                int i = indexes == null ? k : indexes[k];
+                if (!equals(ci.fields[i], a, b)) {
+                    if (order != null)
+                        order.mismatch(i);
+                    return false;
                 }
             }
         }
-        if (ci.useParent) {
-            Class parentClass = ca.getSuperclass();
-            ClassInfo cip = getClassInfo(
-                    CLASSINFO_EQUALS,
-                    parentClass,
-                    JAUEquals.class, JAU_EQUALS_INCLUDE, JAU_EQUALS_ALLFIELDS);
-            if (cip.annotated)
-                return equalsAnnotated(a, b, parentClass, cip);
-            else
-                return false;
-        }
-
         return true;
     }
 
+    /**
+     * Compares the values of one field.
+     *
+     * @param f the field
+     * @param a first object
+     * @param b second object
+     * @return true = the values are equal
+     */
+    private static boolean equals(Field f, Object a, Object b)
+            throws IllegalArgumentException, IllegalAccessException {
+        Class c = f.getType();
+        if (c == Integer.TYPE) {
+            return f.getInt(a) == f.getInt(b);
+        } else if (c == Byte.TYPE) {
+            return f.getByte(a) == f.getByte(b);
+        } else if (c == Short.TYPE) {
+            return f.getShort(a) == f.getShort(b);
+        } else if (c == Long.TYPE) {
+            return f.getLong(a) == f.getLong(b);
+        } else if (c == Float.TYPE) {
+            return Float.floatToIntBits(f.getFloat(a)) ==
+                    Float.floatToIntBits(f.getFloat(b));
+        } else if (c == Double.TYPE) {
+            return Double.doubleToLongBits(f.getDouble(a)) ==
+                    Double.doubleToLongBits(f.getDouble(b));
+        } else if (c == Character.TYPE) {
+            return f.getChar(a) == f.getChar(b);
+        } else {
+            return equals(f.get(a), f.get(b));
+        }
+    }
+
     /**
      * Copies all data from one object to another (deep copy).
      * Classes should be annotated using {@link JAUCopy}
@@ -896,21 +1615,65 @@ public class JAU {
                 }
             }
         } else {
-            ClassInfo ci = getClassInfo(CLASSINFO_COPY, ca, JAUCopy.class,
-                    JAU_COPY_INCLUDE, JAU_COPY_ALLFIELDS);
-            if (ci.annotated) {
-                copyAnnotated(a, b, ca, ci);
+            ClassPlan plan = PLANS.get(ca);
+            JAUHelper h = getHelper(plan, ca, JAUHelper.COPY);
+            if (h != null && (h.operations() & JAUHelper.REFERENCES) == 0) {
+                h.copy(a, b);
+                return;
+            }
+
+            ClassInfo ci = h == null ? getClassInfo(plan, ca, ClassPlan.COPY) :
+                    null;
+            if (h != null || ci.references) {
+                Visits v = COPY_VISITS.get();
+                if (v.depth >= ITERATIVE_DEPTH && ci == null)
+                    ci = getClassInfo(plan, ca, ClassPlan.COPY);
+                if (v.depth >= ITERATIVE_DEPTH && ci.annotated) {
+                    Iterative.copy(a, b, ci);
+                    return;
+                }
+                v.depth++;
+                try {
+                    copy(a, b, plan, h, ci);
+                } finally {
+                    v.depth--;
+                }
             } else {
-                Copier copier = COPIERS.get(ca);
-                if (copier != null)
-                    copier.copy(a, b);
-                else
-                    throw new IllegalArgumentException(
-                            "Class " + ca + " is not annotated for copy");
+                copy(a, b, plan, h, ci);
             }
         }
     }
 
+    /**
+     * Copies the fields of an object that is not an array.
+     *
+     * @param a source
+     * @param b target of the same class
+     * @param plan information about the class
+     * @param h generated helper or null
+     * @param ci information about the class for copy() or null if the
+     *     helper is used
+     */
+    private static void copy(Object a, Object b, ClassPlan plan,
+            JAUHelper h, ClassInfo ci) {
+        Class ca = a.getClass();
+        if (h != null) {
+            h.copy(a, b);
+            return;
+        }
+
+        if (ci.annotated) {
+            copyAnnotated(a, b, ci);
+        } else {
+            Copier copier = plan.copier;
+            if (copier != null)
+                copier.copy(a, b);
+            else
+                throw new IllegalArgumentException(
+                        "Class " + ca + " is not annotated for copy");
+        }
+    }
+
     /**
      * Creates a deep copy of an object.
      * Firstly, this method creates an object: either by
@@ -947,11 +1710,63 @@ public class JAU {
             return null;
 
         Class ca = a.getClass();
+        if (isImmutableClass(ca))
+            return a;
+
+        Object result = newInstance(a, ca);
+        if (result == null) {
+            try {
+                Constructor constructor = ca.getConstructor(new Class[] {ca});
+                if (!constructor.isAccessible())
+                    constructor.setAccessible(true);
+                return constructor.newInstance(new Object[] {a});
+            } catch (Exception ex) {
+                throw (InternalError) new InternalError(ex.getMessage()).
+                        initCause(ex);
+            }
+        }
+        copy(a, result);
+        return result;
+    }
+
+    /**
+     * Creates a deep copy of an object graph. Unlike
+     * {@link #clone(java.lang.Object)} every object is copied only once:
+     * an object referenced several times is also shared in the copy and
+     * cycles are copied as cycles. Objects that are cloned by a registered
+     * {@link Copier} or a copy constructor are treated as one unit.
+     *
+     * @param a an object or null
+     * @return null, if a == null, copy of {@code a} otherwise
+     */
+    public static Object cloneGraph(Object a) {
+        return new GraphCloner().clone(a);
+    }
+
+    /**
+     * Creates the same deep copy as {@link #clone(java.lang.Object)} using
+     * several threads (fork/join). Use {@link ParallelCloner} directly to
+     * choose the pool or to get statistics.
+     *
+     * @param a an object or null
+     * @return null, if a == null, copy of {@code a} otherwise
+     */
+    public static Object parallelClone(Object a) {
+        return new ParallelCloner().clone(a);
+    }
 
+    /**
+     * Creates the object that will be filled by
+     * {@link #copy(java.lang.Object, java.lang.Object)} in
+     * {@link #clone(java.lang.Object)}.
+     *
+     * @param a an object of a mutable class
+     * @param ca class of <code>a</code>
+     * @return new object or null if the copy constructor should be used
+     */
+    static Object newInstance(Object a, Class ca) {
         Object result;
-        if (isImmutableClass(ca)) {
-            result = a;
-        } else if (ca.isArray()) {
+        if (ca.isArray()) {
             result = Array.newInstance(ca.getComponentType(),
                     Array.getLength(a));
         } else if (a instanceof Cloneable) {
@@ -982,32 +1797,21 @@ public class JAU {
                 }
             } else {
                 try {
-                    constructor = ca.getConstructor(new Class[] {ca});
+                    ca.getConstructor(new Class[] {ca});
+                    return null;
                 } catch (NoSuchMethodException ex) {
-                    constructor = null;
+                    // ignore
                 } catch (SecurityException ex) {
-                    constructor = null;
+                    // ignore
                 }
-                if (constructor != null) {
-                    if (!constructor.isAccessible())
-                        constructor.setAccessible(true);
-                    try {
-                        return constructor.newInstance(new Object[] {a});
-                    } catch (Exception ex) {
-                        throw (InternalError) new InternalError(ex.getMessage()).
-                                initCause(ex);
-                    }
-                } else {
-                    try {
-                        result = ca.newInstance();
-                    } catch (Exception ex) {
-                        throw (InternalError) new InternalError(ex.getMessage()).
-                                initCause(ex);
-                    }
+                try {
+                    result = ca.newInstance();
+                } catch (Exception ex) {
+                    throw (InternalError) new InternalError(ex.getMessage()).
+                            initCause(ex);
                 }
             }
         }
-        copy(a, result);
         return result;
     }
 
@@ -1016,61 +1820,71 @@ public class JAU {
      *
      * @param a first object
      * @param b second object
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
-     * @param classAnnotation annotation of the class or null
      * @param ci info about the class
      * @return true = equals
      */
-    private static void copyAnnotated(Object a, Object b,
-            Class ca, ClassInfo ci) {
-        JAUCopy classAnnotation = (JAUCopy) ci.annotation;
-        for (int i = 0; i < ci.fields.length; i++) {
-            Field f = ci.fields[i];
-            try {
-                switch (ci.types[i]) {
-                    case ClassInfo.INTEGER_TYPE:
-                        f.setInt(b, f.getInt(a));
-                        break;
-                    case ClassInfo.BYTE_TYPE:
-                        f.setByte(b, f.getByte(a));
-                        break;
-                    case ClassInfo.SHORT_TYPE:
-                        f.setShort(b, f.getShort(a));
-                        break;
-                    case ClassInfo.LONG_TYPE:
-                        f.setLong(b, f.getLong(a));
-                        break;
-                    case ClassInfo.FLOAT_TYPE:
-                        f.setFloat(b, f.getFloat(a));
-                        break;
-                    case ClassInfo.DOUBLE_TYPE:
-                        f.setDouble(b, f.getDouble(a));
-                        break;
-                    case ClassInfo.CHARACTER_TYPE:
-                        f.setChar(b, f.getChar(a));
-                        break;
-                    default:
+    private static void copyAnnotated(Object a, Object b, ClassInfo ci) {
+        JAUInterface impl = getImplementation(ci);
+        if (impl != null) {
+            impl.copy(ci, a, b);
+        } else {
+            for (int i = 0; i < ci.fields.length; i++) {
+                try {
+                    if (!copyPrimitive(ci, i, a, b)) {
+                        Field f = ci.fields[i];
                         f.set(b, clone(f.get(a)));
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
+                } catch (IllegalAccessException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
                 }
-            } catch (IllegalArgumentException ex) {
-                throw (InternalError) new InternalError(
-                        ex.getMessage()).initCause(ex);
-            } catch (IllegalAccessException ex) {
-                throw (InternalError) new InternalError(
-                        ex.getMessage()).initCause(ex);
             }
         }
-        if (classAnnotation == null || classAnnotation.inherited()) {
-            Class parentClass = ca.getSuperclass();
-            if (parentClass == null || parentClass == Object.class)
-                return;
+    }
 
-            ClassInfo parentci = getClassInfo(CLASSINFO_COPY,
-                    parentClass, JAUCopy.class, JAU_COPY_INCLUDE,
-                    JAU_COMPARETO_ALLFIELDS);
-            if (parentci.annotated)
-                copyAnnotated(a, b, parentClass, parentci);
+    /**
+     * Copies the value of a field if it has a primitive type.
+     *
+     * @param ci information about the class
+     * @param i index of the field
+     * @param a source object
+     * @param b target object
+     * @return false if the field is a reference and was not copied
+     * @throws IllegalAccessException if the field cannot be accessed
+     */
+    static boolean copyPrimitive(ClassInfo ci, int i, Object a, Object b)
+            throws IllegalAccessException {
+        Field f = ci.fields[i];
+        switch (ci.types[i]) {
+            case ClassInfo.INTEGER_TYPE:
+                f.setInt(b, f.getInt(a));
+                return true;
+            case ClassInfo.BYTE_TYPE:
+                f.setByte(b, f.getByte(a));
+                return true;
+            case ClassInfo.SHORT_TYPE:
+                f.setShort(b, f.getShort(a));
+                return true;
+            case ClassInfo.LONG_TYPE:
+                f.setLong(b, f.getLong(a));
+                return true;
+            case ClassInfo.FLOAT_TYPE:
+                f.setFloat(b, f.getFloat(a));
+                return true;
+            case ClassInfo.DOUBLE_TYPE:
+                f.setDouble(b, f.getDouble(a));
+                return true;
+            case ClassInfo.CHARACTER_TYPE:
+                f.setChar(b, f.getChar(a));
+                return true;
+            case ClassInfo.BOOLEAN_TYPE:
+                f.setBoolean(b, f.getBoolean(a));
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -1105,6 +1919,13 @@ public class JAU {
      *  <li>1, if (a != null) && (b == null)</li>
      *  <li>0, if (a == b)</li>
      *  <li>arrays are compared deeply using this method for each element
+     *  <li>arrays of a primitive type are compared like Integer.compare(),
+     *         Double.compare() etc. for each element: MIN_VALUE is less
+     *         than all other values, -0.0 is less than 0.0, NaN is equal to
+     *         NaN and greater than all other values, false is less than
+     *         true. 0 is returned only if equals() returns true</li>
+     *  <li>a shorter array is less than a longer array that starts with
+     *         the same elements</li>
      *  <li>for classes annotated with JAUCompareTo only fields annotated with
      *         JAUCompareTo will be taken into account and compared</li>
      *  <li>a.compareTo(b) otherwise</li>
@@ -1130,99 +1951,286 @@ public class JAU {
             int lengtha = Array.getLength(a);
             int lengthb = Array.getLength(b);
 
+            if (ca.getComponentType().isPrimitive())
+                return PrimitiveArrays.compare(a, b);
+
+            Object[] arra = (Object[]) a;
+            Object[] arrb = (Object[]) b;
             int ub = Math.min(lengtha, lengthb);
-            if (ca == byte[].class) {
-                byte[] arra = (byte[]) a;
-                byte[] arrb = (byte[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i])
-                        return arra[i] - arrb[i];
-                }
-            } else if (ca == short[].class) {
-                short[] arra = (short[]) a;
-                short[] arrb = (short[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i])
-                        return arra[i] - arrb[i];
-                }
-            } else if (ca == int[].class) {
-                int[] arra = (int[]) a;
-                int[] arrb = (int[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i])
-                        return arra[i] - arrb[i];
-                }
-            } else if (ca == long[].class) {
-                long[] arra = (long[]) a;
-                long[] arrb = (long[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i])
-                        return (int) (arra[i] - arrb[i]);
+            for (int i = 0; i < ub; i++) {
+                int r = compare(arra[i], arrb[i]);
+                if (r != 0)
+                    return r;
+            }
+
+            return lengtha - lengthb;
+        } else {
+            ClassPlan plan = PLANS.get(ca);
+            JAUHelper h = getHelper(plan, ca, JAUHelper.COMPARETO);
+            if (h != null && (h.operations() & JAUHelper.REFERENCES) == 0)
+                return h.compare(a, b);
+
+            ClassInfo ci = h == null ?
+                    getClassInfo(plan, ca, ClassPlan.COMPARETO) : null;
+            if (h != null || ci.references) {
+                Visits v = COMPARE_VISITS.get();
+                if (v.depth >= ITERATIVE_DEPTH && ci == null)
+                    ci = getClassInfo(plan, ca, ClassPlan.COMPARETO);
+                if (v.depth >= ITERATIVE_DEPTH && ci.annotated)
+                    return Iterative.compare(a, b, ci);
+                v.depth++;
+                try {
+                    return compare(a, b, plan, h, ci);
+                } finally {
+                    v.depth--;
                 }
-            } else if (ca == char[].class) {
-                char[] arra = (char[]) a;
-                char[] arrb = (char[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i])
-                        return arra[i] - arrb[i];
+            }
+            return compare(a, b, plan, h, ci);
+        }
+    }
+
+    /**
+     * Compares 2 objects of the same class that is not an array.
+     *
+     * @param a first object
+     * @param b second object
+     * @param plan information about the class
+     * @param h generated helper or null
+     * @param ci information about the class for compare() or null if the
+     *     helper is used
+     * @return &lt; 0, 0 or &gt; 0
+     */
+    private static int compare(Object a, Object b, ClassPlan plan,
+            JAUHelper h, ClassInfo ci) {
+        Class ca = a.getClass();
+        if (h != null)
+            return h.compare(a, b);
+
+        if (ci.annotated) {
+            return compareAnnotated(a, b, ci);
+        } else if (a instanceof Comparable) {
+            return ((Comparable) a).compareTo(b);
+        } else {
+            Comparator comparator = plan.comparator;
+            if (comparator != null)
+                return comparator.compare(a, b);
+            else
+                throw new java.lang.IllegalArgumentException(
+                        "Cannot compare instances of the class " + ca);
+        }
+    }
+
+    /**
+     * Creates an equivalence for instances of the specified class. The class
+     * information and the generated helper are looked up once. The returned
+     * object can be stored in a static final field.
+     * Objects of other classes (e.g. subclasses) and classes with fields
+     * that may reference cycles are handled by
+     * {@link #equals(java.lang.Object, java.lang.Object)} and
+     * {@link #hashCode(java.lang.Object)}.
+     *
+     * @param <T> type of the objects
+     * @param c a class
+     * @return equivalence that works like
+     *     {@link #equals(java.lang.Object, java.lang.Object)} and
+     *     {@link #hashCode(java.lang.Object)}
+     */
+    public static <T> Equivalence<T> equivalence(final Class<T> c) {
+        final HashCoder<T> hasher = hasher(c);
+        ClassPlan plan = PLANS.get(c);
+        final JAUHelper h = getHelper(plan, c, JAUHelper.EQUALS);
+        final ClassInfo ci = getClassInfo(plan, c, ClassPlan.EQUALS);
+        final boolean annotated = ci.annotated;
+        final boolean direct = !ci.references;
+        return new Equivalence<T>() {
+            @Override
+            public boolean equals(T a, T b) {
+                if (a == b)
+                    return true;
+                if (a == null || b == null)
+                    return false;
+                if (direct && a.getClass() == c && b.getClass() == c) {
+                    if (h != null)
+                        return h.equals(a, b);
+                    if (annotated) {
+                        try {
+                            return equalsAnnotated(a, b, ci);
+                        } catch (IllegalArgumentException ex) {
+                            throw (InternalError) new InternalError(
+                                    ex.getMessage()).initCause(ex);
+                        } catch (IllegalAccessException ex) {
+                            throw (InternalError) new InternalError(
+                                    ex.getMessage()).initCause(ex);
+                        }
+                    }
                 }
-            } else if (ca == float[].class) {
-                float[] arra = (float[]) a;
-                float[] arrb = (float[]) b;
-                for (int i = 0; i < ub; i++) {
-                    int r = Float.compare(arra[i], arrb[i]);
-                    if (r != 0)
-                        return r;
+                return JAU.equals(a, b);
+            }
+
+            @Override
+            public int hash(T a) {
+                return hasher.hashCode(a);
+            }
+        };
+    }
+
+    /**
+     * Creates a hash coder for instances of the specified class. The class
+     * information and the generated helper are looked up once. The returned
+     * object can be stored in a static final field.
+     * Objects of other classes and classes with fields that may reference
+     * cycles are handled by {@link #hashCode(java.lang.Object)}.
+     *
+     * @param <T> type of the objects
+     * @param c a class
+     * @return hash coder that works like {@link #hashCode(java.lang.Object)}
+     */
+    public static <T> HashCoder<T> hasher(final Class<T> c) {
+        ClassPlan plan = PLANS.get(c);
+        final JAUHelper h = c.isArray() ? null :
+                getHelper(plan, c, JAUHelper.HASHCODE);
+        final ClassInfo ci = getClassInfo(plan, c, ClassPlan.HASHCODE);
+        final boolean annotated = ci.annotated && !c.isArray();
+        final boolean direct = !ci.cached && !ci.references;
+        return new HashCoder<T>() {
+            @Override
+            public int hashCode(T a) {
+                if (a != null && a.getClass() == c && direct) {
+                    if (h != null)
+                        return h.hashCode(a);
+                    if (annotated)
+                        return hashCodeAnnotated(a, ci,
+                                DEFAULT_INITIAL, DEFAULT_MULTIPLIER);
                 }
-            } else if (ca == double[].class) {
-                double[] arra = (double[]) a;
-                double[] arrb = (double[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i]) {
-                        int r = Double.compare(arra[i], arrb[i]);
-                        if (r != 0)
-                            return r;
+                return JAU.hashCode(a);
+            }
+        };
+    }
+
+    /**
+     * Creates a stringifier for instances of the specified class. The class
+     * information and the generated helper are looked up once. The returned
+     * object can be stored in a static final field.
+     * Objects of other classes and classes with fields that may reference
+     * cycles are handled by {@link #toString(java.lang.Object)}.
+     *
+     * @param <T> type of the objects
+     * @param c a class
+     * @return stringifier that works like {@link #toString(java.lang.Object)}
+     */
+    public static <T> Stringifier<T> stringifier(final Class<T> c) {
+        boolean plain = !c.isArray() && !c.isEnum() && c != String.class;
+        ClassPlan plan = PLANS.get(c);
+        final JAUHelper h = plain ? getHelper(plan, c, JAUHelper.TOSTRING) :
+                null;
+        final ClassInfo ci = getClassInfo(plan, c, ClassPlan.TOSTRING);
+        final boolean annotated = plain && ci.annotated;
+        final boolean direct = !ci.cached && !ci.references;
+        final String name = c.getCanonicalName();
+        return new Stringifier<T>() {
+            @Override
+            public String toString(T a) {
+                if (a == null || a.getClass() != c || !direct ||
+                        (h == null && !annotated))
+                    return JAU.toString(a);
+
+                StringBuilder sb = new StringBuilder(50);
+                sb.append(name).append("@").append(Integer.toHexString(
+                        System.identityHashCode(a))).append("(");
+                if (h != null) {
+                    h.toString(sb, a, false);
+                } else {
+                    try {
+                        toStringAnnotated(sb, a, ci, false);
+                    } catch (IllegalArgumentException ex) {
+                        throw (InternalError) new InternalError(
+                                ex.getMessage()).initCause(ex);
+                    } catch (IllegalAccessException ex) {
+                        throw (InternalError) new InternalError(
+                                ex.getMessage()).initCause(ex);
                     }
                 }
-            } else if (ca == boolean[].class) {
-                boolean[] arra = (boolean[]) a;
-                boolean[] arrb = (boolean[]) b;
-                for (int i = 0; i < ub; i++) {
-                    if (arra[i] != arrb[i]) {
-                        if (arra[i])
-                            return 1;
-                        else
-                            return -1;
+                sb.append(")");
+                return sb.toString();
+            }
+        };
+    }
+
+    /**
+     * Creates a copier for instances of the specified class. The class
+     * information and the generated helper are looked up once. The returned
+     * object can be stored in a static final field.
+     * Objects of other classes are handled by
+     * {@link #copy(java.lang.Object, java.lang.Object)}.
+     *
+     * @param <T> type of the objects
+     * @param c a class
+     * @return copier that works like
+     *     {@link #copy(java.lang.Object, java.lang.Object)}
+     */
+    public static <T> Copier<T> copier(final Class<T> c) {
+        boolean plain = !c.isArray() && !c.isEnum() && !c.isAnnotation();
+        ClassPlan plan = PLANS.get(c);
+        final JAUHelper h = plain ? getHelper(plan, c, JAUHelper.COPY) : null;
+        final ClassInfo ci = getClassInfo(plan, c, ClassPlan.COPY);
+        final boolean annotated = plain && ci.annotated;
+        return new Copier<T>() {
+            @Override
+            public void copy(T a, T b) {
+                if (a != null && b != null && a != b &&
+                        a.getClass() == c && b.getClass() == c) {
+                    if (h != null) {
+                        h.copy(a, b);
+                        return;
+                    }
+                    if (annotated) {
+                        copyAnnotated(a, b, ci);
+                        return;
                     }
                 }
-            } else {
-                for (int i = 0; i < ub; i++) {
-                    Object ela = Array.get(a, i);
-                    Object elb = Array.get(b, i);
-                    int r = compare(ela, elb);
-                    if (r != 0)
-                        return r;
-                }
+                JAU.copy(a, b);
             }
+        };
+    }
 
-            return lengtha - lengthb;
-        } else {
-            ClassInfo ci = getClassInfo(CLASSINFO_COMPARETO, ca,
-                    JAUCompareTo.class, JAU_COMPARETO_INCLUDE,
-                    JAU_COMPARETO_ALLFIELDS);
-            if (ci.annotated) {
-                return compareAnnotated(a, b, ca, ci);
-            } else if (a instanceof Comparable) {
-                return ((Comparable) a).compareTo(b);
-            } else {
-                Comparator comparator = COMPARATORS_COMPARETO.get(ca);
-                if (comparator != null)
-                    return comparator.compare(a, b);
-                else
-                    throw new java.lang.IllegalArgumentException(
-                            "Cannot compare instances of the class " + ca);
+    /**
+     * Creates a comparator for instances of the specified class. The class
+     * information and the generated helper are looked up once, so that
+     * sorting many objects does not repeat the searches done by
+     * {@link #compare(java.lang.Object, java.lang.Object)} for each pair.
+     * Objects of other classes (e.g. subclasses) are compared using
+     * {@link #compare(java.lang.Object, java.lang.Object)}.
+     *
+     * @param <T> type of the objects
+     * @param c a class
+     * @return comparator that works like
+     *     {@link #compare(java.lang.Object, java.lang.Object)}
+     */
+    public static <T> Comparator<T> comparator(final Class<T> c) {
+        ClassPlan plan = PLANS.get(c);
+        final JAUHelper h = c.isArray() ? null :
+                getHelper(plan, c, JAUHelper.COMPARETO);
+        final ClassInfo ci = c.isArray() ? null :
+                getClassInfo(plan, c, ClassPlan.COMPARETO);
+        final boolean annotated = ci != null && ci.annotated;
+        return new Comparator<T>() {
+            @Override
+            public int compare(T a, T b) {
+                if (a == b)
+                    return 0;
+                if (a == null)
+                    return -1;
+                if (b == null)
+                    return 1;
+                if (a.getClass() == c && b.getClass() == c) {
+                    if (h != null)
+                        return h.compare(a, b);
+                    if (annotated)
+                        return compareAnnotated(a, b, ci);
+                }
+                return JAU.compare(a, b);
             }
-        }
+        };
     }
 
     /**
@@ -1230,54 +2238,47 @@ public class JAU {
      *
      * @param a first object
      * @param b second object
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
-     * @param classAnnotation annotation of the class or null
      * @param ci cached class information
      * @return true = equals
      */
-    private static int compareAnnotated(Object a, Object b,
-            Class ca, ClassInfo ci) {
-        JAUCompareTo classAnnotation = (JAUCompareTo) ci.annotation;
-        int inheritedCompare = 0;
-        if (classAnnotation == null || classAnnotation.inherited()) {
-            Class parentClass = ca.getSuperclass();
-            if (parentClass == null || parentClass == Object.class) {
-                // nothing
-            } else {
-                ClassInfo parentci = getClassInfo(CLASSINFO_COMPARETO,
-                        parentClass, JAUCompareTo.class, JAU_COMPARETO_INCLUDE,
-                        JAU_COMPARETO_ALLFIELDS);
-                if (parentci.annotated)
-                    inheritedCompare = compareAnnotated(a, b, parentClass,
-                            parentci);
-            }
-        }
-        if (inheritedCompare != 0)
-            return inheritedCompare;
+    private static int compareAnnotated(Object a, Object b, ClassInfo ci) {
+        JAUInterface impl = getImplementation(ci);
+        if (impl != null)
+            return impl.compare(ci, a, b);
 
-        Field[] fields = getFieldsFor(ca, JAUCompareTo.class,
-                JAU_COMPARETO_INCLUDE, JAU_COMPARETO_ALLFIELDS);
-        for (Field f: fields) {
+        Field[] fields = ci.fields;
+        for (int i = 0; i < fields.length; i++) {
+            Field f = fields[i];
             try {
-                Class c = f.getType();
                 int r;
-                if (c == Byte.TYPE) {
-                    r = f.getByte(a) - f.getByte(b);
-                } else if (c == Short.TYPE) {
-                    r = f.getShort(a) - f.getShort(b);
-                } else if (c == Integer.TYPE) {
-                    r = f.getInt(a) - f.getInt(b);
-                } else if (c == Long.TYPE) {
-                    r = (int) (f.getLong(a) - f.getLong(b));
-                } else if (c == Float.TYPE) {
-                    r = Float.compare(f.getFloat(a), f.getFloat(b));
-                } else if (c == Double.TYPE) {
-                    r = Double.compare(f.getDouble(a), f.getDouble(b));
-                } else if (c == Character.TYPE) {
-                    r = f.getChar(a) - f.getChar(b);
-                } else {
-                    r = compare(f.get(a), f.get(b));
+                switch (ci.types[i]) {
+                    case ClassInfo.BYTE_TYPE:
+                        r = f.getByte(a) - f.getByte(b);
+                        break;
+                    case ClassInfo.SHORT_TYPE:
+                        r = f.getShort(a) - f.getShort(b);
+                        break;
+                    case ClassInfo.INTEGER_TYPE:
+                        r = compare(f.getInt(a), f.getInt(b));
+                        break;
+                    case ClassInfo.LONG_TYPE:
+                        r = compare(f.getLong(a), f.getLong(b));
+                        break;
+                    case ClassInfo.FLOAT_TYPE:
+                        r = Float.compare(f.getFloat(a), f.getFloat(b));
+                        break;
+                    case ClassInfo.DOUBLE_TYPE:
+                        r = Double.compare(f.getDouble(a), f.getDouble(b));
+                        break;
+                    case ClassInfo.CHARACTER_TYPE:
+                        r = f.getChar(a) - f.getChar(b);
+                        break;
+                    case ClassInfo.BOOLEAN_TYPE:
+                        boolean ba = f.getBoolean(a);
+                        r = ba == f.getBoolean(b) ? 0 : (ba ? 1 : -1);
+                        break;
+                    default:
+                        r = compare(f.get(a), f.get(b));
                 }
                 if (r != 0)
                     return r;
@@ -1293,6 +2294,17 @@ public class JAU {
         return 0;
     }
 
+    /**
+     * Compares 2 long values without overflow.
+     *
+     * @param a first value
+     * @param b second value
+     * @return -1, 0 or 1
+     */
+    private static int compare(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
     /**
      * Generates string representation of an object ({@link Object#toString()}).
      * Classes should be annotated using {@link JAUToString}
@@ -1312,6 +2324,29 @@ public class JAU {
         return sb.toString();
     }
 
+    /**
+     * @param a an annotation
+     * @return true = cache() is true
+     */
+    private static boolean isCache(Annotation a) {
+        if (a instanceof JAUHashCode)
+            return ((JAUHashCode) a).cache();
+        if (a instanceof JAUToString)
+            return ((JAUToString) a).cache();
+        return false;
+    }
+
+    /**
+     * @param f a field
+     * @return true = the field stores a cached value and is not used
+     *     otherwise (see cache() in JAUHashCode and JAUToString)
+     */
+    private static boolean isCache(Field f) {
+        JAUHashCode h = f.getAnnotation(JAUHashCode.class);
+        JAUToString t = f.getAnnotation(JAUToString.class);
+        return (h != null && h.cache()) || (t != null && t.cache());
+    }
+
     /**
      * Returns all fields necessary to perform equals() computation for the
      * specified class.
@@ -1341,6 +2376,8 @@ public class JAU {
             Annotation an = f.getAnnotation(annotationClass);
             if (an != null)
                 include &= includef.perform(an);
+            if (isCache(f))
+                include = false;
 
             if (include) {
                 r.add(f);
@@ -1377,11 +2414,15 @@ public class JAU {
             int lengtha = Array.getLength(a);
 
             sb.append(ca.getComponentType().getCanonicalName()).append("[");
-            for (int i = 0; i < lengtha; i++) {
-                if (i != 0)
-                    sb.append(", ");
-                Object ela = Array.get(a, i);
-                sb.append(toString(ela));
+            if (ca.getComponentType().isPrimitive()) {
+                PrimitiveArrays.append(sb, a);
+            } else {
+                Object[] arra = (Object[]) a;
+                for (int i = 0; i < lengtha; i++) {
+                    if (i != 0)
+                        sb.append(", ");
+                    toString(sb, arra[i], false);
+                }
             }
             sb.append("]");
         } else if (ca.isEnum()) {
@@ -1389,30 +2430,148 @@ public class JAU {
         } else if (ca == String.class) {
             sb.append('\"').append(a).append('\"');
         } else {
-            ClassInfo ci = getClassInfo(CLASSINFO_TOSTRING,
-                    ca, JAUToString.class, JAU_TOSTRING_INCLUDE,
-                    JAU_TOSTRING_ALLFIELDS);
-            if (ci.annotated) {
-                sb.append(ca.getCanonicalName()).append("@").
-                        append(Integer.toHexString(
-                        System.identityHashCode(a))).append("(");
+            ClassPlan plan = PLANS.get(ca);
+            JAUHelper h = getHelper(plan, ca, JAUHelper.TOSTRING);
+            int flags = h != null ? h.operations() : 0;
+            if (h != null && (flags & (JAUHelper.REFERENCES |
+                    JAUHelper.CACHED)) == 0) {
+                toString(sb, a, manyLines, h);
+                return;
+            }
+
+            ClassInfo ci = h == null || (flags & JAUHelper.CACHED) != 0 ?
+                    getClassInfo(plan, ca, ClassPlan.TOSTRING) : null;
+            if (ci == null || ci.references) {
+                Visits v = TOSTRING_VISITS.get();
+                if (!v.enter(a, null)) {
+                    // back reference to an object that is being printed
+                    sb.append(ca.getCanonicalName()).append("@").
+                            append(Integer.toHexString(
+                            System.identityHashCode(a))).append("(...)");
+                    return;
+                }
                 try {
-                    toStringAnnotated(sb, a, ca, ci, manyLines);
-                } catch (IllegalArgumentException ex) {
-                    throw (InternalError) new InternalError(
-                            ex.getMessage()).initCause(ex);
-                } catch (IllegalAccessException ex) {
-                    throw (InternalError) new InternalError(
-                            ex.getMessage()).initCause(ex);
+                    if (v.depth > ITERATIVE_DEPTH && ci == null)
+                        ci = getClassInfo(plan, ca, ClassPlan.TOSTRING);
+                    if (v.depth > ITERATIVE_DEPTH && ci.annotated &&
+                            (manyLines || !ci.cached))
+                        Iterative.toString(sb, a, manyLines, ci, v);
+                    else if (ci == null)
+                        toString(sb, a, manyLines, h);
+                    else
+                        toString(sb, a, manyLines, plan, ci);
+                } finally {
+                    v.exit(a, null);
                 }
-                sb.append(")");
             } else {
-                Stringifier s = STRINGIFIERS.get(ca);
-                if (s != null)
-                    sb.append(s.toString(a));
-                else
-                    sb.append(a.toString());
+                toString(sb, a, manyLines, plan, ci);
+            }
+        }
+    }
+
+    /**
+     * Creates the string representation of an object with the generated
+     * helper.
+     *
+     * @param sb output
+     * @param a the object
+     * @param manyLines true = each field on its own line
+     * @param h helper for the class of the object
+     */
+    private static void toString(StringBuilder sb, Object a,
+            boolean manyLines, JAUHelper h) {
+        sb.append(a.getClass().getCanonicalName()).append("@").
+                append(Integer.toHexString(
+                System.identityHashCode(a))).append("(");
+        h.toString(sb, a, manyLines);
+        sb.append(")");
+    }
+
+    /**
+     * Creates the string representation of an object that is not an
+     * array, an enumeration value or a string without cycle detection.
+     *
+     * @param sb output
+     * @param a the object
+     * @param manyLines true = each field on its own line
+     * @param plan information about the class
+     * @param ci information about the class for toString()
+     */
+    private static void toString(StringBuilder sb, Object a,
+            boolean manyLines, ClassPlan plan, ClassInfo ci) {
+        Class ca = a.getClass();
+        if (!manyLines && ci.cached) {
+            sb.append(cachedToString(a, plan, ci));
+            return;
+        }
+
+        JAUHelper h = getHelper(plan, ca, JAUHelper.TOSTRING);
+        if (h != null) {
+            toString(sb, a, manyLines, h);
+            return;
+        }
+
+        if (ci.annotated) {
+            sb.append(ca.getCanonicalName()).append("@").
+                    append(Integer.toHexString(
+                    System.identityHashCode(a))).append("(");
+            try {
+                toStringAnnotated(sb, a, ci, manyLines);
+            } catch (IllegalArgumentException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
+            } catch (IllegalAccessException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
             }
+            sb.append(")");
+        } else {
+            Stringifier s = plan.stringifier;
+            if (s != null)
+                sb.append(s.toString(a));
+            else
+                sb.append(a.toString());
+        }
+    }
+
+    /**
+     * Returns the stored string representation for an object annotated with
+     * JAUToString(cache = true). The string is computed and stored if
+     * necessary.
+     *
+     * @param a the object
+     * @param plan information about the class
+     * @param ci class information
+     * @return string representation on one line
+     */
+    private static String cachedToString(Object a, ClassPlan plan,
+            ClassInfo ci) {
+        try {
+            String r = (String) (ci.cacheField != null ?
+                    ci.cacheField.get(a) : ci.cache.get(a));
+            if (r != null)
+                return r;
+
+            Class ca = a.getClass();
+            StringBuilder sb = new StringBuilder(50);
+            sb.append(ca.getCanonicalName()).append("@").
+                    append(Integer.toHexString(
+                    System.identityHashCode(a))).append("(");
+            JAUHelper h = getHelper(plan, ca, JAUHelper.TOSTRING);
+            if (h != null)
+                h.toString(sb, a, false);
+            else
+                toStringAnnotated(sb, a, ci, false);
+            sb.append(")");
+            r = sb.toString();
+            if (ci.cacheField != null)
+                ci.cacheField.set(a, r);
+            else
+                ci.cache.put(a, r);
+            return r;
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
         }
     }
 
@@ -1422,73 +2581,58 @@ public class JAU {
      *
      * @param sb string representation appended here
      * @param a the object
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
-     * @param classAnnotation annotation of the class or null
      * @param ci cached class information
      * @param manyLines spreads the string representation over many lines
      * @return string representation
      */
     private static void toStringAnnotated(StringBuilder sb, Object a,
-            Class ca, ClassInfo ci, boolean manyLines)
+            ClassInfo ci, boolean manyLines)
             throws IllegalArgumentException, IllegalAccessException {
-        JAUToString classAnnotation = (JAUToString) ci.annotation;
         boolean first = true;
 
         int len = ci.fields.length;
-        for (int i = 0; i < len; i++) {
-            Field f = ci.fields[i];
-            if (manyLines) {
-                if (!first)
-                    sb.append(",\n    ");
-                else
-                    sb.append("\n    ");
-            } else {
-                if (!first)
-                    sb.append(", ");
-            }
-            sb.append(f.getName()).append('=');
-            switch (ci.types[i]) {
-                case ClassInfo.BYTE_TYPE:
-                    sb.append(f.getByte(a));
-                    break;
-                case ClassInfo.SHORT_TYPE:
-                    sb.append(f.getShort(a));
-                    break;
-                case ClassInfo.INTEGER_TYPE:
-                    sb.append(f.getInt(a));
-                    break;
-                case ClassInfo.LONG_TYPE:
-                    sb.append(f.getLong(a));
-                    break;
-                case ClassInfo.FLOAT_TYPE:
-                    sb.append(f.getFloat(a));
-                    break;
-                case ClassInfo.DOUBLE_TYPE:
-                    sb.append(f.getDouble(a));
-                    break;
-                case ClassInfo.CHARACTER_TYPE:
-                    sb.append(f.getChar(a));
-                    break;
-                default:
-                    toString(sb, f.get(a), manyLines);
-            }
-            first = false;
-        }
-        if (classAnnotation == null || classAnnotation.inherited()) {
-            Class parentClass = ca.getSuperclass();
-            if (parentClass == null || parentClass == Object.class) {
-                // nothing
-            } else {
-                ClassInfo parentci = getClassInfo(CLASSINFO_TOSTRING,
-                        parentClass, JAUToString.class, JAU_TOSTRING_INCLUDE,
-                        JAU_TOSTRING_ALLFIELDS);
-                if (parentci.annotated) {
+        JAUInterface impl = getImplementation(ci);
+        if (impl != null) {
+            impl.toString(ci, sb, a, manyLines);
+        } else {
+            for (int i = 0; i < len; i++) {
+                Field f = ci.fields[i];
+                if (manyLines) {
+                    if (!first)
+                        sb.append(",\n    ");
+                    else
+                        sb.append("\n    ");
+                } else {
                     if (!first)
                         sb.append(", ");
-                    toStringAnnotated(sb, a, parentClass,
-                            parentci, manyLines);
                 }
+                sb.append(f.getName()).append('=');
+                switch (ci.types[i]) {
+                    case ClassInfo.BYTE_TYPE:
+                        sb.append(f.getByte(a));
+                        break;
+                    case ClassInfo.SHORT_TYPE:
+                        sb.append(f.getShort(a));
+                        break;
+                    case ClassInfo.INTEGER_TYPE:
+                        sb.append(f.getInt(a));
+                        break;
+                    case ClassInfo.LONG_TYPE:
+                        sb.append(f.getLong(a));
+                        break;
+                    case ClassInfo.FLOAT_TYPE:
+                        sb.append(f.getFloat(a));
+                        break;
+                    case ClassInfo.DOUBLE_TYPE:
+                        sb.append(f.getDouble(a));
+                        break;
+                    case ClassInfo.CHARACTER_TYPE:
+                        sb.append(f.getChar(a));
+                        break;
+                    default:
+                        toString(sb, f.get(a), manyLines);
+                }
+                first = false;
             }
         }
     }
@@ -1548,11 +2692,10 @@ public class JAU {
             throw new IllegalArgumentException(
                     "toMap() does not work for arrays and enumeration values");
 
-        ClassInfo ci = getClassInfo(CLASSINFO_TOMAP, ca, JAUToMap.class,
-                JAU_TOMAP_INCLUDE, JAU_TOMAP_ALLFIELDS);
+        ClassInfo ci = getClassInfo(ca, ClassPlan.TOMAP);
         if (ci.annotated) {
             Map<String, Object> m = new HashMap<String, Object>();
-            toMapAnnotated(m, a, ca, ci);
+            toMapAnnotated(m, a, ci);
             return m;
         } else
             throw new IllegalArgumentException("Class " + ca +
@@ -1565,49 +2708,25 @@ public class JAU {
      * corresponding package) for this to work.
      *
      * @param a the object
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
      * @param ci cached class information
      * @return string representation
      */
     private static void toMapAnnotated(Map<String, Object> map,
-            Object a, Class ca, ClassInfo ci) {
-        JAUToMap classAnnotation = (JAUToMap) ci.annotation;
-        Field[] fields = ci.fields;
-        for (Field f: fields) {
-            JAUToMap an = (JAUToMap) f.getAnnotation(JAUToMap.class);
-            if (Modifier.isPrivate(f.getModifiers()))
-                f.setAccessible(true);
-            try {
-                Object fa = f.get(a);
-                String name;
-                if (an != null) {
-                    name = an.name();
-                    if (name.length() == 0)
-                        name = f.getName();
-                } else {
-                    name = f.getName();
-                }
-
-                map.put(name, fa);
-            } catch (IllegalArgumentException ex) {
-                throw (InternalError) new InternalError(
-                        ex.getMessage()).initCause(ex);
-            } catch (IllegalAccessException ex) {
-                throw (InternalError) new InternalError(
-                        ex.getMessage()).initCause(ex);
-            }
-        }
-        if (classAnnotation == null || classAnnotation.inherited()) {
-            Class parentClass = ca.getSuperclass();
-            if (parentClass == null || parentClass == Object.class) {
-                // nothing
-            } else {
-                ClassInfo parentci = getClassInfo(CLASSINFO_TOMAP,
-                        parentClass, JAUToMap.class, JAU_TOMAP_INCLUDE,
-                        JAU_TOMAP_ALLFIELDS);
-                if (parentci.annotated) {
-                    toMapAnnotated(map, a, parentClass, parentci);
+            Object a, ClassInfo ci) {
+        JAUInterface impl = getImplementation(ci);
+        if (impl != null) {
+            impl.toMap(ci, map, a);
+        } else {
+            Field[] fields = ci.fields;
+            for (int i = 0; i < fields.length; i++) {
+                try {
+                    map.put(ci.names[i], fields[i].get(a));
+                } catch (IllegalArgumentException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
+                } catch (IllegalAccessException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
                 }
             }
         }
@@ -1637,10 +2756,9 @@ public class JAU {
         if (ca.isArray())
             return;
 
-        ClassInfo ci = getClassInfo(CLASSINFO_TOMAP, ca, JAUToMap.class,
-                JAU_TOMAP_INCLUDE, JAU_TOMAP_ALLFIELDS);
+        ClassInfo ci = getClassInfo(ca, ClassPlan.TOMAP);
         if (ci.annotated) {
-            fromMapAnnotated(map, a, ca, ci);
+            fromMapAnnotated(map, a, ci);
         } else
             throw new IllegalArgumentException("Class " + ca +
                     " is not annotated with JAUToMap");
@@ -1653,34 +2771,17 @@ public class JAU {
      *
      * @param map property name -> property value
      * @param a the object
-     * @param ca only fields from this class (and superclasses of it)
-     *     are considered
-     * @param classAnnotation annotation of the class or null
      * @param ci cached class information
      * @return string representation
      */
     private static void fromMapAnnotated(Map<String, Object> map,
-            Object a,
-            Class ca, ClassInfo ci) {
-        JAUToMap classAnnotation = (JAUToMap) ci.annotation;
+            Object a, ClassInfo ci) {
         Field[] fields = ci.fields;
-        for (Field f: fields) {
-            JAUToMap an = (JAUToMap) f.getAnnotation(JAUToMap.class);
-
-            if (Modifier.isPrivate(f.getModifiers()))
-                f.setAccessible(true);
+        for (int i = 0; i < fields.length; i++) {
             try {
-                String name;
-                if (an != null) {
-                    name = an.name();
-                    if (name.length() == 0)
-                        name = f.getName();
-                } else {
-                    name = f.getName();
-                }
-
+                String name = ci.names[i];
                 if (map.containsKey(name))
-                    f.set(a, map.get(name));
+                    fields[i].set(a, map.get(name));
             } catch (IllegalArgumentException ex) {
                 throw (InternalError) new InternalError(
                         ex.getMessage()).initCause(ex);
@@ -1689,19 +2790,6 @@ public class JAU {
                         ex.getMessage()).initCause(ex);
             }
         }
-        if (classAnnotation == null || classAnnotation.inherited()) {
-            Class parentClass = ca.getSuperclass();
-            if (parentClass == null || parentClass == Object.class) {
-                // nothing
-            } else {
-                ClassInfo parentci = getClassInfo(CLASSINFO_TOMAP,
-                        parentClass, JAUToMap.class, JAU_TOMAP_INCLUDE,
-                        JAU_TOMAP_ALLFIELDS);
-                if (parentci.annotated) {
-                    fromMapAnnotated(map, a, parentClass, parentci);
-                }
-            }
-        }
     }
 
     /**
@@ -1734,4 +2822,123 @@ public class JAU {
                 c == Class.class || c == Object.class ||
                 c == BigDecimal.class || c == BigInteger.class || c.isEnum();
     }
+
+    /**
+     * @param type type of a field
+     * @return false if a value of this type cannot reference other objects
+     *     that are processed by JAU (no cycles are possible)
+     */
+    private static boolean mayReference(Class type) {
+        while (type.isArray())
+            type = type.getComponentType();
+        if (type.isPrimitive() || type.isEnum())
+            return false;
+        return !Modifier.isFinal(type.getModifiers()) ||
+                !isImmutableClass(type);
+    }
+
+    /**
+     * Implementation of equals() injected by {@link JAUWeaver}. Subclasses
+     * inherit the injected method even if they are not annotated. The
+     * fields of <code>c</code> (and its superclasses) are compared in this
+     * case instead of calling a.equals(b) again.
+     *
+     * @param a first object
+     * @param b second object or null
+     * @param c the woven class
+     * @return true = equal
+     */
+    static boolean wovenEquals(Object a, Object b, Class c) {
+        if (a == b)
+            return true;
+        if (a == null || b == null)
+            return false;
+
+        Class ca = a.getClass();
+        if (ca != b.getClass())
+            return false;
+
+        if (ca != c && !getClassInfo(ca, ClassPlan.EQUALS).annotated) {
+            try {
+                return equalsAnnotated(a, b,
+                        getClassInfo(c, ClassPlan.EQUALS));
+            } catch (IllegalAccessException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
+            }
+        }
+        return equals(a, b);
+    }
+
+    /**
+     * Implementation of hashCode() injected by {@link JAUWeaver}.
+     *
+     * @param a an object
+     * @param c the woven class
+     * @return hash code
+     * @see #wovenEquals(java.lang.Object, java.lang.Object, java.lang.Class)
+     */
+    static int wovenHashCode(Object a, Class c) {
+        Class ca = a.getClass();
+        if (ca != c && !getClassInfo(ca, ClassPlan.HASHCODE).annotated) {
+            return hashCodeAnnotated(a, getClassInfo(c, ClassPlan.HASHCODE),
+                    DEFAULT_INITIAL, DEFAULT_MULTIPLIER);
+        }
+        return hashCode(a);
+    }
+
+    /**
+     * Implementation of compareTo() injected by {@link JAUWeaver}.
+     *
+     * @param a first object
+     * @param b second object or null
+     * @param c the woven class
+     * @return &lt; 0, 0 or &gt; 0
+     * @see #wovenEquals(java.lang.Object, java.lang.Object, java.lang.Class)
+     */
+    static int wovenCompare(Object a, Object b, Class c) {
+        if (a == b)
+            return 0;
+        if (b == null)
+            return 1;
+
+        Class ca = a.getClass();
+        if (ca != b.getClass())
+            throw new IllegalArgumentException(
+                    "Cannot compare instances of different classes");
+
+        if (ca != c && !getClassInfo(ca, ClassPlan.COMPARETO).annotated) {
+            return compareAnnotated(a, b,
+                    getClassInfo(c, ClassPlan.COMPARETO));
+        }
+        return compare(a, b);
+    }
+
+    /**
+     * Implementation of toString() injected by {@link JAUWeaver}.
+     *
+     * @param a an object
+     * @param c the woven class
+     * @return string representation
+     * @see #wovenEquals(java.lang.Object, java.lang.Object, java.lang.Class)
+     */
+    static String wovenToString(Object a, Class c) {
+        Class ca = a.getClass();
+        if (ca != c && !getClassInfo(ca, ClassPlan.TOSTRING).annotated) {
+            StringBuilder sb = new StringBuilder(50);
+            sb.append(ca.getCanonicalName()).append("@").
+                    append(Integer.toHexString(
+                    System.identityHashCode(a))).append("(");
+            try {
+                toStringAnnotated(sb, a,
+                        getClassInfo(c, ClassPlan.TOSTRING), false);
+            } catch (IllegalAccessException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
+            }
+            sb.append(")");
+            return sb.toString();
+        }
+        return toString(a);
+    }
 }
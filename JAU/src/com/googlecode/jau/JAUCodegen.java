@@ -0,0 +1,575 @@
+package com.googlecode.jau;
+
+import java.util.Comparator;
+
+/**
+ * Implementation of JAU methods that generates a specialized class for each
+ * annotated class. The generated code reads the fields via sun.misc.Unsafe
+ * with constant offsets and handles every field with straight-line code,
+ * so it can be inlined by the JIT compiler.
+ *
+ * The generated classes implement {@link Comparator} for equals() (0 means
+ * equal) and compareTo() and {@link HashCoder} for hashCode(). If a class
+ * cannot be generated, the implementation from {@link JAUUnsafe} is used.
+ */
+class JAUCodegen extends JAUUnsafe {
+    private static final String UNSAFE = "sun/misc/Unsafe";
+    private static final String UNSAFE_DESC = "Lsun/misc/Unsafe;";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String JAU_CLASS = "com/googlecode/jau/JAU";
+    private static final String PACKAGE = "com/googlecode/jau/generated/";
+
+    /** number of generated classes. Used to create unique names. */
+    private static int counter;
+
+    /**
+     * Loads generated classes. Every generated class gets its own loader,
+     * so it can be unloaded independently from the others.
+     */
+    private static final class Loader extends ClassLoader {
+        /**
+         * -
+         *
+         * @param parent parent class loader
+         */
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Defines a class.
+         *
+         * @param name binary name of the class
+         * @param b class file content
+         * @return created class
+         */
+        Class define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+
+    /**
+     * Emits the code that reads a field. The code that compares or hashes
+     * the values is the same for all engines and for {@link JAUWeaver}.
+     */
+    abstract static class Emitter {
+        /**
+         * Emits code that reads a field value and pushes it on the stack.
+         *
+         * @param w class writer
+         * @param c method code
+         * @param name internal name of the generated class
+         * @param ci class information
+         * @param field index of the field in ci.types
+         * @param local local variable with the object
+         */
+        abstract void get(ClassFileWriter w, ClassFileWriter.Code c,
+                String name, ClassInfo ci, int field, int local);
+    }
+
+    /**
+     * Emits the engine specific parts of a generated class: how the class
+     * is created and loaded and how the fields are read.
+     */
+    abstract static class Generator extends Emitter {
+        /**
+         * @param kind kind of the generated class
+         * @return new unique internal class name
+         */
+        abstract String newClassName(String kind);
+
+        /**
+         * Creates a class with a public default constructor.
+         *
+         * @param name internal name of the class
+         * @param iface internal name of the implemented interface
+         * @return class writer
+         */
+        abstract ClassFileWriter newClass(String name, String iface);
+
+        /**
+         * Loads a generated class and creates an instance of it.
+         *
+         * @param name internal name of the class
+         * @param w class writer
+         * @return new instance of the class
+         */
+        abstract Object define(String name, ClassFileWriter w);
+    }
+
+    /** reads the fields via Unsafe with constant offsets */
+    private static final Generator UNSAFE_GENERATOR = new Generator() {
+        @Override
+        String newClassName(String kind) {
+            return JAUCodegen.newClassName(kind);
+        }
+
+        @Override
+        ClassFileWriter newClass(String name, String iface) {
+            return JAUCodegen.newClass(name, iface);
+        }
+
+        @Override
+        void get(ClassFileWriter w, ClassFileWriter.Code c, String name,
+                ClassInfo ci, int field, int local) {
+            JAUCodegen.get(w, c, name, ci.types[field], local,
+                    ci.offsets[field]);
+        }
+
+        @Override
+        Object define(String name, ClassFileWriter w) {
+            return JAUCodegen.define(name, w);
+        }
+    };
+
+    /**
+     * -
+     *
+     * @throws java.lang.NoSuchFieldException
+     * @throws java.lang.IllegalArgumentException
+     * @throws java.lang.IllegalAccessException
+     */
+    public JAUCodegen() throws NoSuchFieldException,
+            IllegalArgumentException, IllegalAccessException {
+        super();
+    }
+
+    @Override
+    public void update(ClassInfo ci) {
+        super.update(ci);
+        if (!ci.annotated)
+            return;
+        try {
+            if (ci.annotationClass == JAUEquals.class)
+                ci.compiled = generateEquals(ci, UNSAFE_GENERATOR);
+            else if (ci.annotationClass == JAUHashCode.class)
+                ci.compiled = generateHashCode(ci, JAU.DEFAULT_INITIAL,
+                        JAU.DEFAULT_MULTIPLIER, UNSAFE_GENERATOR);
+            else if (ci.annotationClass == JAUCompareTo.class)
+                ci.compiled = generateCompare(ci, UNSAFE_GENERATOR);
+        } catch (RuntimeException ex) {
+            // the implementation from JAUUnsafe will be used
+            ci.compiled = null;
+        } catch (LinkageError ex) {
+            ci.compiled = null;
+        }
+    }
+
+    @Override
+    public boolean equals(ClassInfo ci, Object a, Object b) {
+        Comparator c = (Comparator) ci.compiled;
+        if (c != null)
+            return c.compare(a, b) == 0;
+        else
+            return super.equals(ci, a, b);
+    }
+
+    @Override
+    public int hashCode(ClassInfo ci, Object a, int initialNonZeroOddNumber,
+            int multiplierNonZeroOddNumber) {
+        HashCoder hc = (HashCoder) ci.compiled;
+        if (hc != null && initialNonZeroOddNumber == JAU.DEFAULT_INITIAL &&
+                multiplierNonZeroOddNumber == JAU.DEFAULT_MULTIPLIER)
+            return hc.hashCode(a);
+        else
+            return super.hashCode(ci, a, initialNonZeroOddNumber,
+                    multiplierNonZeroOddNumber);
+    }
+
+    @Override
+    public int compare(ClassInfo ci, Object a, Object b) {
+        Comparator c = (Comparator) ci.compiled;
+        if (c != null)
+            return c.compare(a, b);
+        else
+            return super.compare(ci, a, b);
+    }
+
+    /**
+     * Generates a Comparator for equals(). 0 is returned for equal objects
+     * and -1 otherwise.
+     *
+     * @param ci class information
+     * @param g generator for the class
+     * @return new Comparator
+     */
+    static Object generateEquals(ClassInfo ci, Generator g) {
+        String name = g.newClassName("Equals");
+        ClassFileWriter w = g.newClass(name, "java/util/Comparator");
+        ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                "compare", "(Ljava/lang/Object;Ljava/lang/Object;)I");
+        ClassFileWriter.Label different = c.newLabel();
+        emitEquals(w, c, name, ci, g, 1, 2, different);
+        c.op(ClassFileWriter.ICONST_0);
+        c.op(ClassFileWriter.IRETURN);
+        c.place(different);
+        c.op(ClassFileWriter.ICONST_M1);
+        c.op(ClassFileWriter.IRETURN);
+        c.end(8, 3);
+        return g.define(name, w);
+    }
+
+    /**
+     * Emits code that compares the fields of 2 objects and jumps to
+     * different if a field differs. The stack is empty before and after
+     * the code and at the jump.
+     *
+     * @param w class writer
+     * @param c method code
+     * @param name internal name of the generated class
+     * @param ci class information
+     * @param e emitter for the field access
+     * @param a local variable with the first object
+     * @param b local variable with the second object
+     * @param different target for different objects
+     */
+    static void emitEquals(ClassFileWriter w, ClassFileWriter.Code c,
+            String name, ClassInfo ci, Emitter e, int a, int b,
+            ClassFileWriter.Label different) {
+        for (int i = 0; i < ci.types.length; i++) {
+            int type = ci.types[i];
+            switch (type) {
+                case ClassInfo.LONG_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.op(ClassFileWriter.LCMP);
+                    c.jump(ClassFileWriter.IFNE, different);
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Float", "floatToIntBits", "(F)I"));
+                    e.get(w, c, name, ci, i, b);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Float", "floatToIntBits", "(F)I"));
+                    c.jump(ClassFileWriter.IF_ICMPNE, different);
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Double", "doubleToLongBits", "(D)J"));
+                    e.get(w, c, name, ci, i, b);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Double", "doubleToLongBits", "(D)J"));
+                    c.op(ClassFileWriter.LCMP);
+                    c.jump(ClassFileWriter.IFNE, different);
+                    break;
+                case ClassInfo.OTHER_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_CLASS,
+                            "equals",
+                            "(Ljava/lang/Object;Ljava/lang/Object;)Z"));
+                    c.jump(ClassFileWriter.IFEQ, different);
+                    break;
+                default:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.jump(ClassFileWriter.IF_ICMPNE, different);
+            }
+        }
+    }
+
+    /**
+     * Generates a HashCoder.
+     *
+     * @param ci class information
+     * @param initialNonZeroOddNumber
+     *            a non-zero, odd number used as the initial value
+     * @param multiplierNonZeroOddNumber
+     *            a non-zero, odd number used as the multiplier
+     * @param g generator for the class
+     * @return new HashCoder
+     */
+    static Object generateHashCode(ClassInfo ci, int initialNonZeroOddNumber,
+            int multiplierNonZeroOddNumber, Generator g) {
+        String name = g.newClassName("HashCode");
+        ClassFileWriter w = g.newClass(name, "com/googlecode/jau/HashCoder");
+        ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                "hashCode", "(Ljava/lang/Object;)I");
+        emitHashCode(w, c, name, ci, g, 1, 2, initialNonZeroOddNumber,
+                multiplierNonZeroOddNumber);
+        c.op(ClassFileWriter.IRETURN);
+        c.end(10, 3);
+        return g.define(name, w);
+    }
+
+    /**
+     * Emits code that computes the hash code of an object and pushes it on
+     * the stack. The code contains no jumps.
+     *
+     * @param w class writer
+     * @param c method code
+     * @param name internal name of the generated class
+     * @param ci class information
+     * @param e emitter for the field access
+     * @param a local variable with the object
+     * @param result int local variable for the intermediate result
+     * @param initialNonZeroOddNumber
+     *            a non-zero, odd number used as the initial value
+     * @param multiplierNonZeroOddNumber
+     *            a non-zero, odd number used as the multiplier
+     */
+    static void emitHashCode(ClassFileWriter w, ClassFileWriter.Code c,
+            String name, ClassInfo ci, Emitter e, int a, int result,
+            int initialNonZeroOddNumber, int multiplierNonZeroOddNumber) {
+        c.iconst(initialNonZeroOddNumber);
+        c.op1(ClassFileWriter.ISTORE, result);
+        for (int i = 0; i < ci.types.length; i++) {
+            int type = ci.types[i];
+            c.op1(ClassFileWriter.ILOAD, result);
+            c.iconst(multiplierNonZeroOddNumber);
+            e.get(w, c, name, ci, i, a);
+            switch (type) {
+                case ClassInfo.LONG_TYPE:
+                    foldLong(c);
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Float", "floatToIntBits", "(F)I"));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Double", "doubleToLongBits", "(D)J"));
+                    foldLong(c);
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Boolean", "hashCode", "(Z)I"));
+                    break;
+                case ClassInfo.OTHER_TYPE:
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_CLASS,
+                            "hashCode", "(Ljava/lang/Object;)I"));
+                    break;
+                default:
+                    // int, short, byte and char are already on the stack
+            }
+            c.op(ClassFileWriter.IMUL);
+            c.op(ClassFileWriter.IADD);
+            c.op1(ClassFileWriter.ISTORE, result);
+        }
+        c.op1(ClassFileWriter.ILOAD, result);
+    }
+
+    /**
+     * Generates a Comparator for compareTo().
+     *
+     * @param ci class information
+     * @param g generator for the class
+     * @return new Comparator
+     */
+    static Object generateCompare(ClassInfo ci, Generator g) {
+        String name = g.newClassName("Compare");
+        ClassFileWriter w = g.newClass(name, "java/util/Comparator");
+        ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                "compare", "(Ljava/lang/Object;Ljava/lang/Object;)I");
+        ClassFileWriter.Label ret = c.newLabel();
+        emitCompare(w, c, name, ci, g, 1, 2, ret);
+        c.op(ClassFileWriter.ICONST_0);
+        c.op(ClassFileWriter.IRETURN);
+        c.place(ret, "I");
+        c.op(ClassFileWriter.IRETURN);
+        c.end(8, 3);
+        return g.define(name, w);
+    }
+
+    /**
+     * Emits code that compares the fields of 2 objects. If a field differs,
+     * the code jumps to ret with the result (&lt; 0 or &gt; 0) on the
+     * stack. Otherwise the stack is empty after the code.
+     *
+     * @param w class writer
+     * @param c method code
+     * @param name internal name of the generated class
+     * @param ci class information
+     * @param e emitter for the field access
+     * @param a local variable with the first object
+     * @param b local variable with the second object
+     * @param ret target for different objects
+     */
+    static void emitCompare(ClassFileWriter w, ClassFileWriter.Code c,
+            String name, ClassInfo ci, Emitter e, int a, int b,
+            ClassFileWriter.Label ret) {
+        for (int i = 0; i < ci.types.length; i++) {
+            int type = ci.types[i];
+            switch (type) {
+                case ClassInfo.LONG_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.op(ClassFileWriter.LCMP);
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Float", "compare", "(FF)I"));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                            "java/lang/Double", "compare", "(DD)I"));
+                    break;
+                case ClassInfo.OTHER_TYPE:
+                    e.get(w, c, name, ci, i, a);
+                    e.get(w, c, name, ci, i, b);
+                    c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_CLASS,
+                            "compare",
+                            "(Ljava/lang/Object;Ljava/lang/Object;)I"));
+                    break;
+                default:
+                    // widening to long avoids overflows
+                    e.get(w, c, name, ci, i, a);
+                    c.op(ClassFileWriter.I2L);
+                    e.get(w, c, name, ci, i, b);
+                    c.op(ClassFileWriter.I2L);
+                    c.op(ClassFileWriter.LCMP);
+            }
+            c.op(ClassFileWriter.DUP);
+            c.jump(ClassFileWriter.IFNE, ret);
+            c.op(ClassFileWriter.POP);
+        }
+    }
+
+    /**
+     * Emits (int) (value ^ (value >>> 32)) for a long value on the stack.
+     *
+     * @param c method code
+     */
+    private static void foldLong(ClassFileWriter.Code c) {
+        c.op(ClassFileWriter.DUP2);
+        c.iconst(32);
+        c.op(ClassFileWriter.LUSHR);
+        c.op(ClassFileWriter.LXOR);
+        c.op(ClassFileWriter.L2I);
+    }
+
+    /**
+     * Emits code that reads a field value via Unsafe and pushes it on the
+     * stack.
+     *
+     * @param w class writer
+     * @param c method code
+     * @param name internal name of the generated class
+     * @param type field type (see ClassInfo.*_TYPE)
+     * @param local local variable with the object
+     * @param offset field offset
+     */
+    private static void get(ClassFileWriter w, ClassFileWriter.Code c,
+            String name, int type, int local, long offset) {
+        String method;
+        String desc;
+        switch (type) {
+            case ClassInfo.INTEGER_TYPE:
+                method = "getInt";
+                desc = "I";
+                break;
+            case ClassInfo.BYTE_TYPE:
+                method = "getByte";
+                desc = "B";
+                break;
+            case ClassInfo.SHORT_TYPE:
+                method = "getShort";
+                desc = "S";
+                break;
+            case ClassInfo.LONG_TYPE:
+                method = "getLong";
+                desc = "J";
+                break;
+            case ClassInfo.FLOAT_TYPE:
+                method = "getFloat";
+                desc = "F";
+                break;
+            case ClassInfo.DOUBLE_TYPE:
+                method = "getDouble";
+                desc = "D";
+                break;
+            case ClassInfo.CHARACTER_TYPE:
+                method = "getChar";
+                desc = "C";
+                break;
+            case ClassInfo.BOOLEAN_TYPE:
+                method = "getBoolean";
+                desc = "Z";
+                break;
+            default:
+                method = "getObject";
+                desc = "Ljava/lang/Object;";
+        }
+        c.op2(ClassFileWriter.GETSTATIC, w.field(name, "U", UNSAFE_DESC));
+        c.op1(ClassFileWriter.ALOAD, local);
+        c.lconst(offset);
+        c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method(UNSAFE, method,
+                "(Ljava/lang/Object;J)" + desc));
+    }
+
+    /**
+     * @param kind kind of the generated class
+     * @return new unique internal class name
+     */
+    private static synchronized String newClassName(String kind) {
+        return PACKAGE + kind + (++counter);
+    }
+
+    /**
+     * Creates a class with a static final field "U" initialized with
+     * the instance of Unsafe and a public default constructor.
+     *
+     * @param name internal name of the class
+     * @param iface internal name of the implemented interface
+     * @return class writer
+     */
+    private static ClassFileWriter newClass(String name, String iface) {
+        ClassFileWriter w = new ClassFileWriter(name, OBJECT,
+                new String[] {iface});
+        w.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC |
+                ClassFileWriter.ACC_FINAL, "U", UNSAFE_DESC);
+
+        // U = (Unsafe) Unsafe.class.getDeclaredField("theUnsafe").get(null)
+        ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_STATIC,
+                "<clinit>", "()V");
+        c.op2(ClassFileWriter.LDC_W, w.cls(UNSAFE));
+        c.op2(ClassFileWriter.LDC_W, w.string("theUnsafe"));
+        c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method("java/lang/Class",
+                "getDeclaredField",
+                "(Ljava/lang/String;)Ljava/lang/reflect/Field;"));
+        c.op(ClassFileWriter.DUP);
+        c.op(ClassFileWriter.ICONST_1);
+        c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method(
+                "java/lang/reflect/Field", "setAccessible", "(Z)V"));
+        c.op(ClassFileWriter.ACONST_NULL);
+        c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method(
+                "java/lang/reflect/Field", "get",
+                "(Ljava/lang/Object;)Ljava/lang/Object;"));
+        c.op2(ClassFileWriter.CHECKCAST, w.cls(UNSAFE));
+        c.op2(ClassFileWriter.PUTSTATIC, w.field(name, "U", UNSAFE_DESC));
+        c.op(ClassFileWriter.RETURN);
+        c.end(3, 0);
+
+        c = w.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+        c.op1(ClassFileWriter.ALOAD, 0);
+        c.op2(ClassFileWriter.INVOKESPECIAL, w.method(OBJECT, "<init>",
+                "()V"));
+        c.op(ClassFileWriter.RETURN);
+        c.end(1, 1);
+        return w;
+    }
+
+    /**
+     * Loads a generated class and creates an instance of it.
+     *
+     * @param name internal name of the class
+     * @param w class writer
+     * @return new instance of the class
+     */
+    private static Object define(String name, ClassFileWriter w) {
+        Loader loader = new Loader(JAUCodegen.class.getClassLoader());
+        Class c = loader.define(name.replace('/', '.'), w.toByteArray());
+        try {
+            return c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+}
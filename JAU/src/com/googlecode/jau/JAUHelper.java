@@ -0,0 +1,101 @@
+package com.googlecode.jau;
+
+/**
+ * Field-by-field implementation of JAU methods for one class. Instances of
+ * this interface are generated by {@link JAUProcessor} at compile time as
+ * a class named like the annotated class with the "$JAU" suffix
+ * (e.g. com.example.Foo$JAU for com.example.Foo). {@link JAU} uses them
+ * instead of reflection if they exist.
+ *
+ * This interface should not be implemented by applications.
+ *
+ * @param <T> type of the objects
+ */
+public interface JAUHelper<T> {
+    /** {@link #equals(java.lang.Object, java.lang.Object)} is supported */
+    public static final int EQUALS = 1;
+
+    /** {@link #hashCode(java.lang.Object)} is supported */
+    public static final int HASHCODE = 2;
+
+    /** {@link #compare(java.lang.Object, java.lang.Object)} is supported */
+    public static final int COMPARETO = 4;
+
+    /** {@link #copy(java.lang.Object, java.lang.Object)} is supported */
+    public static final int COPY = 8;
+
+    /**
+     * {@link #toString(java.lang.StringBuilder, java.lang.Object, boolean)}
+     * is supported
+     */
+    public static final int TOSTRING = 16;
+
+    /**
+     * a field used by a supported operation may reference other objects
+     * processed by JAU (cycles are possible)
+     */
+    public static final int REFERENCES = 32;
+
+    /**
+     * the hash code or the string representation is stored in the object
+     * (see cache() in {@link JAUHashCode} and {@link JAUToString})
+     */
+    public static final int CACHED = 64;
+
+    /**
+     * @return supported operations as a combination of {@link #EQUALS},
+     *     {@link #HASHCODE}, {@link #COMPARETO}, {@link #COPY} and
+     *     {@link #TOSTRING} and the flags {@link #REFERENCES} and
+     *     {@link #CACHED}. Other methods throw
+     *     UnsupportedOperationException.
+     */
+    public int operations();
+
+    /**
+     * Compares 2 objects like
+     * {@link JAU#equals(java.lang.Object, java.lang.Object)}.
+     *
+     * @param a first object
+     * @param b second object
+     * @return true = objects are equal
+     */
+    public boolean equals(T a, T b);
+
+    /**
+     * Computes hash code like {@link JAU#hashCode(java.lang.Object)}.
+     *
+     * @param a an object
+     * @return hash code
+     */
+    public int hashCode(T a);
+
+    /**
+     * Compares 2 objects like
+     * {@link JAU#compare(java.lang.Object, java.lang.Object)}.
+     *
+     * @param a first object
+     * @param b second object
+     * @return < 0, 0 or > 0
+     */
+    public int compare(T a, T b);
+
+    /**
+     * Copies all fields like
+     * {@link JAU#copy(java.lang.Object, java.lang.Object)}.
+     *
+     * @param a source
+     * @param b target
+     */
+    public void copy(T a, T b);
+
+    /**
+     * Appends "name=value" pairs for all fields like
+     * {@link JAU#toString(java.lang.StringBuilder, java.lang.Object, boolean)}
+     * does between the parentheses.
+     *
+     * @param sb output
+     * @param a an object
+     * @param manyLines true = spread string representation over many lines
+     */
+    public void toString(StringBuilder sb, T a, boolean manyLines);
+}
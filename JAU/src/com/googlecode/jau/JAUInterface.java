@@ -1,5 +1,7 @@
 package com.googlecode.jau;
 
+import java.util.Map;
+
 /**
  * Interface for JAU implementations.
  */
@@ -14,6 +16,59 @@ interface JAUInterface {
      */
     public boolean equals(ClassInfo cil, Object a, Object b);
 
+    /**
+     * Computes hash code for the fields of one class.
+     *
+     * @param ci class information
+     * @param a the object
+     * @param initialNonZeroOddNumber
+     *            a non-zero, odd number used as the initial value
+     * @param multiplierNonZeroOddNumber
+     *            a non-zero, odd number used as the multiplier
+     * @return hash code
+     */
+    public int hashCode(ClassInfo ci, Object a, int initialNonZeroOddNumber,
+            int multiplierNonZeroOddNumber);
+
+    /**
+     * Compares the fields of one class.
+     *
+     * @param ci class information
+     * @param a first object
+     * @param b second object
+     * @return < 0, 0 or > 0 like {@link java.util.Comparator}
+     */
+    public int compare(ClassInfo ci, Object a, Object b);
+
+    /**
+     * Copies the fields of one class. Field values are deeply cloned.
+     *
+     * @param ci class information
+     * @param a source
+     * @param b target
+     */
+    public void copy(ClassInfo ci, Object a, Object b);
+
+    /**
+     * Appends "name=value" pairs for the fields of one class.
+     *
+     * @param ci class information
+     * @param sb output
+     * @param a the object
+     * @param manyLines true = spread string representation over many lines
+     */
+    public void toString(ClassInfo ci, StringBuilder sb, Object a,
+            boolean manyLines);
+
+    /**
+     * Stores the values of the fields of one class in a map.
+     *
+     * @param ci class information
+     * @param map name -> value
+     * @param a the object
+     */
+    public void toMap(ClassInfo ci, Map<String, Object> map, Object a);
+
     /**
      * Updates ClassInfo (caches some information)
      *
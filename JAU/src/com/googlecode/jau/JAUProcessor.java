@@ -0,0 +1,697 @@
+package com.googlecode.jau;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that generates a {@link JAUHelper} for every class
+ * annotated with {@link JAUEquals}, {@link JAUHashCode},
+ * {@link JAUCompareTo}, {@link JAUCopy} or {@link JAUToString} (directly
+ * or through the package). For a class com.example.Foo the helper class
+ * is called com.example.Foo$JAU.
+ *
+ * A helper can only access fields that are visible from the package of
+ * the class. No helper is generated if a private field is used and
+ * the reflection based implementation in {@link JAU} is used instead.
+ * The same applies to an operation if it cannot be expressed in
+ * Java source (e.g. copying final fields).
+ *
+ * The processor is registered in META-INF/services and is found by javac
+ * automatically if JAU is on the classpath.
+ */
+@SupportedAnnotationTypes("*")
+public class JAUProcessor extends AbstractProcessor {
+    /** suffix for the generated classes */
+    public static final String SUFFIX = "$JAU";
+
+    private static final String JAU_CLASS = "com.googlecode.jau.JAU";
+
+    /**
+     * final classes that cannot reference other objects (see
+     * JAU.isImmutableClass())
+     */
+    private static final Set<String> IMMUTABLE = new HashSet<String>(
+            Arrays.asList("java.lang.String", "java.lang.Byte",
+            "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+            "java.lang.Float", "java.lang.Double", "java.lang.Character",
+            "java.lang.Class"));
+
+    /**
+     * Fields of one class in the hierarchy.
+     */
+    private static final class Level {
+        /** the class */
+        TypeElement type;
+
+        /** used fields */
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        for (Element e: roundEnv.getRootElements()) {
+            processType(e);
+        }
+        return false;
+    }
+
+    /**
+     * Generates helpers for a class and its member classes.
+     *
+     * @param e an element
+     */
+    private void processType(Element e) {
+        if (e.getKind() == ElementKind.CLASS) {
+            TypeElement t = (TypeElement) e;
+            if (!t.getModifiers().contains(Modifier.ABSTRACT) &&
+                    isAccessible(t, getPackage(t)) && !isHelper(t))
+                generate(t);
+        }
+        if (e.getKind().isClass() || e.getKind().isInterface()) {
+            for (TypeElement member: ElementFilter.typesIn(
+                    e.getEnclosedElements()))
+                processType(member);
+        }
+    }
+
+    /**
+     * @param t a class
+     * @return true = the class was generated by this processor
+     */
+    private static boolean isHelper(TypeElement t) {
+        for (TypeMirror i: t.getInterfaces()) {
+            if (((TypeElement) ((DeclaredType) i).asElement()).
+                    getQualifiedName().contentEquals(
+                    JAUHelper.class.getName()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Generates the helper for a class if at least one operation is
+     * supported.
+     *
+     * @param t a class
+     */
+    private void generate(TypeElement t) {
+        List<Level> equals = getLevels(t, JAUEquals.class);
+        List<Level> hashCode = getLevels(t, JAUHashCode.class);
+        List<Level> compare = getLevels(t, JAUCompareTo.class);
+        List<Level> copy = getLevels(t, JAUCopy.class);
+        List<Level> toString = getLevels(t, JAUToString.class);
+
+        int operations = 0;
+        if (equals != null)
+            operations |= JAUHelper.EQUALS;
+        if (hashCode != null)
+            operations |= JAUHelper.HASHCODE;
+        if (compare != null)
+            operations |= JAUHelper.COMPARETO;
+        if (copy != null)
+            operations |= JAUHelper.COPY;
+        if (toString != null)
+            operations |= JAUHelper.TOSTRING;
+        if (operations == 0)
+            return;
+        if (mayReference(equals) || mayReference(hashCode) ||
+                mayReference(compare) || mayReference(copy) ||
+                mayReference(toString))
+            operations |= JAUHelper.REFERENCES;
+        if ((hashCode != null && isCached(t.getAnnotation(
+                JAUHashCode.class))) || (toString != null &&
+                isCached(t.getAnnotation(JAUToString.class))))
+            operations |= JAUHelper.CACHED;
+
+        String pkg = getPackage(t);
+        String binaryName = processingEnv.getElementUtils().
+                getBinaryName(t).toString();
+        String simpleName = (pkg.length() == 0 ? binaryName :
+                binaryName.substring(pkg.length() + 1)) + SUFFIX;
+        String type = t.getQualifiedName().toString();
+
+        StringBuilder sb = new StringBuilder();
+        if (pkg.length() != 0)
+            sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("/**\n");
+        sb.append(" * Generated by ").append(JAUProcessor.class.getName()).
+                append(" for {@link ").append(type).append("}.\n");
+        sb.append(" * Do not edit.\n");
+        sb.append(" */\n");
+        sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        sb.append("public final class ").append(simpleName).
+                append(" implements com.googlecode.jau.JAUHelper {\n");
+
+        sb.append("    public int operations() {\n");
+        sb.append("        return ").append(operations).append(";\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public boolean equals(Object a_, Object b_) {\n");
+        if (equals != null) {
+            appendLocals(sb, type, true);
+            writeEquals(sb, equals);
+        } else {
+            appendUnsupported(sb);
+        }
+        sb.append("    }\n\n");
+
+        sb.append("    public int hashCode(Object a_) {\n");
+        if (hashCode != null) {
+            appendLocals(sb, type, false);
+            writeHashCode(sb, hashCode);
+        } else {
+            appendUnsupported(sb);
+        }
+        sb.append("    }\n\n");
+
+        sb.append("    public int compare(Object a_, Object b_) {\n");
+        if (compare != null) {
+            appendLocals(sb, type, true);
+            writeCompare(sb, compare);
+        } else {
+            appendUnsupported(sb);
+        }
+        sb.append("    }\n\n");
+
+        sb.append("    public void copy(Object a_, Object b_) {\n");
+        if (copy != null) {
+            appendLocals(sb, type, true);
+            writeCopy(sb, copy);
+        } else {
+            appendUnsupported(sb);
+        }
+        sb.append("    }\n\n");
+
+        sb.append("    public void toString(StringBuilder sb, Object a_, " +
+                "boolean manyLines) {\n");
+        if (toString != null) {
+            appendLocals(sb, type, false);
+            writeToString(sb, toString);
+        } else {
+            appendUnsupported(sb);
+        }
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        try {
+            Writer w = processingEnv.getFiler().createSourceFile(
+                    (pkg.length() == 0 ? "" : pkg + ".") + simpleName, t).
+                    openWriter();
+            try {
+                w.write(sb.toString());
+            } finally {
+                w.close();
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot create " + simpleName + ": " + ex.getMessage(),
+                    t);
+        }
+    }
+
+    /**
+     * Computes the fields used for an operation.
+     *
+     * @param t a class
+     * @param annotationClass annotation for the operation (e.g.
+     *     JAUEquals.class)
+     * @return the class and its superclasses with the used fields or null
+     *     if the class is not annotated or no helper can be generated
+     */
+    private List<Level> getLevels(TypeElement t,
+            Class<? extends Annotation> annotationClass) {
+        if (!isAnnotated(t, annotationClass))
+            return null;
+
+        String pkg = getPackage(t);
+        List<Level> levels = new ArrayList<Level>();
+        TypeElement c = t;
+        while (true) {
+            Annotation classAnnotation = c.getAnnotation(annotationClass);
+            boolean defaultInclude = classAnnotation == null ||
+                    attribute(classAnnotation, "allFields");
+
+            Level level = new Level();
+            level.type = c;
+            for (VariableElement f: ElementFilter.fieldsIn(
+                    c.getEnclosedElements())) {
+                Set<Modifier> mods = f.getModifiers();
+                if (mods.contains(Modifier.STATIC))
+                    continue;
+
+                boolean include = defaultInclude;
+                Annotation an = f.getAnnotation(annotationClass);
+                if (an != null)
+                    include &= attribute(an, "include");
+                if (isCache(f))
+                    include = false;
+                if (!include)
+                    continue;
+
+                if (mods.contains(Modifier.PRIVATE))
+                    return null;
+                if (!getPackage(c).equals(pkg) &&
+                        !(mods.contains(Modifier.PUBLIC) &&
+                        isAccessible(c, pkg)))
+                    return null;
+                if (annotationClass == JAUCopy.class &&
+                        (mods.contains(Modifier.FINAL) ||
+                        !isAccessible(f.asType(), pkg)))
+                    return null;
+                level.fields.add(f);
+            }
+            levels.add(level);
+
+            if (classAnnotation != null &&
+                    !attribute(classAnnotation, "inherited"))
+                break;
+
+            TypeMirror sm = c.getSuperclass();
+            if (sm.getKind() != TypeKind.DECLARED)
+                break;
+            TypeElement parent = (TypeElement) ((DeclaredType) sm).asElement();
+            if (parent.getQualifiedName().contentEquals("java.lang.Object"))
+                break;
+            if (!isAnnotated(parent, annotationClass))
+                break;
+            c = parent;
+        }
+        return levels;
+    }
+
+    /**
+     * @param levels used fields or null
+     * @return true = a field may reference other objects processed by JAU
+     *     (cycles are possible)
+     */
+    private boolean mayReference(List<Level> levels) {
+        if (levels != null) {
+            for (Level level: levels) {
+                for (VariableElement f: level.fields) {
+                    if (mayReference(f.asType()))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works like JAU.mayReference() at compile time.
+     *
+     * @param t type of a field
+     * @return false if a value of this type cannot reference other objects
+     */
+    private boolean mayReference(TypeMirror t) {
+        t = processingEnv.getTypeUtils().erasure(t);
+        while (t.getKind() == TypeKind.ARRAY)
+            t = ((ArrayType) t).getComponentType();
+        if (t.getKind().isPrimitive())
+            return false;
+        if (t.getKind() != TypeKind.DECLARED)
+            return true;
+        TypeElement e = (TypeElement) ((DeclaredType) t).asElement();
+        if (e.getKind() == ElementKind.ENUM)
+            return false;
+        return !e.getModifiers().contains(Modifier.FINAL) ||
+                !IMMUTABLE.contains(e.getQualifiedName().toString());
+    }
+
+    /**
+     * @param a class annotation or null
+     * @return true = the value is stored in the object (see cache() in
+     *     JAUHashCode and JAUToString)
+     */
+    private static boolean isCached(Annotation a) {
+        return a != null && attribute(a, "cache");
+    }
+
+    /**
+     * @param f a field
+     * @return true = the field stores a cached value and is not used
+     *     otherwise (see cache() in JAUHashCode and JAUToString)
+     */
+    private static boolean isCache(VariableElement f) {
+        JAUHashCode h = f.getAnnotation(JAUHashCode.class);
+        JAUToString t = f.getAnnotation(JAUToString.class);
+        return (h != null && h.cache()) || (t != null && t.cache());
+    }
+
+    /**
+     * Checks whether a class is annotated directly or through the package.
+     *
+     * @param t a class
+     * @param annotationClass annotation class like JAUEquals.class
+     * @return true = annotated
+     */
+    private boolean isAnnotated(TypeElement t,
+            Class<? extends Annotation> annotationClass) {
+        boolean include = false;
+        PackageElement p = processingEnv.getElementUtils().getPackageOf(t);
+        Annotation annotation = p.getAnnotation(annotationClass);
+        if (annotation != null && attribute(annotation, "include"))
+            include = true;
+        annotation = t.getAnnotation(annotationClass);
+        if (annotation != null)
+            include = attribute(annotation, "include");
+        return include;
+    }
+
+    /**
+     * Writes the body of equals().
+     *
+     * @param sb output
+     * @param levels used fields
+     */
+    private void writeEquals(StringBuilder sb, List<Level> levels) {
+        for (int i = 0; i < levels.size(); i++) {
+            Level level = levels.get(i);
+            for (VariableElement f: level.fields) {
+                String a = field("a", levels, i, f);
+                String b = field("b", levels, i, f);
+                switch (f.asType().getKind()) {
+                    case FLOAT:
+                        sb.append("        if (Float.floatToIntBits(").
+                                append(a).append(") != Float.floatToIntBits(").
+                                append(b).append("))\n");
+                        break;
+                    case DOUBLE:
+                        sb.append("        if (Double.doubleToLongBits(").
+                                append(a).
+                                append(") != Double.doubleToLongBits(").
+                                append(b).append("))\n");
+                        break;
+                    case INT:
+                    case BYTE:
+                    case SHORT:
+                    case LONG:
+                    case CHAR:
+                    case BOOLEAN:
+                        sb.append("        if (").append(a).append(" != ").
+                                append(b).append(")\n");
+                        break;
+                    default:
+                        sb.append("        if (!").append(JAU_CLASS).
+                                append(".equals(").append(a).append(", ").
+                                append(b).append("))\n");
+                }
+                sb.append("            return false;\n");
+            }
+        }
+        sb.append("        return true;\n");
+    }
+
+    /**
+     * Writes the body of hashCode().
+     *
+     * @param sb output
+     * @param levels used fields
+     */
+    private void writeHashCode(StringBuilder sb, List<Level> levels) {
+        sb.append("        int r = ").append(JAU.DEFAULT_INITIAL).
+                append(";\n");
+        for (int i = 0; i < levels.size(); i++) {
+            for (VariableElement f: levels.get(i).fields) {
+                String a = field("a", levels, i, f);
+                String h;
+                switch (f.asType().getKind()) {
+                    case LONG:
+                        h = "(int) (" + a + " ^ (" + a + " >>> 32))";
+                        break;
+                    case FLOAT:
+                        h = "Float.floatToIntBits(" + a + ")";
+                        break;
+                    case DOUBLE:
+                        h = "(int) (Double.doubleToLongBits(" + a +
+                                ") ^ (Double.doubleToLongBits(" + a +
+                                ") >>> 32))";
+                        break;
+                    case BOOLEAN:
+                        h = "(" + a + " ? 1231 : 1237)";
+                        break;
+                    case INT:
+                    case BYTE:
+                    case SHORT:
+                    case CHAR:
+                        h = a;
+                        break;
+                    default:
+                        h = JAU_CLASS + ".hashCode(" + a + ")";
+                }
+                sb.append("        r += ").append(JAU.DEFAULT_MULTIPLIER).
+                        append(" * ").append(h).append(";\n");
+            }
+        }
+        sb.append("        return r;\n");
+    }
+
+    /**
+     * Writes the body of compare(). Fields from superclasses are compared
+     * first.
+     *
+     * @param sb output
+     * @param levels used fields
+     */
+    private void writeCompare(StringBuilder sb, List<Level> levels) {
+        sb.append("        int r;\n");
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            for (VariableElement f: levels.get(i).fields) {
+                String a = field("a", levels, i, f);
+                String b = field("b", levels, i, f);
+                switch (f.asType().getKind()) {
+                    case FLOAT:
+                        sb.append("        r = Float.compare(").append(a).
+                                append(", ").append(b).append(");\n");
+                        break;
+                    case DOUBLE:
+                        sb.append("        r = Double.compare(").append(a).
+                                append(", ").append(b).append(");\n");
+                        break;
+                    case BOOLEAN:
+                        sb.append("        r = ").append(a).append(" == ").
+                                append(b).append(" ? 0 : (").append(a).
+                                append(" ? 1 : -1);\n");
+                        break;
+                    case INT:
+                    case BYTE:
+                    case SHORT:
+                    case LONG:
+                    case CHAR:
+                        sb.append("        r = ").append(a).append(" < ").
+                                append(b).append(" ? -1 : (").append(a).
+                                append(" == ").append(b).
+                                append(" ? 0 : 1);\n");
+                        break;
+                    default:
+                        sb.append("        r = ").append(JAU_CLASS).
+                                append(".compare(").append(a).append(", ").
+                                append(b).append(");\n");
+                }
+                sb.append("        if (r != 0)\n");
+                sb.append("            return r;\n");
+            }
+        }
+        sb.append("        return 0;\n");
+    }
+
+    /**
+     * Writes the body of copy().
+     *
+     * @param sb output
+     * @param levels used fields
+     */
+    private void writeCopy(StringBuilder sb, List<Level> levels) {
+        for (int i = 0; i < levels.size(); i++) {
+            for (VariableElement f: levels.get(i).fields) {
+                String a = field("a", levels, i, f);
+                String b = field("b", levels, i, f);
+                sb.append("        ").append(b).append(" = ");
+                if (f.asType().getKind().isPrimitive())
+                    sb.append(a);
+                else
+                    sb.append("(").append(typeName(f.asType())).append(") ").
+                            append(JAU_CLASS).append(".clone(").append(a).
+                            append(")");
+                sb.append(";\n");
+            }
+        }
+    }
+
+    /**
+     * Writes the body of toString().
+     *
+     * @param sb output
+     * @param levels used fields
+     */
+    private void writeToString(StringBuilder sb, List<Level> levels) {
+        boolean first = true;
+        for (int i = 0; i < levels.size(); i++) {
+            for (VariableElement f: levels.get(i).fields) {
+                String a = field("a", levels, i, f);
+                if (first) {
+                    sb.append("        if (manyLines)\n");
+                    sb.append("            sb.append(\"\\n    \");\n");
+                } else {
+                    sb.append("        sb.append(manyLines ? \",\\n    \" : " +
+                            "\", \");\n");
+                }
+                sb.append("        sb.append(\"").
+                        append(f.getSimpleName()).append("=\");\n");
+                if (f.asType().getKind().isPrimitive())
+                    sb.append("        sb.append(").append(a).append(");\n");
+                else
+                    sb.append("        ").append(JAU_CLASS).
+                            append(".toString(sb, ").append(a).
+                            append(", manyLines);\n");
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * Declares local variables "a" and (optionally) "b" of the processed
+     * type.
+     *
+     * @param sb output
+     * @param type type name
+     * @param b true = declare "b" too
+     */
+    private static void appendLocals(StringBuilder sb, String type,
+            boolean b) {
+        sb.append("        ").append(type).append(" a = (").append(type).
+                append(") a_;\n");
+        if (b)
+            sb.append("        ").append(type).append(" b = (").
+                    append(type).append(") b_;\n");
+    }
+
+    /**
+     * Writes a method body for an unsupported operation.
+     *
+     * @param sb output
+     */
+    private static void appendUnsupported(StringBuilder sb) {
+        sb.append("        throw new UnsupportedOperationException();\n");
+    }
+
+    /**
+     * Creates an expression for a field access. Fields from superclasses
+     * are accessed through a cast, as they may be hidden.
+     *
+     * @param var variable name
+     * @param levels class hierarchy
+     * @param level index of the level the field belongs to
+     * @param f the field
+     * @return Java expression
+     */
+    private static String field(String var, List<Level> levels, int level,
+            VariableElement f) {
+        if (level == 0)
+            return var + "." + f.getSimpleName();
+        else
+            return "((" + levels.get(level).type.getQualifiedName() + ") " +
+                    var + ")." + f.getSimpleName();
+    }
+
+    /**
+     * @param t a type
+     * @return name of the erased type usable in Java source
+     */
+    private String typeName(TypeMirror t) {
+        return processingEnv.getTypeUtils().erasure(t).toString();
+    }
+
+    /**
+     * Checks whether a type can be used from the specified package.
+     *
+     * @param t a type
+     * @param pkg a package name
+     * @return true = accessible
+     */
+    private boolean isAccessible(TypeMirror t, String pkg) {
+        TypeMirror e = processingEnv.getTypeUtils().erasure(t);
+        if (e.getKind() == TypeKind.ARRAY)
+            return isAccessible(((javax.lang.model.type.ArrayType) e).
+                    getComponentType(), pkg);
+        if (e.getKind() == TypeKind.DECLARED)
+            return isAccessible((TypeElement) ((DeclaredType) e).asElement(),
+                    pkg);
+        return e.getKind().isPrimitive();
+    }
+
+    /**
+     * Checks whether a class (and all enclosing classes) can be used from
+     * the specified package.
+     *
+     * @param t a class
+     * @param pkg a package name
+     * @return true = accessible
+     */
+    private boolean isAccessible(TypeElement t, String pkg) {
+        Element e = t;
+        boolean samePackage = getPackage(t).equals(pkg);
+        while (e instanceof TypeElement) {
+            Set<Modifier> mods = e.getModifiers();
+            if (mods.contains(Modifier.PRIVATE))
+                return false;
+            if (!samePackage && !mods.contains(Modifier.PUBLIC))
+                return false;
+            e = e.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * @param t a class
+     * @return package name or "" for the default package
+     */
+    private String getPackage(TypeElement t) {
+        return processingEnv.getElementUtils().getPackageOf(t).
+                getQualifiedName().toString();
+    }
+
+    /**
+     * Reads a boolean attribute of a JAU annotation.
+     *
+     * @param a an annotation
+     * @param name name of the attribute (e.g. "include")
+     * @return value of the attribute
+     */
+    private static boolean attribute(Annotation a, String name) {
+        try {
+            return ((Boolean) a.annotationType().getMethod(name).invoke(a)).
+                    booleanValue();
+        } catch (Exception ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+}
@@ -27,4 +27,13 @@ public @interface JAUToString {
      * Should this package/class/field be considered for automatic toString()?
      */
     boolean include() default true;
+
+    /**
+     * For classes: should the computed value be stored for each object?
+     * This may only be used for immutable classes. For fields: the
+     * transient String field of the class where the value is stored (instead
+     * of a table with weak references to the objects). Such a field is
+     * never used by JAU in other ways.
+     */
+    boolean cache() default false;
 }
@@ -1,12 +1,62 @@
 package com.googlecode.jau;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import sun.misc.Unsafe;
 
 /**
  * Implementation of JAU methods using sun.misc.Unsafe.
+ *
+ * equals() and hashCode() do not read primitive fields one by one: the
+ * fields are sorted by their offsets and adjacent fields are merged into
+ * regions of memory that are read 8 bytes at a time (see {@link Layout}).
+ * {@link JAUCodegen} reads the fields one by one in the generated code and
+ * uses the regions only for classes it cannot generate code for.
  */
 class JAUUnsafe implements JAUInterface {
+    /**
+     * Memory layout of the fields of a class.
+     */
+    static final class Layout {
+        /** start offsets of the regions */
+        long[] starts;
+
+        /** sizes of the regions in bytes */
+        int[] sizes;
+
+        /**
+         * for each region: indexes of its fields in ClassInfo.fields if
+         * the region contains a float or a double field (different NaN
+         * values are equal), null otherwise
+         */
+        int[][] floating;
+
+        /** start offsets of the regions with int fields only */
+        long[] intStarts;
+
+        /** number of int fields in the regions with int fields only */
+        int[] intCounts;
+
+        /**
+         * indexes of the fields in ClassInfo.fields that are hashed one by
+         * one
+         */
+        int[] hashed;
+
+        /** indexes of the object fields in ClassInfo.fields */
+        int[] objects;
+
+        /**
+         * order of the checks in equals(): regions first, then object
+         * fields (adaptive mode, see JAU) or null
+         */
+        AdaptiveOrder order;
+    }
+
     private Unsafe UNSAFE;
 
     /**
@@ -21,61 +71,521 @@ class JAUUnsafe implements JAUInterface {
         Field field = Unsafe.class.getDeclaredField("theUnsafe");
         field.setAccessible(true);
         UNSAFE = (Unsafe)field.get(null);
+
+        // fails early if the memory access methods are restricted
+        UNSAFE.getObject(this, UNSAFE.objectFieldOffset(
+                JAUUnsafe.class.getDeclaredField("UNSAFE")));
     }
 
-    public void update(ClassInfo ci) {
+    public void update(final ClassInfo ci) {
         for (int i = 0; i < ci.fields.length; i++)
             ci.offsets[i] = UNSAFE.objectFieldOffset(ci.fields[i]);
+
+        // primitive fields in memory order
+        List<Integer> primitives = new ArrayList<Integer>();
+        List<Integer> objects = new ArrayList<Integer>();
+        for (int i = 0; i < ci.fields.length; i++) {
+            if (ci.types[i] == ClassInfo.OTHER_TYPE)
+                objects.add(i);
+            else
+                primitives.add(i);
+        }
+        Integer[] sorted = primitives.toArray(new Integer[primitives.size()]);
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                long a = ci.offsets[o1], b = ci.offsets[o2];
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+
+        List<long[]> regions = new ArrayList<long[]>();
+        List<int[]> floating = new ArrayList<int[]>();
+        List<long[]> intRegions = new ArrayList<long[]>();
+        List<Integer> hashed = new ArrayList<Integer>();
+        int i = 0;
+        while (i < sorted.length) {
+            // adjacent fields without padding between them
+            int j = i + 1;
+            long end = ci.offsets[sorted[i]] + size(ci.types[sorted[i]]);
+            while (j < sorted.length && ci.offsets[sorted[j]] == end) {
+                end += size(ci.types[sorted[j]]);
+                j++;
+            }
+            long start = ci.offsets[sorted[i]];
+            regions.add(new long[] {start, end - start});
+            int[] fl = null;
+            for (int k = i; k < j; k++) {
+                int t = ci.types[sorted[k]];
+                if (t == ClassInfo.FLOAT_TYPE || t == ClassInfo.DOUBLE_TYPE) {
+                    fl = new int[j - i];
+                    for (int m = i; m < j; m++)
+                        fl[m - i] = sorted[m];
+                    break;
+                }
+            }
+            floating.add(fl);
+
+            // runs of int fields are hashed as a whole
+            for (int k = i; k < j; ) {
+                int m = k;
+                while (m < j && ci.types[sorted[m]] == ClassInfo.INTEGER_TYPE)
+                    m++;
+                if (m - k > 1) {
+                    intRegions.add(new long[] {ci.offsets[sorted[k]], m - k});
+                    k = m;
+                } else {
+                    hashed.add(sorted[k]);
+                    k++;
+                }
+            }
+            i = j;
+        }
+
+        Layout layout = new Layout();
+        layout.starts = new long[regions.size()];
+        layout.sizes = new int[regions.size()];
+        for (int k = 0; k < regions.size(); k++) {
+            layout.starts[k] = regions.get(k)[0];
+            layout.sizes[k] = (int) regions.get(k)[1];
+        }
+        layout.floating = floating.toArray(new int[floating.size()][]);
+        layout.intStarts = new long[intRegions.size()];
+        layout.intCounts = new int[intRegions.size()];
+        for (int k = 0; k < intRegions.size(); k++) {
+            layout.intStarts[k] = intRegions.get(k)[0];
+            layout.intCounts[k] = (int) intRegions.get(k)[1];
+        }
+        layout.hashed = toArray(hashed);
+        layout.objects = toArray(objects);
+        if (ci.order != null) {
+            int[] costs = new int[layout.starts.length +
+                    layout.objects.length];
+            Arrays.fill(costs, layout.starts.length, costs.length, 1);
+            layout.order = new AdaptiveOrder(costs);
+        }
+        ci.layout = layout;
+    }
+
+    /**
+     * @param list a list
+     * @return the same values as an array
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] r = new int[list.size()];
+        for (int i = 0; i < r.length; i++)
+            r[i] = list.get(i);
+        return r;
+    }
+
+    /**
+     * @param type ClassInfo.INTEGER_TYPE etc. (not ClassInfo.OTHER_TYPE)
+     * @return size of a field in bytes
+     */
+    private static int size(int type) {
+        switch (type) {
+            case ClassInfo.BYTE_TYPE:
+            case ClassInfo.BOOLEAN_TYPE:
+                return 1;
+            case ClassInfo.SHORT_TYPE:
+            case ClassInfo.CHARACTER_TYPE:
+                return 2;
+            case ClassInfo.LONG_TYPE:
+            case ClassInfo.DOUBLE_TYPE:
+                return 8;
+            default:
+                return 4;
+        }
     }
 
     @Override
     public boolean equals(ClassInfo ci, Object a, Object b) {
-        for (int i = 0; i< ci.offsets.length; i++) {
+        Layout layout = (Layout) ci.layout;
+        if (layout == null) {
+            for (int i = 0; i < ci.offsets.length; i++) {
+                if (!equals(ci, i, a, b))
+                    return false;
+            }
+            return true;
+        }
+
+        AdaptiveOrder order = layout.order;
+        if (order != null) {
+            for (int check: order.order) {
+                if (!equals(ci, layout, check, a, b)) {
+                    order.mismatch(check);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int n = layout.starts.length + layout.objects.length;
+        for (int check = 0; check < n; check++) {
+            if (!equals(ci, layout, check, a, b))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Performs one check of equals().
+     *
+     * @param ci class information
+     * @param layout memory layout
+     * @param check index of a region or layout.starts.length + index of
+     *     an object field in layout.objects
+     * @param a first object
+     * @param b second object
+     * @return true = the values are equal
+     */
+    private boolean equals(ClassInfo ci, Layout layout, int check,
+            Object a, Object b) {
+        if (check >= layout.starts.length) {
+            long offset = ci.offsets[layout.objects[
+                    check - layout.starts.length]];
+            return JAU.equals(UNSAFE.getObject(a, offset),
+                    UNSAFE.getObject(b, offset));
+        }
+
+        if (equals(a, b, layout.starts[check], layout.sizes[check]))
+            return true;
+        int[] fl = layout.floating[check];
+        if (fl == null)
+            return false;
+        for (int f: fl) {
+            if (!equals(ci, f, a, b))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compares a region of memory in 2 objects. Aligned words are read
+     * where possible.
+     *
+     * @param a first object
+     * @param b second object
+     * @param offset start of the region
+     * @param size size of the region in bytes
+     * @return true = all bytes are equal
+     */
+    private boolean equals(Object a, Object b, long offset, int size) {
+        long end = offset + size;
+        while (offset < end) {
+            long rest = end - offset;
+            if ((offset & 7) == 0 && rest >= 8) {
+                if (UNSAFE.getLong(a, offset) != UNSAFE.getLong(b, offset))
+                    return false;
+                offset += 8;
+            } else if ((offset & 3) == 0 && rest >= 4) {
+                if (UNSAFE.getInt(a, offset) != UNSAFE.getInt(b, offset))
+                    return false;
+                offset += 4;
+            } else if ((offset & 1) == 0 && rest >= 2) {
+                if (UNSAFE.getShort(a, offset) != UNSAFE.getShort(b, offset))
+                    return false;
+                offset += 2;
+            } else {
+                if (UNSAFE.getByte(a, offset) != UNSAFE.getByte(b, offset))
+                    return false;
+                offset++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares one field.
+     *
+     * @param ci class information
+     * @param i index of the field
+     * @param a first object
+     * @param b second object
+     * @return true = the values are equal
+     */
+    private boolean equals(ClassInfo ci, int i, Object a, Object b) {
+        long offset = ci.offsets[i];
+        switch (ci.types[i]) {
+            case ClassInfo.INTEGER_TYPE:
+                return UNSAFE.getInt(a, offset) == UNSAFE.getInt(b, offset);
+            case ClassInfo.BYTE_TYPE:
+                return UNSAFE.getByte(a, offset) == UNSAFE.getByte(b, offset);
+            case ClassInfo.SHORT_TYPE:
+                return UNSAFE.getShort(a, offset) ==
+                        UNSAFE.getShort(b, offset);
+            case ClassInfo.LONG_TYPE:
+                return UNSAFE.getLong(a, offset) == UNSAFE.getLong(b, offset);
+            case ClassInfo.FLOAT_TYPE:
+                return Float.floatToIntBits(UNSAFE.getFloat(a, offset)) ==
+                        Float.floatToIntBits(UNSAFE.getFloat(b, offset));
+            case ClassInfo.DOUBLE_TYPE:
+                return Double.doubleToLongBits(UNSAFE.getDouble(a, offset)) ==
+                        Double.doubleToLongBits(UNSAFE.getDouble(b, offset));
+            case ClassInfo.CHARACTER_TYPE:
+                return UNSAFE.getChar(a, offset) == UNSAFE.getChar(b, offset);
+            case ClassInfo.BOOLEAN_TYPE:
+                return UNSAFE.getBoolean(a, offset) ==
+                        UNSAFE.getBoolean(b, offset);
+            default:
+                return JAU.equals(UNSAFE.getObject(a, offset),
+                        UNSAFE.getObject(b, offset));
+        }
+    }
+
+    @Override
+    public int hashCode(ClassInfo ci, Object a, int initialNonZeroOddNumber,
+            int multiplierNonZeroOddNumber) {
+        Layout layout = (Layout) ci.layout;
+        if (layout == null) {
+            int result = initialNonZeroOddNumber;
+            for (int i = 0; i < ci.offsets.length; i++)
+                result += multiplierNonZeroOddNumber * hashCode(ci, i, a);
+            return result;
+        }
+
+        // the hash code is a sum, so that the order does not matter and
+        // the int values can be added 2 at a time
+        int sum = 0;
+        for (int i = 0; i < layout.intStarts.length; i++) {
+            long offset = layout.intStarts[i];
+            int n = layout.intCounts[i];
+            if ((offset & 7) != 0) {
+                sum += UNSAFE.getInt(a, offset);
+                offset += 4;
+                n--;
+            }
+            for (; n >= 2; n -= 2, offset += 8) {
+                long w = UNSAFE.getLong(a, offset);
+                sum += (int) w + (int) (w >>> 32);
+            }
+            if (n != 0)
+                sum += UNSAFE.getInt(a, offset);
+        }
+        for (int i: layout.hashed)
+            sum += hashCode(ci, i, a);
+        for (int i: layout.objects)
+            sum += JAU.hashCode(UNSAFE.getObject(a, ci.offsets[i]));
+        return initialNonZeroOddNumber + multiplierNonZeroOddNumber * sum;
+    }
+
+    /**
+     * Computes the hash code of one field.
+     *
+     * @param ci class information
+     * @param i index of the field
+     * @param a the object
+     * @return hash code of the value
+     */
+    private int hashCode(ClassInfo ci, int i, Object a) {
+        long offset = ci.offsets[i];
+        int h;
+        switch (ci.types[i]) {
+            case ClassInfo.INTEGER_TYPE:
+                h = UNSAFE.getInt(a, offset);
+                break;
+            case ClassInfo.BYTE_TYPE:
+                h = UNSAFE.getByte(a, offset);
+                break;
+            case ClassInfo.SHORT_TYPE:
+                h = UNSAFE.getShort(a, offset);
+                break;
+            case ClassInfo.LONG_TYPE:
+                long value = UNSAFE.getLong(a, offset);
+                h = (int) (value ^ (value >>> 32));
+                break;
+            case ClassInfo.FLOAT_TYPE:
+                h = Float.floatToIntBits(UNSAFE.getFloat(a, offset));
+                break;
+            case ClassInfo.DOUBLE_TYPE:
+                long bits = Double.doubleToLongBits(
+                        UNSAFE.getDouble(a, offset));
+                h = (int) (bits ^ (bits >>> 32));
+                break;
+            case ClassInfo.CHARACTER_TYPE:
+                h = UNSAFE.getChar(a, offset);
+                break;
+            case ClassInfo.BOOLEAN_TYPE:
+                h = UNSAFE.getBoolean(a, offset) ? 1231 : 1237;
+                break;
+            default:
+                h = JAU.hashCode(UNSAFE.getObject(a, offset));
+        }
+        return h;
+    }
+
+    @Override
+    public int compare(ClassInfo ci, Object a, Object b) {
+        for (int i = 0; i < ci.offsets.length; i++) {
             long offset = ci.offsets[i];
+            int r;
             switch (ci.types[i]) {
                 case ClassInfo.INTEGER_TYPE:
-                    if (UNSAFE.getInt(a, offset) != UNSAFE.getInt(b, offset))
-                        return false;
-                    else
-                        break;
+                    r = compare(UNSAFE.getInt(a, offset),
+                            UNSAFE.getInt(b, offset));
+                    break;
                 case ClassInfo.BYTE_TYPE:
-                    if (UNSAFE.getByte(a, offset) != UNSAFE.getByte(b, offset))
-                        return false;
-                    else
-                        break;
+                    r = UNSAFE.getByte(a, offset) - UNSAFE.getByte(b, offset);
+                    break;
                 case ClassInfo.SHORT_TYPE:
-                    if (UNSAFE.getShort(a, offset) != UNSAFE.getShort(b, offset))
-                        return false;
-                    else
-                        break;
+                    r = UNSAFE.getShort(a, offset) -
+                            UNSAFE.getShort(b, offset);
+                    break;
                 case ClassInfo.LONG_TYPE:
-                    if (UNSAFE.getLong(a, offset) != UNSAFE.getLong(b, offset))
-                        return false;
-                    else
-                        break;
+                    r = compare(UNSAFE.getLong(a, offset),
+                            UNSAFE.getLong(b, offset));
+                    break;
                 case ClassInfo.FLOAT_TYPE:
-                    if (Float.floatToIntBits(UNSAFE.getFloat(a, offset)) !=
-                            Float.floatToIntBits(UNSAFE.getFloat(b, offset)))
-                        return false;
-                    else
-                        break;
+                    r = Float.compare(UNSAFE.getFloat(a, offset),
+                            UNSAFE.getFloat(b, offset));
+                    break;
                 case ClassInfo.DOUBLE_TYPE:
-                    if (Double.doubleToLongBits(UNSAFE.getDouble(a, offset)) !=
-                            Double.doubleToLongBits(UNSAFE.getDouble(b, offset)))
-                        return false;
-                    else
-                        break;
+                    r = Double.compare(UNSAFE.getDouble(a, offset),
+                            UNSAFE.getDouble(b, offset));
+                    break;
                 case ClassInfo.CHARACTER_TYPE:
-                    if (UNSAFE.getChar(a, offset) != UNSAFE.getChar(b, offset))
-                        return false;
-                    else
-                        break;
+                    r = UNSAFE.getChar(a, offset) - UNSAFE.getChar(b, offset);
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    boolean ba = UNSAFE.getBoolean(a, offset);
+                    r = ba == UNSAFE.getBoolean(b, offset) ? 0 : (ba ? 1 : -1);
+                    break;
                 default:
-                    if (!JAU.equals(UNSAFE.getObject(a, offset),
-                            UNSAFE.getObject(b, offset)))
-                        return false;
+                    r = JAU.compare(UNSAFE.getObject(a, offset),
+                            UNSAFE.getObject(b, offset));
             }
+            if (r != 0)
+                return r;
+        }
+        return 0;
+    }
+
+    /**
+     * Compares 2 long values without overflow.
+     *
+     * @param a first value
+     * @param b second value
+     * @return -1, 0 or 1
+     */
+    private static int compare(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    @Override
+    public void copy(ClassInfo ci, Object a, Object b) {
+        for (int i = 0; i < ci.offsets.length; i++) {
+            long offset = ci.offsets[i];
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    UNSAFE.putInt(b, offset, UNSAFE.getInt(a, offset));
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    UNSAFE.putByte(b, offset, UNSAFE.getByte(a, offset));
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    UNSAFE.putShort(b, offset, UNSAFE.getShort(a, offset));
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    UNSAFE.putLong(b, offset, UNSAFE.getLong(a, offset));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    UNSAFE.putFloat(b, offset, UNSAFE.getFloat(a, offset));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    UNSAFE.putDouble(b, offset, UNSAFE.getDouble(a, offset));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    UNSAFE.putChar(b, offset, UNSAFE.getChar(a, offset));
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    UNSAFE.putBoolean(b, offset, UNSAFE.getBoolean(a, offset));
+                    break;
+                default:
+                    UNSAFE.putObject(b, offset,
+                            JAU.clone(UNSAFE.getObject(a, offset)));
+            }
+        }
+    }
+
+    @Override
+    public void toString(ClassInfo ci, StringBuilder sb, Object a,
+            boolean manyLines) {
+        for (int i = 0; i < ci.offsets.length; i++) {
+            if (manyLines) {
+                if (i != 0)
+                    sb.append(",\n    ");
+                else
+                    sb.append("\n    ");
+            } else {
+                if (i != 0)
+                    sb.append(", ");
+            }
+            sb.append(ci.fields[i].getName()).append('=');
+            long offset = ci.offsets[i];
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    sb.append(UNSAFE.getInt(a, offset));
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    sb.append(UNSAFE.getByte(a, offset));
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    sb.append(UNSAFE.getShort(a, offset));
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    sb.append(UNSAFE.getLong(a, offset));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    sb.append(UNSAFE.getFloat(a, offset));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    sb.append(UNSAFE.getDouble(a, offset));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    sb.append(UNSAFE.getChar(a, offset));
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    sb.append(UNSAFE.getBoolean(a, offset));
+                    break;
+                default:
+                    JAU.toString(sb, UNSAFE.getObject(a, offset), manyLines);
+            }
+        }
+    }
+
+    @Override
+    public void toMap(ClassInfo ci, Map<String, Object> map, Object a) {
+        for (int i = 0; i < ci.offsets.length; i++) {
+            long offset = ci.offsets[i];
+            Object value;
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    value = Integer.valueOf(UNSAFE.getInt(a, offset));
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    value = Byte.valueOf(UNSAFE.getByte(a, offset));
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    value = Short.valueOf(UNSAFE.getShort(a, offset));
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    value = Long.valueOf(UNSAFE.getLong(a, offset));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    value = Float.valueOf(UNSAFE.getFloat(a, offset));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    value = Double.valueOf(UNSAFE.getDouble(a, offset));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    value = Character.valueOf(UNSAFE.getChar(a, offset));
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    value = Boolean.valueOf(UNSAFE.getBoolean(a, offset));
+                    break;
+                default:
+                    value = UNSAFE.getObject(a, offset);
+            }
+            map.put(ci.names[i], value);
         }
-        return true;
     }
 }
@@ -0,0 +1,464 @@
+package com.googlecode.jau;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of JAU methods using java.lang.invoke.VarHandle (Java 17 or
+ * later). It is used if sun.misc.Unsafe is not available or restricted.
+ *
+ * The JIT compiler only inlines a VarHandle access if the VarHandle is a
+ * constant. equals(), hashCode() and compareTo() are therefore generated
+ * as a hidden class per annotated class (see {@link JAUCodegen}) that
+ * stores the VarHandles in static final fields. The other methods and
+ * non-default hashCode() parameters use the VarHandles from an array and
+ * go through the generic invoker.
+ */
+class JAUVarHandle implements JAUInterface {
+    private static final String VAR_HANDLE = "java/lang/invoke/VarHandle";
+    private static final String VAR_HANDLE_DESC =
+            "Ljava/lang/invoke/VarHandle;";
+    private static final String OBJECT = "java/lang/Object";
+
+    /**
+     * Generates hidden classes with the VarHandles of one class as
+     * constants. The VarHandles are passed as class data.
+     */
+    private static final class HandleGenerator extends JAUCodegen.Generator {
+        private final List<VarHandle> handles;
+
+        /**
+         * -
+         *
+         * @param handles VarHandles for the fields
+         */
+        HandleGenerator(List<VarHandle> handles) {
+            this.handles = handles;
+        }
+
+        @Override
+        String newClassName(String kind) {
+            // hidden classes get a unique suffix
+            return "com/googlecode/jau/VarHandle" + kind;
+        }
+
+        /**
+         * Creates a class with static final fields "H0", "H1", ...
+         * initialized with the VarHandles from the class data.
+         */
+        @Override
+        ClassFileWriter newClass(String name, String iface) {
+            ClassFileWriter w = new ClassFileWriter(name, OBJECT,
+                    new String[] {iface});
+            ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_STATIC,
+                    "<clinit>", "()V");
+            for (int i = 0; i < handles.size(); i++) {
+                w.addField(ClassFileWriter.ACC_PRIVATE |
+                        ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                        "H" + i, VAR_HANDLE_DESC);
+
+                // Hi = MethodHandles.classDataAt(MethodHandles.lookup(),
+                //         "_", VarHandle.class, i)
+                c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                        "java/lang/invoke/MethodHandles", "lookup",
+                        "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+                c.op2(ClassFileWriter.LDC_W, w.string("_"));
+                c.op2(ClassFileWriter.LDC_W, w.cls(VAR_HANDLE));
+                c.iconst(i);
+                c.op2(ClassFileWriter.INVOKESTATIC, w.method(
+                        "java/lang/invoke/MethodHandles", "classDataAt",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;" +
+                        "Ljava/lang/String;Ljava/lang/Class;I)" +
+                        "Ljava/lang/Object;"));
+                c.op2(ClassFileWriter.CHECKCAST, w.cls(VAR_HANDLE));
+                c.op2(ClassFileWriter.PUTSTATIC, w.field(name, "H" + i,
+                        VAR_HANDLE_DESC));
+            }
+            c.op(ClassFileWriter.RETURN);
+            c.end(4, 0);
+
+            c = w.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+            c.op1(ClassFileWriter.ALOAD, 0);
+            c.op2(ClassFileWriter.INVOKESPECIAL, w.method(OBJECT, "<init>",
+                    "()V"));
+            c.op(ClassFileWriter.RETURN);
+            c.end(1, 1);
+            return w;
+        }
+
+        @Override
+        void get(ClassFileWriter w, ClassFileWriter.Code c, String name,
+                ClassInfo ci, int field, int local) {
+            String desc;
+            switch (ci.types[field]) {
+                case ClassInfo.INTEGER_TYPE:
+                    desc = "I";
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    desc = "B";
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    desc = "S";
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    desc = "J";
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    desc = "F";
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    desc = "D";
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    desc = "C";
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    desc = "Z";
+                    break;
+                default:
+                    desc = "Ljava/lang/Object;";
+            }
+            c.op2(ClassFileWriter.GETSTATIC, w.field(name, "H" + field,
+                    VAR_HANDLE_DESC));
+            c.op1(ClassFileWriter.ALOAD, local);
+            c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method(VAR_HANDLE, "get",
+                    "(Ljava/lang/Object;)" + desc));
+        }
+
+        @Override
+        Object define(String name, ClassFileWriter w) {
+            try {
+                return MethodHandles.lookup().defineHiddenClassWithClassData(
+                        w.toByteArray(), handles, true).lookupClass().
+                        getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
+            }
+        }
+    }
+
+    /**
+     * -
+     *
+     * @throws java.lang.ReflectiveOperationException if VarHandles
+     *     cannot be created
+     */
+    public JAUVarHandle() throws ReflectiveOperationException {
+        // fail early if the private lookup is not supported
+        MethodHandles.privateLookupIn(ClassInfo.class, MethodHandles.lookup()).
+                findVarHandle(ClassInfo.class, "annotated", Boolean.TYPE);
+    }
+
+    public void update(ClassInfo ci) {
+        if (!ci.annotated)
+            return;
+        VarHandle[] handles = new VarHandle[ci.fields.length];
+        try {
+            for (int i = 0; i < ci.fields.length; i++) {
+                Field f = ci.fields[i];
+                handles[i] = MethodHandles.privateLookupIn(
+                        f.getDeclaringClass(), MethodHandles.lookup()).
+                        unreflectVarHandle(f);
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+        ci.handles = handles;
+
+        HandleGenerator g = new HandleGenerator(Arrays.asList(handles));
+        try {
+            if (ci.annotationClass == JAUEquals.class)
+                ci.compiled = JAUCodegen.generateEquals(ci, g);
+            else if (ci.annotationClass == JAUHashCode.class)
+                ci.compiled = JAUCodegen.generateHashCode(ci,
+                        JAU.DEFAULT_INITIAL, JAU.DEFAULT_MULTIPLIER, g);
+            else if (ci.annotationClass == JAUCompareTo.class)
+                ci.compiled = JAUCodegen.generateCompare(ci, g);
+        } catch (RuntimeException ex) {
+            // the VarHandles from the array will be used
+            ci.compiled = null;
+        } catch (LinkageError ex) {
+            ci.compiled = null;
+        }
+    }
+
+    @Override
+    public boolean equals(ClassInfo ci, Object a, Object b) {
+        Comparator c = (Comparator) ci.compiled;
+        if (c != null)
+            return c.compare(a, b) == 0;
+
+        VarHandle[] handles = (VarHandle[]) ci.handles;
+        for (int i = 0; i < handles.length; i++) {
+            VarHandle h = handles[i];
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    if ((int) h.get(a) != (int) h.get(b))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.BYTE_TYPE:
+                    if ((byte) h.get(a) != (byte) h.get(b))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.SHORT_TYPE:
+                    if ((short) h.get(a) != (short) h.get(b))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.LONG_TYPE:
+                    if ((long) h.get(a) != (long) h.get(b))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.FLOAT_TYPE:
+                    if (Float.floatToIntBits((float) h.get(a)) !=
+                            Float.floatToIntBits((float) h.get(b)))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.DOUBLE_TYPE:
+                    if (Double.doubleToLongBits((double) h.get(a)) !=
+                            Double.doubleToLongBits((double) h.get(b)))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.CHARACTER_TYPE:
+                    if ((char) h.get(a) != (char) h.get(b))
+                        return false;
+                    else
+                        break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    if ((boolean) h.get(a) != (boolean) h.get(b))
+                        return false;
+                    else
+                        break;
+                default:
+                    if (!JAU.equals((Object) h.get(a), (Object) h.get(b)))
+                        return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(ClassInfo ci, Object a, int initialNonZeroOddNumber,
+            int multiplierNonZeroOddNumber) {
+        HashCoder coder = (HashCoder) ci.compiled;
+        if (coder != null && initialNonZeroOddNumber == JAU.DEFAULT_INITIAL &&
+                multiplierNonZeroOddNumber == JAU.DEFAULT_MULTIPLIER)
+            return coder.hashCode(a);
+
+        VarHandle[] handles = (VarHandle[]) ci.handles;
+        int result = initialNonZeroOddNumber;
+        for (int i = 0; i < handles.length; i++) {
+            VarHandle h = handles[i];
+            int hc;
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    hc = (int) h.get(a);
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    hc = (byte) h.get(a);
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    hc = (short) h.get(a);
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    long value = (long) h.get(a);
+                    hc = (int) (value ^ (value >>> 32));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    hc = Float.floatToIntBits((float) h.get(a));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    long bits = Double.doubleToLongBits((double) h.get(a));
+                    hc = (int) (bits ^ (bits >>> 32));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    hc = (char) h.get(a);
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    hc = (boolean) h.get(a) ? 1231 : 1237;
+                    break;
+                default:
+                    hc = JAU.hashCode((Object) h.get(a));
+            }
+            result += multiplierNonZeroOddNumber * hc;
+        }
+        return result;
+    }
+
+    @Override
+    public int compare(ClassInfo ci, Object a, Object b) {
+        Comparator c = (Comparator) ci.compiled;
+        if (c != null)
+            return c.compare(a, b);
+
+        VarHandle[] handles = (VarHandle[]) ci.handles;
+        for (int i = 0; i < handles.length; i++) {
+            VarHandle h = handles[i];
+            int r;
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    r = compare((int) h.get(a), (int) h.get(b));
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    r = (byte) h.get(a) - (byte) h.get(b);
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    r = (short) h.get(a) - (short) h.get(b);
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    r = compare((long) h.get(a), (long) h.get(b));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    r = Float.compare((float) h.get(a), (float) h.get(b));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    r = Double.compare((double) h.get(a), (double) h.get(b));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    r = (char) h.get(a) - (char) h.get(b);
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    boolean ba = (boolean) h.get(a);
+                    r = ba == (boolean) h.get(b) ? 0 : (ba ? 1 : -1);
+                    break;
+                default:
+                    r = JAU.compare((Object) h.get(a), (Object) h.get(b));
+            }
+            if (r != 0)
+                return r;
+        }
+        return 0;
+    }
+
+    @Override
+    public void copy(ClassInfo ci, Object a, Object b) {
+        VarHandle[] handles = (VarHandle[]) ci.handles;
+        for (int i = 0; i < handles.length; i++) {
+            Field f = ci.fields[i];
+
+            // VarHandles for final fields are read-only
+            if (Modifier.isFinal(f.getModifiers())) {
+                try {
+                    if (ci.types[i] == ClassInfo.OTHER_TYPE)
+                        f.set(b, JAU.clone(f.get(a)));
+                    else
+                        f.set(b, f.get(a));
+                } catch (IllegalAccessException ex) {
+                    throw (InternalError) new InternalError(
+                            ex.getMessage()).initCause(ex);
+                }
+                continue;
+            }
+
+            VarHandle h = handles[i];
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    h.set(b, (int) h.get(a));
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    h.set(b, (byte) h.get(a));
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    h.set(b, (short) h.get(a));
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    h.set(b, (long) h.get(a));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    h.set(b, (float) h.get(a));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    h.set(b, (double) h.get(a));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    h.set(b, (char) h.get(a));
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    h.set(b, (boolean) h.get(a));
+                    break;
+                default:
+                    h.set(b, JAU.clone((Object) h.get(a)));
+            }
+        }
+    }
+
+    @Override
+    public void toString(ClassInfo ci, StringBuilder sb, Object a,
+            boolean manyLines) {
+        VarHandle[] handles = (VarHandle[]) ci.handles;
+        for (int i = 0; i < handles.length; i++) {
+            if (manyLines) {
+                if (i != 0)
+                    sb.append(",\n    ");
+                else
+                    sb.append("\n    ");
+            } else {
+                if (i != 0)
+                    sb.append(", ");
+            }
+            sb.append(ci.fields[i].getName()).append('=');
+            VarHandle h = handles[i];
+            switch (ci.types[i]) {
+                case ClassInfo.INTEGER_TYPE:
+                    sb.append((int) h.get(a));
+                    break;
+                case ClassInfo.BYTE_TYPE:
+                    sb.append((byte) h.get(a));
+                    break;
+                case ClassInfo.SHORT_TYPE:
+                    sb.append((short) h.get(a));
+                    break;
+                case ClassInfo.LONG_TYPE:
+                    sb.append((long) h.get(a));
+                    break;
+                case ClassInfo.FLOAT_TYPE:
+                    sb.append((float) h.get(a));
+                    break;
+                case ClassInfo.DOUBLE_TYPE:
+                    sb.append((double) h.get(a));
+                    break;
+                case ClassInfo.CHARACTER_TYPE:
+                    sb.append((char) h.get(a));
+                    break;
+                case ClassInfo.BOOLEAN_TYPE:
+                    sb.append((boolean) h.get(a));
+                    break;
+                default:
+                    JAU.toString(sb, (Object) h.get(a), manyLines);
+            }
+        }
+    }
+
+    @Override
+    public void toMap(ClassInfo ci, Map<String, Object> map, Object a) {
+        VarHandle[] handles = (VarHandle[]) ci.handles;
+        for (int i = 0; i < handles.length; i++) {
+            // boxes primitive values
+            map.put(ci.names[i], (Object) handles[i].get(a));
+        }
+    }
+
+    /**
+     * Compares 2 long values without overflow.
+     *
+     * @param a first value
+     * @param b second value
+     * @return -1, 0 or 1
+     */
+    private static int compare(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+}
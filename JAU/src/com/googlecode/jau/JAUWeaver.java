@@ -0,0 +1,542 @@
+package com.googlecode.jau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Injects equals(), hashCode(), toString() and compareTo() methods into
+ * classes annotated with {@link JAUEquals}, {@link JAUHashCode},
+ * {@link JAUToString} and {@link JAUCompareTo} (directly or through the
+ * package). Methods declared in the class itself are never replaced.
+ * Classes annotated with {@link JAUCompareTo} also implement
+ * java.lang.Comparable after weaving.
+ *
+ * The weaver can be used in 2 ways:
+ * <ul>
+ *  <li>after compilation:
+ *      <code>java -cp JAU.jar com.googlecode.jau.JAUWeaver build/classes</code>
+ *      (e.g. in the -post-compile target of a NetBeans project)</li>
+ *  <li>at load time: <code>java -javaagent:JAU.jar ...</code></li>
+ * </ul>
+ *
+ * The injected equals(), hashCode() and compareTo() compare the fields
+ * directly (like {@link JAUCodegen}) if all fields used by JAU are declared
+ * in the class and cannot reference other objects: primitive values,
+ * Strings, boxed values and arrays of them. Otherwise, for subclasses and
+ * for toString() the injected methods delegate to JAU.
+ */
+public final class JAUWeaver implements ClassFileTransformer {
+    private static final String JAU_WEAVER = "com/googlecode/jau/JAUWeaver";
+    private static final String OBJECT = "java/lang/Object";
+
+    /**
+     * descriptors of final classes that cannot reference other objects
+     * (the same as in JAUProcessor)
+     */
+    private static final Set<String> IMMUTABLE = new HashSet<String>(
+            Arrays.asList("Ljava/lang/String;", "Ljava/lang/Byte;",
+            "Ljava/lang/Short;", "Ljava/lang/Integer;", "Ljava/lang/Long;",
+            "Ljava/lang/Float;", "Ljava/lang/Double;",
+            "Ljava/lang/Character;", "Ljava/lang/Class;"));
+
+    /**
+     * Reads the fields of the woven class directly.
+     */
+    private static final class FieldEmitter extends JAUCodegen.Emitter {
+        private final List<ClassFileWriter.FieldInfo> fields;
+
+        /**
+         * -
+         *
+         * @param fields the fields in the same order as ClassInfo.types
+         */
+        FieldEmitter(List<ClassFileWriter.FieldInfo> fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        void get(ClassFileWriter w, ClassFileWriter.Code c, String name,
+                ClassInfo ci, int field, int local) {
+            ClassFileWriter.FieldInfo f = fields.get(field);
+            c.op1(ClassFileWriter.ALOAD, local);
+
+            // only "this" is known to be an instance of the class
+            if (local != 0)
+                c.op2(ClassFileWriter.CHECKCAST, w.cls(name));
+            c.op2(ClassFileWriter.GETFIELD, w.field(name, f.name,
+                    f.descriptor));
+        }
+    }
+
+    /**
+     * Entry point for the -javaagent option.
+     *
+     * @param args ignored
+     * @param inst instrumentation
+     */
+    public static void premain(String args, Instrumentation inst) {
+        inst.addTransformer(new JAUWeaver());
+    }
+
+    /**
+     * Weaves all .class files in the specified directories. The files are
+     * overwritten.
+     *
+     * @param args directories
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg: args) {
+            File dir = new File(arg);
+            ClassLoader cl = new URLClassLoader(
+                    new URL[] {dir.toURI().toURL()}, null);
+            int n = weaveDirectory(dir, cl);
+            System.out.println("JAU: " + n + " class(es) woven in " + dir);
+        }
+    }
+
+    /**
+     * Weaves all .class files in a directory and its subdirectories.
+     *
+     * @param dir a directory
+     * @param cl used to find package-info classes
+     * @return number of changed files
+     * @throws IOException if a file cannot be read or written
+     */
+    private static int weaveDirectory(File dir, ClassLoader cl)
+            throws IOException {
+        int n = 0;
+        File[] files = dir.listFiles();
+        if (files == null)
+            return 0;
+        for (File f: files) {
+            if (f.isDirectory()) {
+                n += weaveDirectory(f, cl);
+            } else if (f.getName().endsWith(".class")) {
+                InputStream in = new FileInputStream(f);
+                byte[] b;
+                try {
+                    b = readFully(in);
+                } finally {
+                    in.close();
+                }
+                b = weave(b, cl);
+                if (b != null) {
+                    FileOutputStream out = new FileOutputStream(f);
+                    try {
+                        out.write(b);
+                    } finally {
+                        out.close();
+                    }
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    public byte[] transform(ClassLoader loader, String className,
+            Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+            byte[] classfileBuffer) {
+        // methods cannot be added to already loaded classes
+        if (classBeingRedefined != null || loader == null)
+            return null;
+        try {
+            return weave(classfileBuffer, loader);
+        } catch (IOException ex) {
+            return null;
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Injects methods into a class.
+     *
+     * @param classFile content of a .class file
+     * @param cl used to find the package-info class or null
+     * @return the changed class file or null if nothing was changed
+     * @throws IOException if the class file is invalid
+     */
+    public static byte[] weave(byte[] classFile, ClassLoader cl)
+            throws IOException {
+        ClassFileWriter w = new ClassFileWriter(classFile);
+
+        // ldc for class constants requires class files for Java 5 or later
+        if (w.getVersion() < 49 || (w.getAccess() &
+                (ClassFileWriter.ACC_INTERFACE | ClassFileWriter.ACC_ENUM |
+                ClassFileWriter.ACC_ANNOTATION)) != 0)
+            return null;
+
+        String name = w.getName();
+        if (name.endsWith(JAUProcessor.SUFFIX) ||
+                name.endsWith("/package-info"))
+            return null;
+
+        ClassFileWriter pkg = null;
+        int slash = name.lastIndexOf('/');
+        if (cl != null && slash > 0) {
+            InputStream in = cl.getResourceAsStream(
+                    name.substring(0, slash) + "/package-info.class");
+            if (in != null) {
+                try {
+                    pkg = new ClassFileWriter(readFully(in));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+
+        boolean changed = false;
+        if (isAnnotated(w, pkg, JAUEquals.class) &&
+                !w.hasMethod("equals", "(Ljava/lang/Object;)Z")) {
+            ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                    "equals", "(Ljava/lang/Object;)Z");
+            List<ClassFileWriter.FieldInfo> fields =
+                    getFields(w, JAUEquals.class);
+            if (fields != null) {
+                ClassFileWriter.Label different = c.newLabel();
+                ClassFileWriter.Label delegate = c.newLabel();
+                c.locals(name, OBJECT);
+                checkClasses(w, c, name, 1, delegate);
+                JAUCodegen.emitEquals(w, c, name, getTypes(fields),
+                        new FieldEmitter(fields), 0, 1, different);
+                c.op(ClassFileWriter.ICONST_1);
+                c.op(ClassFileWriter.IRETURN);
+                c.place(different);
+                c.op(ClassFileWriter.ICONST_0);
+                c.op(ClassFileWriter.IRETURN);
+                c.place(delegate);
+            }
+            c.op1(ClassFileWriter.ALOAD, 0);
+            c.op1(ClassFileWriter.ALOAD, 1);
+            c.op2(ClassFileWriter.LDC_W, w.cls(name));
+            c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_WEAVER,
+                    "equals",
+                    "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Class;)Z"));
+            c.op(ClassFileWriter.IRETURN);
+            c.end(8, 2);
+            changed = true;
+        }
+        if (isAnnotated(w, pkg, JAUHashCode.class) &&
+                !w.hasMethod("hashCode", "()I")) {
+            ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                    "hashCode", "()I");
+            List<ClassFileWriter.FieldInfo> fields =
+                    getFields(w, JAUHashCode.class);
+            if (fields != null) {
+                ClassFileWriter.Label delegate = c.newLabel();
+                c.locals(name);
+                checkClasses(w, c, name, -1, delegate);
+                JAUCodegen.emitHashCode(w, c, name, getTypes(fields),
+                        new FieldEmitter(fields), 0, 1, JAU.DEFAULT_INITIAL,
+                        JAU.DEFAULT_MULTIPLIER);
+                c.op(ClassFileWriter.IRETURN);
+                c.place(delegate);
+            }
+            c.op1(ClassFileWriter.ALOAD, 0);
+            c.op2(ClassFileWriter.LDC_W, w.cls(name));
+            c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_WEAVER,
+                    "hashCode", "(Ljava/lang/Object;Ljava/lang/Class;)I"));
+            c.op(ClassFileWriter.IRETURN);
+            c.end(10, 2);
+            changed = true;
+        }
+        if (isAnnotated(w, pkg, JAUToString.class) &&
+                !w.hasMethod("toString", "()Ljava/lang/String;")) {
+            ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                    "toString", "()Ljava/lang/String;");
+            c.op1(ClassFileWriter.ALOAD, 0);
+            c.op2(ClassFileWriter.LDC_W, w.cls(name));
+            c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_WEAVER,
+                    "toString",
+                    "(Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/String;"));
+            c.op(ClassFileWriter.ARETURN);
+            c.end(2, 1);
+            changed = true;
+        }
+        if (isAnnotated(w, pkg, JAUCompareTo.class) &&
+                !w.hasMethod("compareTo", "(Ljava/lang/Object;)I")) {
+            boolean comparable = false;
+            for (String i: w.getInterfaces()) {
+                if (i.equals("java/lang/Comparable"))
+                    comparable = true;
+            }
+            if (!comparable)
+                w.addInterface("java/lang/Comparable");
+            ClassFileWriter.Code c = w.addMethod(ClassFileWriter.ACC_PUBLIC,
+                    "compareTo", "(Ljava/lang/Object;)I");
+            List<ClassFileWriter.FieldInfo> fields =
+                    getFields(w, JAUCompareTo.class);
+            if (fields != null) {
+                ClassFileWriter.Label ret = c.newLabel();
+                ClassFileWriter.Label delegate = c.newLabel();
+                c.locals(name, OBJECT);
+                checkClasses(w, c, name, 1, delegate);
+                JAUCodegen.emitCompare(w, c, name, getTypes(fields),
+                        new FieldEmitter(fields), 0, 1, ret);
+                c.op(ClassFileWriter.ICONST_0);
+                c.op(ClassFileWriter.IRETURN);
+                c.place(ret, "I");
+                c.op(ClassFileWriter.IRETURN);
+                c.place(delegate);
+            }
+            c.op1(ClassFileWriter.ALOAD, 0);
+            c.op1(ClassFileWriter.ALOAD, 1);
+            c.op2(ClassFileWriter.LDC_W, w.cls(name));
+            c.op2(ClassFileWriter.INVOKESTATIC, w.method(JAU_WEAVER,
+                    "compare",
+                    "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Class;)I"));
+            c.op(ClassFileWriter.IRETURN);
+            c.end(8, 2);
+            changed = true;
+        }
+        return changed ? w.toByteArray() : null;
+    }
+
+    /**
+     * Emits code that jumps to delegate unless "this" and the other object
+     * are instances of exactly the woven class.
+     *
+     * @param w class writer
+     * @param c method code
+     * @param name internal name of the woven class
+     * @param other local variable with the other object or -1
+     * @param delegate target for other classes and null
+     */
+    private static void checkClasses(ClassFileWriter w,
+            ClassFileWriter.Code c, String name, int other,
+            ClassFileWriter.Label delegate) {
+        c.op1(ClassFileWriter.ALOAD, 0);
+        c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method(OBJECT, "getClass",
+                "()Ljava/lang/Class;"));
+        c.op2(ClassFileWriter.LDC_W, w.cls(name));
+        c.jump(ClassFileWriter.IF_ACMPNE, delegate);
+        if (other >= 0) {
+            c.op1(ClassFileWriter.ALOAD, other);
+            c.jump(ClassFileWriter.IFNULL, delegate);
+            c.op1(ClassFileWriter.ALOAD, other);
+            c.op2(ClassFileWriter.INVOKEVIRTUAL, w.method(OBJECT, "getClass",
+                    "()Ljava/lang/Class;"));
+            c.op2(ClassFileWriter.LDC_W, w.cls(name));
+            c.jump(ClassFileWriter.IF_ACMPNE, delegate);
+        }
+    }
+
+    /**
+     * Selects the fields like JAU.getFieldsFor().
+     *
+     * @param w the class
+     * @param annotationClass JAUEquals, JAUHashCode or JAUCompareTo
+     * @return the fields used by JAU or null if the method should delegate
+     *     to JAU because the fields cannot be accessed directly, a field can
+     *     reference other objects or the value is cached
+     */
+    private static List<ClassFileWriter.FieldInfo> getFields(
+            ClassFileWriter w, Class annotationClass) {
+        String descriptor = descriptor(annotationClass);
+        Map<String, Boolean> a = w.getAnnotation(descriptor);
+        if (a != null && Boolean.TRUE.equals(a.get("cache")))
+            return null;
+
+        // private fields of the parent class cannot be accessed
+        if ((a == null || !Boolean.FALSE.equals(a.get("inherited"))) &&
+                !w.getSuperName().equals(OBJECT))
+            return null;
+
+        boolean defaultInclude = a == null ||
+                !Boolean.FALSE.equals(a.get("allFields"));
+        String hashCode = descriptor(JAUHashCode.class);
+        String toString = descriptor(JAUToString.class);
+        List<ClassFileWriter.FieldInfo> r =
+                new ArrayList<ClassFileWriter.FieldInfo>();
+        for (ClassFileWriter.FieldInfo f: w.getFields()) {
+            if ((f.access & (ClassFileWriter.ACC_STATIC |
+                    ClassFileWriter.ACC_SYNTHETIC)) != 0)
+                continue;
+
+            boolean include = defaultInclude;
+            Map<String, Boolean> an = f.annotations.get(descriptor);
+            if (an != null && Boolean.FALSE.equals(an.get("include")))
+                include = false;
+            if (isCache(f.annotations.get(hashCode)) ||
+                    isCache(f.annotations.get(toString)))
+                include = false;
+
+            if (include) {
+                if (mayReference(f.descriptor))
+                    return null;
+                r.add(f);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param a boolean values of a field annotation or null
+     * @return true = cache() is true
+     */
+    private static boolean isCache(Map<String, Boolean> a) {
+        return a != null && Boolean.TRUE.equals(a.get("cache"));
+    }
+
+    /**
+     * @param descriptor field descriptor
+     * @return true = a value of this type may reference other objects
+     *     (see JAUProcessor.mayReference())
+     */
+    private static boolean mayReference(String descriptor) {
+        String d = descriptor.substring(descriptor.lastIndexOf('[') + 1);
+        return d.charAt(0) == 'L' && !IMMUTABLE.contains(d);
+    }
+
+    /**
+     * @param fields fields
+     * @return class information with the types of the fields
+     */
+    private static ClassInfo getTypes(List<ClassFileWriter.FieldInfo> fields) {
+        ClassInfo ci = new ClassInfo();
+        ci.types = new int[fields.size()];
+        for (int i = 0; i < ci.types.length; i++) {
+            int type;
+            switch (fields.get(i).descriptor.charAt(0)) {
+                case 'I':
+                    type = ClassInfo.INTEGER_TYPE;
+                    break;
+                case 'B':
+                    type = ClassInfo.BYTE_TYPE;
+                    break;
+                case 'S':
+                    type = ClassInfo.SHORT_TYPE;
+                    break;
+                case 'J':
+                    type = ClassInfo.LONG_TYPE;
+                    break;
+                case 'F':
+                    type = ClassInfo.FLOAT_TYPE;
+                    break;
+                case 'D':
+                    type = ClassInfo.DOUBLE_TYPE;
+                    break;
+                case 'C':
+                    type = ClassInfo.CHARACTER_TYPE;
+                    break;
+                case 'Z':
+                    type = ClassInfo.BOOLEAN_TYPE;
+                    break;
+                default:
+                    type = ClassInfo.OTHER_TYPE;
+            }
+            ci.types[i] = type;
+        }
+        return ci;
+    }
+
+    /**
+     * @param annotationClass an annotation
+     * @return type descriptor of the annotation
+     */
+    private static String descriptor(Class annotationClass) {
+        return "L" + annotationClass.getName().replace('.', '/') + ";";
+    }
+
+    /**
+     * Checks the annotations like JAU does at runtime.
+     *
+     * @param c the class
+     * @param pkg package-info class or null
+     * @param annotationClass annotation
+     * @return true = the class is annotated
+     */
+    private static boolean isAnnotated(ClassFileWriter c, ClassFileWriter pkg,
+            Class annotationClass) {
+        String descriptor = descriptor(annotationClass);
+        boolean include = false;
+        if (pkg != null) {
+            Map<String, Boolean> a = pkg.getAnnotation(descriptor);
+            if (a != null && !Boolean.FALSE.equals(a.get("include")))
+                include = true;
+        }
+        Map<String, Boolean> a = c.getAnnotation(descriptor);
+        if (a != null)
+            include = !Boolean.FALSE.equals(a.get("include"));
+        return include;
+    }
+
+    /**
+     * Reads a stream.
+     *
+     * @param in input
+     * @return content
+     * @throws IOException if the stream cannot be read
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    /**
+     * Called by an injected equals() method.
+     *
+     * @param a this
+     * @param b the other object
+     * @param c the woven class
+     * @return true = equal
+     */
+    public static boolean equals(Object a, Object b, Class c) {
+        return JAU.wovenEquals(a, b, c);
+    }
+
+    /**
+     * Called by an injected hashCode() method.
+     *
+     * @param a this
+     * @param c the woven class
+     * @return hash code
+     */
+    public static int hashCode(Object a, Class c) {
+        return JAU.wovenHashCode(a, c);
+    }
+
+    /**
+     * Called by an injected toString() method.
+     *
+     * @param a this
+     * @param c the woven class
+     * @return string representation
+     */
+    public static String toString(Object a, Class c) {
+        return JAU.wovenToString(a, c);
+    }
+
+    /**
+     * Called by an injected compareTo() method.
+     *
+     * @param a this
+     * @param b the other object
+     * @param c the woven class
+     * @return &lt; 0, 0 or &gt; 0
+     */
+    public static int compare(Object a, Object b, Class c) {
+        return JAU.wovenCompare(a, b, c);
+    }
+}
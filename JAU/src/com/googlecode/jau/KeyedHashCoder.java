@@ -0,0 +1,365 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Field;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes hash codes with a secret key using SipHash-2-4. Use it for hash
+ * tables with keys from untrusted sources: without the key it is not
+ * possible to construct many objects with the same hash code.
+ *
+ * The same values as in {@link JAU#hashCode(java.lang.Object)} are used
+ * (including nested annotated objects, arrays and the lists and maps
+ * supported by JAU), but they are encoded into one stream of 64 bit words
+ * for SipHash. Hash codes of equal objects are equal if the same key is
+ * used.
+ */
+public final class KeyedHashCoder implements HashCoder<Object> {
+    /** hash coder with a random key created for this process */
+    public static final KeyedHashCoder DEFAULT = new KeyedHashCoder();
+
+    /** tags that make the encoding unambiguous */
+    private static final long NULL = 1, STRING = 2, ARRAY = 3, NUMBER = 4,
+            OBJECT = 5, LIST = 6, MAP = 7, OTHER = 8;
+
+    private final long k0;
+    private final long k1;
+
+    /**
+     * Creates a hash coder with a random key.
+     */
+    public KeyedHashCoder() {
+        SecureRandom r = new SecureRandom();
+        this.k0 = r.nextLong();
+        this.k1 = r.nextLong();
+    }
+
+    /**
+     * Creates a hash coder with the specified key.
+     *
+     * @param k0 first half of the 128 bit key
+     * @param k1 second half of the 128 bit key
+     */
+    public KeyedHashCoder(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    /**
+     * SipHash-2-4 state.
+     */
+    private static final class Sip {
+        private long v0, v1, v2, v3;
+
+        /** number of processed words */
+        private int n;
+
+        /**
+         * -
+         *
+         * @param k0 first half of the key
+         * @param k1 second half of the key
+         */
+        Sip(long k0, long k1) {
+            v0 = k0 ^ 0x736F6D6570736575L;
+            v1 = k1 ^ 0x646F72616E646F6DL;
+            v2 = k0 ^ 0x6C7967656E657261L;
+            v3 = k1 ^ 0x7465646279746573L;
+        }
+
+        /**
+         * Processes 8 bytes of the message.
+         *
+         * @param m the bytes in little endian order
+         */
+        void update(long m) {
+            v3 ^= m;
+            round();
+            round();
+            v0 ^= m;
+            n++;
+        }
+
+        /**
+         * @return hash code of the processed words
+         */
+        long finish() {
+            long b = (long) (n * 8) << 56;
+            v3 ^= b;
+            round();
+            round();
+            v0 ^= b;
+            v2 ^= 0xFF;
+            round();
+            round();
+            round();
+            round();
+            return v0 ^ v1 ^ v2 ^ v3;
+        }
+
+        /**
+         * SipRound
+         */
+        private void round() {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13);
+            v1 ^= v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16);
+            v3 ^= v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21);
+            v3 ^= v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17);
+            v1 ^= v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+    }
+
+    /**
+     * Computes a 32 bit hash code.
+     *
+     * @param obj an object or null
+     * @return hash code
+     */
+    @Override
+    public int hashCode(Object obj) {
+        long h = hashCode64(obj);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Computes a 64 bit hash code.
+     *
+     * @param obj an object or null
+     * @return hash code
+     */
+    public long hashCode64(Object obj) {
+        Sip s = new Sip(k0, k1);
+        add(s, obj);
+        return s.finish();
+    }
+
+    /**
+     * Encodes an object.
+     *
+     * @param s SipHash state
+     * @param a an object or null
+     */
+    private void add(Sip s, Object a) {
+        if (a == null) {
+            s.update(NULL);
+            return;
+        }
+
+        Class c = a.getClass();
+        if (c == String.class) {
+            String str = (String) a;
+            int len = str.length();
+            s.update(STRING | ((long) len << 8));
+            int i = 0;
+            for (; i + 4 <= len; i += 4) {
+                s.update(str.charAt(i) | ((long) str.charAt(i + 1) << 16) |
+                        ((long) str.charAt(i + 2) << 32) |
+                        ((long) str.charAt(i + 3) << 48));
+            }
+            if (i < len) {
+                long v = 0;
+                for (int shift = 0; i < len; i++, shift += 16)
+                    v |= (long) str.charAt(i) << shift;
+                s.update(v);
+            }
+        } else if (c.isArray()) {
+            addArray(s, a, c);
+        } else {
+            ClassInfo ci = JAU.getClassInfo(c, ClassPlan.HASHCODE);
+            if (ci.annotated)
+                addAnnotated(s, a, ci);
+            else
+                addOther(s, a, c);
+        }
+    }
+
+    /**
+     * Encodes an object of a class annotated with {@link JAUHashCode}.
+     *
+     * @param s SipHash state
+     * @param a the object
+     * @param ci class information
+     */
+    private void addAnnotated(Sip s, Object a, ClassInfo ci) {
+        Field[] fields = ci.fields;
+        s.update(OBJECT | ((long) fields.length << 8));
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                Field f = fields[i];
+                switch (ci.types[i]) {
+                    case ClassInfo.INTEGER_TYPE:
+                        s.update(f.getInt(a));
+                        break;
+                    case ClassInfo.BYTE_TYPE:
+                        s.update(f.getByte(a));
+                        break;
+                    case ClassInfo.SHORT_TYPE:
+                        s.update(f.getShort(a));
+                        break;
+                    case ClassInfo.LONG_TYPE:
+                        s.update(f.getLong(a));
+                        break;
+                    case ClassInfo.FLOAT_TYPE:
+                        s.update(Float.floatToIntBits(f.getFloat(a)));
+                        break;
+                    case ClassInfo.DOUBLE_TYPE:
+                        s.update(Double.doubleToLongBits(f.getDouble(a)));
+                        break;
+                    case ClassInfo.CHARACTER_TYPE:
+                        s.update(f.getChar(a));
+                        break;
+                    case ClassInfo.BOOLEAN_TYPE:
+                        s.update(f.getBoolean(a) ? 1 : 0);
+                        break;
+                    default:
+                        add(s, f.get(a));
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            throw (InternalError) new InternalError(
+                    ex.getMessage()).initCause(ex);
+        }
+    }
+
+    /**
+     * Encodes an object of a class that is not annotated.
+     *
+     * @param s SipHash state
+     * @param a the object
+     * @param c class of the object
+     */
+    private void addOther(Sip s, Object a, Class c) {
+        if (a instanceof Long || a instanceof Integer ||
+                a instanceof Short || a instanceof Byte) {
+            s.update(NUMBER);
+            s.update(((Number) a).longValue());
+        } else if (a instanceof Double) {
+            s.update(NUMBER);
+            s.update(Double.doubleToLongBits((Double) a));
+        } else if (a instanceof Float) {
+            s.update(NUMBER);
+            s.update(Float.floatToIntBits((Float) a));
+        } else if (a instanceof Character) {
+            s.update(NUMBER);
+            s.update((Character) a);
+        } else if (a instanceof Boolean) {
+            s.update(NUMBER);
+            s.update((Boolean) a ? 1 : 0);
+        } else {
+            HashCoder hc = JAU.getHashCoder(c);
+            if (hc == ListHelper.INSTANCE) {
+                List list = (List) a;
+                s.update(LIST | ((long) list.size() << 8));
+                for (Object el: list)
+                    add(s, el);
+            } else if (hc == MapHashCoder.INSTANCE) {
+                // the order of the entries is not defined: each entry is
+                // hashed separately with the same key
+                Map map = (Map) a;
+                long sum = 0;
+                for (Object o: map.entrySet()) {
+                    Map.Entry e = (Map.Entry) o;
+                    Sip es = new Sip(k0, k1);
+                    add(es, e.getKey());
+                    add(es, e.getValue());
+                    sum += es.finish();
+                }
+                s.update(MAP | ((long) map.size() << 8));
+                s.update(sum);
+            } else {
+                s.update(OTHER);
+                s.update(hc != null ? hc.hashCode(a) : a.hashCode());
+            }
+        }
+    }
+
+    /**
+     * Encodes an array. Elements of primitive arrays are packed into 64 bit
+     * words.
+     *
+     * @param s SipHash state
+     * @param a the array
+     * @param c class of the array
+     */
+    private void addArray(Sip s, Object a, Class c) {
+        if (c == byte[].class) {
+            byte[] arr = (byte[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (int i = 0; i < arr.length; i += 8) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 8; j++)
+                    v |= (arr[j] & 0xFFL) << ((j - i) * 8);
+                s.update(v);
+            }
+        } else if (c == short[].class) {
+            short[] arr = (short[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (int i = 0; i < arr.length; i += 4) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 4; j++)
+                    v |= (arr[j] & 0xFFFFL) << ((j - i) * 16);
+                s.update(v);
+            }
+        } else if (c == char[].class) {
+            char[] arr = (char[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (int i = 0; i < arr.length; i += 4) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 4; j++)
+                    v |= (long) arr[j] << ((j - i) * 16);
+                s.update(v);
+            }
+        } else if (c == int[].class) {
+            int[] arr = (int[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (int i = 0; i < arr.length; i += 2) {
+                long v = arr[i] & 0xFFFFFFFFL;
+                if (i + 1 < arr.length)
+                    v |= (long) arr[i + 1] << 32;
+                s.update(v);
+            }
+        } else if (c == long[].class) {
+            long[] arr = (long[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (long v: arr)
+                s.update(v);
+        } else if (c == float[].class) {
+            float[] arr = (float[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (float v: arr)
+                s.update(Float.floatToIntBits(v));
+        } else if (c == double[].class) {
+            double[] arr = (double[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (double v: arr)
+                s.update(Double.doubleToLongBits(v));
+        } else if (c == boolean[].class) {
+            boolean[] arr = (boolean[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (int i = 0; i < arr.length; i += 64) {
+                long v = 0;
+                for (int j = i; j < arr.length && j < i + 64; j++) {
+                    if (arr[j])
+                        v |= 1L << (j - i);
+                }
+                s.update(v);
+            }
+        } else {
+            Object[] arr = (Object[]) a;
+            s.update(ARRAY | ((long) arr.length << 8));
+            for (Object el: arr)
+                add(s, el);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.googlecode.jau;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * .equals() for lists. The elements are compared with
+ * {@link JAU#equals(java.lang.Object, java.lang.Object)}, so that cycles
+ * through lists are found.
+ * Less or greater than 0 values returned by <code>compare</code> are
+ * meaningless.
+ */
+class ListComparator<E, T extends List<E>> implements Comparator<T> {
+    /** Comparator for lists. Can only be used for .equals(). */
+    public static final ListComparator INSTANCE = new ListComparator();
+
+    @Override
+    public int compare(T a, T o) {
+        if (!(o instanceof List))
+            return -1;
+        List l = (List) o;
+        if (l.size() != a.size())
+            return -1;
+
+        Iterator<E> i1 = a.iterator();
+        Iterator i2 = l.iterator();
+        while (i1.hasNext() && i2.hasNext()) {
+            if (!JAU.equals(i1.next(), i2.next()))
+                return -1;
+        }
+        return i1.hasNext() || i2.hasNext() ? -1 : 0;
+    }
+}
@@ -0,0 +1,265 @@
+package com.googlecode.jau;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates deep copies of large object graphs using several threads
+ * (fork/join). The result has the same shape as the result of
+ * {@link JAU#clone(java.lang.Object)}: every reference to a mutable
+ * object is copied separately.
+ *
+ * Objects of classes annotated with {@link JAUCopy} and arrays of objects
+ * are traversed by this class. Large arrays are split into chunks and the
+ * values of reference fields are cloned in separate tasks while there are
+ * idle threads. Other objects (registered {@link Copier}s, copy
+ * constructors) are cloned by {@link JAU#clone(java.lang.Object)} in the
+ * current thread.
+ *
+ * The statistics (number of objects, tasks and the elapsed time) are
+ * accumulated over all calls of {@link #clone(java.lang.Object)}.
+ */
+public final class ParallelCloner {
+    /** maximum number of array elements processed by one task */
+    private static final int ARRAY_CHUNK = 1024;
+
+    /**
+     * a reference field is cloned in a new task if the current thread has
+     * less queued tasks
+     */
+    private static final int SURPLUS = 3;
+
+    private final ForkJoinPool pool;
+    private final AtomicLong objects = new AtomicLong();
+    private final AtomicLong tasks = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * Uses the fork/join pool of the current thread or a pool shared by
+     * JAU.
+     */
+    public ParallelCloner() {
+        this.pool = null;
+    }
+
+    /**
+     * -
+     *
+     * @param pool the tasks will be executed here
+     */
+    public ParallelCloner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a deep copy of an object.
+     *
+     * @param a an object or null
+     * @return null, if a == null, copy of {@code a} otherwise
+     * @see JAU#clone(java.lang.Object)
+     */
+    public Object clone(Object a) {
+        long start = System.nanoTime();
+        try {
+            NodeTask t = new NodeTask(a);
+            return pool != null ? pool.invoke(t) : ParallelTasks.invoke(t);
+        } finally {
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return number of copied objects and arrays (including objects
+     *     copied by JAU.clone)
+     */
+    public long getObjects() {
+        return objects.get();
+    }
+
+    /**
+     * @return number of executed tasks
+     */
+    public long getTasks() {
+        return tasks.get();
+    }
+
+    /**
+     * @return time spent in {@link #clone(java.lang.Object)} in nanoseconds
+     */
+    public long getNanos() {
+        return nanos.get();
+    }
+
+    /**
+     * @return copied objects per second
+     */
+    public double getObjectsPerSecond() {
+        long n = nanos.get();
+        return n == 0 ? 0 : objects.get() * 1e9 / n;
+    }
+
+    /**
+     * Sets all statistics to 0.
+     */
+    public void reset() {
+        objects.set(0);
+        tasks.set(0);
+        nanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d objects, %d tasks, %.3f ms, %.0f objects/s",
+                getObjects(), getTasks(), getNanos() / 1e6,
+                getObjectsPerSecond());
+    }
+
+    /**
+     * Base class for the tasks. The statistics are collected locally and
+     * added to the cloner at the end of a task.
+     */
+    private abstract class CloneTask<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        /** copied objects */
+        long count;
+
+        @Override
+        protected final T compute() {
+            try {
+                return run();
+            } finally {
+                objects.addAndGet(count);
+                tasks.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return result of the task
+         */
+        abstract T run();
+
+        /**
+         * Creates a deep copy of an object in the current task.
+         *
+         * @param a an object or null
+         * @return copy
+         */
+        final Object cloneNode(Object a) {
+            if (a == null)
+                return null;
+
+            Class ca = a.getClass();
+            if (JAU.isImmutableClass(ca))
+                return a;
+
+            if (ca.isArray() && !ca.getComponentType().isPrimitive()) {
+                Object[] src = (Object[]) a;
+                Object[] dst = (Object[]) Array.newInstance(
+                        ca.getComponentType(), src.length);
+                count++;
+                if (src.length > ARRAY_CHUNK) {
+                    new ArrayTask(src, dst, 0, src.length).invoke();
+                } else {
+                    for (int i = 0; i < src.length; i++)
+                        dst[i] = cloneNode(src[i]);
+                }
+                return dst;
+            }
+
+            ClassInfo ci = ca.isArray() ? null :
+                    JAU.getClassInfo(ca, ClassPlan.COPY);
+            Object b = ci != null && ci.annotated ?
+                    JAU.newInstance(a, ca) : null;
+            count++;
+            if (b == null)
+                return JAU.clone(a);
+
+            NodeTask[] pending = null;
+            try {
+                for (int i = 0; i < ci.fields.length; i++) {
+                    if (JAU.copyPrimitive(ci, i, a, b))
+                        continue;
+
+                    Field f = ci.fields[i];
+                    Object v = f.get(a);
+                    if (v == null || JAU.isImmutableClass(v.getClass())) {
+                        f.set(b, v);
+                    } else if (ForkJoinTask.getSurplusQueuedTaskCount() <
+                            SURPLUS) {
+                        if (pending == null)
+                            pending = new NodeTask[ci.fields.length];
+                        pending[i] = new NodeTask(v);
+                        pending[i].fork();
+                    } else {
+                        f.set(b, cloneNode(v));
+                    }
+                }
+                if (pending != null) {
+                    for (int i = pending.length - 1; i >= 0; i--) {
+                        if (pending[i] != null)
+                            ci.fields[i].set(b, pending[i].join());
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw (InternalError) new InternalError(
+                        ex.getMessage()).initCause(ex);
+            }
+            return b;
+        }
+    }
+
+    /**
+     * Copies one object.
+     */
+    private final class NodeTask extends CloneTask<Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object a;
+
+        NodeTask(Object a) {
+            this.a = a;
+        }
+
+        @Override
+        Object run() {
+            return cloneNode(a);
+        }
+    }
+
+    /**
+     * Copies a range of array elements.
+     */
+    private final class ArrayTask extends CloneTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] src, dst;
+        private final int from, to;
+
+        ArrayTask(Object[] src, Object[] dst, int from, int to) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        Void run() {
+            if (to - from <= ARRAY_CHUNK) {
+                for (int i = from; i < to; i++)
+                    dst[i] = cloneNode(src[i]);
+                return null;
+            }
+            int mid = (from + to) >>> 1;
+            ArrayTask right = new ArrayTask(src, dst, mid, to);
+            right.fork();
+            new ArrayTask(src, dst, from, mid).invoke();
+            right.join();
+            return null;
+        }
+    }
+}
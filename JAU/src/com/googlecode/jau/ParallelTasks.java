@@ -0,0 +1,232 @@
+package com.googlecode.jau;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fork/join implementation of
+ * {@link JAU#parallelHashCode(java.lang.Object)} and
+ * {@link JAU#parallelEquals(java.lang.Object, java.lang.Object)}. The
+ * elements are split into chunks, the results of the chunks are combined
+ * so that they are the same as from the sequential methods.
+ */
+final class ParallelTasks {
+    /** maximum number of elements processed by one task */
+    static final int CHUNK = 8192;
+
+    /** a mismatch is checked for after this number of elements */
+    private static final int CHECK = 256;
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * The pool is only created if it is used.
+     */
+    private static final class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /**
+     * Runs a task in the current fork/join pool or in the pool of this
+     * class.
+     *
+     * @param task a task
+     * @return result of the task
+     */
+    static <T> T invoke(ForkJoinTask<T> task) {
+        if (ForkJoinTask.inForkJoinPool())
+            return task.invoke();
+        return PoolHolder.POOL.invoke(task);
+    }
+
+    /**
+     * Computes (31 ^ n) mod 2 ^ 32.
+     *
+     * @param n exponent
+     * @return power
+     */
+    private static int pow31(int n) {
+        int r = 1;
+        int b = 31;
+        while (n != 0) {
+            if ((n & 1) != 0)
+                r *= b;
+            b *= b;
+            n >>>= 1;
+        }
+        return r;
+    }
+
+    /**
+     * Σ JAU.hashCode(a[i]) for an array of objects.
+     *
+     * @param a the array
+     * @return sum
+     */
+    static int sum(Object[] a) {
+        return invoke(new SumTask(a, 0, a.length));
+    }
+
+    /**
+     * Computes the same value as ListHelper.hashCode() for a list with
+     * fast random access.
+     *
+     * @param list the list
+     * @return hash code
+     */
+    static int polynomial(List list) {
+        int n = list.size();
+        return pow31(n) + invoke(new PolynomialTask(list, 0, n));
+    }
+
+    /**
+     * Compares the elements of 2 arrays of the same length with
+     * {@link JAU#equals(java.lang.Object, java.lang.Object)}.
+     *
+     * @param a first array
+     * @param b second array
+     * @return true = all elements are equal
+     */
+    static boolean equals(Object[] a, Object[] b) {
+        return invoke(new EqualsTask(a, b, null, null, 0, a.length,
+                new AtomicBoolean()));
+    }
+
+    /**
+     * Compares the elements of 2 lists of the same size like
+     * ListComparator.
+     *
+     * @param a first list
+     * @param b second list
+     * @return true = all elements are equal
+     */
+    static boolean equals(List a, List b) {
+        return invoke(new EqualsTask(null, null, a, b, 0, a.size(),
+                new AtomicBoolean()));
+    }
+
+    /**
+     * Σ JAU.hashCode(a[i]) for a range.
+     */
+    private static final class SumTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] a;
+        private final int from, to;
+
+        SumTask(Object[] a, int from, int to) {
+            this.a = a;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= CHUNK) {
+                int r = 0;
+                for (int i = from; i < to; i++)
+                    r += JAU.hashCode(a[i]);
+                return r;
+            }
+            int mid = (from + to) >>> 1;
+            SumTask right = new SumTask(a, mid, to);
+            right.fork();
+            int left = new SumTask(a, from, mid).compute();
+            return left + right.join();
+        }
+    }
+
+    /**
+     * Σ JAU.hashCode(list[i]) * 31 ^ (to - 1 - i) for a range. Two ranges
+     * are combined as left * 31 ^ (length of right) + right.
+     */
+    private static final class PolynomialTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final List list;
+        private final int from, to;
+
+        PolynomialTask(List list, int from, int to) {
+            this.list = list;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= CHUNK) {
+                int r = 0;
+                for (int i = from; i < to; i++) {
+                    Object el = list.get(i);
+                    r = 31 * r + (el == null ? 0 : JAU.hashCode(el));
+                }
+                return r;
+            }
+            int mid = (from + to) >>> 1;
+            PolynomialTask right = new PolynomialTask(list, mid, to);
+            right.fork();
+            int left = new PolynomialTask(list, from, mid).compute();
+            return left * pow31(to - mid) + right.join();
+        }
+    }
+
+    /**
+     * Compares the elements of 2 arrays or lists in a range. All tasks stop
+     * as soon as one of them finds different elements.
+     */
+    private static final class EqualsTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] a, b;
+        private final List la, lb;
+        private final int from, to;
+
+        /** true = different elements were found */
+        private final AtomicBoolean mismatch;
+
+        EqualsTask(Object[] a, Object[] b, List la, List lb, int from,
+                int to, AtomicBoolean mismatch) {
+            this.a = a;
+            this.b = b;
+            this.la = la;
+            this.lb = lb;
+            this.from = from;
+            this.to = to;
+            this.mismatch = mismatch;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (mismatch.get())
+                return false;
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    boolean eq = a != null ? JAU.equals(a[i], b[i]) :
+                            JAU.equals(la.get(i), lb.get(i));
+                    if (!eq) {
+                        mismatch.set(true);
+                        return false;
+                    }
+                    if ((i - from) % CHECK == CHECK - 1 && mismatch.get())
+                        return false;
+                }
+                return true;
+            }
+            int mid = (from + to) >>> 1;
+            EqualsTask right = new EqualsTask(a, b, la, lb, mid, to,
+                    mismatch);
+            right.fork();
+            boolean left = new EqualsTask(a, b, la, lb, from, mid,
+                    mismatch).compute();
+            if (!left) {
+                right.cancel(false);
+                return false;
+            }
+            return right.join();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.googlecode.jau;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Kernels for arrays of primitive values used by hashCode(), compare() and
+ * toString(). The elements are processed without boxing and without
+ * temporary objects.
+ *
+ * Arrays.mismatch (Java 9 or later, vectorized by the JIT) is used to find
+ * the first different element if it is available. The hash codes are the
+ * same as from Arrays.hashCode(), but 4 elements are processed per
+ * iteration so that the multiplications do not depend on each other.
+ */
+final class PrimitiveArrays {
+    /** Arrays.mismatch for every primitive type or null */
+    private static final MethodHandle MISMATCH_BYTE = mismatch(byte[].class);
+    private static final MethodHandle MISMATCH_SHORT = mismatch(short[].class);
+    private static final MethodHandle MISMATCH_CHAR = mismatch(char[].class);
+    private static final MethodHandle MISMATCH_INT = mismatch(int[].class);
+    private static final MethodHandle MISMATCH_LONG = mismatch(long[].class);
+    private static final MethodHandle MISMATCH_FLOAT = mismatch(float[].class);
+    private static final MethodHandle MISMATCH_DOUBLE =
+            mismatch(double[].class);
+    private static final MethodHandle MISMATCH_BOOLEAN =
+            mismatch(boolean[].class);
+
+    /** powers of 31 for 4 elements per iteration */
+    private static final int P1 = 31, P2 = 31 * 31, P3 = 31 * 31 * 31,
+            P4 = 31 * 31 * 31 * 31;
+
+    private PrimitiveArrays() {
+    }
+
+    /**
+     * @param c array class
+     * @return Arrays.mismatch(c, c) or null if not available
+     */
+    private static MethodHandle mismatch(Class c) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Arrays.class,
+                    "mismatch", MethodType.methodType(Integer.TYPE, c, c));
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param ex an exception from MethodHandle.invokeExact
+     * @return InternalError with the exception as the cause
+     */
+    private static InternalError error(Throwable ex) {
+        return (InternalError) new InternalError(
+                ex.getMessage()).initCause(ex);
+    }
+
+    /**
+     * Compares 2 arrays of the same primitive type like
+     * {@link JAU#compare(java.lang.Object, java.lang.Object)}. Elements of
+     * type int and long are compared without subtraction (it would
+     * overflow). The equality is the same as in Arrays.equals(), so -0.0
+     * and 0.0 are different.
+     *
+     * @param a first array
+     * @param b second array
+     * @return comparison result
+     */
+    static int compare(Object a, Object b) {
+        Class c = a.getClass();
+        int i;
+        int r = 0;
+        try {
+            if (c == byte[].class) {
+                byte[] arra = (byte[]) a;
+                byte[] arrb = (byte[]) b;
+                i = MISMATCH_BYTE != null ?
+                        (int) MISMATCH_BYTE.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = arra[i] - arrb[i];
+            } else if (c == short[].class) {
+                short[] arra = (short[]) a;
+                short[] arrb = (short[]) b;
+                i = MISMATCH_SHORT != null ?
+                        (int) MISMATCH_SHORT.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = arra[i] - arrb[i];
+            } else if (c == char[].class) {
+                char[] arra = (char[]) a;
+                char[] arrb = (char[]) b;
+                i = MISMATCH_CHAR != null ?
+                        (int) MISMATCH_CHAR.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = arra[i] - arrb[i];
+            } else if (c == int[].class) {
+                int[] arra = (int[]) a;
+                int[] arrb = (int[]) b;
+                i = MISMATCH_INT != null ?
+                        (int) MISMATCH_INT.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = arra[i] < arrb[i] ? -1 : 1;
+            } else if (c == long[].class) {
+                long[] arra = (long[]) a;
+                long[] arrb = (long[]) b;
+                i = MISMATCH_LONG != null ?
+                        (int) MISMATCH_LONG.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = arra[i] < arrb[i] ? -1 : 1;
+            } else if (c == float[].class) {
+                float[] arra = (float[]) a;
+                float[] arrb = (float[]) b;
+                i = MISMATCH_FLOAT != null ?
+                        (int) MISMATCH_FLOAT.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = Float.compare(arra[i], arrb[i]);
+            } else if (c == double[].class) {
+                double[] arra = (double[]) a;
+                double[] arrb = (double[]) b;
+                i = MISMATCH_DOUBLE != null ?
+                        (int) MISMATCH_DOUBLE.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = Double.compare(arra[i], arrb[i]);
+            } else {
+                boolean[] arra = (boolean[]) a;
+                boolean[] arrb = (boolean[]) b;
+                i = MISMATCH_BOOLEAN != null ?
+                        (int) MISMATCH_BOOLEAN.invokeExact(arra, arrb) :
+                        mismatch(arra, arrb);
+                if (i >= 0 && i < arra.length && i < arrb.length)
+                    r = arra[i] ? 1 : -1;
+            }
+        } catch (Throwable ex) {
+            throw error(ex);
+        }
+        if (r != 0)
+            return r;
+        return Array.getLength(a) - Array.getLength(b);
+    }
+
+    private static int mismatch(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(short[] a, short[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(char[] a, char[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(int[] a, int[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(long[] a, long[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(float[] a, float[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i]))
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(double[] a, double[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (Double.doubleToLongBits(a[i]) !=
+                    Double.doubleToLongBits(b[i]))
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    private static int mismatch(boolean[] a, boolean[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return a.length == b.length ? -1 : n;
+    }
+
+    /**
+     * Computes the same value as Arrays.hashCode() for an array of a
+     * primitive type.
+     *
+     * @param a an array
+     * @return hash code
+     */
+    static int hashCode(Object a) {
+        Class c = a.getClass();
+        if (c == byte[].class)
+            return hashCode((byte[]) a);
+        else if (c == short[].class)
+            return hashCode((short[]) a);
+        else if (c == char[].class)
+            return hashCode((char[]) a);
+        else if (c == int[].class)
+            return hashCode((int[]) a);
+        else if (c == long[].class)
+            return hashCode((long[]) a);
+        else if (c == float[].class)
+            return hashCode((float[]) a);
+        else if (c == double[].class)
+            return hashCode((double[]) a);
+        else
+            return hashCode((boolean[]) a);
+    }
+
+    private static int hashCode(byte[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * a[i] + P2 * a[i + 1] + P1 * a[i + 2] +
+                    a[i + 3];
+        for (; i < a.length; i++)
+            h = P1 * h + a[i];
+        return h;
+    }
+
+    private static int hashCode(short[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * a[i] + P2 * a[i + 1] + P1 * a[i + 2] +
+                    a[i + 3];
+        for (; i < a.length; i++)
+            h = P1 * h + a[i];
+        return h;
+    }
+
+    private static int hashCode(char[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * a[i] + P2 * a[i + 1] + P1 * a[i + 2] +
+                    a[i + 3];
+        for (; i < a.length; i++)
+            h = P1 * h + a[i];
+        return h;
+    }
+
+    private static int hashCode(int[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * a[i] + P2 * a[i + 1] + P1 * a[i + 2] +
+                    a[i + 3];
+        for (; i < a.length; i++)
+            h = P1 * h + a[i];
+        return h;
+    }
+
+    private static int hashCode(long[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * hash(a[i]) + P2 * hash(a[i + 1]) +
+                    P1 * hash(a[i + 2]) + hash(a[i + 3]);
+        for (; i < a.length; i++)
+            h = P1 * h + hash(a[i]);
+        return h;
+    }
+
+    private static int hashCode(float[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * Float.floatToIntBits(a[i]) +
+                    P2 * Float.floatToIntBits(a[i + 1]) +
+                    P1 * Float.floatToIntBits(a[i + 2]) +
+                    Float.floatToIntBits(a[i + 3]);
+        for (; i < a.length; i++)
+            h = P1 * h + Float.floatToIntBits(a[i]);
+        return h;
+    }
+
+    private static int hashCode(double[] a) {
+        int h = 1;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4)
+            h = P4 * h + P3 * hash(Double.doubleToLongBits(a[i])) +
+                    P2 * hash(Double.doubleToLongBits(a[i + 1])) +
+                    P1 * hash(Double.doubleToLongBits(a[i + 2])) +
+                    hash(Double.doubleToLongBits(a[i + 3]));
+        for (; i < a.length; i++)
+            h = P1 * h + hash(Double.doubleToLongBits(a[i]));
+        return h;
+    }
+
+    private static int hashCode(boolean[] a) {
+        int h = 1;
+        for (boolean v: a)
+            h = P1 * h + (v ? 1231 : 1237);
+        return h;
+    }
+
+    /**
+     * @param v a value
+     * @return Long.hashCode(v)
+     */
+    private static int hash(long v) {
+        return (int) (v ^ (v >>> 32));
+    }
+
+    /**
+     * Appends the elements of an array of a primitive type separated by
+     * ", " (the same text as the boxed values).
+     *
+     * @param sb output
+     * @param a an array
+     */
+    static void append(StringBuilder sb, Object a) {
+        Class c = a.getClass();
+        if (c == byte[].class) {
+            byte[] arr = (byte[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else if (c == short[].class) {
+            short[] arr = (short[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else if (c == char[].class) {
+            char[] arr = (char[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else if (c == int[].class) {
+            int[] arr = (int[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else if (c == long[].class) {
+            long[] arr = (long[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else if (c == float[].class) {
+            float[] arr = (float[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else if (c == double[].class) {
+            double[] arr = (double[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        } else {
+            boolean[] arr = (boolean[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i != 0)
+                    sb.append(", ");
+                sb.append(arr[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.googlecode.jau;
+
+/**
+ * Objects (or pairs of objects for equals()) that are currently being
+ * visited by one thread in one operation. It is used to detect cycles in
+ * object graphs. There is one instance per thread and operation.
+ *
+ * The objects on the first levels of nesting are kept in a small array
+ * that is searched linearly, so objects that are not deeply nested do not
+ * pay for the hash table (it is created when it is used for the first
+ * time). Every back reference is found at the first visit.
+ */
+final class Visits {
+    /** objects are stored in the hash table if the nesting is deeper */
+    private final int trackDepth;
+
+    /** a, b, a, b, ... for the nesting below trackDepth */
+    private final Object[] path;
+
+    /** current nesting */
+    int depth;
+
+    /**
+     * hashCode(): a back reference was found during the current outermost
+     * call
+     */
+    boolean cyclic;
+
+    /** hashCode(): maximum nesting in the second pass for cyclic graphs */
+    int bound;
+
+    /** a, b, a, b, ... (open addressing) or null */
+    private Object[] table;
+
+    /** number of entries */
+    private int size;
+
+    /**
+     * -
+     *
+     * @param trackDepth objects are stored in the hash table if the
+     *     nesting is deeper
+     */
+    Visits(int trackDepth) {
+        this.trackDepth = trackDepth;
+        this.path = new Object[trackDepth * 2];
+    }
+
+    /**
+     * Starts visiting an object.
+     *
+     * @param a the object
+     * @param b the second object (equals()) or null
+     * @return false if the object or pair is already being visited. The
+     *     nesting does not change in this case and
+     *     {@link #exit(java.lang.Object, java.lang.Object)} must not be
+     *     called.
+     */
+    boolean enter(Object a, Object b) {
+        Object[] p = path;
+        int n = Math.min(depth, trackDepth) * 2;
+        for (int i = 0; i < n; i += 2) {
+            if (p[i] == a && p[i + 1] == b)
+                return false;
+        }
+        if (depth < trackDepth) {
+            p[n] = a;
+            p[n + 1] = b;
+        } else if (!add(a, b)) {
+            return false;
+        }
+        depth++;
+        return true;
+    }
+
+    /**
+     * Finishes visiting an object.
+     *
+     * @param a the object
+     * @param b the second object or null
+     */
+    void exit(Object a, Object b) {
+        if (--depth >= trackDepth) {
+            remove(a, b);
+        } else {
+            path[depth * 2] = null;
+            path[depth * 2 + 1] = null;
+        }
+    }
+
+    /**
+     * @param a first object
+     * @param b second object or null
+     * @param mask number of slots - 1
+     * @return preferred slot
+     */
+    private static int slot(Object a, Object b, int mask) {
+        int h = (System.identityHashCode(a) * 31 +
+                System.identityHashCode(b)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Adds a pair.
+     *
+     * @param a first object
+     * @param b second object or null
+     * @return false if the pair was already there
+     */
+    private boolean add(Object a, Object b) {
+        if (table == null)
+            table = new Object[32];
+        Object[] t = table;
+        int mask = t.length / 2 - 1;
+        int s = slot(a, b, mask);
+        while (t[s * 2] != null) {
+            if (t[s * 2] == a && t[s * 2 + 1] == b)
+                return false;
+            s = (s + 1) & mask;
+        }
+        t[s * 2] = a;
+        t[s * 2 + 1] = b;
+        if (++size * 2 > mask)
+            resize();
+        return true;
+    }
+
+    /**
+     * Removes a pair (Knuth's algorithm R for linear probing).
+     *
+     * @param a first object
+     * @param b second object or null
+     */
+    private void remove(Object a, Object b) {
+        Object[] t = table;
+        int mask = t.length / 2 - 1;
+        int s = slot(a, b, mask);
+        while (t[s * 2] != a || t[s * 2 + 1] != b)
+            s = (s + 1) & mask;
+        size--;
+
+        // move the following entries to the free slot if they belong
+        // there
+        int free = s;
+        for (int j = (s + 1) & mask; t[j * 2] != null; j = (j + 1) & mask) {
+            int k = slot(t[j * 2], t[j * 2 + 1], mask);
+            boolean stay = free <= j ? free < k && k <= j :
+                    free < k || k <= j;
+            if (!stay) {
+                t[free * 2] = t[j * 2];
+                t[free * 2 + 1] = t[j * 2 + 1];
+                free = j;
+            }
+        }
+        t[free * 2] = null;
+        t[free * 2 + 1] = null;
+    }
+
+    /**
+     * Doubles the number of slots.
+     */
+    private void resize() {
+        Object[] old = table;
+        Object[] t = new Object[old.length * 2];
+        int mask = t.length / 2 - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != null) {
+                int s = slot(old[i], old[i + 1], mask);
+                while (t[s * 2] != null)
+                    s = (s + 1) & mask;
+                t[s * 2] = old[i];
+                t[s * 2 + 1] = old[i + 1];
+            }
+        }
+        table = t;
+    }
+}
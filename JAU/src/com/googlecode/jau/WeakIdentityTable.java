@@ -0,0 +1,178 @@
+package com.googlecode.jau;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Hash table with weak keys compared by identity. Unlike
+ * java.util.WeakHashMap it never calls equals() or hashCode() of the keys.
+ * An entry is removed after its key was garbage collected.
+ *
+ * @param <V> type of the values
+ */
+final class WeakIdentityTable<V> {
+    /**
+     * An entry in the table.
+     *
+     * @param <V> type of the value
+     */
+    private static final class Entry<V> extends WeakReference<Object> {
+        /** System.identityHashCode() of the key */
+        final int hash;
+
+        /** the value */
+        final V value;
+
+        /** next entry in the same bucket or null */
+        Entry<V> next;
+
+        /**
+         * -
+         *
+         * @param key the key
+         * @param hash System.identityHashCode(key)
+         * @param value the value
+         * @param next next entry in the same bucket or null
+         * @param queue queue for the collected keys
+         */
+        Entry(Object key, int hash, V value, Entry<V> next,
+                ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /** references to the collected keys */
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    /** buckets. The length is a power of 2. */
+    private Entry<V>[] table = newTable(16);
+
+    /** number of entries */
+    private int size;
+
+    /**
+     * Returns the value for a key.
+     *
+     * @param key a key
+     * @return the value or null
+     */
+    synchronized V get(Object key) {
+        int h = System.identityHashCode(key);
+        for (Entry<V> e = table[h & (table.length - 1)]; e != null;
+                e = e.next) {
+            if (e.hash == h && e.get() == key)
+                return e.value;
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value for a key. The previous value is replaced.
+     *
+     * @param key a key
+     * @param value the value
+     */
+    synchronized void put(Object key, V value) {
+        expunge();
+        int h = System.identityHashCode(key);
+        remove(key, h);
+        if (size >= table.length * 3 / 4)
+            resize();
+        int i = h & (table.length - 1);
+        table[i] = new Entry<V>(key, h, value, table[i], queue);
+        size++;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    synchronized void clear() {
+        while (queue.poll() != null) {
+            // the entries are removed below
+        }
+        table = newTable(16);
+        size = 0;
+    }
+
+    /**
+     * @return number of entries (including collected keys that were not
+     *     removed yet)
+     */
+    synchronized int size() {
+        expunge();
+        return size;
+    }
+
+    /**
+     * Removes the entry for a key.
+     *
+     * @param key a key
+     * @param h System.identityHashCode(key)
+     */
+    private void remove(Object key, int h) {
+        int i = h & (table.length - 1);
+        Entry<V> prev = null;
+        for (Entry<V> e = table[i]; e != null; prev = e, e = e.next) {
+            if (e.hash == h && e.get() == key) {
+                if (prev == null)
+                    table[i] = e.next;
+                else
+                    prev.next = e.next;
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries for the collected keys.
+     */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        Entry<V> r;
+        while ((r = (Entry<V>) queue.poll()) != null) {
+            int i = r.hash & (table.length - 1);
+            Entry<V> prev = null;
+            for (Entry<V> e = table[i]; e != null; prev = e, e = e.next) {
+                if (e == r) {
+                    if (prev == null)
+                        table[i] = e.next;
+                    else
+                        prev.next = e.next;
+                    size--;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles the number of buckets.
+     */
+    private void resize() {
+        Entry<V>[] old = table;
+        Entry<V>[] t = newTable(old.length * 2);
+        for (Entry<V> e: old) {
+            while (e != null) {
+                Entry<V> next = e.next;
+                int i = e.hash & (t.length - 1);
+                e.next = t[i];
+                t[i] = e;
+                e = next;
+            }
+        }
+        table = t;
+    }
+
+    /**
+     * @param n number of buckets
+     * @return new array
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] newTable(int n) {
+        return new Entry[n];
+    }
+}
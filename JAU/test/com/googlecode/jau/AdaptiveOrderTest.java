@@ -0,0 +1,22 @@
+package com.googlecode.jau;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for AdaptiveOrder.
+ */
+public class AdaptiveOrderTest {
+    @Test
+    public void adaptiveOrder() {
+        // 2 reference fields and 2 primitive fields
+        AdaptiveOrder order = new AdaptiveOrder(new int[] {1, 0, 1, 0});
+        assertArrayEquals(new int[] {1, 3, 0, 2}, order.order);
+
+        for (int i = 0; i < AdaptiveOrder.PERIOD / 2; i++) {
+            order.mismatch(3);
+            order.mismatch(2);
+        }
+        assertArrayEquals(new int[] {3, 1, 2, 0}, order.order);
+    }
+}
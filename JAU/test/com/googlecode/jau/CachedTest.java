@@ -0,0 +1,45 @@
+package com.googlecode.jau;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the cached hash codes and strings (JAUHashCode.cache and
+ * JAUToString.cache).
+ */
+public class CachedTest {
+    @Test
+    public void cachedHashCode() {
+        CachedValue a = new CachedValue();
+        a.value = 5;
+        int h = JAU.hashCode(a);
+        assertEquals(17 + 37 * 5, h);
+
+        // the class promises to be immutable
+        a.value = 6;
+        assertEquals(h, JAU.hashCode(a));
+        assertEquals(h, JAU.hasher(CachedValue.class).hashCode(a));
+
+        CachedValue b = new CachedValue();
+        b.value = 6;
+        assertEquals(17 + 37 * 6, JAU.hashCode(b));
+
+        // other parameters are never cached
+        assertEquals(19 + 39 * 6, JAU.hashCode(a, 19, 39));
+    }
+
+    @Test
+    public void cachedToString() {
+        CachedValue a = new CachedValue();
+        a.value = 5;
+        String s = JAU.toString(a);
+        assertEquals("com.googlecode.jau.CachedValue@" +
+                Integer.toHexString(System.identityHashCode(a)) +
+                "(value=5)", s);
+        assertEquals(s, a.string);
+
+        a.value = 6;
+        assertEquals(s, JAU.toString(a));
+        assertEquals(s, JAU.stringifier(CachedValue.class).toString(a));
+    }
+}
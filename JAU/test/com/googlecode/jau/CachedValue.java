@@ -0,0 +1,14 @@
+package com.googlecode.jau;
+
+/**
+ * Hash code and string representation are computed only once.
+ */
+@JAUEquals
+@JAUHashCode(cache = true)
+@JAUToString(cache = true)
+public class CachedValue {
+    public int value;
+
+    @JAUToString(cache = true)
+    transient String string;
+}
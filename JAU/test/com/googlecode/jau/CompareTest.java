@@ -1,6 +1,7 @@
 package com.googlecode.jau;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -46,6 +47,29 @@ public class CompareTest {
         assertTrue(JAU.compare(a, b) > 0);
     }
 
+    @Test
+    public void primitiveFields() {
+        PrimitiveFields a = new PrimitiveFields();
+        PrimitiveFields b = new PrimitiveFields();
+        assertEquals(0, JAU.compare(a, b));
+
+        a.long_ = Long.MIN_VALUE;
+        b.long_ = Long.MAX_VALUE;
+        assertTrue(JAU.compare(a, b) < 0);
+        assertTrue(JAU.compare(b, a) > 0);
+        b.long_ = Long.MIN_VALUE;
+
+        a.int_ = Integer.MIN_VALUE;
+        b.int_ = Integer.MAX_VALUE;
+        assertTrue(JAU.compare(a, b) < 0);
+        b.int_ = Integer.MIN_VALUE;
+
+        a.boolean_ = true;
+        assertTrue(JAU.compare(a, b) > 0);
+        b.boolean_ = true;
+        assertEquals(0, JAU.compare(a, b));
+    }
+
     @Test
     public void null_(){
         assertEquals(0, JAU.compare(null, null));
@@ -96,10 +120,154 @@ public class CompareTest {
                 new int[] {1, 2, 3}));
     }
 
+    @Test
+    public void primitiveArrays() {
+        double[] a = new double[100];
+        double[] b = new double[100];
+        assertEquals(0, JAU.compare(a, b));
+        b[77] = 1;
+        assertEquals(-1, JAU.compare(a, b));
+        assertEquals(1, JAU.compare(b, a));
+        assertEquals(-1, JAU.compare(new double[99], a));
+        assertTrue(JAU.compare(new byte[] {1, -1}, new byte[] {1, 2}) < 0);
+        assertTrue(JAU.compare(new char[] {'b'}, new char[] {'a', 'b'}) > 0);
+        assertEquals(1, JAU.compare(new boolean[] {true},
+                new boolean[] {false}));
+    }
+
+    /**
+     * Checks that a is less than b and both are different.
+     *
+     * @param a first array
+     * @param b second array
+     */
+    private static void assertLess(Object a, Object b) {
+        assertTrue(JAU.compare(a, b) < 0);
+        assertTrue(JAU.compare(b, a) > 0);
+        assertFalse(JAU.equals(a, b));
+        assertFalse(JAU.equals(b, a));
+    }
+
+    /**
+     * Checks that 2 arrays are equal.
+     *
+     * @param a first array
+     * @param b second array
+     */
+    private static void assertSameValues(Object a, Object b) {
+        assertEquals(0, JAU.compare(a, b));
+        assertEquals(0, JAU.compare(b, a));
+        assertTrue(JAU.equals(a, b));
+        assertEquals(JAU.hashCode(a), JAU.hashCode(b));
+    }
+
+    @Test
+    public void primitiveArrayTypes() {
+        assertLess(new byte[] {Byte.MIN_VALUE}, new byte[] {1});
+        assertLess(new byte[] {1}, new byte[] {1, 0});
+        assertSameValues(new byte[] {Byte.MIN_VALUE, Byte.MAX_VALUE},
+                new byte[] {Byte.MIN_VALUE, Byte.MAX_VALUE});
+
+        assertLess(new short[] {Short.MIN_VALUE}, new short[] {1});
+        assertLess(new short[] {1}, new short[] {1, 0});
+        assertSameValues(new short[] {Short.MIN_VALUE, Short.MAX_VALUE},
+                new short[] {Short.MIN_VALUE, Short.MAX_VALUE});
+
+        assertLess(new char[] {Character.MIN_VALUE},
+                new char[] {Character.MAX_VALUE});
+        assertLess(new char[] {'a'}, new char[] {'a', 'a'});
+        assertSameValues(new char[] {'a', '\uffff'},
+                new char[] {'a', '\uffff'});
+
+        // the difference would overflow
+        assertLess(new int[] {Integer.MIN_VALUE}, new int[] {1});
+        assertLess(new int[] {-1}, new int[] {Integer.MAX_VALUE});
+        assertLess(new int[] {1}, new int[] {1, Integer.MIN_VALUE});
+        assertSameValues(new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE},
+                new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE});
+
+        assertLess(new long[] {Long.MIN_VALUE}, new long[] {1});
+        assertLess(new long[] {0}, new long[] {1L << 32});
+        assertLess(new long[] {1}, new long[] {1, Long.MIN_VALUE});
+        assertSameValues(new long[] {Long.MIN_VALUE, Long.MAX_VALUE},
+                new long[] {Long.MIN_VALUE, Long.MAX_VALUE});
+
+        // -0.0 < 0.0 < Infinity < NaN like Float.compare()
+        assertLess(new float[] {-0.0f}, new float[] {0.0f});
+        assertLess(new float[] {Float.NEGATIVE_INFINITY},
+                new float[] {-Float.MAX_VALUE});
+        assertLess(new float[] {Float.POSITIVE_INFINITY},
+                new float[] {Float.NaN});
+        assertLess(new float[] {Float.NaN}, new float[] {Float.NaN, 0});
+        assertSameValues(new float[] {Float.NaN, -0.0f},
+                new float[] {Float.intBitsToFloat(0x7fc00001), -0.0f});
+
+        assertLess(new double[] {-0.0}, new double[] {0.0});
+        assertLess(new double[] {Double.NEGATIVE_INFINITY},
+                new double[] {-Double.MAX_VALUE});
+        assertLess(new double[] {Double.POSITIVE_INFINITY},
+                new double[] {Double.NaN});
+        assertLess(new double[] {Double.NaN}, new double[] {Double.NaN, 0});
+        assertSameValues(new double[] {Double.NaN, -0.0},
+                new double[] {Double.longBitsToDouble(0x7ff8000000000001L),
+                -0.0});
+
+        assertLess(new boolean[] {false}, new boolean[] {true});
+        assertLess(new boolean[] {true}, new boolean[] {true, false});
+        assertSameValues(new boolean[] {true, false},
+                new boolean[] {true, false});
+
+        // the first different element decides, also after many equal ones
+        int[] a = new int[1000];
+        int[] b = new int[1000];
+        a[999] = Integer.MIN_VALUE;
+        b[999] = Integer.MAX_VALUE;
+        assertLess(a, b);
+        a[500] = 1;
+        assertLess(b, a);
+    }
+
     @Test
     public void enum_() {
         assertTrue(JAU.compare(ColorsEnum.GREEN, ColorsEnum.GREEN) == 0);
         assertTrue(JAU.compare(ColorsEnum.GREEN, ColorsEnum.BLUE) < 0);
         assertTrue(JAU.compare(ColorsEnum.BLUE, ColorsEnum.RED) > 0);
     }
+
+    @Test
+    public void overflow() {
+        PrivateField a = new PrivateField();
+        PrivateField b = new PrivateField();
+        a.setValue(Integer.MIN_VALUE);
+        b.setValue(Integer.MAX_VALUE);
+        assertTrue(JAU.compare(a, b) < 0);
+        assertTrue(JAU.compare(b, a) > 0);
+
+        assertTrue(JAU.compare(new int[] {Integer.MIN_VALUE},
+                new int[] {Integer.MAX_VALUE}) < 0);
+        assertTrue(JAU.compare(new long[] {Long.MAX_VALUE},
+                new long[] {Long.MIN_VALUE}) > 0);
+    }
+
+    @Test
+    public void comparator() {
+        OneField[] v = new OneField[3];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = new OneField();
+            v[i].value = 2 - i;
+        }
+        Arrays.sort(v, JAU.comparator(OneField.class));
+        for (int i = 0; i < v.length; i++)
+            assertEquals(i, v[i].value);
+
+        PrivateField a = new PrivateField();
+        a.setValue(Integer.MIN_VALUE);
+        PrivateField b = new PrivateField();
+        b.setValue(Integer.MAX_VALUE);
+        java.util.Comparator<PrivateField> c =
+                JAU.comparator(PrivateField.class);
+        assertTrue(c.compare(a, b) < 0);
+        assertTrue(c.compare(null, b) < 0);
+        assertEquals(0, c.compare(null, null));
+    }
 }
@@ -37,6 +37,26 @@ public class CopyTest {
         JAU.copy(new AllFields(), new AllFields2());
     }
 
+    @Test
+    public void primitiveFields() {
+        PrimitiveFields a = new PrimitiveFields();
+        a.byte_ = -3;
+        a.short_ = 300;
+        a.int_ = -70000;
+        a.long_ = 1L << 40;
+        a.float_ = 1.5f;
+        a.double_ = -2.25;
+        a.char_ = 'x';
+        a.boolean_ = true;
+        a.string_ = "test";
+        PrimitiveFields b = new PrimitiveFields();
+        JAU.copy(a, b);
+        assertTrue(JAU.equals(a, b));
+        assertEquals(1L << 40, b.long_);
+        assertTrue(b.boolean_);
+        assertEquals("test", b.string_);
+    }
+
     @Test
     public void stringBuffer() {
         StringBuffer a = new StringBuffer();
@@ -84,4 +104,83 @@ public class CopyTest {
 
         assertTrue(JAU.equals(a, b));
     }
+
+    @Test
+    public void copier() {
+        OneField a = new OneField();
+        a.value = 27;
+        OneField b = new OneField();
+        JAU.copier(OneField.class).copy(a, b);
+        assertEquals(27, b.value);
+
+        PrivateField c = new PrivateField();
+        c.setValue(5);
+        PrivateField d = new PrivateField();
+        JAU.copier(PrivateField.class).copy(c, d);
+        assertTrue(JAU.equals(c, d));
+    }
+
+    @Test
+    public void parallelClone() {
+        ClassOne[] a = new ClassOne[3000];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = new ClassOne();
+            a[i].int_ = i;
+        }
+        ParallelCloner c = new ParallelCloner();
+        ClassOne[] b = (ClassOne[]) c.clone(a);
+        assertTrue(JAU.equals(a, b));
+        assertTrue(a[5] != b[5]);
+        assertTrue(a[5].longa2 != b[5].longa2);
+        assertTrue(a[5].longa2[1] != b[5].longa2[1]);
+        assertEquals(2999, b[2999].int_);
+        assertTrue(c.getObjects() > a.length);
+        assertTrue(c.getTasks() > 1);
+
+        ClassOne one = new ClassOne();
+        assertTrue(JAU.equals(one, JAU.parallelClone(one)));
+        assertNull(JAU.parallelClone(null));
+    }
+
+    @Test
+    public void cloneGraph() {
+        Node shared = new Node();
+        shared.value = 7;
+        Node a = new Node();
+        a.value = 1;
+        a.next = new Node();
+        a.next.next = a;
+        a.other = new Object[] {shared, shared, a};
+        a.next.other = shared;
+
+        Node b = (Node) JAU.cloneGraph(a);
+        assertTrue(b != a);
+        assertSame(b, b.next.next);
+        Object[] arr = (Object[]) b.other;
+        assertTrue(arr[0] != shared);
+        assertSame(arr[0], arr[1]);
+        assertSame(arr[0], b.next.other);
+        assertSame(b, arr[2]);
+        assertEquals(7, ((Node) arr[0]).value);
+
+        // tree clone copies every reference
+        Node c = new Node();
+        c.next = shared;
+        c.other = shared;
+        Node d = (Node) JAU.clone(c);
+        assertTrue(d.next != d.other);
+
+        // many objects
+        Node[] many = new Node[10000];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new Node();
+            many[i].value = i;
+            many[i].next = many[(i * 7) % (i + 1)];
+        }
+        Node[] copy = (Node[]) JAU.cloneGraph(many);
+        for (int i = 0; i < many.length; i++) {
+            assertEquals(i, copy[i].value);
+            assertSame(copy[(i * 7) % (i + 1)], copy[i].next);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.googlecode.jau;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for object graphs with cycles.
+ */
+public class CycleTest {
+    @Test
+    public void cycles() {
+        // a1 -> a2 -> a1 and b1 -> b1 with the same values
+        Node a1 = new Node();
+        Node a2 = new Node();
+        a1.next = a2;
+        a2.next = a1;
+        Node b1 = new Node();
+        b1.next = b1;
+        assertTrue(JAU.equals(a1, b1));
+        assertEquals(JAU.hashCode(a1), JAU.hashCode(b1));
+        assertEquals(JAU.hashCode(a1), JAU.hashCode(a1));
+
+        a2.value = 1;
+        assertFalse(JAU.equals(a1, b1));
+        assertFalse(JAU.equals(b1, a1));
+
+        // cycle through an array
+        Node c = new Node();
+        c.other = new Object[] {c};
+        Node d = new Node();
+        d.other = new Object[] {d};
+        assertTrue(JAU.equals(c, d));
+        assertEquals(JAU.hashCode(c), JAU.hashCode(d));
+
+        // long acyclic chains are not changed by the tracking
+        Node e = new Node();
+        Node f = new Node();
+        for (int i = 0; i < 100; i++) {
+            Node n = new Node();
+            n.next = e;
+            n.value = i;
+            e = n;
+            n = new Node();
+            n.next = f;
+            n.value = i;
+            f = n;
+        }
+        assertTrue(JAU.equals(e, f));
+        assertEquals(JAU.hashCode(e), JAU.hashCode(f));
+        f.next.next.value = -1;
+        assertFalse(JAU.equals(e, f));
+    }
+
+    /**
+     * Creates a parent node with a list of children. Every child references
+     * the parent.
+     *
+     * @param n number of children
+     * @return parent
+     */
+    private static Node family(int n) {
+        Node parent = new Node();
+        List<Node> children = new ArrayList<Node>();
+        for (int i = 0; i < n; i++) {
+            Node child = new Node();
+            child.value = i;
+            child.next = parent;
+            children.add(child);
+        }
+        parent.other = children;
+        return parent;
+    }
+
+    @Test
+    public void backReferences() throws Exception {
+        // each back reference would repeat the whole graph
+        Node a = family(50);
+        Node b = family(50);
+        assertTrue(JAU.equals(a, b));
+        assertEquals(JAU.hashCode(a), JAU.hashCode(b));
+        assertEquals(JAU.hashCode64(a), JAU.hashCode64(b));
+        assertEquals(JAU.stableHashCode64(a), JAU.stableHashCode64(b));
+        assertEquals(JAU.fingerprint(a), JAU.fingerprint(b));
+        MessageDigest ma = MessageDigest.getInstance("SHA-256");
+        MessageDigest mb = MessageDigest.getInstance("SHA-256");
+        JAU.fingerprint(a, ma);
+        JAU.fingerprint(b, mb);
+        assertArrayEquals(ma.digest(), mb.digest());
+        Node child = (Node) ((List) a.other).get(0);
+        assertEquals(JAU.hashCode(child), JAU.hashCode(child));
+
+        ((Node) ((List) b.other).get(49)).value = -1;
+        assertFalse(JAU.equals(a, b));
+        assertTrue(JAU.hashCode(a) != JAU.hashCode(b));
+        assertTrue(JAU.hashCode64(a) != JAU.hashCode64(b));
+        assertFalse(JAU.fingerprint(a).equals(JAU.fingerprint(b)));
+    }
+}
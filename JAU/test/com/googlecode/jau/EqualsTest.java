@@ -194,6 +194,37 @@ public class EqualsTest {
         ensureUnequal(a, b);
     }
 
+    @org.junit.Test
+    public void primitiveFields() {
+        PrimitiveFields a = new PrimitiveFields();
+        PrimitiveFields b = new PrimitiveFields();
+        ensureEqual(a, b);
+
+        a.boolean_ = true;
+        ensureUnequal(a, b);
+        b.boolean_ = true;
+        ensureEqual(a, b);
+
+        a.long_ = Long.MIN_VALUE;
+        b.long_ = 1L << 40;
+        ensureUnequal(a, b);
+        b.long_ = Long.MIN_VALUE;
+
+        a.double_ = Double.NaN;
+        b.double_ = Double.NaN;
+        ensureEqual(a, b);
+
+        a.char_ = 'a';
+        b.char_ = 'b';
+        ensureUnequal(a, b);
+        b.char_ = 'a';
+
+        a.string_ = "a";
+        ensureUnequal(a, b);
+        b.string_ = "a";
+        ensureEqual(a, b);
+    }
+
     @org.junit.Test
     public void inherited() {
         AllFields2 a = new AllFields2();
@@ -211,6 +242,18 @@ public class EqualsTest {
         ensureUnequal(a, b);
     }
 
+    @Test
+    public void notAnnotatedParent() {
+        // fields of the superclass are ignored
+        NotAnnotatedParent a = new NotAnnotatedParent();
+        NotAnnotatedParent b = new NotAnnotatedParent();
+        a.value = 1;
+        ensureEqual(a, b);
+
+        a.value2 = 1;
+        ensureUnequal(a, b);
+    }
+
     @org.junit.Test
     public void annotatedThroughPackage() {
         EqualsAnnotatedThroughPackage a = new EqualsAnnotatedThroughPackage();
@@ -310,4 +353,21 @@ public class EqualsTest {
         b.set(0, "test2");
         ensureUnequal(a, b, false, false);
     }
+
+    @Test
+    public void primitiveArrayHashCode() {
+        double[] d = new double[37];
+        byte[] b = new byte[37];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = i * 1.5;
+            b[i] = (byte) (i * 7);
+        }
+        assertEquals(java.util.Arrays.hashCode(d), JAU.hashCode(d));
+        assertEquals(java.util.Arrays.hashCode(b), JAU.hashCode(b));
+        assertEquals(java.util.Arrays.hashCode(new long[] {1, -2, 3}),
+                JAU.hashCode(new long[] {1, -2, 3}));
+        assertEquals(java.util.Arrays.hashCode(new boolean[] {true, false}),
+                JAU.hashCode(new boolean[] {true, false}));
+        assertEquals(1, JAU.hashCode(new int[0]));
+    }
 }
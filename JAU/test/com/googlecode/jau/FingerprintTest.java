@@ -0,0 +1,38 @@
+package com.googlecode.jau;
+
+import java.security.MessageDigest;
+import java.util.HashMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JAU.fingerprint.
+ */
+public class FingerprintTest {
+    @Test
+    public void fingerprint() throws Exception {
+        IntFields4 a = new IntFields4();
+        a.a0 = 1;
+        a.a3 = 5;
+        IntFields4 b = new IntFields4();
+        b.a0 = 1;
+        b.a3 = 5;
+        assertEquals(JAU.fingerprint(a), JAU.fingerprint(b));
+        b.a3 = 6;
+        assertFalse(JAU.fingerprint(a).equals(JAU.fingerprint(b)));
+
+        HashMap<String, Object> m = new HashMap<String, Object>();
+        m.put("x", a);
+        m.put("y", new int[] {1, 2, 3});
+        HashMap<String, Object> m2 = new HashMap<String, Object>(m);
+        assertEquals(JAU.fingerprint(m), JAU.fingerprint(m2));
+        assertFalse(JAU.fingerprint("ab").equals(JAU.fingerprint("ba")));
+        assertEquals(32, JAU.fingerprint(null).toString().length());
+
+        MessageDigest md1 = MessageDigest.getInstance("SHA-256");
+        MessageDigest md2 = MessageDigest.getInstance("SHA-256");
+        JAU.fingerprint(a, md1);
+        JAU.fingerprint(a, md2);
+        assertArrayEquals(md1.digest(), md2.digest());
+    }
+}
@@ -0,0 +1,43 @@
+package com.googlecode.jau;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the typed handles (JAU.equivalence, JAU.hasher).
+ */
+public class HandlesTest {
+    @Test
+    public void equivalence() {
+        Equivalence<PrivateField> e = JAU.equivalence(PrivateField.class);
+        PrivateField a = new PrivateField();
+        PrivateField b = new PrivateField();
+        assertTrue(e.equals(a, b));
+        assertEquals(e.hash(a), e.hash(b));
+        assertEquals(JAU.hashCode(a), e.hash(a));
+
+        b.setValue(3);
+        assertFalse(e.equals(a, b));
+        assertFalse(e.equals(a, null));
+        assertTrue(e.equals(null, null));
+
+        Equivalence<int[]> ea = JAU.equivalence(int[].class);
+        assertTrue(ea.equals(new int[] {1, 2}, new int[] {1, 2}));
+        assertEquals(JAU.hashCode(new int[] {1, 2}),
+                ea.hash(new int[] {1, 2}));
+
+        // the handles detect cycles like the static methods
+        Node n1 = new Node();
+        Node n2 = new Node();
+        n1.next = n2;
+        n2.next = n1;
+        Node n3 = new Node();
+        n3.next = n3;
+        Equivalence<Node> en = JAU.equivalence(Node.class);
+        assertTrue(en.equals(n1, n3));
+        assertEquals(JAU.hashCode(n1), JAU.hasher(Node.class).hashCode(n1));
+        assertEquals(en.hash(n1), en.hash(n3));
+        assertEquals(JAU.toString(n1),
+                JAU.stringifier(Node.class).toString(n1));
+    }
+}
@@ -0,0 +1,101 @@
+package com.googlecode.jau;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JAU.hashCode64, the stable hash codes and partitions.
+ */
+public class Hash64Test {
+    @Test
+    public void hashCode64() {
+        IntFields4 a = new IntFields4();
+        IntFields4 b = new IntFields4();
+        a.a0 = 1;
+        b.a1 = 1;
+        assertEquals(JAU.hashCode(a), JAU.hashCode(b));
+        assertTrue(JAU.hashCode64(a) != JAU.hashCode64(b));
+        b.a0 = 1;
+        b.a1 = 0;
+        assertEquals(JAU.hashCode64(a), JAU.hashCode64(b));
+
+        assertEquals(JAU.hashCode64("abcdefg"),
+                JAU.hashCode64(new String("abcdefg")));
+        assertTrue(JAU.hashCode64("ab") != JAU.hashCode64("ba"));
+        assertEquals(JAU.hashCode64(new byte[] {1, 2, 3}),
+                JAU.hashCode64(new byte[] {1, 2, 3}));
+        assertTrue(JAU.hashCode64(new int[] {1, 2}) !=
+                JAU.hashCode64(new int[] {2, 1}));
+        assertTrue(JAU.hashCode64(new int[] {0}) !=
+                JAU.hashCode64(new int[] {0, 0}));
+        assertEquals(JAU.hashCode64(new Object[] {"x", a}),
+                JAU.hashCode64(new Object[] {"x", b}));
+
+        HashMap<String, String> m1 = new HashMap<String, String>();
+        m1.put("a", "b");
+        HashMap<String, String> m2 = new HashMap<String, String>();
+        m2.put("b", "a");
+        assertTrue(JAU.hashCode64(m1) != JAU.hashCode64(m2));
+        m2.clear();
+        m2.put("a", "b");
+        assertEquals(JAU.hashCode64(m1), JAU.hashCode64(m2));
+
+        Vector<Object> v1 = new Vector<Object>();
+        v1.add(1L);
+        v1.add(2L);
+        Vector<Object> v2 = new Vector<Object>();
+        v2.add(2L);
+        v2.add(1L);
+        assertTrue(JAU.hashCode64(v1) != JAU.hashCode64(v2));
+        assertTrue(JAU.hashCode64(null) != JAU.hashCode64(0));
+    }
+
+    @Test
+    public void stableHashCode64() {
+        // must not change for STABLE_HASH_VERSION 1
+        assertEquals(1, JAU.STABLE_HASH_VERSION);
+        assertEquals(-8021256857418864994L, JAU.stableHashCode64("abc"));
+        assertEquals(-678599270680698722L, JAU.stableHashCode64(
+                Arrays.asList(1, "x", null)));
+
+        assertEquals(JAU.stableHashCode64("abc"),
+                JAU.stableHashCode64(new StringBuilder("abc")));
+        assertTrue(JAU.stableHashCode64(ColorsEnum.RED) !=
+                JAU.stableHashCode64(ColorsEnum.BLUE));
+        assertEquals(JAU.stableHashCode64("RED"),
+                JAU.stableHashCode64("RED"));
+
+        OneField a = new OneField();
+        a.value = 3;
+        OneField b = new OneField();
+        b.value = 3;
+        assertEquals(JAU.stableHashCode64(a), JAU.stableHashCode64(b));
+        b.value = 4;
+        assertTrue(JAU.stableHashCode64(a) != JAU.stableHashCode64(b));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void stableHashCode64Unsupported() {
+        JAU.stableHashCode64(new Object());
+    }
+
+    @Test
+    public void partition() {
+        int[] counts = new int[10];
+        for (int i = 0; i < 10000; i++) {
+            String key = "key" + i;
+            int p = JAU.partition(key, 10);
+            counts[p]++;
+
+            // keys only move to the new partition
+            int p2 = JAU.partition(key, 11);
+            assertTrue(p2 == p || p2 == 10);
+        }
+        for (int c: counts)
+            assertTrue(c > 800 && c < 1200);
+        assertEquals(0, JAU.partition("x", 1));
+    }
+}
@@ -0,0 +1,38 @@
+package com.googlecode.jau;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HashAnalyzer.
+ */
+public class HashAnalyzerTest {
+    @Test
+    public void analyze() {
+        List<IntFields4> sample = new ArrayList<IntFields4>();
+        for (int i = 0; i < 1000; i++) {
+            IntFields4 v = new IntFields4();
+            v.a0 = i % 100;
+            v.a2 = i / 100;
+            sample.add(v);
+        }
+        HashAnalyzer a = new HashAnalyzer(sample);
+        assertEquals("a0", a.getFieldNames()[0]);
+        assertEquals(0, a.getFieldEntropy()[1], 0);
+
+        HashAnalyzer.Report r = a.analyze(HashAnalyzer.Mode.ADDITIVE, 16);
+        assertEquals(1000, r.getDistinct());
+        assertEquals(32, r.getBitBias().length);
+        assertTrue(r.getDeadFields().contains("a1"));
+        assertFalse(r.getDeadFields().contains("a0"));
+        assertEquals(0, sample.get(999).a1);
+        assertEquals(99, sample.get(999).a0);
+
+        HashAnalyzer.Report r64 = a.analyze(HashAnalyzer.Mode.HASH64, 16);
+        assertEquals(0, r64.getCollisions());
+        assertTrue(r64.getAvalanche()[0] > 0.4);
+        assertTrue(a.report(16).contains("KEYED"));
+    }
+}
@@ -0,0 +1,21 @@
+package com.googlecode.jau;
+
+import com.sun.japex.JapexDriverBase;
+import com.sun.japex.TestCase;
+
+/**
+ * Testing performance of KeyedHashCoder.hashCode()
+ */
+public class HashCodeKeyedPerfTest_ extends JapexDriverBase {
+    private static Object first;
+    private static int result;
+
+    @Override
+    public void prepare(TestCase testCase) {
+        first = new RealClass();
+    }
+
+    public void run(TestCase testCase) {
+        result = KeyedHashCoder.DEFAULT.hashCode(first);
+    }
+}
@@ -0,0 +1,96 @@
+package com.googlecode.jau;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for IncrementalHashCoder.
+ */
+public class IncrementalHashCoderTest {
+    @Test
+    public void invalidate() {
+        List<Object> list = new ArrayList<Object>();
+        OneField[] items = new OneField[100];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new OneField();
+            items[i].value = i;
+            list.add(items[i]);
+        }
+        Map<String, Object> root = new HashMap<String, Object>();
+        root.put("list", list);
+        root.put("array", new Object[] {items[5], "x", null});
+        PrimitiveFields p = new PrimitiveFields();
+        p.string_ = "s";
+        root.put("fields", p);
+
+        IncrementalHashCoder hc = new IncrementalHashCoder();
+        int h = hc.hashCode(root);
+        assertEquals(JAU.hashCode(root), h);
+
+        // the remembered hash code is used until the object is invalidated
+        items[5].value = 1000;
+        assertEquals(h, hc.hashCode(root));
+        hc.invalidate(items[5]);
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+        assertTrue(h != hc.hashCode(root));
+
+        p.double_ = 3.5;
+        hc.invalidate(p);
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+
+        list.add(null);
+        hc.invalidate(list);
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+
+        assertEquals(JAU.hashCode(null), hc.hashCode(null));
+        assertEquals(JAU.hashCode("abc"), hc.hashCode("abc"));
+    }
+
+    @Test
+    public void backReferences() {
+        // a parent with a list of children that reference the parent
+        Node parent = new Node();
+        List<Node> children = new ArrayList<Node>();
+        for (int i = 0; i < 10000; i++) {
+            Node child = new Node();
+            child.value = i;
+            child.next = parent;
+            children.add(child);
+        }
+        parent.other = children;
+        Map<String, Object> root = new HashMap<String, Object>();
+        root.put("parent", parent);
+        root.put("list", new ArrayList<Object>(children.subList(0, 10)));
+
+        IncrementalHashCoder hc = new IncrementalHashCoder();
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+        assertEquals(JAU.hashCode(parent), hc.hashCode(parent));
+        assertEquals(JAU.hashCode(children), hc.hashCode(children));
+        Node child = children.get(5);
+        assertEquals(JAU.hashCode(child), hc.hashCode(child));
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+
+        child.value = -1;
+        hc.invalidate(child);
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+        assertEquals(JAU.hashCode(child), hc.hashCode(child));
+
+        // the objects outside of the cycle are remembered
+        Node other = new Node();
+        other.next = new Node();
+        root.put("other", other);
+        hc.invalidate(root);
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+        int h = hc.hashCode(other);
+        assertEquals(JAU.hashCode(other), h);
+        other.next.value = 1;
+        assertEquals(h, hc.hashCode(other));
+        hc.invalidate(other.next);
+        assertEquals(JAU.hashCode(other), hc.hashCode(other));
+        assertEquals(JAU.hashCode(root), hc.hashCode(root));
+    }
+}
@@ -0,0 +1,137 @@
+package com.googlecode.jau;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the processing of deeply nested objects by Iterative.
+ */
+public class IterativeTest {
+    /**
+     * Creates a linked structure. Every second node references the next one
+     * through an array.
+     *
+     * @param n number of nodes
+     * @return first node
+     */
+    private static Node chain(int n) {
+        Node first = null;
+        for (int i = n - 1; i >= 0; i--) {
+            Node node = new Node();
+            node.value = i;
+            if (i % 2 == 0)
+                node.next = first;
+            else
+                node.other = new Object[] {first};
+            first = node;
+        }
+        return first;
+    }
+
+    /**
+     * @param first the first node of a chain
+     * @return the last node
+     */
+    private static Node last(Node first) {
+        Node last = first;
+        while (true) {
+            Node next = last.next;
+            if (last.other != null)
+                next = (Node) ((Object[]) last.other)[0];
+            if (next == null)
+                return last;
+            last = next;
+        }
+    }
+
+    /**
+     * Computes the hash code of a node like JAU.hashCode() recursively.
+     *
+     * @param a a node, an array of objects or null
+     * @return hash code
+     */
+    private static int expectedHashCode(Object a) {
+        int m = JAU.DEFAULT_MULTIPLIER;
+        if (a == null)
+            return JAU.DEFAULT_INITIAL * m;
+        if (a instanceof Object[]) {
+            int result = JAU.DEFAULT_INITIAL * m + a.getClass().hashCode();
+            for (Object el: (Object[]) a)
+                result += expectedHashCode(el) * m;
+            return result;
+        }
+        Node n = (Node) a;
+        return JAU.DEFAULT_INITIAL + m * n.value +
+                m * expectedHashCode(n.next) + m * expectedHashCode(n.other);
+    }
+
+    /**
+     * Formats a node like JAU.toString() recursively.
+     *
+     * @param a a node, an array of objects or null
+     * @return text
+     */
+    private static String expectedToString(Object a) {
+        if (a == null)
+            return "null";
+        if (a instanceof Object[]) {
+            StringBuilder sb = new StringBuilder("java.lang.Object[");
+            Object[] arr = (Object[]) a;
+            for (int i = 0; i < arr.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(expectedToString(arr[i]));
+            }
+            return sb.append(']').toString();
+        }
+        Node n = (Node) a;
+        return Node.class.getName() + "@" +
+                Integer.toHexString(System.identityHashCode(n)) +
+                "(value=" + n.value + ", next=" + expectedToString(n.next) +
+                ", other=" + expectedToString(n.other) + ")";
+    }
+
+    @Test
+    public void deepGraph() {
+        // too deep for recursion on the Java stack
+        Node a = chain(100000);
+        Node b = chain(100000);
+        assertTrue(JAU.equals(a, b));
+        assertEquals(JAU.hashCode(a), JAU.hashCode(b));
+        assertEquals(0, JAU.compare(a, b));
+        assertTrue(JAU.toString(a).contains(
+                "value=99999, next=null, other=java.lang.Object[null])"));
+
+        Node c = (Node) JAU.clone(a);
+        assertNotSame(a.next, c.next);
+        assertTrue(JAU.equals(a, c));
+
+        last(b).value = -1;
+        assertFalse(JAU.equals(a, b));
+        assertTrue(JAU.compare(a, b) > 0);
+        assertTrue(JAU.hashCode(a) != JAU.hashCode(b));
+    }
+
+    @Test
+    public void threshold() {
+        // the nesting of chain(n) is n + n / 2, so the graphs on both sides
+        // of the default JAU.ITERATIVE_DEPTH (255, 256, 257...) are compared
+        // with the recursive results
+        for (int n = 1; n <= 256; n++) {
+            Node a = chain(n);
+            Node b = chain(n);
+            assertEquals(expectedHashCode(a), JAU.hashCode(a));
+            assertEquals(expectedToString(a), JAU.toString(a));
+            assertTrue(JAU.equals(a, b));
+            assertEquals(0, JAU.compare(a, b));
+            Node c = (Node) JAU.clone(a);
+            assertEquals(expectedToString(a).replaceAll("@[0-9a-f]+", ""),
+                    expectedToString(c).replaceAll("@[0-9a-f]+", ""));
+
+            last(b).value = -1;
+            assertFalse(JAU.equals(a, b));
+            assertTrue(JAU.compare(a, b) > 0);
+            assertEquals(expectedHashCode(b), JAU.hashCode(b));
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.googlecode.jau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import org.junit.Test;
+import sun.misc.Unsafe;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the memory regions of JAUUnsafe. The fixtures have private
+ * fields, so no helpers are generated for them.
+ */
+public class JAUUnsafeTest {
+    /**
+     * Primitive fields of all sizes that are laid out without gaps.
+     */
+    @JAUEquals
+    @JAUHashCode
+    public static class PackedFields {
+        private long l;
+        private double d;
+        private int i1;
+        private int i2;
+        private int i3;
+        private int i4;
+        private int i5;
+        private float f;
+        private short s;
+        private char c;
+        private byte b;
+        private boolean z;
+        private String string;
+    }
+
+    /**
+     * A byte and a long with padding between them.
+     */
+    @JAUEquals
+    @JAUHashCode
+    public static class PaddedFields {
+        private byte b;
+        private long l;
+    }
+
+    /** values for the fields of PackedFields */
+    private static final Object[][] VALUES = {
+        {"l", Long.MIN_VALUE},
+        {"d", -0.0},
+        {"i1", Integer.MIN_VALUE},
+        {"i2", -1},
+        {"i3", 3},
+        {"i4", 4},
+        {"i5", Integer.MAX_VALUE},
+        {"f", Float.NaN},
+        {"s", Short.MIN_VALUE},
+        {"c", '\uffff'},
+        {"b", (byte) -1},
+        {"z", true},
+        {"string", "x"}
+    };
+
+    /**
+     * Sets a private field.
+     *
+     * @param o an object
+     * @param name field name
+     * @param value new value
+     */
+    private static void set(Object o, String name, Object value)
+            throws Exception {
+        Field f = o.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(o, value);
+    }
+
+    /**
+     * Computes the hash code like JAU.hashCode() field by field.
+     *
+     * @param o an object
+     * @return hash code
+     */
+    private static int expectedHashCode(Object o) throws Exception {
+        int result = JAU.DEFAULT_INITIAL;
+        for (Field f: o.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            Object v = f.get(o);
+            int h;
+            if (v instanceof Long)
+                h = Long.hashCode((Long) v);
+            else if (v instanceof Double)
+                h = Double.hashCode((Double) v);
+            else if (v instanceof Float)
+                h = Float.hashCode((Float) v);
+            else if (v instanceof Number)
+                h = ((Number) v).intValue();
+            else if (v instanceof Character)
+                h = (Character) v;
+            else if (v instanceof Boolean)
+                h = ((Boolean) v).hashCode();
+            else
+                h = JAU.hashCode(v);
+            result += JAU.DEFAULT_MULTIPLIER * h;
+        }
+        return result;
+    }
+
+    /**
+     * @param impl the implementation
+     * @param c a class
+     * @param operation ClassPlan.EQUALS or ClassPlan.HASHCODE
+     * @return class information updated for JAUUnsafe
+     */
+    private static ClassInfo update(JAUUnsafe impl, Class c, int operation) {
+        ClassInfo ci = JAU.getClassInfo(c, operation);
+        impl.update(ci);
+        return ci;
+    }
+
+    @Test
+    public void regions() throws Exception {
+        JAUUnsafe impl = new JAUUnsafe();
+        ClassInfo eq = update(impl, PackedFields.class, ClassPlan.EQUALS);
+        ClassInfo hc = update(impl, PackedFields.class, ClassPlan.HASHCODE);
+
+        // adjacent fields are merged and at least 2 ints are adjacent
+        JAUUnsafe.Layout layout = (JAUUnsafe.Layout) eq.layout;
+        assertTrue(layout.starts.length < eq.fields.length - 1);
+        assertTrue(((JAUUnsafe.Layout) hc.layout).intStarts.length > 0);
+
+        PackedFields a = new PackedFields();
+        PackedFields b = new PackedFields();
+        assertTrue(impl.equals(eq, a, b));
+        assertEquals(expectedHashCode(a), impl.hashCode(hc, a,
+                JAU.DEFAULT_INITIAL, JAU.DEFAULT_MULTIPLIER));
+
+        // every field alone makes a difference, including the one in the
+        // last word of a region
+        for (Object[] v: VALUES) {
+            set(a, (String) v[0], v[1]);
+            assertFalse((String) v[0], impl.equals(eq, a, b));
+            assertEquals((String) v[0], expectedHashCode(a), impl.hashCode(
+                    hc, a, JAU.DEFAULT_INITIAL, JAU.DEFAULT_MULTIPLIER));
+            set(b, (String) v[0], v[1]);
+            assertTrue((String) v[0], impl.equals(eq, a, b));
+        }
+    }
+
+    @Test
+    public void lastWord() throws Exception {
+        JAUUnsafe impl = new JAUUnsafe();
+        ClassInfo eq = update(impl, PackedFields.class, ClassPlan.EQUALS);
+
+        // the field at the highest offset
+        Field last = null;
+        long max = -1;
+        for (int i = 0; i < eq.fields.length; i++) {
+            if (eq.types[i] != ClassInfo.OTHER_TYPE && eq.offsets[i] > max) {
+                max = eq.offsets[i];
+                last = eq.fields[i];
+            }
+        }
+        PackedFields a = new PackedFields();
+        PackedFields b = new PackedFields();
+        for (Object[] v: VALUES) {
+            if (v[0].equals(last.getName()))
+                set(b, (String) v[0], v[1]);
+        }
+        assertFalse(impl.equals(eq, a, b));
+    }
+
+    @Test
+    public void nanPayloads() throws Exception {
+        JAUUnsafe impl = new JAUUnsafe();
+        ClassInfo eq = update(impl, PackedFields.class, ClassPlan.EQUALS);
+        ClassInfo hc = update(impl, PackedFields.class, ClassPlan.HASHCODE);
+
+        // different bits in memory, but equal like Float.equals()
+        PackedFields a = new PackedFields();
+        PackedFields b = new PackedFields();
+        set(a, "f", Float.intBitsToFloat(0x7fc00001));
+        set(b, "f", Float.intBitsToFloat(0x7f800002));
+        set(a, "d", Double.longBitsToDouble(0x7ff8000000000003L));
+        set(b, "d", Double.NaN);
+        assertTrue(impl.equals(eq, a, b));
+        assertEquals(impl.hashCode(hc, a, 17, 37),
+                impl.hashCode(hc, b, 17, 37));
+
+        // 0.0 and -0.0 differ
+        set(a, "d", 0.0);
+        set(b, "d", -0.0);
+        assertFalse(impl.equals(eq, a, b));
+    }
+
+    @Test
+    public void padding() throws Exception {
+        JAUUnsafe impl = new JAUUnsafe();
+        ClassInfo eq = update(impl, PaddedFields.class, ClassPlan.EQUALS);
+        ClassInfo hc = update(impl, PaddedFields.class, ClassPlan.HASHCODE);
+        PaddedFields a = new PaddedFields();
+        PaddedFields b = new PaddedFields();
+        set(a, "b", (byte) 1);
+        set(b, "b", (byte) 1);
+
+        // garbage between the fields is not compared or hashed
+        Field field = Unsafe.class.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        Unsafe unsafe = (Unsafe) field.get(null);
+        long ob = unsafe.objectFieldOffset(
+                PaddedFields.class.getDeclaredField("b"));
+        long ol = unsafe.objectFieldOffset(
+                PaddedFields.class.getDeclaredField("l"));
+        int h = impl.hashCode(hc, a, 17, 37);
+        for (long offset = Math.min(ob, ol);
+                offset < Math.max(ob + 1, ol + 8); offset++) {
+            if (offset != ob && (offset < ol || offset >= ol + 8))
+                unsafe.putByte(a, offset, (byte) 0x55);
+        }
+        assertTrue(impl.equals(eq, a, b));
+        assertEquals(h, impl.hashCode(hc, a, 17, 37));
+    }
+
+    @Test
+    public void systemProperty() throws Exception {
+        // already running with JAUUnsafe
+        if (JAUUnsafe.class.getName().equals(
+                System.getProperty("com.googlecode.jau.implementation")))
+            return;
+
+        String java = System.getProperty("java.home") + File.separator +
+                "bin" + File.separator + "java";
+        Process p = new ProcessBuilder(java,
+                "-Dcom.googlecode.jau.implementation=" +
+                JAUUnsafe.class.getName(),
+                "-Dcom.googlecode.jau.threshold=0",
+                "-cp", System.getProperty("java.class.path"),
+                "org.junit.runner.JUnitCore", EqualsTest.class.getName(),
+                JAUUnsafeTest.class.getName()).
+                redirectErrorStream(true).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = p.getInputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        assertEquals(out.toString(), 0, p.waitFor());
+    }
+
+    @Test
+    public void api() throws Exception {
+        // JAUUnsafe is used through JAU in systemProperty()
+        PackedFields a = new PackedFields();
+        PackedFields b = new PackedFields();
+        for (Object[] v: VALUES) {
+            set(a, (String) v[0], v[1]);
+            assertFalse((String) v[0], JAU.equals(a, b));
+            assertEquals((String) v[0], expectedHashCode(a),
+                    JAU.hashCode(a));
+            set(b, (String) v[0], v[1]);
+            assertTrue((String) v[0], JAU.equals(a, b));
+        }
+        set(a, "f", Float.intBitsToFloat(0x7fc00001));
+        assertTrue(JAU.equals(a, b));
+        assertEquals(JAU.hashCode(a), JAU.hashCode(b));
+    }
+
+    @Test
+    public void adjacentFields() {
+        PrimitiveFields a = new PrimitiveFields();
+        PrimitiveFields b = new PrimitiveFields();
+        a.float_ = Float.intBitsToFloat(0x7fc00001);
+        b.float_ = Float.NaN;
+        a.double_ = Double.longBitsToDouble(0x7ff8000000000001L);
+        b.double_ = Double.NaN;
+        for (int i = 0; i < 200; i++) {
+            assertTrue(JAU.equals(a, b));
+            assertEquals(JAU.hashCode(a), JAU.hashCode(b));
+        }
+        b.char_ = 'x';
+        assertFalse(JAU.equals(a, b));
+
+        IntFields16 c = new IntFields16();
+        IntFields16 d = new IntFields16();
+        int h = JAU.hashCode(c);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(JAU.equals(c, d));
+            assertEquals(h, JAU.hashCode(d));
+        }
+        d.a15 = 1;
+        assertFalse(JAU.equals(c, d));
+        assertEquals(h + 37, JAU.hashCode(d));
+    }
+}
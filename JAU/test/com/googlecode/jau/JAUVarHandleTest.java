@@ -0,0 +1,120 @@
+package com.googlecode.jau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JAUVarHandle. JAU selects another implementation by default,
+ * so it is used directly or in a new JVM.
+ */
+public class JAUVarHandleTest {
+    /**
+     * @param impl the implementation
+     * @param ci class information
+     * @return the same object updated for JAUVarHandle
+     */
+    private static ClassInfo update(JAUVarHandle impl, ClassInfo ci) {
+        impl.update(ci);
+        return ci;
+    }
+
+    @Test
+    public void operations() throws Exception {
+        JAUVarHandle impl = new JAUVarHandle();
+        Class c = PrimitiveFields.class;
+        ClassInfo eq = update(impl, JAU.getClassInfo(c, ClassPlan.EQUALS));
+        ClassInfo hc = update(impl, JAU.getClassInfo(c, ClassPlan.HASHCODE));
+        ClassInfo cmp = update(impl,
+                JAU.getClassInfo(c, ClassPlan.COMPARETO));
+        ClassInfo cp = update(impl, JAU.getClassInfo(c, ClassPlan.COPY));
+        ClassInfo ts = update(impl, JAU.getClassInfo(c, ClassPlan.TOSTRING));
+        ClassInfo tm = update(impl, JAU.getClassInfo(c, ClassPlan.TOMAP));
+
+        PrimitiveFields a = new PrimitiveFields();
+        PrimitiveFields b = new PrimitiveFields();
+        a.byte_ = 1;
+        a.short_ = 2;
+        a.int_ = 3;
+        a.long_ = 4;
+        a.float_ = 5;
+        a.double_ = 6;
+        a.char_ = '7';
+        a.boolean_ = true;
+        a.string_ = "8";
+        assertFalse(impl.equals(eq, a, b));
+        impl.copy(cp, a, b);
+        assertTrue(impl.equals(eq, a, b));
+        assertEquals(0, impl.compare(cmp, a, b));
+        assertEquals(JAU.hashCode(a, 17, 37), impl.hashCode(hc, a, 17, 37));
+
+        StringBuilder sb = new StringBuilder();
+        impl.toString(ts, sb, a, false);
+        assertTrue(JAU.toString(a).contains(sb));
+        Map<String, Object> map = new HashMap<String, Object>();
+        impl.toMap(tm, map, a);
+        assertEquals(JAU.toMap(a), map);
+
+        b.double_ = -1;
+        assertFalse(impl.equals(eq, a, b));
+        assertTrue(impl.compare(cmp, a, b) > 0);
+    }
+
+    @Test
+    public void hiddenClasses() throws Exception {
+        JAUVarHandle impl = new JAUVarHandle();
+        Class c = PrimitiveFields.class;
+        ClassInfo eq = update(impl, JAU.getClassInfo(c, ClassPlan.EQUALS));
+        ClassInfo hc = update(impl, JAU.getClassInfo(c, ClassPlan.HASHCODE));
+        ClassInfo cmp = update(impl,
+                JAU.getClassInfo(c, ClassPlan.COMPARETO));
+        assertTrue(eq.compiled.getClass().isHidden());
+        assertTrue(hc.compiled.getClass().isHidden());
+        assertTrue(cmp.compiled.getClass().isHidden());
+
+        PrimitiveFields a = new PrimitiveFields();
+        PrimitiveFields b = new PrimitiveFields();
+        a.float_ = Float.NaN;
+        b.float_ = Float.NaN;
+        a.string_ = "x";
+        b.string_ = "x";
+        assertTrue(impl.equals(eq, a, b));
+        assertEquals(0, impl.compare(cmp, a, b));
+        assertEquals(JAU.hashCode(a), impl.hashCode(hc, a,
+                JAU.DEFAULT_INITIAL, JAU.DEFAULT_MULTIPLIER));
+
+        b.long_ = Long.MIN_VALUE;
+        assertFalse(impl.equals(eq, a, b));
+        assertTrue(impl.compare(cmp, a, b) > 0);
+        b.long_ = 0;
+        b.boolean_ = true;
+        assertFalse(impl.equals(eq, a, b));
+        assertTrue(impl.compare(cmp, a, b) < 0);
+    }
+
+    @Test
+    public void systemProperty() throws Exception {
+        // the implementation is chosen when JAU is loaded
+        String java = System.getProperty("java.home") + File.separator +
+                "bin" + File.separator + "java";
+        Process p = new ProcessBuilder(java,
+                "-Dcom.googlecode.jau.implementation=" +
+                JAUVarHandle.class.getName(),
+                "-Dcom.googlecode.jau.threshold=0",
+                "-cp", System.getProperty("java.class.path"),
+                "org.junit.runner.JUnitCore", EqualsTest.class.getName(),
+                CompareTest.class.getName(), CopyTest.class.getName(),
+                ToMapTest.class.getName()).redirectErrorStream(true).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = p.getInputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        assertEquals(out.toString(), 0, p.waitFor());
+    }
+}
@@ -0,0 +1,37 @@
+package com.googlecode.jau;
+
+import java.util.HashMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for KeyedHashCoder.
+ */
+public class KeyedHashCoderTest {
+    @Test
+    public void keyedHashCode() {
+        KeyedHashCoder hc = new KeyedHashCoder(1, 2);
+        AllFields2 a = new AllFields2();
+        AllFields2 b = new AllFields2();
+        assertEquals(hc.hashCode(a), hc.hashCode(b));
+        assertEquals(hc.hashCode64(a), hc.hashCode64(b));
+        b.value = 1;
+        assertTrue(hc.hashCode64(a) != hc.hashCode64(b));
+
+        // the result depends on the key
+        assertTrue(hc.hashCode64(a) !=
+                new KeyedHashCoder(1, 3).hashCode64(a));
+
+        HashMap<Object, Object> m1 = new HashMap<Object, Object>();
+        HashMap<Object, Object> m2 = new HashMap<Object, Object>();
+        for (int i = 0; i < 20; i++) {
+            m1.put("k" + i, new int[] {i});
+            m2.put("k" + (19 - i), new int[] {19 - i});
+        }
+        assertEquals(hc.hashCode64(m1), hc.hashCode64(m2));
+        assertTrue(hc.hashCode64("ab") != hc.hashCode64("ba"));
+        assertTrue(hc.hashCode64(null) != hc.hashCode64(""));
+        assertEquals(KeyedHashCoder.DEFAULT.hashCode(new Object[] {"x", a}),
+                KeyedHashCoder.DEFAULT.hashCode(new Object[] {"x", a}));
+    }
+}
@@ -0,0 +1,15 @@
+package com.googlecode.jau;
+
+/**
+ * Element of a linked structure (may contain cycles).
+ */
+@JAUEquals
+@JAUHashCode
+@JAUToString
+@JAUCopy
+@JAUCompareTo
+public class Node {
+    public int value;
+    public Node next;
+    public Object other;
+}
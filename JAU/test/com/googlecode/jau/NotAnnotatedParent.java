@@ -0,0 +1,14 @@
+package com.googlecode.jau;
+
+/**
+ * An annotated class with a superclass that is not annotated.
+ */
+@JAUEquals
+@JAUCompareTo
+@JAUHashCode
+@JAUToString
+@JAUCopy
+@JAUToMap
+public class NotAnnotatedParent extends OneFieldNoAnnotation {
+    public int value2;
+}
@@ -0,0 +1,35 @@
+package com.googlecode.jau;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JAU.parallelHashCode and JAU.parallelEquals.
+ */
+public class ParallelTest {
+    @Test
+    public void parallel() {
+        IntFields4[] a = new IntFields4[100000];
+        IntFields4[] b = new IntFields4[a.length];
+        ArrayList<Object> list = new ArrayList<Object>();
+        for (int i = 0; i < a.length; i++) {
+            a[i] = new IntFields4();
+            a[i].a0 = i;
+            b[i] = new IntFields4();
+            b[i].a0 = i;
+            list.add(i % 10 == 0 ? null : a[i]);
+        }
+        assertEquals(JAU.hashCode(a), JAU.parallelHashCode(a));
+        assertEquals(JAU.hashCode(list), JAU.parallelHashCode(list));
+        assertTrue(JAU.parallelEquals(a, b));
+        assertTrue(JAU.parallelEquals(list, new ArrayList<Object>(list)));
+
+        b[77777].a1 = 1;
+        assertFalse(JAU.parallelEquals(a, b));
+        ArrayList<Object> list2 = new ArrayList<Object>(list);
+        list2.set(12345, b[77777]);
+        assertFalse(JAU.parallelEquals(list, list2));
+        assertFalse(JAU.parallelEquals(a, new IntFields4[5]));
+    }
+}
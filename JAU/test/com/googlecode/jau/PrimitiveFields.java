@@ -0,0 +1,22 @@
+package com.googlecode.jau;
+
+/**
+ * A class with a field of every primitive type.
+ */
+@JAUEquals
+@JAUCompareTo
+@JAUHashCode
+@JAUToString
+@JAUCopy
+@JAUToMap
+public class PrimitiveFields {
+    public byte byte_;
+    public short short_;
+    public int int_;
+    public long long_;
+    public float float_;
+    public double double_;
+    public char char_;
+    public boolean boolean_;
+    public String string_;
+}
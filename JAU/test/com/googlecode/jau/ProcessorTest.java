@@ -0,0 +1,48 @@
+package com.googlecode.jau;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the helpers generated by JAUProcessor.
+ */
+public class ProcessorTest {
+    @Test
+    public void generatedHelper() throws Exception {
+        // generated by JAUProcessor during the compilation of the tests
+        JAUHelper h = (JAUHelper) Class.forName(
+                "com.googlecode.jau.PrimitiveFields$JAU").
+                getDeclaredConstructor().newInstance();
+        assertEquals(JAUHelper.EQUALS | JAUHelper.HASHCODE |
+                JAUHelper.COMPARETO | JAUHelper.COPY | JAUHelper.TOSTRING,
+                h.operations());
+
+        PrimitiveFields a = new PrimitiveFields();
+        PrimitiveFields b = new PrimitiveFields();
+        a.int_ = 5;
+        a.string_ = "x";
+        assertFalse(h.equals(a, b));
+        h.copy(a, b);
+        assertTrue(h.equals(a, b));
+        assertEquals(0, h.compare(a, b));
+        assertEquals(JAU.hashCode(a, 17, 37), h.hashCode(a));
+        assertTrue(JAU.toString(a).contains("int_=5, "));
+
+        // flags that tell JAU whether the class information is needed
+        int flags = JAUHelper.REFERENCES | JAUHelper.CACHED;
+        h = (JAUHelper) Class.forName("com.googlecode.jau.Node$JAU").
+                getDeclaredConstructor().newInstance();
+        assertEquals(JAUHelper.REFERENCES, h.operations() & flags);
+        h = (JAUHelper) Class.forName("com.googlecode.jau.CachedValue$JAU").
+                getDeclaredConstructor().newInstance();
+        assertEquals(JAUHelper.CACHED, h.operations() & flags);
+
+        // private fields are not accessible from a helper
+        try {
+            Class.forName("com.googlecode.jau.PrivateField$JAU");
+            fail("no helper expected");
+        } catch (ClassNotFoundException ex) {
+            // expected
+        }
+    }
+}
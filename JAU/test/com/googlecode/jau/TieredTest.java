@@ -0,0 +1,53 @@
+package com.googlecode.jau;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the switch from reflection to the fast implementation.
+ */
+public class TieredTest {
+    /**
+     * A record. sun.misc.Unsafe cannot access its fields.
+     */
+    @JAUEquals
+    @JAUHashCode
+    @JAUToString
+    record Point(int x, String s) {
+    }
+
+    @Test
+    public void tiered() {
+        // no helper is generated for PrivateField, so reflection is used
+        // first and the fast implementation after some invocations
+        PrivateField a = new PrivateField();
+        PrivateField b = new PrivateField();
+        a.setValue(3);
+        b.setValue(4);
+        int ha = JAU.hashCode(a);
+        int hb = JAU.hashCode(b);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ha, JAU.hashCode(a));
+            assertEquals(hb, JAU.hashCode(b));
+            assertFalse(JAU.equals(a, b));
+            assertTrue(JAU.equals(a, JAU.clone(a)));
+            assertTrue(JAU.compare(a, b) < 0);
+        }
+    }
+
+    @Test
+    public void record() {
+        // more invocations than the threshold
+        Point a = new Point(1, "a");
+        Point b = new Point(1, "b");
+        int ha = JAU.hashCode(a);
+        String sa = JAU.toString(a);
+        assertTrue(sa.endsWith("(x=1, s=\"a\")"));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ha, JAU.hashCode(a));
+            assertTrue(JAU.equals(a, new Point(1, "a")));
+            assertFalse(JAU.equals(a, b));
+            assertEquals(sa, JAU.toString(a));
+        }
+    }
+}
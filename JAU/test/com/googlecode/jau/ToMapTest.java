@@ -45,6 +45,20 @@ public class ToMapTest {
         assertEquals(m, JAU.toMap(a));
     }
 
+    @Test
+    public void primitiveFields() {
+        PrimitiveFields a = new PrimitiveFields();
+        a.long_ = 5;
+        a.boolean_ = true;
+        a.char_ = 'c';
+        Map<String, Object> m = JAU.toMap(a);
+        assertEquals(9, m.size());
+        assertEquals(new Long(5), m.get("long_"));
+        assertEquals(Boolean.TRUE, m.get("boolean_"));
+        assertEquals(new Character('c'), m.get("char_"));
+        assertNull(m.get("string_"));
+    }
+
     @Test
     public void arrayField() {
         ArrayField a = new ArrayField();
@@ -147,6 +147,35 @@ public class ToStringTest {
         assertEquals("java.lang.String[][java.lang.String[\"a\", \"b\"], " +
                 "java.lang.String[\"1\", \"2\"]]",
                 JAU.toString(new String[][] {{"a", "b"}, {"1", "2"}}));
+        assertEquals("double[1.5, -0.0, NaN]",
+                JAU.toString(new double[] {1.5, -0.0, Double.NaN}));
+        assertEquals("char[a, b]", JAU.toString(new char[] {'a', 'b'}));
+        assertEquals("byte[-1, 2]", JAU.toString(new byte[] {-1, 2}));
+    }
+
+    @Test
+    public void primitiveArrayTypes() {
+        assertEquals("byte[-128, 127, 0]", JAU.toString(
+                new byte[] {Byte.MIN_VALUE, Byte.MAX_VALUE, 0}));
+        assertEquals("short[-32768, 32767]", JAU.toString(
+                new short[] {Short.MIN_VALUE, Short.MAX_VALUE}));
+        assertEquals("char[a, \",  ]", JAU.toString(
+                new char[] {'a', '"', ' '}));
+        assertEquals("int[-2147483648, 2147483647]", JAU.toString(
+                new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE}));
+        assertEquals("long[-9223372036854775808, 1]", JAU.toString(
+                new long[] {Long.MIN_VALUE, 1}));
+        assertEquals("float[-0.0, NaN, Infinity, 1.0E10]", JAU.toString(
+                new float[] {-0.0f, Float.NaN, Float.POSITIVE_INFINITY,
+                1e10f}));
+        assertEquals("double[4.9E-324, -Infinity, 0.1]", JAU.toString(
+                new double[] {Double.MIN_VALUE, Double.NEGATIVE_INFINITY,
+                0.1}));
+        assertEquals("boolean[true, false]", JAU.toString(
+                new boolean[] {true, false}));
+        assertEquals("long[]", JAU.toString(new long[0]));
+        assertEquals("boolean[][boolean[true], boolean[]]", JAU.toString(
+                new boolean[][] {{true}, {}}));
     }
 
     @Test
@@ -165,4 +194,27 @@ public class ToStringTest {
     public void enum_() {
         assertEquals("com.googlecode.jau.ColorsEnum.RED", JAU.toString(ColorsEnum.RED));
     }
+
+    @Test
+    public void stringifier() {
+        OneField a = new OneField();
+        a.value = 27;
+        assertEquals(JAU.toString(a),
+                JAU.stringifier(OneField.class).toString(a));
+        PrivateField b = new PrivateField();
+        assertEquals(JAU.toString(b),
+                JAU.stringifier(PrivateField.class).toString(b));
+        assertEquals("null", JAU.stringifier(OneField.class).toString(null));
+    }
+
+    @Test
+    public void cycle() {
+        Node a = new Node();
+        a.next = new Node();
+        a.next.next = a;
+        String s = JAU.toString(a);
+        assertEquals(identityToString(a) + "(value=0, next=" +
+                identityToString(a.next) + "(value=0, next=" +
+                identityToString(a) + "(...), other=null), other=null)", s);
+    }
 }
@@ -0,0 +1,152 @@
+package com.googlecode.jau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JAUWeaver.
+ */
+public class WeaverTest {
+    /**
+     * Loads a woven copy of a class.
+     */
+    private static class WeavingClassLoader extends ClassLoader {
+        private final String name;
+
+        /**
+         * -
+         *
+         * @param name name of the class that should be woven
+         */
+        WeavingClassLoader(String name) {
+            super(WeaverTest.class.getClassLoader());
+            this.name = name;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String n, boolean resolve)
+                throws ClassNotFoundException {
+            // the generated helper only works for the original class
+            if (n.equals(name + JAUProcessor.SUFFIX))
+                throw new ClassNotFoundException(n);
+            if (!n.equals(name))
+                return super.loadClass(n, resolve);
+
+            Class c = findLoadedClass(n);
+            if (c != null)
+                return c;
+            try {
+                byte[] b = readClass(super.loadClass(n, false));
+                byte[] woven = JAUWeaver.weave(b, getParent());
+
+                // null = already woven after compilation
+                if (woven == null)
+                    woven = b;
+                return defineClass(n, woven, 0, woven.length);
+            } catch (java.io.IOException ex) {
+                throw new ClassNotFoundException(n, ex);
+            }
+        }
+    }
+
+    @Test
+    public void weave() throws Exception {
+        Class c = new WeavingClassLoader(PrimitiveFields.class.getName()).
+                loadClass(PrimitiveFields.class.getName());
+        assertNotSame(PrimitiveFields.class, c);
+        assertTrue(Comparable.class.isAssignableFrom(c));
+
+        Object a = c.newInstance();
+        Object b = c.newInstance();
+        assertTrue(a.equals(b));
+        assertFalse(a.equals(null));
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(0, ((Comparable) a).compareTo(b));
+        assertTrue(a.toString().contains("int_=0"));
+
+        c.getField("int_").setInt(a, 7);
+        assertFalse(a.equals(b));
+        assertTrue(((Comparable) a).compareTo(b) > 0);
+        assertTrue(a.toString().contains("int_=7"));
+
+        // classes without annotations are not changed
+        assertNull(JAUWeaver.weave(readClass(EmptyNoAnnotation.class),
+                getClass().getClassLoader()));
+    }
+
+    @Test
+    public void inline() throws Exception {
+        // all fields are primitive or Strings, so the fields are compared
+        // directly. Jumps need stack map frames in Java 6+ class files.
+        byte[] woven = JAUWeaver.weave(readClass(PrimitiveFields.class),
+                getClass().getClassLoader());
+        assertTrue(new String(woven, "ISO-8859-1").contains("StackMapTable"));
+
+        Class c = new WeavingClassLoader(PrimitiveFields.class.getName()).
+                loadClass(PrimitiveFields.class.getName());
+        Object a = c.newInstance();
+        Object b = c.newInstance();
+        PrimitiveFields pa = new PrimitiveFields();
+        PrimitiveFields pb = new PrimitiveFields();
+        set(c, a, pa, "float_", Float.NaN);
+        set(c, b, pb, "float_", Float.NaN);
+        set(c, a, pa, "string_", "x");
+        set(c, b, pb, "string_", "x");
+        assertTrue(a.equals(b));
+        assertEquals(JAU.hashCode(pa), a.hashCode());
+        assertEquals(0, ((Comparable) a).compareTo(b));
+
+        set(c, b, pb, "double_", -0.0);
+        assertFalse(a.equals(b));
+        assertEquals(JAU.hashCode(pb), b.hashCode());
+        assertEquals(Integer.signum(JAU.compare(pa, pb)),
+                Integer.signum(((Comparable) a).compareTo(b)));
+
+        set(c, b, pb, "double_", 0.0);
+        set(c, b, pb, "boolean_", true);
+        set(c, b, pb, "long_", Long.MIN_VALUE);
+        assertFalse(a.equals(b));
+        assertEquals(JAU.hashCode(pb), b.hashCode());
+        assertEquals(Integer.signum(JAU.compare(pa, pb)),
+                Integer.signum(((Comparable) a).compareTo(b)));
+
+        // other classes and null are handled by JAU
+        assertFalse(a.equals(null));
+        assertFalse(a.equals("x"));
+        assertFalse(a.equals(pa));
+        assertEquals(1, ((Comparable) a).compareTo(null));
+    }
+
+    /**
+     * Sets a field in a woven and in an original object.
+     *
+     * @param c the woven class
+     * @param woven woven object
+     * @param original original object
+     * @param field field name
+     * @param value new value
+     */
+    private static void set(Class c, Object woven, Object original,
+            String field, Object value) throws Exception {
+        c.getField(field).set(woven, value);
+        PrimitiveFields.class.getField(field).set(original, value);
+    }
+
+    /**
+     * @param c a class
+     * @return content of the .class file
+     */
+    private static byte[] readClass(Class c) throws java.io.IOException {
+        InputStream in = c.getClassLoader().getResourceAsStream(
+                c.getName().replace('.', '/') + ".class");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = in.read(buffer)) > 0)
+            out.write(buffer, 0, len);
+        in.close();
+        return out.toByteArray();
+    }
+}